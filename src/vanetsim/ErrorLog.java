@@ -12,6 +12,7 @@ import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 
 import vanetsim.localization.Messages;
+import vanetsim.simulation.SimulationContext;
 
 /**
  * Helper Class for error logging.
@@ -126,6 +127,7 @@ public final class ErrorLog {
                         logger.logp(Level.SEVERE, errClass, errMethod, message);
                 }
             }
+            if(SimulationContext.current().getHeadless()) return;	// nobody to show a dialog to
             if(severity == 7) JOptionPane.showMessageDialog(VanetSimStart.getMainFrame(), Messages.getString("ErrorLog.error") + message + (e!=null?"\n" + Messages.getString("ErrorLog.seeErrorlog"):""), Messages.getString("ErrorLog.errorWindowTitle"), JOptionPane.ERROR_MESSAGE); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
             else if(severity == 6) JOptionPane.showMessageDialog(VanetSimStart.getMainFrame(), Messages.getString("ErrorLog.warning") + message + (e!=null?"\n" + Messages.getString("ErrorLog.seeErrorlog"):""), Messages.getString("ErrorLog.warningWindowTitle"), JOptionPane.WARNING_MESSAGE); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
         } catch (Exception new_e) {
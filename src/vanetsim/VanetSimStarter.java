@@ -3,14 +3,16 @@ package vanetsim;
 import javax.swing.SwingUtilities;
 
 import vanetsim.debug.Debug;
+import vanetsim.simulation.HeadlessEngine;
 
 public class VanetSimStarter {
     /**
      * ®
      * GitHub 測試
      * @param args	command line arguments. No argument is given the simulator will start in GUI-Mode.
-     * if 3 arguments are given the simulator will start without GUI in console mode. args[0] = map path; args[1] = scenario path args[2] = time until the simulation stops
-     * example for console mode: java -jar VanetSimStarter.jar /Users/Max_Mustermann/rgb-1.xml /Users/Max_Mustermann/rgb-1_scen.xml 50000
+     * if 3 arguments are given the simulator will start without GUI in console mode. args[0] = map path; args[1] = amount of random vehicles args[2] = time until the simulation stops
+     * (optional args[3] = amount of threads). Scenario files can't be loaded yet so random vehicles are created instead.
+     * example for console mode: java -jar VanetSimStarter.jar /Users/Max_Mustermann/rgb-1.xml 1000 50000
      */
 
 
@@ -19,14 +21,11 @@ public class VanetSimStarter {
         Debug.whereru("VanetSimStarter", Debug.ISLOGGED);
         Debug.callFunctionInfo("VanetSimStarter", "main()", Debug.ISLOGGED);
 
-        SwingUtilities.invokeLater(new VanetSimStart());
-
-
         /**
-         * 以下為原始作者的呼叫函式，由於我們不使用console介面，故直接呼叫GUI
+         * 以下為原始作者的呼叫函式，console模式改由HeadlessEngine執行（不會載入Swing）
          */
-        //if(args.length < 3) SwingUtilities.invokeLater(new VanetSimStart());
-        //else SwingUtilities.invokeLater(new ConsoleStart(args[0], args[1], args[2]));
+        if(args.length < 3) SwingUtilities.invokeLater(new VanetSimStart());
+        else HeadlessEngine.main(args);
 
     }
 
@@ -43,6 +43,7 @@ import vanetsim.scenario.Vehicle;
 import vanetsim.scenario.RSU;
 import vanetsim.scenario.events.EventList;
 import vanetsim.scenario.events.StartBlocking;
+import vanetsim.simulation.SimulationClock;
 
 /**
  * This class performs all rendering tasks.自適應調整任務類別
@@ -101,9 +102,6 @@ public final class Renderer{
     /** If a simulation thread is currently running. */
     private boolean simulationRunning_ = false;
 
-    /** Used to display how long the relative time in milliseconds since the simulation started. */
-    private int timePassed_ = 0;
-
     /** A boolean indicating if a new full render (=rendering of static objects) is needed. */
     private boolean scheduleFullRender_ = false;
 
@@ -1025,7 +1023,7 @@ public final class Renderer{
             g2d.setPaint(Color.black);
             g2d.setFont(timeFont_);
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_OFF);
-            g2d.drawString(FORMATTER.format(timePassed_) + " ms", 5 ,10 ); //$NON-NLS-1$
+            g2d.drawString(FORMATTER.format(SimulationClock.getTime()) + " ms", 5 ,10 ); //$NON-NLS-1$
 
             //draw silent period sign
             if(Vehicle.isSilent_period()){
@@ -1328,7 +1326,7 @@ public final class Renderer{
      * @return the time passed in milliseconds
      */
     public int getTimePassed(){
-        return timePassed_;
+        return SimulationClock.getTime();
     }
 
 
@@ -1447,7 +1445,7 @@ public final class Renderer{
      * @param timePassed the new time in milliseconds
      */
     public void setTimePassed(int timePassed){
-        timePassed_ = timePassed;
+        SimulationClock.setTime(timePassed);
     }
 
     /**
@@ -22,6 +22,7 @@ import vanetsim.gui.helpers.TextAreaLabel;
 import vanetsim.localization.Messages;
 import vanetsim.scenario.Vehicle;
 import vanetsim.scenario.RSU;
+import vanetsim.simulation.SimulationContext;
 import vanetsim.simulation.SimulationMaster;
 
 /**
@@ -40,6 +41,9 @@ public class EditSettingsControlPanel extends JPanel implements ItemListener, Pr
     /** A combo box for choosing the routing mode */
     private final JComboBox routingModeChoice_;
 
+    /** A combo box for choosing the simulation engine (index = <code>SimulationMaster.ENGINE_*</code>) */
+    private final JComboBox engineChoice_;
+
     /** A CheckBox for enabling/disabling recycling of vehicles. */
     private final JCheckBox recyclingCheckBox_;
 
@@ -124,6 +128,26 @@ public class EditSettingsControlPanel extends JPanel implements ItemListener, Pr
         add(jLabel1,c);
         c.insets = new Insets(5,5,5,5);
 
+        ++c.gridy;
+        c.gridwidth = 1;
+        c.weightx = 1;
+        jLabel1 = new JLabel(Messages.getString("EditSettingsControlPanel.engine")); //$NON-NLS-1$
+        add(jLabel1,c);
+        c.gridx = 1;
+        c.weightx = 0;
+        choices = new String[]{Messages.getString("EditSettingsControlPanel.engineBarrier"), Messages.getString("EditSettingsControlPanel.engineWorkStealing"), Messages.getString("EditSettingsControlPanel.engineVirtualThreads")}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        engineChoice_ = new JComboBox(choices);
+        engineChoice_.setSelectedIndex(SimulationContext.current().getEngine());
+        engineChoice_.addItemListener(this);
+        add(engineChoice_, c);
+        ++c.gridy;
+        c.gridwidth = 2;
+        c.gridx = 0;
+        c.insets = new Insets(0,5,5,5);
+        jLabel1 = new JLabel(Messages.getString("EditSettingsControlPanel.engineNote")); //$NON-NLS-1$
+        add(jLabel1,c);
+        c.insets = new Insets(5,5,5,5);
+
         ++c.gridy;
         recyclingCheckBox_ = new JCheckBox(Messages.getString("EditSettingsControlPanel.enableRecycling"), true); //$NON-NLS-1$
         recyclingCheckBox_.setSelected(true);
@@ -446,6 +470,9 @@ public class EditSettingsControlPanel extends JPanel implements ItemListener, Pr
             setGlobalInfrastructure(state);
         } else if (source == routingModeChoice_){
             Vehicle.setRoutingMode(routingModeChoice_.getSelectedIndex());
+        } else if (source == engineChoice_){
+            // refused if the runtime doesn't support the engine, so show the one which is used
+            if(state && !SimulationContext.current().setEngine(engineChoice_.getSelectedIndex())) engineChoice_.setSelectedIndex(SimulationContext.current().getEngine());
         } else if (source == recyclingCheckBox_){
             Vehicle.setRecyclingEnabled(state);
         } else if (source == fallbackInMixZonesCheckBox_){
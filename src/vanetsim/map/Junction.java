@@ -1,9 +1,15 @@
 package vanetsim.map;
 
 import vanetsim.debug.Debug;
-import vanetsim.gui.Renderer;
 import vanetsim.scenario.LaneObject;
 import vanetsim.scenario.Vehicle;
+import vanetsim.simulation.MapIndex;
+import vanetsim.simulation.SimulationClock;
+import vanetsim.simulation.SimulationContext;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * A junction which always belongs to one specific node. If vehicles move from one priority street to another, they don't have to wait.
@@ -34,9 +40,6 @@ public class Junction {
      * doesn't signal that it has passed the junction within this time, another vehicle gets the permission! */
     private static final int MAXIMUM_TIME_ON_JUNCTION = 2500;
 
-    /** A static reference to the renderer. */
-    private static final Renderer renderer_ = Renderer.getInstance();
-
     /** The node this junction belongs to. */
     private final Node node_;
 
@@ -52,30 +55,12 @@ public class Junction {
     /** The priorities for the junction rules. */
     private int[] rulesPriorities_ = null;
 
-    /** A queue for the junction if more than one vehicle arrives. This is used for priority 3 streets (left turnoff from priority street). */
-    private JunctionQueue junctionQueuePriority3_ = new JunctionQueue();
-
-    public JunctionQueue getJunctionQueuePriority3(){return junctionQueuePriority3_;}
-
-    /** A queue for the junction if more than one vehicle arrives This is used for priority 4 streets (normal turnoff). */
-    private JunctionQueue junctionQueuePriority4_ = new JunctionQueue();
-
-    public JunctionQueue getJunctionQueuePriority4(){return junctionQueuePriority4_;}
-
-    /** The vehicle which is allowed to pass the junction in this step. Used against synchronization problems. */
-    public Vehicle vehicleAllowedThisStep_ = null;
-
-    /** When (in simulation time) the vehicleAllowedThisStep-variable was last set. */
-    public int vehicleAllowedSetTime_ = 0;
+    /** The queues and the vehicle on the junction. One state per run sharing this map, indexed by the run slot of the <code>SimulationContext</code>. */
+    private volatile RunState[] runStates_ = {new RunState()};
 
-    /** If a vehicle is currently on the junction so that no other one may go over it. */
-    private boolean vehicleOnJunction_ = false;
+    public JunctionQueue getJunctionQueuePriority3(){return getRunState().junctionQueuePriority3_;}
 
-    /** Since when (in simulation time) a vehicle is on the junction. */
-    private int vehicleOnJunctionSince_ = -1;
-
-    /** When (in simulation time) the next cleanup on the junction queues will be done.*/
-    private int nextJunctionQueueCleanUp_ = JUNCTION_QUEUES_CLEANUP_INTERVAL;
+    public JunctionQueue getJunctionQueuePriority4(){return getRunState().junctionQueuePriority4_;}
 
     /** Traffic Light*/
 
@@ -134,22 +119,23 @@ public class Junction {
      * @param priority	the priority of the vehicle to pass this junction
      */
     public synchronized void addWaitingVehicle(Vehicle vehicle, int priority){
-        int curTime = renderer_.getTimePassed();
-        if(curTime > vehicleAllowedSetTime_){		// Sets the vehicle which will be allowed to pass in the current step.
-            vehicleAllowedSetTime_ = curTime;
-            if(vehicleOnJunction_ && vehicleOnJunctionSince_ > curTime - MAXIMUM_TIME_ON_JUNCTION) vehicleAllowedThisStep_ = null;
+        RunState state = getRunState();
+        int curTime = SimulationClock.getTime();
+        if(curTime > state.vehicleAllowedSetTime_){		// Sets the vehicle which will be allowed to pass in the current step.
+            state.vehicleAllowedSetTime_ = curTime;
+            if(state.vehicleOnJunction_ && state.vehicleOnJunctionSince_ > curTime - MAXIMUM_TIME_ON_JUNCTION) state.vehicleAllowedThisStep_ = null;
             else{
-                vehicleAllowedThisStep_ = junctionQueuePriority3_.getFirstVehicle();
-                if(vehicleAllowedThisStep_ == null) vehicleAllowedThisStep_ = junctionQueuePriority4_.getFirstVehicle();
+                state.vehicleAllowedThisStep_ = state.junctionQueuePriority3_.getFirstVehicle();
+                if(state.vehicleAllowedThisStep_ == null) state.vehicleAllowedThisStep_ = state.junctionQueuePriority4_.getFirstVehicle();
             }
         }
-        if(curTime >= nextJunctionQueueCleanUp_){
-            nextJunctionQueueCleanUp_ = curTime + JUNCTION_QUEUES_CLEANUP_INTERVAL;
-            junctionQueuePriority3_.cleanUp();
-            junctionQueuePriority4_.cleanUp();
+        if(curTime >= state.nextJunctionQueueCleanUp_){
+            state.nextJunctionQueueCleanUp_ = curTime + JUNCTION_QUEUES_CLEANUP_INTERVAL;
+            state.junctionQueuePriority3_.cleanUp();
+            state.junctionQueuePriority4_.cleanUp();
         }
-        if(priority == 3) junctionQueuePriority3_.addVehicle(vehicle);
-        else junctionQueuePriority4_.addVehicle(vehicle);
+        if(priority == 3) state.junctionQueuePriority3_.addVehicle(vehicle);
+        else state.junctionQueuePriority4_.addVehicle(vehicle);
 
     }
 
@@ -163,7 +149,8 @@ public class Junction {
      * @return <code>true</code> if passing is allowed, else <code>false</code>
      */
     public synchronized boolean canPassJunction(Vehicle vehicle, int priority, Node nextNode){
-        if(vehicleAllowedThisStep_ == vehicle){
+        RunState state = getRunState();
+        if(state.vehicleAllowedThisStep_ == vehicle){
             Street[] outgoingStreets;
             Street tmpStreet, tmpStreet2;
             LaneObject tmpLaneObject;
@@ -171,6 +158,7 @@ public class Junction {
             boolean tmpDirection;
             double distance, neededFreeDistance;
             int i;
+            int slot = SimulationContext.current().getStateReadSlot();	// the state the other vehicles had at the end of the last step if double-buffered
 
             //check incoming priority streets if they are free
 
@@ -184,15 +172,15 @@ public class Junction {
                     LaneObject previous = tmpStreet.getLastLaneObject(tmpDirection);
                     distance = tmpStreet.getLength();
                     if(previous != null){
-                        if(previous.getCurLane() == 1){
-                            if((tmpDirection && tmpStreet.getLength()-previous.getCurPosition() < neededFreeDistance) || (!tmpDirection && previous.getCurPosition() < neededFreeDistance)){
-                                if(previous.getCurSpeed() > 400) return false;
+                        if(previous.getCurLane(slot) == 1){
+                            if((tmpDirection && tmpStreet.getLength()-previous.getCurPosition(slot) < neededFreeDistance) || (!tmpDirection && previous.getCurPosition(slot) < neededFreeDistance)){
+                                if(previous.getCurSpeed(slot) > 400) return false;
                             }
                         } else {	// need to search
                             tmpLaneObject = previous.getPrevious();
                             while(tmpLaneObject != null){
-                                if(tmpLaneObject.getCurLane() == 1){
-                                    if((tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition() < neededFreeDistance) || (!tmpDirection && tmpLaneObject.getCurPosition() < neededFreeDistance)){
+                                if(tmpLaneObject.getCurLane(slot) == 1){
+                                    if((tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition(slot) < neededFreeDistance) || (!tmpDirection && tmpLaneObject.getCurPosition(slot) < neededFreeDistance)){
                                         return false;
                                     }
                                     break;	// only check the first on our lane!
@@ -223,8 +211,8 @@ public class Junction {
 
                             tmpLaneObject = tmpStreet.getLastLaneObject(tmpDirection);
                             while(tmpLaneObject != null){
-                                if(tmpLaneObject.getCurLane() == 1){
-                                    if((tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition()+distance < neededFreeDistance) || (!tmpDirection && tmpLaneObject.getCurPosition()+distance < neededFreeDistance)){
+                                if(tmpLaneObject.getCurLane(slot) == 1){
+                                    if((tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition(slot)+distance < neededFreeDistance) || (!tmpDirection && tmpLaneObject.getCurPosition(slot)+distance < neededFreeDistance)){
                                         return false;
                                     }
                                     break;
@@ -238,10 +226,10 @@ public class Junction {
                     }
                 }
             }
-            if(priority == 3) junctionQueuePriority3_.delFirstVehicle();
-            else junctionQueuePriority4_.delFirstVehicle();
-            vehicleOnJunction_ = true;
-            vehicleOnJunctionSince_ = renderer_.getTimePassed();
+            if(priority == 3) state.junctionQueuePriority3_.delFirstVehicle();
+            else state.junctionQueuePriority4_.delFirstVehicle();
+            state.vehicleOnJunction_ = true;
+            state.vehicleOnJunctionSince_ = SimulationClock.getTime();
             return true;
         } else return false;
     }
@@ -333,6 +321,117 @@ public class Junction {
      * Allows another vehicle to pass the junction by setting vehicleOnJunction_ to <code>false</code>.
      */
     public void allowOtherVehicle(){
-        vehicleOnJunction_ = false;
+        getRunState().vehicleOnJunction_ = false;
+    }
+
+    /**
+     * Sets how many runs share this junction. The states of existing runs are kept, all other runs start with empty queues.
+     * Must not be called while a simulation is running.
+     *
+     * @param count	the amount of runs
+     */
+    public void setRunSlots(int count){
+        RunState[] states = runStates_;
+        if(states.length == count) return;
+        RunState[] newStates = new RunState[count];
+        System.arraycopy(states, 0, newStates, 0, Math.min(states.length, count));
+        for(int i = states.length; i < count; ++i) newStates[i] = createRunState();
+        runStates_ = newStates;
+        if(trafficLight_ != null) trafficLight_.setRunSlots(count);
+    }
+
+    /**
+     * Resets the state of a run to the state of a newly added run.
+     *
+     * @param slot	the run slot
+     */
+    public void resetRunSlot(int slot){
+        runStates_[slot] = createRunState();
+        if(trafficLight_ != null) trafficLight_.resetRunSlot(slot);
+    }
+
+    /**
+     * Writes the queues and the state of the vehicles passing this junction in the run bound to the calling thread
+     * (see <code>Checkpoint</code>). The traffic light is written separately.
+     *
+     * @param out	the stream to write to
+     * @param index	the index of the map
+     *
+     * @throws IOException if writing fails
+     */
+    public void writeState(DataOutputStream out, MapIndex index) throws IOException{
+        RunState state = getRunState();
+        state.junctionQueuePriority3_.writeState(out, index);
+        state.junctionQueuePriority4_.writeState(out, index);
+        out.writeInt(index.getVehicleNumber(state.vehicleAllowedThisStep_));
+        out.writeInt(state.vehicleAllowedSetTime_);
+        out.writeBoolean(state.vehicleOnJunction_);
+        out.writeInt(state.vehicleOnJunctionSince_);
+        out.writeInt(state.nextJunctionQueueCleanUp_);
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(DataOutputStream, MapIndex)}.
+     *
+     * @param in	the stream to read from
+     * @param index	the index of the map
+     *
+     * @throws IOException if reading fails
+     */
+    public void readState(DataInputStream in, MapIndex index) throws IOException{
+        RunState state = getRunState();
+        state.junctionQueuePriority3_.readState(in, index);
+        state.junctionQueuePriority4_.readState(in, index);
+        state.vehicleAllowedThisStep_ = index.getVehicle(in.readInt());
+        state.vehicleAllowedSetTime_ = in.readInt();
+        state.vehicleOnJunction_ = in.readBoolean();
+        state.vehicleOnJunctionSince_ = in.readInt();
+        state.nextJunctionQueueCleanUp_ = in.readInt();
+    }
+
+    /**
+     * Creates the state of a new run.
+     *
+     * @return the state
+     */
+    private RunState createRunState(){
+        return new RunState();
+    }
+
+    /**
+     * Gets the state of the run bound to the calling thread.
+     *
+     * @return the state
+     */
+    private RunState getRunState(){
+        return runStates_[SimulationContext.current().getRunSlot()];
+    }
+
+
+    /**
+     * The part of a junction which belongs to a single run.
+     */
+    private static final class RunState {
+
+        /** A queue for the junction if more than one vehicle arrives. This is used for priority 3 streets (left turnoff from priority street). */
+        private final JunctionQueue junctionQueuePriority3_ = new JunctionQueue();
+
+        /** A queue for the junction if more than one vehicle arrives This is used for priority 4 streets (normal turnoff). */
+        private final JunctionQueue junctionQueuePriority4_ = new JunctionQueue();
+
+        /** The vehicle which is allowed to pass the junction in this step. Used against synchronization problems. */
+        private Vehicle vehicleAllowedThisStep_ = null;
+
+        /** When (in simulation time) the vehicleAllowedThisStep-variable was last set. */
+        private int vehicleAllowedSetTime_ = 0;
+
+        /** If a vehicle is currently on the junction so that no other one may go over it. */
+        private boolean vehicleOnJunction_ = false;
+
+        /** Since when (in simulation time) a vehicle is on the junction. */
+        private int vehicleOnJunctionSince_ = -1;
+
+        /** When (in simulation time) the next cleanup on the junction queues will be done.*/
+        private int nextJunctionQueueCleanUp_ = JUNCTION_QUEUES_CLEANUP_INTERVAL;
     }
 }
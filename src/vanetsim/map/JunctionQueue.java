@@ -1,9 +1,13 @@
 package vanetsim.map;
 
 import vanetsim.debug.Debug;
-import vanetsim.gui.Renderer;
 import vanetsim.scenario.Vehicle;
+import vanetsim.simulation.MapIndex;
+import vanetsim.simulation.SimulationClock;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -15,9 +19,6 @@ public final class JunctionQueue{
      * calling the addVehicle-function. */
     private static final int LAST_SEEN_TIMEOUT = 2500;
 
-    /** A static reference to the renderer. */
-    private static final Renderer renderer_ = Renderer.getInstance();
-
     /** The vehicles in this queue. */
     private Vehicle[] vehicles_;  public Vehicle[] getVehicles(){return vehicles_;};
 
@@ -59,7 +60,7 @@ public final class JunctionQueue{
         int i;
         for(i = 0; i < size_; ++i){
             if(vehicles_[i] == vehicle){
-                lastSeen_[i] = renderer_.getTimePassed();
+                lastSeen_[i] = SimulationClock.getTime();
                 return false;
             }
         }
@@ -77,15 +78,15 @@ public final class JunctionQueue{
             System.arraycopy (lastSeen_,0,newArray2,0,size_);
             lastSeen_ = newArray2;
         }
-        int curTime = renderer_.getTimePassed();
+        int curTime = SimulationClock.getTime();
         // find other vehicles which were inserted in the current step in order to get a thread-safe ordering!
         for(i = size_ - 1; i > -1; --i){
             if(waitingSince_[i] != curTime) break;
             else if (vehicles_[i].getX() > vehicle.getX()) break;
             else if (vehicles_[i].getX() == vehicle.getX()){
                 if (vehicles_[i].getY() > vehicle.getY()) break;
-                else if (vehicles_[i].getY() > vehicle.getY()){
-                    if (vehicles_[i].hashCode() > vehicle.hashCode()) break;
+                else if (vehicles_[i].getY() == vehicle.getY()){
+                    if (vehicles_[i].getSteadyID() > vehicle.getSteadyID()) break;	// unlike the hash code, the steady ID is the same in every run
                 }
             }
         }
@@ -134,7 +135,7 @@ public final class JunctionQueue{
      * Cleans up. This removes vehicles which haven't been seen for a long time and thus prevents from stalls.
      */
     public synchronized void cleanUp(){
-        int i, checkTime = renderer_.getTimePassed() - LAST_SEEN_TIMEOUT;
+        int i, checkTime = SimulationClock.getTime() - LAST_SEEN_TIMEOUT;
         for(i = size_ - 1; i > -1; --i){	// going backwards because it's easier for deletion!
             if(lastSeen_[i] < checkTime){
                 --size_;
@@ -163,4 +164,41 @@ public final class JunctionQueue{
     public int size(){
         return size_;
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the vehicles of this queue together with their times (see <code>Checkpoint</code>).
+     *
+     * @param out	the stream to write to
+     * @param index	the index of the map
+     *
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeState(DataOutputStream out, MapIndex index) throws IOException{
+        out.writeInt(size_);
+        for(int i = 0; i < size_; ++i){
+            out.writeInt(index.getVehicleNumber(vehicles_[i]));
+            out.writeInt(waitingSince_[i]);
+            out.writeInt(lastSeen_[i]);
+        }
+    }
+
+    /**
+     * Replaces the content of this queue with the one written by {@link #writeState(DataOutputStream, MapIndex)}.
+     *
+     * @param in	the stream to read from
+     * @param index	the index of the map
+     *
+     * @throws IOException if reading fails
+     */
+    public synchronized void readState(DataInputStream in, MapIndex index) throws IOException{
+        size_ = in.readInt();
+        vehicles_ = new Vehicle[size_ + 2];
+        waitingSince_ = new int[size_ + 2];
+        lastSeen_ = new int[size_ + 2];
+        for(int i = 0; i < size_; ++i){
+            vehicles_[i] = index.getVehicle(in.readInt());
+            waitingSince_[i] = in.readInt();
+            lastSeen_[i] = in.readInt();
+        }
+    }
+}
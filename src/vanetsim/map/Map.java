@@ -12,10 +12,13 @@ import vanetsim.gui.Renderer;
 import vanetsim.gui.controlpanels.MapSizeDialog;
 import vanetsim.gui.helpers.MouseClickManager;
 import vanetsim.localization.Messages;
+import vanetsim.routing.A_Star.A_Star_Landmarks;
 import vanetsim.routing.A_Star.A_Star_LookupTableFactory;
+import vanetsim.routing.CH.CH_Hierarchies;
 import vanetsim.scenario.RSU;
 import vanetsim.scenario.Scenario;
 import vanetsim.scenario.Vehicle;
+import vanetsim.simulation.SimulationContext;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
@@ -47,9 +50,6 @@ public class Map {
      * //      instance variable
      * /////////////////////////////////////
      */
-    /** The only instance of this class (singleton). */
-    private static final Map INSTANCE = new Map();
-
     /** The width of a single lane (3m). Used in various other places in this program! */
     public static final int LANE_WIDTH = 300;
 
@@ -80,6 +80,18 @@ public class Map {
     /** A flag to signal if loading is ready. While loading is in progress, simulation and rendering is not possible. */
     private boolean ready_ = true;
 
+    /** The amount of runs sharing this map. */
+    private int runSlots_ = 1;
+
+    /** The file from which the map was loaded or <code>null</code> if it wasn't loaded from a file. */
+    private File file_ = null;
+
+    /** The contraction hierarchies for routing or <code>null</code> if they haven't been prepared (yet). */
+    private volatile CH_Hierarchies routingHierarchies_ = null;
+
+    /** The landmarks for the heuristic of the A* algorithm or <code>null</code> if they haven't been prepared (yet). */
+    private volatile A_Star_Landmarks landmarks_ = null;
+
 
     private ArrayList<Street> streets = new ArrayList<Street>();
 
@@ -90,7 +102,7 @@ public class Map {
      * /////////////////////////////////////
      */
     /**
-     * Empty, private constructor in order to disable instancing.
+     * Private constructor in order to disable instancing. Use {@link #createInstance()}.
      */
     private Map() {
         Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
@@ -98,12 +110,21 @@ public class Map {
     }
 
     /**
-     * Gets the single instance of this map.
+     * Gets the map of the <code>SimulationContext</code> bound to the calling thread.
      *
-     * @return single instance of this map
+     * @return the map of the current context
      */
     public static Map getInstance(){
-        return INSTANCE;
+        return SimulationContext.current().getMap();
+    }
+
+    /**
+     * Creates a new, empty map. Only used by the <code>SimulationContext</code>.
+     *
+     * @return the new map
+     */
+    public static Map createInstance(){
+        return new Map();
     }
 
 
@@ -127,7 +148,7 @@ public class Map {
             /*********************************
              *  Scenario 部分
              ********************************* */
-            if (!Renderer.getInstance().isConsoleStart()) {/** 初次必定會執行 */
+            if (SimulationContext.current().hasGui()) {/** 初次必定會執行 */
 
                 /** 暫時封閉此行，該initNewScenario（）於 2017/10/24_0448 更新完成 */
                 Scenario.getInstance().initNewScenario();	//stops the simulation thread so we don't need to do it here
@@ -138,8 +159,13 @@ public class Map {
                 Scenario.getInstance().setReadyState(true);
             }
 
-            A_Star_LookupTableFactory.clear();
+            A_Star_LookupTableFactory.getInstance().clear();
             Node.resetNodeID();
+            file_ = null;
+            routingHierarchies_ = null;
+            landmarks_ = null;
+            SimulationContext.current().getRouteCache().clear();
+            runSlots_ = 1;	// the new streets, nodes and regions only have one slot
 
             /*********************************
              *  Map 部分
@@ -153,12 +179,14 @@ public class Map {
             regionWidth_ = regionWidth;
             regionHeight_ = regionHeight;
 
-            Renderer.getInstance().setMarkedStreet(null);
-            Renderer.getInstance().setMarkedVehicle(null);
-            Renderer.getInstance().setAttackerVehicle(null);
-            Renderer.getInstance().setAttackedVehicle(null);
+            if(!SimulationContext.current().getHeadless()){
+                Renderer.getInstance().setMarkedStreet(null);
+                Renderer.getInstance().setMarkedVehicle(null);
+                Renderer.getInstance().setAttackerVehicle(null);
+                Renderer.getInstance().setAttackedVehicle(null);
+            }
 
-            if(!Renderer.getInstance().isConsoleStart()) MouseClickManager.getInstance().cleanMarkings();
+            if(SimulationContext.current().hasGui()) MouseClickManager.getInstance().cleanMarkings();
 
             // create the regions on the map
             /** 計算地圖x向座標分成幾個區域 */
@@ -206,9 +234,11 @@ public class Map {
                 regions_[i][j].calculateJunctions();
             }
         }
+        if(SimulationContext.current().getHierarchyRouting()) prepareRoutingHierarchies();
+        if(SimulationContext.current().getLandmarkCount() > 0) prepareLandmarks(SimulationContext.current().getLandmarkCount());
         /** 告知 SimulationMaster 執行緒可以繼續做執行（執行條件 Map => true && Scanrio => true） */
         ready_ = true;
-        if(!Renderer.getInstance().isConsoleStart()){
+        if(SimulationContext.current().hasGui()){
             Renderer.getInstance().setMiddle(width_/2, height_/2);
             Renderer.getInstance().setMapZoom(Math.exp(5/100.0)/1000);
             Renderer.getInstance().ReRender(true, false);
@@ -278,7 +308,7 @@ public class Map {
      * Delete every Vehicle on this map
      */
     public void clearVehicles(){
-        Renderer.getInstance().setMarkedVehicle(null);
+        if(!SimulationContext.current().getHeadless()) Renderer.getInstance().setMarkedVehicle(null);
         for(int i = 0; i < regionCountX_; ++i) for(int j = 0; j < regionCountY_; ++j) regions_[i][j].cleanVehicles();
     }
 
@@ -330,6 +360,10 @@ public class Map {
      * @param street	the street to add
      */
     public void addStreet(Street street){
+        routingHierarchies_ = null;		// need to be built again
+        SimulationContext.current().getRouteCache().clear();
+        A_Star_Landmarks landmarks = landmarks_;
+        if(landmarks != null) landmarks.signalStreetAdded(street);
         int startRegionX = street.getStartNode().getRegion().getX();
         int startRegionY = street.getStartNode().getRegion().getY();
         int endRegionX = street.getEndNode().getRegion().getX();
@@ -456,6 +490,124 @@ public class Map {
         return regions_;
     }
 
+    /**
+     * Gets the contraction hierarchies for routing.
+     *
+     * @return the hierarchies or <code>null</code> if they haven't been prepared
+     */
+    public CH_Hierarchies getRoutingHierarchies(){
+        return routingHierarchies_;
+    }
+
+    /**
+     * Prepares the contraction hierarchies for routing if this hasn't been done yet. They are read from the file next to
+     * the map file or built (which may take some time on large maps).
+     *
+     * @return the hierarchies
+     */
+    public CH_Hierarchies prepareRoutingHierarchies(){
+        CH_Hierarchies result = routingHierarchies_;
+        if(result == null){
+            synchronized(this){
+                result = routingHierarchies_;
+                if(result == null){
+                    result = CH_Hierarchies.create(this, file_);
+                    routingHierarchies_ = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the landmarks for the heuristic of the A* algorithm.
+     *
+     * @return the landmarks or <code>null</code> if they haven't been prepared
+     */
+    public A_Star_Landmarks getLandmarks(){
+        return landmarks_;
+    }
+
+    /**
+     * Prepares the landmarks for the heuristic of the A* algorithm if this hasn't been done yet with the same amount. They
+     * are read from the file next to the map file or calculated.
+     *
+     * @param count	the amount of landmarks
+     *
+     * @return the landmarks
+     */
+    public A_Star_Landmarks prepareLandmarks(int count){
+        A_Star_Landmarks result = landmarks_;
+        if(result == null || result.getCount() != count){
+            synchronized(this){
+                result = landmarks_;
+                if(result == null || result.getCount() != count){
+                    result = A_Star_Landmarks.create(this, file_, count);
+                    landmarks_ = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prepares the map to be shared by several runs (see <code>SimulationContext</code>). Streets, nodes and regions stay shared,
+     * but every run gets its own vehicles, RSUs, lanes, junction queues and traffic light states. Must be called after loading
+     * and while no simulation is running on this map.
+     *
+     * @param count	the amount of runs (at least <code>1</code>)
+     */
+    public void setRunSlots(int count){
+        if(count < 1) count = 1;
+        int i, j, k;
+        Street[] streets;
+        Node[] nodes;
+        for(i = 0; i < regionCountX_; ++i){
+            for(j = 0; j < regionCountY_; ++j){
+                regions_[i][j].setRunSlots(count);
+                streets = regions_[i][j].getStreets();
+                for(k = 0; k < streets.length; ++k) streets[k].setRunSlots(count);
+                nodes = regions_[i][j].getNodes();
+                for(k = 0; k < nodes.length; ++k){
+                    if(nodes[k].getJunction() != null) nodes[k].getJunction().setRunSlots(count);
+                }
+            }
+        }
+        runSlots_ = count;
+    }
+
+    /**
+     * Resets all vehicles, RSUs, lanes, junction queues and traffic light states of a run so that the slot can be used by
+     * another run. The first slot is used as template and should not be simulated if slots are reused.
+     *
+     * @param slot	the run slot
+     */
+    public void resetRunSlot(int slot){
+        int i, j, k;
+        Street[] streets;
+        Node[] nodes;
+        for(i = 0; i < regionCountX_; ++i){
+            for(j = 0; j < regionCountY_; ++j){
+                regions_[i][j].resetRunSlot(slot);
+                streets = regions_[i][j].getStreets();
+                for(k = 0; k < streets.length; ++k) streets[k].resetRunSlot(slot);
+                nodes = regions_[i][j].getNodes();
+                for(k = 0; k < nodes.length; ++k){
+                    if(nodes[k].getJunction() != null) nodes[k].getJunction().resetRunSlot(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of runs which may share this map.
+     *
+     * @return the amount of runs
+     */
+    public int getRunSlots(){
+        return runSlots_;
+    }
+
     /**
      * Gets the amount of regions in x direction.
      *
@@ -504,7 +656,7 @@ public class Map {
 
 
         try{
-            if(!Renderer.getInstance().isConsoleStart())VanetSimStart.setProgressBar(true);
+            if(SimulationContext.current().hasGui())VanetSimStart.setProgressBar(true);
             String childtype, setting, streetName, streetType, trafficSignalException;
             int x = 0, y = 0, maxSpeed, isOneway, lanes, newMapWidth, newMapHeight, newRegionWidth, newRegionHeight;
             Color displayColor;
@@ -558,9 +710,9 @@ public class Map {
                         }
                     }
                     if(newMapWidth > 0 && newMapHeight > 0 && newRegionWidth > 0 && newRegionHeight > 0){		// only continue if settings were all found
-                        if(!Renderer.getInstance().isConsoleStart())VanetSimStart.setProgressBar(false);
+                        if(SimulationContext.current().hasGui())VanetSimStart.setProgressBar(false);
                         CyclicBarrier barrier = new CyclicBarrier(2);
-                        if(!Renderer.getInstance().isConsoleStart()){
+                        if(SimulationContext.current().hasGui()){
                             new MapSizeDialog(newMapWidth, newMapHeight, newRegionWidth, newRegionHeight, barrier);	//initialize new map
                             try {
                                 barrier.await();
@@ -569,7 +721,7 @@ public class Map {
                         else Map.getInstance().initNewMap(newMapWidth, newMapHeight, newRegionWidth, newRegionHeight);
                         int addX = (width_ - newMapWidth)/2;
                         int addY = (height_ - newMapHeight)/2;
-                        if(!Renderer.getInstance().isConsoleStart())VanetSimStart.setProgressBar(true);
+                        if(SimulationContext.current().hasGui())VanetSimStart.setProgressBar(true);
                         while (childCrsr.getNext() != null){
                             if(childCrsr.getLocalName().toLowerCase().equals("streets")){ //$NON-NLS-1$
                                 streetCrsr = childCrsr.childElementCursor();
@@ -659,7 +811,8 @@ public class Map {
             sr.close();
             filestream.close();
         } catch (Exception e) {ErrorLog.log(Messages.getString("Map.errorLoading"), 7, getClass().getName(), "load", e);} //$NON-NLS-1$ //$NON-NLS-2$
-        if(!Renderer.getInstance().isConsoleStart())VanetSimStart.setProgressBar(false);
+        if(SimulationContext.current().hasGui())VanetSimStart.setProgressBar(false);
+        file_ = file;
         signalMapLoaded();
         ErrorLog.log(Messages.getString("Map.loadingFinished"), 3, getClass().getName(), "load", null); //$NON-NLS-1$ //$NON-NLS-2$
 
@@ -677,7 +830,7 @@ public class Map {
 
 
         try{
-            if(!Renderer.getInstance().isConsoleStart())VanetSimStart.setProgressBar(true);
+            if(SimulationContext.current().hasGui())VanetSimStart.setProgressBar(true);
             ErrorLog.log(Messages.getString("Map.savingMap") + file.getName(), 3, getClass().getName(), "save", null); //$NON-NLS-1$ //$NON-NLS-2$
             int i, j, k;
             Street[] streetsArray;
@@ -745,8 +898,11 @@ public class Map {
             doc.closeRoot();
             xw.close();
             filestream.close();
+            // keep the landmarks (which may have been updated after editing streets) next to the new file
+            A_Star_Landmarks landmarks = landmarks_;
+            if(landmarks != null) landmarks.save(this, new File((zip? file + ".zip" : file.getPath()) + ".alt")); //$NON-NLS-1$ //$NON-NLS-2$
         }catch (Exception e) {ErrorLog.log(Messages.getString("Map.errorSavingMap") , 6, getClass().getName(), "save", e);} //$NON-NLS-1$ //$NON-NLS-2$
-        if(!Renderer.getInstance().isConsoleStart())VanetSimStart.setProgressBar(false);
+        if(SimulationContext.current().hasGui())VanetSimStart.setProgressBar(false);
 
 
     }
@@ -3,6 +3,7 @@ package vanetsim.map;
 
 import vanetsim.debug.Debug;
 import vanetsim.scenario.RSU;
+import vanetsim.simulation.SimulationContext;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -12,10 +13,7 @@ import java.util.HashMap;
  */
 public class Node {
 
-    /** A common counter to generate unique IDs */
-    private static int counter_ = 0;
-
-    /** A unique ID for this node */
+    /** A unique ID for this node (unique within the <code>SimulationContext</code> in which the node was created) */
     private final int nodeID_;
 
     /** The x coordinate. */
@@ -42,6 +40,9 @@ public class Node {
     /** An array containing all streets coming into or going out from this node. */
     private Street[] crossingStreets_ = new Street[0];
 
+    /** An array containing all streets on which this node can be reached (the reverse of <code>outgoingStreets_</code>). */
+    private Street[] incomingStreets_ = new Street[0];
+
     /** The region in which this node is. */
     private Region region_;
 
@@ -66,8 +67,7 @@ public class Node {
         x_ = x;
         y_ = y;
         hasTrafficSignal_ = false;
-        nodeID_ = counter_;
-        ++counter_;
+        nodeID_ = SimulationContext.current().nextNodeID();
 
         HashMap map = new HashMap<String, String>();
         map.put("NodeID",String.valueOf(nodeID_));
@@ -94,8 +94,7 @@ public class Node {
         x_ = x;
         y_ = y;
         hasTrafficSignal_ = hasTrafficSignal;
-        nodeID_ = counter_;
-        ++counter_;
+        nodeID_ = SimulationContext.current().nextNodeID();
 
         HashMap map = new HashMap<String, String>();
         map.put("NodeID",String.valueOf(nodeID_));
@@ -111,7 +110,7 @@ public class Node {
      */
     public static void resetNodeID(){
 
-        counter_ = 0;
+        SimulationContext.current().resetNodeID();
     }
 
     /**
@@ -402,6 +401,16 @@ public class Node {
     }
 
 
+    /**
+     * Gets an array of the streets on which this node can be reached. You will always get an array (never <code>null</code>)
+     * but it might have zero size.
+     *
+     * @return the array
+     */
+    public Street[] getIncomingStreets() {
+        return incomingStreets_;
+    }
+
     /**
      * Adds an outgoing street. If the array already contains the street, nothing is done.
      * Note that this operation is not thread-safe.
@@ -446,6 +455,22 @@ public class Node {
         }
     }
 
+    /**
+     * Adds an incoming street. If the array already contains the street, nothing is done.
+     * Note that this operation is not thread-safe.
+     *
+     * @param street	the incoming street to add.
+     */
+    public void addIncomingStreet(Street street) {
+        for(int i = 0; i < incomingStreets_.length; ++i){
+            if(incomingStreets_[i] == street) return;
+        }
+        Street[] newArray = new Street[incomingStreets_.length+1];
+        System.arraycopy (incomingStreets_,0,newArray,0,incomingStreets_.length);
+        newArray[incomingStreets_.length] = street;
+        incomingStreets_ = newArray;
+    }
+
     /**
      * Removes an outgoing street. If the array doesn't contain the street, nothing is done.
      * Note that this operation is not thread-safe.
@@ -469,6 +494,27 @@ public class Node {
         return false;
     }
 
+    /**
+     * Removes an incoming street. If the array doesn't contain the street, nothing is done.
+     * Note that this operation is not thread-safe.
+     *
+     * @param street	the incoming street to delete.
+     *
+     * @return <code>true</code> if street was removed, <code>false</code> if the street wasn't in the list
+     */
+    public boolean delIncomingStreet(Street street){
+        for(int i = 0; i < incomingStreets_.length; ++i){
+            if(incomingStreets_[i] == street){
+                Street[] newArray = new Street[incomingStreets_.length-1];
+                System.arraycopy (incomingStreets_,0,newArray,0,i);
+                System.arraycopy (incomingStreets_,i+1,newArray,i,incomingStreets_.length-i-1);
+                incomingStreets_ = newArray;
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     /**
      * @return the streetHasException_
@@ -540,6 +586,11 @@ public class Node {
      * @param trafficLight_ the trafficLight_ to set
      */
     public void setTrafficLight_(TrafficLight trafficLight_) {
+        // keep the index of the region up to date so that it doesn't need to look at all nodes
+        if(region_ != null && this.trafficLight_ != trafficLight_){
+            if(this.trafficLight_ != null) region_.delTrafficLight(this.trafficLight_);
+            if(trafficLight_ != null) region_.addTrafficLight(trafficLight_);
+        }
         this.trafficLight_ = trafficLight_;
     }
 
@@ -693,7 +744,7 @@ public class Node {
      * @return the maximum ID
      */
     public static int getMaxNodeID(){
-        return counter_;
+        return SimulationContext.current().getNodeCount();
     }
 
 }
@@ -3,12 +3,20 @@ package vanetsim.map;
 import vanetsim.debug.Debug;
 import vanetsim.gui.Renderer;
 import vanetsim.gui.helpers.PrivacyLogWriter;
+import vanetsim.scenario.ActiveVehicleSet;
+import vanetsim.scenario.InteractionBuffer;
+import vanetsim.scenario.LaneObject;
 import vanetsim.scenario.RSU;
 import vanetsim.scenario.Vehicle;
+import vanetsim.scenario.VehicleStateStore;
+import vanetsim.simulation.SimulationContext;
+import vanetsim.simulation.TimingWheel;
 import vanetsim.simulation.WorkerThread;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * A region stores all objects in a specific part of the map. It stores streets, nodes and vehicles.
@@ -26,15 +34,24 @@ public final class Region {
     /** An empty vehicle array to prevent unnecessary object creation on <code>toArray()</code> operation. */
     private static final Vehicle[] EMPTY_VEHICLE = new Vehicle[0];
 
+    /** An empty traffic light array. */
+    private static final TrafficLight[] EMPTY_TRAFFIC_LIGHT = new TrafficLight[0];
+
+    /** Handoff of a lane object which has to be added (see {@link #handOffLaneObject(LaneObject, Street, boolean, int)}). */
+    public static final int ADD_LANE_OBJECT = 0;
+
+    /** Handoff of a lane object which has to be removed. */
+    public static final int DEL_LANE_OBJECT = 1;
+
+    /** Handoff of a lane object whose position has changed. */
+    public static final int UPDATE_LANE_OBJECT = 2;
+
     /** An array storing all mix nodes. Within a defined distance, no communication is allowed (and beacon-IDs are changed). */
     private Node[] mixZoneNodes_ = new Node[0];
 
     /** An array storing all nodes in this region. */
     private Node[] nodes_ = new Node[0];	// This has a little bit overhead while loading compared to an ArrayList but requires less memory and is faster when iterating
 
-    /** An array storing all the Road-Side-Units in this region. */
-    private RSU[] rsus_ = new RSU[0];	// This has a little bit overhead while loading compared to an ArrayList but requires less memory and is faster when iterating
-
     public ArrayList<String> xxx = new ArrayList<String>();
     public ArrayList<String> yyy = new ArrayList<String>();
     public ArrayList<String> nnn = new ArrayList<String>();
@@ -65,27 +82,17 @@ public final class Region {
     /**
      *  vehicle變數
      */
-    /** <code>true</code> to indicate that the vehicles have changed since the last call to getVehicleArray() */
-    private boolean vehiclesDirty_ = true;
-
-    /** An <code>ArrayList</code> storing all vehicles in this region. */
-    private ArrayList<Vehicle> vehicles_;	// changes relatively often so use ArrayList here
+    /** The vehicles, RSUs and thread assignment of this region. One state per run sharing this map, indexed by the run slot of the <code>SimulationContext</code>. */
+    private volatile RunState[] runStates_ = {new RunState()};
 
-    /** The simulation requests an array for the vehicles which is cached here. */
-    private Vehicle[] vehiclesArray_;
 
+    /** The traffic lights on the nodes of this region. Replaced (never changed) when a light is added or removed. */
+    private volatile TrafficLight[] trafficLights_ = EMPTY_TRAFFIC_LIGHT;
 
     /** An array storing all streets in this region. */
     private Street[] streets_ = new Street[0];		// This has a little bit overhead while loading compared to an ArrayList but requires less memory and is faster when iterating
 
 
-    /** The worker thread this region is associated with. */
-    private WorkerThread thread_ = null;
-
-    /** The number of this region in the worker thread. */
-    private int numberInThread_ = -1;
-
-
     /**
      * ///////////////////////////////////
      * //  method
@@ -107,7 +114,6 @@ public final class Region {
         Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
         Debug.callFunctionInfo(this.getClass().getName(), "Region(int x, int y, int leftBoundary, int rightBoundary, int upperBoundary, int lowerBoundary)", Debug.ISLOGGED);
 
-        vehicles_ = new ArrayList<Vehicle>(1);
         x_ = x;
         y_ = y;
         leftBoundary_ = leftBoundary;
@@ -208,7 +214,9 @@ public final class Region {
 
         Debug.callFunctionInfo(this.getClass().getName(),"calculateJunctions()",Debug.ISLOGGED);
 
-        if(Renderer.getInstance().isAutoAddMixZones()) mixZoneNodes_ = new Node[0];
+        // the setting is stored in the renderer which doesn't exist in headless mode
+        boolean autoAddMixZones = !SimulationContext.current().getHeadless() && Renderer.getInstance().isAutoAddMixZones();
+        if(autoAddMixZones) mixZoneNodes_ = new Node[0];
 
         for(int i = 0; i < nodes_.length; ++i){
 
@@ -219,7 +227,7 @@ public final class Region {
              *  於2017/11/14_2344新增
              * */
             //Mix zones are only added if autoAddMixZones is activated
-            if(Renderer.getInstance().isAutoAddMixZones()){
+            if(autoAddMixZones){
                 if(nodes_[i].getJunction() != null){
                     Node[] newArray = new Node[mixZoneNodes_.length+1];
                     System.arraycopy (mixZoneNodes_,0,newArray,0,mixZoneNodes_.length);
@@ -242,6 +250,128 @@ public final class Region {
          *  於 2017/11/15_0014 實作完成
          * */
         prepareLogs(nodes_);
+        indexTrafficLights();
+    }
+
+    /**
+     * Rebuilds the index of the traffic lights from the nodes. Normally, the index is kept up to date by the nodes when
+     * a light is added or removed (see {@link #addTrafficLight(TrafficLight)}).
+     */
+    private synchronized void indexTrafficLights(){
+        int count = 0, i;
+        for(i = 0; i < nodes_.length; ++i){
+            if(nodes_[i].getTrafficLight_() != null) ++count;
+        }
+        TrafficLight[] lights = new TrafficLight[count];
+        count = 0;
+        for(i = 0; i < nodes_.length; ++i){
+            if(nodes_[i].getTrafficLight_() != null) lights[count++] = nodes_[i].getTrafficLight_();
+        }
+        // keep the old array if nothing changed so that the schedules don't need to be rebuilt
+        if(!Arrays.equals(lights, trafficLights_)) trafficLights_ = (count == 0) ? EMPTY_TRAFFIC_LIGHT : lights;
+    }
+
+    /**
+     * Adds a traffic light to the index of this region. Called by the node of the light.
+     *
+     * @param trafficLight	the traffic light
+     */
+    public synchronized void addTrafficLight(TrafficLight trafficLight){
+        TrafficLight[] lights = trafficLights_;
+        for(int i = 0; i < lights.length; ++i){
+            if(lights[i] == trafficLight) return;
+        }
+        TrafficLight[] newArray = new TrafficLight[lights.length + 1];
+        System.arraycopy(lights, 0, newArray, 0, lights.length);
+        newArray[lights.length] = trafficLight;
+        trafficLights_ = newArray;
+    }
+
+    /**
+     * Removes a traffic light from the index of this region. Called by the node of the light.
+     *
+     * @param trafficLight	the traffic light
+     */
+    public synchronized void delTrafficLight(TrafficLight trafficLight){
+        TrafficLight[] lights = trafficLights_;
+        for(int i = 0; i < lights.length; ++i){
+            if(lights[i] == trafficLight){
+                if(lights.length == 1) trafficLights_ = EMPTY_TRAFFIC_LIGHT;
+                else {
+                    TrafficLight[] newArray = new TrafficLight[lights.length - 1];
+                    System.arraycopy(lights, 0, newArray, 0, i);
+                    System.arraycopy(lights, i + 1, newArray, i, lights.length - i - 1);
+                    trafficLights_ = newArray;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the traffic lights on the nodes of this region.
+     *
+     * @return the traffic lights
+     */
+    public TrafficLight[] getTrafficLights(){
+        return trafficLights_;
+    }
+
+    /**
+     * Checks the states of the traffic lights of this region and changes them if necessary. Has to be called once in every
+     * step. Instead of looking at every light in every step, the lights are kept in a <code>TimingWheel</code> by the step
+     * in which their phase changes next, so only these lights are touched (see <code>TrafficLight.changePhasesUntil()</code>).
+     *
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    public void changeTrafficLights(int timePerStep){
+        RunState state = getRunState();
+        TrafficLight[] lights = trafficLights_;
+        int step = ++state.trafficLightStep_, next, i;
+        if(state.trafficLightWheel_ == null || state.scheduledTrafficLights_ != lights){
+            // lights have been added or removed: all are scheduled again, the others keep their step
+            if(state.trafficLightWheel_ == null) state.trafficLightWheel_ = new TimingWheel(1, step - 1);
+            else state.trafficLightWheel_.clear(step - 1);
+            state.scheduledTrafficLights_ = lights;
+            for(i = 0; i < lights.length; ++i){
+                next = lights[i].getNextPhaseStep();
+                state.trafficLightWheel_.schedule((next == -1 || next < step) ? step : next, i);
+            }
+        }
+        if(lights.length == 0) return;
+        TimingWheel wheel = state.trafficLightWheel_;
+        int count = wheel.advance(step);
+        int[] fired = wheel.getFired();
+        for(i = 0; i < count; ++i){
+            if(lights[fired[i]].isSwitchedOn()) wheel.schedule(lights[fired[i]].changePhasesUntil(step, timePerStep), fired[i]);
+            else {
+                // like a light which is skipped in this step, it starts again when it is switched on
+                lights[fired[i]].unschedule();
+                wheel.schedule(step + 1, fired[i]);
+            }
+        }
+    }
+
+    /**
+     * Counts the timers of all traffic lights of this region down to the last step, so that they have the same values as if
+     * they had been updated in every step. Needed before the timers are saved (see <code>Checkpoint</code>).
+     *
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    public void synchronizeTrafficLights(int timePerStep){
+        RunState state = getRunState();
+        TrafficLight[] lights = state.scheduledTrafficLights_;
+        for(int i = 0; i < lights.length; ++i) lights[i].synchronizePhases(state.trafficLightStep_, timePerStep);
+    }
+
+    /**
+     * Schedules all traffic lights of this region again in the next step, for example after their timers were restored.
+     */
+    public void rescheduleTrafficLights(){
+        RunState state = getRunState();
+        TrafficLight[] lights = trafficLights_;
+        for(int i = 0; i < lights.length; ++i) lights[i].unschedule();
+        state.trafficLightWheel_ = null;
     }
 
     /**
@@ -447,11 +577,14 @@ public final class Region {
      * This function should be called before initializing a new scenario to delete all vehicles.
      */
     public void cleanVehicles(){
-        vehicles_ = new ArrayList<Vehicle>(1);
+        RunState state = getRunState();
+        state.vehicles_ = EMPTY_VEHICLE;
+        state.vehicleCount_ = 0;
+        state.emigrantCount_ = 0;
         for(int i = 0; i < streets_.length; ++i){
             streets_[i].clearLanes();
         }
-        vehiclesDirty_ = true;
+        state.vehiclesDirty_ = true;
     }
 
     /**
@@ -461,14 +594,40 @@ public final class Region {
      * @param numberinThread	the number in the thread
      */
     public void createBacklink(WorkerThread thread, int numberinThread){
-        thread_ = thread;
-        numberInThread_ = numberinThread;
+        RunState state = getRunState();
+        state.thread_ = thread;
+        state.numberInThread_ = numberinThread;
+    }
+
+    /**
+     * Adds processing time measured by the thread working on this region.
+     *
+     * @param nanos	the time in nanoseconds
+     */
+    public void addMeasuredCost(long nanos){
+        getRunState().measuredCost_ += nanos;
+    }
+
+    /**
+     * Resets the measured processing time.
+     */
+    public void resetMeasuredCost(){
+        getRunState().measuredCost_ = 0;
     }
 
     /**
      * /////////// setter & getter (start) ///////////
      */
 
+    /**
+     * Gets the processing time in nanoseconds measured since the last reset.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getMeasuredCost(){
+        return getRunState().measuredCost_;
+    }
+
     /**
      * Returns all mix zone nodes in this region.
      *
@@ -502,7 +661,7 @@ public final class Region {
      * @return an array containing all RSUs
      */
     public RSU[] getRSUs() {
-        return rsus_;
+        return getRunState().rsus_;
     }
 
     /**
@@ -531,17 +690,35 @@ public final class Region {
      * @param doCheck 	<code>true</code> if a check should be made if this vehicle already exists; else <code>false</code> to skip the test
      */
     public synchronized void addVehicle(Vehicle vehicle, boolean doCheck){
-        if(doCheck){
-            if(!vehicles_.contains(vehicle)){
-                vehicles_.add(vehicle);
-                if(thread_ != null) thread_.addChangedRegion(numberInThread_);
-                vehiclesDirty_ = true;
-            }
-        } else {
-            vehicles_.add(vehicle);
-            if(thread_ != null) thread_.addChangedRegion(numberInThread_);
-            vehiclesDirty_ = true;
+        RunState state = getRunState();
+        if(doCheck && contains(state, vehicle)) return;
+        if(state.vehicleCount_ == state.vehicles_.length){
+            Vehicle[] newArray = new Vehicle[Math.max(4, state.vehicleCount_ * 2)];
+            System.arraycopy(state.vehicles_, 0, newArray, 0, state.vehicleCount_);
+            state.vehicles_ = newArray;
         }
+        vehicle.setRegionIndex(state.vehicleCount_);
+        state.vehicles_[state.vehicleCount_] = vehicle;
+        ++state.vehicleCount_;
+        state.vehiclesDirty_ = true;
+    }
+
+    /**
+     * Replaces all vehicles of this region. Used to restore the order of the vehicles in a checkpoint (see <code>Checkpoint</code>),
+     * so this must not be called while a step is running.
+     *
+     * @param vehicles	the vehicles in their new order
+     */
+    public synchronized void setVehicles(Vehicle[] vehicles){
+        RunState state = getRunState();
+        state.vehicles_ = new Vehicle[Math.max(4, vehicles.length)];
+        for(int i = 0; i < vehicles.length; ++i){
+            vehicles[i].setRegionIndex(i);
+            state.vehicles_[i] = vehicles[i];
+        }
+        state.vehicleCount_ = vehicles.length;
+        state.emigrantCount_ = 0;
+        state.vehiclesDirty_ = true;
     }
 
     /**
@@ -561,9 +738,135 @@ public final class Region {
      * @param vehicle the vehicle to remove
      */
     public synchronized void delVehicle(Vehicle vehicle){
-        vehicles_.remove(vehicle);
-        if(thread_ != null) thread_.addChangedRegion(numberInThread_);
-        vehiclesDirty_ = true;
+        RunState state = getRunState();
+        if(!contains(state, vehicle)) return;
+        // the last vehicle takes the place of the removed one so no other vehicle needs to be moved
+        int index = vehicle.getRegionIndex();
+        --state.vehicleCount_;
+        if(index != state.vehicleCount_){
+            state.vehicles_[index] = state.vehicles_[state.vehicleCount_];
+            state.vehicles_[index].setRegionIndex(index);
+        }
+        state.vehicles_[state.vehicleCount_] = null;
+        vehicle.setRegionIndex(-1);
+        state.vehiclesDirty_ = true;
+    }
+
+    /**
+     * Checks if a vehicle is in this region using the index stored in the vehicle.
+     *
+     * @param state		the state of the current run
+     * @param vehicle	the vehicle
+     *
+     * @return <code>true</code> if the vehicle is in this region, else <code>false</code>
+     */
+    private static boolean contains(RunState state, Vehicle vehicle){
+        int index = vehicle.getRegionIndex();
+        return index >= 0 && index < state.vehicleCount_ && state.vehicles_[index] == vehicle;
+    }
+
+    /**
+     * Notes that a vehicle has left this region during the move phase. It stays in the vehicle array of this region until
+     * the migrations are applied (see {@link #applyMigrations(Region[][])}) so that the arrays don't change while the
+     * workers are using them. Only called by the thread working on this region, so no locking is needed.
+     *
+     * @param vehicle	the vehicle which has already been given its new region
+     */
+    public void addEmigrant(Vehicle vehicle){
+        RunState state = getRunState();
+        if(state.emigrantCount_ == state.emigrants_.length){
+            Vehicle[] newArray = new Vehicle[state.emigrantCount_ * 2];
+            System.arraycopy(state.emigrants_, 0, newArray, 0, state.emigrantCount_);
+            state.emigrants_ = newArray;
+        }
+        state.emigrants_[state.emigrantCount_] = vehicle;
+        ++state.emigrantCount_;
+    }
+
+    /**
+     * Hands a change of a lane container over to this region, which is the main region of the street. Lock-free, may be
+     * called by any thread while the phases are running. The changes are applied in the next step by the two lane phases
+     * of the <code>PhasePipeline</code> (see {@link #applyLaneHandoffs(boolean)}).
+     *
+     * @param object	the object to add, remove or update
+     * @param street	the street
+     * @param direction	the direction on the street
+     * @param type		the change ({@link #ADD_LANE_OBJECT}, {@link #DEL_LANE_OBJECT} or {@link #UPDATE_LANE_OBJECT})
+     */
+    public void handOffLaneObject(LaneObject object, Street street, boolean direction, int type){
+        getRunState().laneHandoffs_.add(new LaneHandoff(object, street, direction, type));
+    }
+
+    /**
+     * Checks if changes of lane containers have been handed over to this region.
+     *
+     * @return <code>true</code> if there are changes to apply
+     */
+    public boolean hasLaneHandoffs(){
+        return !getRunState().laneHandoffs_.isEmpty();
+    }
+
+    /**
+     * Applies the changes handed over to this region. Removals and updates are applied in a first pass, additions in a second
+     * pass after all regions have done the first pass. Otherwise an object moving from one street to another could be added
+     * to the new lane container before it has been removed from the old one.
+     *
+     * @param additions	<code>false</code> for the first pass, <code>true</code> for the second pass
+     *
+     * @return the amount of changes applied
+     */
+    public int applyLaneHandoffs(boolean additions){
+        RunState state = getRunState();
+        LaneHandoff handoff;
+        int count = 0;
+        if(additions){
+            count = state.laneAdditionCount_;
+            for(int i = 0; i < state.laneAdditionCount_; ++i){
+                handoff = state.laneAdditions_[i];
+                state.laneAdditions_[i] = null;
+                handoff.street_.addLaneObject(handoff.object_, handoff.direction_);
+            }
+            state.laneAdditionCount_ = 0;
+        } else {
+            while((handoff = state.laneHandoffs_.poll()) != null){
+                ++count;
+                if(handoff.type_ == DEL_LANE_OBJECT) handoff.street_.delLaneObject(handoff.object_, handoff.direction_);
+                else if(handoff.type_ == UPDATE_LANE_OBJECT) handoff.street_.updateLaneObject(handoff.object_, handoff.direction_, handoff.object_.getCurPosition());
+                else {
+                    if(state.laneAdditionCount_ == state.laneAdditions_.length){
+                        LaneHandoff[] newArray = new LaneHandoff[state.laneAdditionCount_ * 2];
+                        System.arraycopy(state.laneAdditions_, 0, newArray, 0, state.laneAdditionCount_);
+                        state.laneAdditions_ = newArray;
+                    }
+                    state.laneAdditions_[state.laneAdditionCount_] = handoff;
+                    ++state.laneAdditionCount_;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves all vehicles which left their region in the last step into their new regions. Must only be called by a single
+     * thread after all workers have finished the move phase.
+     *
+     * @param regions	all regions of the map
+     */
+    public static void applyMigrations(Region[][] regions){
+        RunState state;
+        Vehicle vehicle;
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j){
+                state = regions[i][j].getRunState();
+                for(int k = 0; k < state.emigrantCount_; ++k){
+                    vehicle = state.emigrants_[k];
+                    state.emigrants_[k] = null;
+                    regions[i][j].delVehicle(vehicle);
+                    vehicle.getRegion().addVehicle(vehicle, false);
+                }
+                state.emigrantCount_ = 0;
+            }
+        }
     }
 
     /**
@@ -573,26 +876,61 @@ public final class Region {
      *
      */
     public void addRSU(RSU rsu){
-        RSU[] newArray = new RSU[rsus_.length+1];
-        System.arraycopy (rsus_,0,newArray,0,rsus_.length);
-        newArray[rsus_.length] = rsu;
-        rsus_ = newArray;
+        RunState state = getRunState();
+        RSU[] newArray = new RSU[state.rsus_.length+1];
+        System.arraycopy (state.rsus_,0,newArray,0,state.rsus_.length);
+        newArray[state.rsus_.length] = rsu;
+        state.rsus_ = newArray;
     }
 
     /**
-     * Creates an array as a copy of the vehicle <code>ArrayList</code> to prevent problems during simulation caused by
-     * changing the <code>ArrayList</code> while reading it in another thread. The array is cached so that new ones are only
-     * created when needed.
+     * Creates an array as a copy of the vehicles to prevent problems during simulation caused by changing them while reading
+     * them in another thread. The array is cached so that new ones are only created when needed.
      *
      * @return the array copy of all vehicles in this region or an empty array if there are no elements
      */
     public Vehicle[] getVehicleArray(){
-        if(vehiclesDirty_){
-            if(vehicles_.size() == 0) vehiclesArray_ = EMPTY_VEHICLE;
-            else vehiclesArray_ = vehicles_.toArray(EMPTY_VEHICLE);
-            vehiclesDirty_ = false;
+        RunState state = getRunState();
+        if(state.vehiclesDirty_){
+            if(state.vehicleCount_ == 0) state.vehiclesArray_ = EMPTY_VEHICLE;
+            else {
+                state.vehiclesArray_ = new Vehicle[state.vehicleCount_];
+                System.arraycopy(state.vehicles_, 0, state.vehiclesArray_, 0, state.vehicleCount_);
+            }
+            state.vehiclesDirty_ = false;
         }
-        return vehiclesArray_;
+        return state.vehiclesArray_;
+    }
+
+    /**
+     * Gets the set of vehicles which have work in the current step. Created on first use.
+     *
+     * @return the set
+     */
+    public ActiveVehicleSet getActiveVehicleSet(){
+        RunState state = getRunState();
+        if(state.activeVehicleSet_ == null) state.activeVehicleSet_ = new ActiveVehicleSet();
+        return state.activeVehicleSet_;
+    }
+
+    /**
+     * Gets the store used to move the vehicles of this region as arrays. Created on first use.
+     *
+     * @return the store
+     */
+    public VehicleStateStore getVehicleStateStore(){
+        RunState state = getRunState();
+        if(state.vehicleStateStore_ == null) state.vehicleStateStore_ = new VehicleStateStore();
+        return state.vehicleStateStore_;
+    }
+
+    /**
+     * Gets the buffer for the changes the vehicles of this region make on lanes, regions and junctions in the deterministic mode.
+     *
+     * @return the buffer
+     */
+    public InteractionBuffer getInteractionBuffer(){
+        return getRunState().interactionBuffer_;
     }
 
     /**
@@ -635,5 +973,144 @@ public final class Region {
      * /////////// setter & getter (end) ///////////
      */
 
+    /**
+     * Sets how many runs share this region. The states of existing runs are kept, all other runs start empty.
+     * Must not be called while a simulation is running.
+     *
+     * @param count	the amount of runs
+     */
+    public void setRunSlots(int count){
+        RunState[] states = runStates_;
+        if(states.length == count) return;
+        RunState[] newStates = new RunState[count];
+        System.arraycopy(states, 0, newStates, 0, Math.min(states.length, count));
+        for(int i = states.length; i < count; ++i) newStates[i] = createRunState();
+        runStates_ = newStates;
+    }
+
+    /**
+     * Resets the state of a run to the state of a newly added run.
+     *
+     * @param slot	the run slot
+     */
+    public void resetRunSlot(int slot){
+        runStates_[slot] = createRunState();
+    }
+
+    /**
+     * Creates the state of a new run.
+     *
+     * @return the state
+     */
+    private RunState createRunState(){
+        return new RunState();
+    }
+
+    /**
+     * Gets the state of the run bound to the calling thread.
+     *
+     * @return the state
+     */
+    private RunState getRunState(){
+        return runStates_[SimulationContext.current().getRunSlot()];
+    }
+
+
+    /**
+     * The part of a region which belongs to a single run. Several runs may share the streets and nodes of a region
+     * but each of them has its own vehicles and RSUs.
+     */
+    private static final class RunState {
+
+        /** <code>true</code> to indicate that the vehicles have changed since the last call to getVehicleArray() */
+        private boolean vehiclesDirty_ = true;
+
+        /** The vehicles in this region. Each vehicle knows its index so that it can be removed without searching. */
+        private Vehicle[] vehicles_ = EMPTY_VEHICLE;
+
+        /** The amount of vehicles in this region. */
+        private int vehicleCount_ = 0;
 
+        /** The vehicles which left this region during the current step. Only written by the thread working on this region. */
+        private Vehicle[] emigrants_ = new Vehicle[4];
+
+        /** The amount of vehicles which left this region during the current step. */
+        private int emigrantCount_ = 0;
+
+        /** The simulation requests an array for the vehicles which is cached here. */
+        private Vehicle[] vehiclesArray_;
+
+        /** An array storing all the Road-Side-Units in this region. */
+        private RSU[] rsus_ = new RSU[0];	// This has a little bit overhead while loading compared to an ArrayList but requires less memory and is faster when iterating
+
+        /** The worker thread this region is associated with. */
+        private WorkerThread thread_ = null;
+
+        /** The number of this region in the worker thread. */
+        private int numberInThread_ = -1;
+
+        /** The processing time in nanoseconds measured since the last reset. Only written by the thread working on this region. */
+        private long measuredCost_ = 0;
+
+        /** The store to move the vehicles as arrays. <code>null</code> until used. */
+        private VehicleStateStore vehicleStateStore_ = null;
+
+        /** The vehicles which have work in the current step. <code>null</code> until used. */
+        private ActiveVehicleSet activeVehicleSet_ = null;
+
+        /** The changes of lane containers handed over by other regions. */
+        private final ConcurrentLinkedQueue<LaneHandoff> laneHandoffs_ = new ConcurrentLinkedQueue<LaneHandoff>();
+
+        /** The additions taken from <code>laneHandoffs_</code> in the first pass. Only used by the thread working on this region. */
+        private LaneHandoff[] laneAdditions_ = new LaneHandoff[4];
+
+        /** The amount of additions taken from <code>laneHandoffs_</code> in the first pass. */
+        private int laneAdditionCount_ = 0;
+
+        /** The changes buffered in the deterministic mode. Always created as it might be used by several threads. */
+        private final InteractionBuffer interactionBuffer_ = new InteractionBuffer();
+
+        /** The traffic lights scheduled in <code>trafficLightWheel_</code>. The values of the wheel are indices in this array. */
+        private TrafficLight[] scheduledTrafficLights_ = EMPTY_TRAFFIC_LIGHT;
+
+        /** The traffic lights by the step in which their phase changes next. <code>null</code> until used. */
+        private TimingWheel trafficLightWheel_ = null;
+
+        /** The amount of steps in which the traffic lights have been checked. */
+        private int trafficLightStep_ = 0;
+    }
+
+
+    /**
+     * A change of a lane container handed over to the main region of the street.
+     */
+    private static final class LaneHandoff {
+
+        /** The object to add, remove or update. */
+        private final LaneObject object_;
+
+        /** The street. */
+        private final Street street_;
+
+        /** The direction on the street. */
+        private final boolean direction_;
+
+        /** The change. */
+        private final int type_;
+
+        /**
+         * Creates a handoff.
+         *
+         * @param object	the object to add, remove or update
+         * @param street	the street
+         * @param direction	the direction on the street
+         * @param type		the change
+         */
+        LaneHandoff(LaneObject object, Street street, boolean direction, int type){
+            object_ = object;
+            street_ = street;
+            direction_ = direction;
+            type_ = type;
+        }
+    }
 }
@@ -8,6 +8,7 @@ import vanetsim.debug.Debug;
 import vanetsim.scenario.LaneContainer;
 import vanetsim.scenario.LaneObject;
 import vanetsim.scenario.Vehicle;
+import vanetsim.simulation.SimulationContext;
 
 
 /**
@@ -30,11 +31,8 @@ public final class Street {
     /** The region this street is primarily assigned to. */
     private final Region mainRegion_;
 
-    /** The lane from startNode to endNode. */
-    private final LaneContainer startToEndLane_ = new LaneContainer(true);
-
-    /** The lane from endNode to startNode. */
-    private final LaneContainer endToStartLane_ = new LaneContainer(false);
+    /** The lanes and traffic light states. One state per run sharing this map, indexed by the run slot of the <code>SimulationContext</code>. */
+    private volatile RunState[] runStates_ = {new RunState()};
 
 
     /** An identifier for this street. */
@@ -68,12 +66,6 @@ public final class Street {
     private ArrayList<Point2D.Double> bridgePaintPolygons_ = null;
 
 
-    /** The state of the traffic light assigned to this street on the start node. */
-    private int startNodeTrafficLightState_ = -1;
-
-    /** The state of the traffic light assigned to this street on the end node. */
-    private int endNodeTrafficLightState_ = -1;
-
     /** The x drawing point for this traffic light */
     private int trafficLightEndX_ = -1;
 
@@ -131,6 +123,8 @@ public final class Street {
             endNode_ = endNode;
             startNode_.addOutgoingStreet(this);
             endNode_.addOutgoingStreet(this);
+            startNode_.addIncomingStreet(this);
+            endNode_.addIncomingStreet(this);
             startNode_.addCrossingStreet(this);
             endNode_.addCrossingStreet(this);
             oneway_ = false;   /** 非單向道路 */
@@ -138,6 +132,7 @@ public final class Street {
             startNode_ = startNode;
             endNode_ = endNode;
             startNode_.addOutgoingStreet(this);
+            endNode_.addIncomingStreet(this);
             startNode_.addCrossingStreet(this);
             endNode_.addCrossingStreet(this);
             oneway_ = true;  /** 為單向道路 */
@@ -145,6 +140,7 @@ public final class Street {
             endNode_ = startNode;
             startNode_ = endNode;
             startNode_.addOutgoingStreet(this);
+            endNode_.addIncomingStreet(this);
             startNode_.addCrossingStreet(this);
             endNode_.addCrossingStreet(this);
             oneway_ = true;
@@ -228,14 +224,19 @@ public final class Street {
 
         startNode_.delOutgoingStreet(this);
         endNode_.delOutgoingStreet(this);
+        startNode_.delIncomingStreet(this);
+        endNode_.delIncomingStreet(this);
         if(oneway == 0){
             oneway_ = false;
             startNode_.addOutgoingStreet(this);
             endNode_.addOutgoingStreet(this);
+            startNode_.addIncomingStreet(this);
+            endNode_.addIncomingStreet(this);
         } else if (oneway == 1){
             oneway_ = true;
             startNode_.addOutgoingStreet(this);
             endNode_.delOutgoingStreet(this);
+            endNode_.addIncomingStreet(this);
         } else {
             oneway_ = true;
             Node tmpNode = endNode_;		//swap nodes
@@ -243,6 +244,7 @@ public final class Street {
             startNode_ = tmpNode;
             startNode_.addOutgoingStreet(this);
             endNode_.delOutgoingStreet(this);
+            endNode_.addIncomingStreet(this);
         }
     }
 
@@ -276,8 +278,9 @@ public final class Street {
      */
     public LaneObject getFirstLaneObject(boolean direction){
 
-        if(direction) return startToEndLane_.getHead();
-        else return endToStartLane_.getHead();
+        RunState state = getRunState();
+        if(direction) return state.startToEndLane_.getHead();
+        else return state.endToStartLane_.getHead();
     }
 
     /**
@@ -291,36 +294,56 @@ public final class Street {
      */
     public LaneObject getLastLaneObject(boolean direction){
 
-        if(direction) return startToEndLane_.getTail();
-        else return endToStartLane_.getTail();
+        RunState state = getRunState();
+        if(direction) return state.startToEndLane_.getTail();
+        else return state.endToStartLane_.getTail();
     }
 
     /**
-     * Adds a lane object. The underlying lane container is synchronized during this operation.
+     * Adds a lane object. Not synchronized, so while a step is running this may only be done by the thread working on the
+     * main region of this street.
      *
      * @param object	the object to add
      * @param direction	<code>true</code> in the direction from startNode to endNode, <code>false</code> seen from
      * 					endNode to startNode
      */
     public void addLaneObject(LaneObject object, boolean direction){
-        if(direction) startToEndLane_.addSorted(object);
-        else endToStartLane_.addSorted(object);
+        RunState state = getRunState();
+        if(direction) state.startToEndLane_.addSorted(object);
+        else state.endToStartLane_.addSorted(object);
+    }
+
+    /**
+     * Adds a lane object behind all others without sorting. Only used to rebuild the lanes in a known order, so this must
+     * not be called while a step is running.
+     *
+     * @param object	the object to add
+     * @param direction	<code>true</code> in the direction from startNode to endNode, <code>false</code> seen from
+     * 					endNode to startNode
+     */
+    public void appendLaneObject(LaneObject object, boolean direction){
+        RunState state = getRunState();
+        if(direction) state.startToEndLane_.append(object);
+        else state.endToStartLane_.append(object);
     }
 
     /**
-     * Removes a lane object. The underlying lane container is synchronized during this operation.
+     * Removes a lane object. Not synchronized, so while a step is running this may only be done by the thread working on the
+     * main region of this street.
      *
      * @param object	the object to remove
      * @param direction	<code>true</code> in the direction from startNode to endNode, <code>false</code> seen from
      * 					endNode to startNode
      */
     public void delLaneObject(LaneObject object, boolean direction){
-        if(direction) startToEndLane_.remove(object);
-        else endToStartLane_.remove(object);
+        RunState state = getRunState();
+        if(direction) state.startToEndLane_.remove(object);
+        else state.endToStartLane_.remove(object);
     }
 
     /**
-     * Updates a lane object. The underlying lane container is synchronized during this operation.
+     * Updates a lane object. Not synchronized, so while a step is running this may only be done by the thread working on the
+     * main region of this street.
      *
      * @param object		the object to check for updates
      * @param direction		<code>true</code> in the direction from startNode to endNode, <code>false</code> seen from
@@ -328,16 +351,18 @@ public final class Street {
      * @param newPosition	the new position of the object
      */
     public void updateLaneObject(LaneObject object, boolean direction, double newPosition){
-        if(direction) startToEndLane_.updatePosition(object, newPosition);
-        else endToStartLane_.updatePosition(object, newPosition);
+        RunState state = getRunState();
+        if(direction) state.startToEndLane_.updatePosition(object, newPosition);
+        else state.endToStartLane_.updatePosition(object, newPosition);
     }
 
     /**
      * Clears all objects from the lanes container.
      */
     public void clearLanes(){
-        startToEndLane_.clear();
-        endToStartLane_.clear();
+        RunState state = getRunState();
+        state.startToEndLane_.clear();
+        state.endToStartLane_.clear();
     }
 
     /**
@@ -527,7 +552,7 @@ public final class Street {
      * @return the state of the traffic light
      */
     public int getStartNodeTrafficLightState() {
-        return startNodeTrafficLightState_;
+        return getRunState().startNodeTrafficLightState_;
     }
 
     /**
@@ -536,7 +561,7 @@ public final class Street {
      * @param startNodeTrafficLightState_ the status of the traffic light
      */
     public void setStartNodeTrafficLightState(int startNodeTrafficLightState_) {
-        this.startNodeTrafficLightState_ = startNodeTrafficLightState_;
+        getRunState().startNodeTrafficLightState_ = startNodeTrafficLightState_;
     }
 
     /**
@@ -545,7 +570,7 @@ public final class Street {
      * @return the state of the traffic light
      */
     public int getEndNodeTrafficLightState() {
-        return endNodeTrafficLightState_;
+        return getRunState().endNodeTrafficLightState_;
     }
 
     /**
@@ -554,7 +579,7 @@ public final class Street {
      * @param endNodeTrafficLightState_ the status of the traffic light
      */
     public void setEndNodeTrafficLightState(int endNodeTrafficLightState_) {
-        this.endNodeTrafficLightState_ = endNodeTrafficLightState_;
+        getRunState().endNodeTrafficLightState_ = endNodeTrafficLightState_;
     }
 
     /**
@@ -562,7 +587,8 @@ public final class Street {
      *
      */
     public void updateStartNodeTrafficLightState() {
-        startNodeTrafficLightState_ = (startNodeTrafficLightState_ + 1) %8;
+        RunState state = getRunState();
+        state.startNodeTrafficLightState_ = (state.startNodeTrafficLightState_ + 1) %8;
     }
 
     /**
@@ -570,7 +596,8 @@ public final class Street {
      *
      */
     public void updateEndNodeTrafficLightState() {
-        endNodeTrafficLightState_ = (endNodeTrafficLightState_ + 1) %8;
+        RunState state = getRunState();
+        state.endNodeTrafficLightState_ = (state.endNodeTrafficLightState_ + 1) %8;
     }
 
 
@@ -657,4 +684,69 @@ public final class Street {
     public boolean isPriorityOnStartNode() {
         return priorityOnStartNode;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets how many runs share this street. The states of existing runs are kept, all other runs start with empty lanes
+     * and the traffic light states of the first run.
+     * Must not be called while a simulation is running.
+     *
+     * @param count	the amount of runs
+     */
+    public void setRunSlots(int count){
+        RunState[] states = runStates_;
+        if(states.length == count) return;
+        RunState[] newStates = new RunState[count];
+        System.arraycopy(states, 0, newStates, 0, Math.min(states.length, count));
+        for(int i = states.length; i < count; ++i) newStates[i] = createRunState();
+        runStates_ = newStates;
+    }
+
+    /**
+     * Resets the state of a run to the state of a newly added run.
+     *
+     * @param slot	the run slot
+     */
+    public void resetRunSlot(int slot){
+        runStates_[slot] = createRunState();
+    }
+
+    /**
+     * Creates the state of a new run. The lanes are empty, the traffic light states are taken from the first run.
+     *
+     * @return the state
+     */
+    private RunState createRunState(){
+        RunState state = new RunState();
+        state.startNodeTrafficLightState_ = runStates_[0].startNodeTrafficLightState_;
+        state.endNodeTrafficLightState_ = runStates_[0].endNodeTrafficLightState_;
+        return state;
+    }
+
+    /**
+     * Gets the state of the run bound to the calling thread.
+     *
+     * @return the state
+     */
+    private RunState getRunState(){
+        return runStates_[SimulationContext.current().getRunSlot()];
+    }
+
+
+    /**
+     * The part of a street which belongs to a single run.
+     */
+    private static final class RunState {
+
+        /** The lane from startNode to endNode. */
+        private final LaneContainer startToEndLane_ = new LaneContainer(true);
+
+        /** The lane from endNode to startNode. */
+        private final LaneContainer endToStartLane_ = new LaneContainer(false);
+
+        /** The state of the traffic light assigned to this street on the start node. */
+        private int startNodeTrafficLightState_ = -1;
+
+        /** The state of the traffic light assigned to this street on the end node. */
+        private int endNodeTrafficLightState_ = -1;
+    }
+}
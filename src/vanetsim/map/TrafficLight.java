@@ -1,5 +1,10 @@
 package vanetsim.map;
 
+import vanetsim.simulation.SimulationContext;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 
 
@@ -9,6 +14,9 @@ package vanetsim.map;
  */
 public class TrafficLight {
 
+    /** The most steps a traffic light is left alone. Only matters for very long phases. */
+    private static final int MAX_SCHEDULED_STEPS = 65536;
+
     /** Default time intervals for state switching. */
     private static final double[] DEFAULT_SWITCH_INTERVALS = new double[] {5000, 1000, 5000};
 
@@ -24,8 +32,8 @@ public class TrafficLight {
     /** Duration of the green phase in ms for the priority street. */
     private double greenPhaseLength_;
 
-    /** status of traffic light: 0 green : 1 green-orange : 2 red 3: freephase */
-    private int state = 0;
+    /** The phase and the timer. One state per run sharing this map, indexed by the run slot of the <code>SimulationContext</code>. */
+    private volatile RunState[] runStates_ = {new RunState()};
 
     /** Traffic Light Collections */
     private Street[] streets_;
@@ -34,15 +42,9 @@ public class TrafficLight {
     /** Stores if a street is a priority street or not; used to distinguish between times. */
     private boolean[] streetIsPriority_;
 
-    /** Timer for this traffic light; because all traffic lights on a junction run synchronously just one timer is needed. */
-    private double timer_;
-
     /** The <code>Junction</code> this traffic light. */
     private Junction junction_;
 
-    /** switcher between long and short signal length */
-    private boolean switcher = true;
-
     /**
      * Constructor.
      */
@@ -140,7 +142,7 @@ public class TrafficLight {
             //lets calculate the drawing positions of the traffic light ... now its better for the performance
             calculateTrafficLightPosition(streets_[i]);
         }
-        timer_ = greenPhaseLength_;
+        getRunState().timer_ = greenPhaseLength_;
 
         //tell the node, that he now has a traffic light
         junction_.getNode().setHasTrafficSignal_(true);
@@ -151,24 +153,25 @@ public class TrafficLight {
      * This function should change the states of the traffic lights if necessary. Should be called after the first greenphase
      */
     public void changePhases(int timePerStep){
+        RunState runState = getRunState();
         //if remaining time is smaller than the timerPerStep we have to change the states
-        if(timer_ < timePerStep){
-            state = (state +1) % 4;
+        if(runState.timer_ < timePerStep){
+            runState.state_ = (runState.state_ +1) % 4;
 
             //could be less code, but this way I get a better performanz
             //(non)priorties where green: Change to orange
-            if(state == 1) timer_ = yellowPhaseLength_;
+            if(runState.state_ == 1) runState.timer_ = yellowPhaseLength_;
                 //(non)priorties where green-orange: Change to red for a freephase
-            else if(state == 2)timer_ = JUNCTION_FREE_TIME;
+            else if(runState.state_ == 2)runState.timer_ = JUNCTION_FREE_TIME;
                 //priorties where free: Change to red
-            else if(state == 0 && switcher)timer_ = greenPhaseLength_;
+            else if(runState.state_ == 0 && runState.switcher_)runState.timer_ = greenPhaseLength_;
                 //non-priorties where free: Change to red
-            else if(state == 0 && !switcher)timer_ = redPhaseLength_;
+            else if(runState.state_ == 0 && !runState.switcher_)runState.timer_ = redPhaseLength_;
                 //yellow
-            else if(state == 3)timer_ = yellowPhaseLength_;
+            else if(runState.state_ == 3)runState.timer_ = yellowPhaseLength_;
 
 
-            switcher = !switcher;
+            runState.switcher_ = !runState.switcher_;
             //update all street + 1
 
             for(int i = 0; i < streets_.length; i++){
@@ -181,7 +184,88 @@ public class TrafficLight {
             }
         }
         //else change timer
-        else timer_ = timer_ - timePerStep;
+        else runState.timer_ = runState.timer_ - timePerStep;
+    }
+
+    /**
+     * Does the work of {@link #changePhases(int)} for all steps of the region of this traffic light up to the current one.
+     * In the steps since the last call the phase didn't change and the timer only counted down, so these steps are done
+     * together now. Only used by the <code>Region</code>.
+     *
+     * @param step			the number of the current step of the region
+     * @param timePerStep	the time in milliseconds for one step
+     *
+     * @return the number of the step in which the phase changes next
+     */
+    int changePhasesUntil(int step, int timePerStep){
+        RunState state = getRunState();
+        if(state.lastStep_ != -1) countDown(state, step - 1 - state.lastStep_, timePerStep);
+        changePhases(timePerStep);
+        state.lastStep_ = step;
+        // count the steps in which changePhases() would only count down (with the same arithmetic, so nothing changes)
+        double timer = state.timer_;
+        int steps = 0;
+        while(timer >= timePerStep && steps < MAX_SCHEDULED_STEPS){
+            timer = timer - timePerStep;
+            ++steps;
+        }
+        state.nextStep_ = step + steps + 1;
+        return state.nextStep_;
+    }
+
+    /**
+     * Counts the timer down for all steps of the region up to the given one which haven't been done yet, so that the timer has
+     * the same value as if {@link #changePhases(int)} had been called in every step.
+     *
+     * @param step			the number of the last step of the region
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    void synchronizePhases(int step, int timePerStep){
+        RunState state = getRunState();
+        if(state.lastStep_ != -1 && step > state.lastStep_){
+            countDown(state, step - state.lastStep_, timePerStep);
+            state.lastStep_ = step;
+        }
+    }
+
+    /**
+     * Gets the step of the region in which {@link #changePhasesUntil(int, int)} has to be called next.
+     *
+     * @return the number of the step or <code>-1</code> if it has to be called in the next step
+     */
+    int getNextPhaseStep(){
+        RunState state = getRunState();
+        if(state.lastStep_ == -1) return -1;
+        else return state.nextStep_;
+    }
+
+    /**
+     * Lets {@link #changePhasesUntil(int, int)} work like {@link #changePhases(int)} at its next call, for example because
+     * the timer was changed from outside.
+     */
+    void unschedule(){
+        getRunState().lastStep_ = -1;
+    }
+
+    /**
+     * Checks if this traffic light is still switched on, that is if its node has a signal and a junction and still uses this light.
+     *
+     * @return <code>true</code> if the phases have to be changed
+     */
+    boolean isSwitchedOn(){
+        Node node = junction_.getNode();
+        return node.isHasTrafficSignal_() && node.getJunction() != null && node.getTrafficLight_() == this;
+    }
+
+    /**
+     * Counts the timer down for steps in which the phase doesn't change.
+     *
+     * @param state			the state of the run
+     * @param steps			the amount of steps
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    private static void countDown(RunState state, int steps, int timePerStep){
+        for(int i = 0; i < steps; ++i) state.timer_ = state.timer_ - timePerStep;
     }
 
 	/* Calculates Traffic light position */
@@ -296,14 +380,14 @@ public class TrafficLight {
      * @param state the state to set
      */
     public void setState(int state) {
-        this.state = state;
+        getRunState().state_ = state;
     }
 
     /**
      * @return the state
      */
     public int getState() {
-        return state;
+        return getRunState().state_;
     }
 
     /**
@@ -323,4 +407,103 @@ public class TrafficLight {
 
 
 
-}
\ No newline at end of file
+
+    /**
+     * Sets how many runs share this traffic light. The states of existing runs are kept, all new runs start with the state of the first run.
+     * Must not be called while a simulation is running.
+     *
+     * @param count	the amount of runs
+     */
+    public void setRunSlots(int count){
+        RunState[] states = runStates_;
+        if(states.length == count) return;
+        RunState[] newStates = new RunState[count];
+        System.arraycopy(states, 0, newStates, 0, Math.min(states.length, count));
+        for(int i = states.length; i < count; ++i) newStates[i] = createRunState();
+        runStates_ = newStates;
+    }
+
+    /**
+     * Resets the state of a run to the state of a newly added run.
+     *
+     * @param slot	the run slot
+     */
+    public void resetRunSlot(int slot){
+        runStates_[slot] = createRunState();
+    }
+
+    /**
+     * Creates the state of a new run as a copy of the state of the first run.
+     *
+     * @return the state
+     */
+    private RunState createRunState(){
+        RunState state = new RunState();
+        state.state_ = runStates_[0].state_;
+        state.timer_ = runStates_[0].timer_;
+        state.switcher_ = runStates_[0].switcher_;
+        return state;
+    }
+
+    /**
+     * Writes the phase and the timer of the run bound to the calling thread (see <code>Checkpoint</code>). The timer has to
+     * be synchronized with the steps of the region before (see <code>Region.synchronizeTrafficLights()</code>).
+     *
+     * @param out	the stream to write to
+     *
+     * @throws IOException if writing fails
+     */
+    public void writeState(DataOutputStream out) throws IOException{
+        RunState state = getRunState();
+        out.writeInt(state.state_);
+        out.writeDouble(state.timer_);
+        out.writeBoolean(state.switcher_);
+    }
+
+    /**
+     * Restores the phase and the timer written by {@link #writeState(DataOutputStream)}. The region has to schedule the
+     * light again afterwards (see <code>Region.rescheduleTrafficLights()</code>).
+     *
+     * @param in	the stream to read from
+     *
+     * @throws IOException if reading fails
+     */
+    public void readState(DataInputStream in) throws IOException{
+        RunState state = getRunState();
+        state.state_ = in.readInt();
+        state.timer_ = in.readDouble();
+        state.switcher_ = in.readBoolean();
+        state.lastStep_ = -1;
+    }
+
+    /**
+     * Gets the state of the run bound to the calling thread.
+     *
+     * @return the state
+     */
+    private RunState getRunState(){
+        return runStates_[SimulationContext.current().getRunSlot()];
+    }
+
+
+    /**
+     * The part of a traffic light which belongs to a single run.
+     */
+    private static final class RunState {
+
+        /** status of traffic light: 0 green : 1 green-orange : 2 red 3: freephase */
+        private int state_ = 0;
+
+        /** Timer for this traffic light; because all traffic lights on a junction run synchronously just one timer is needed. */
+        private double timer_;
+
+        /** switcher between long and short signal length */
+        private boolean switcher_ = true;
+
+        /** The step of the region up to which the timer has been counted down (<code>-1</code> if the light isn't scheduled yet). */
+        private int lastStep_ = -1;
+
+        /** The step of the region in which the phase changes next. */
+        private int nextStep_ = 0;
+    }
+}
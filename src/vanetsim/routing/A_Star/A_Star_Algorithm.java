@@ -1,9 +1,11 @@
 package vanetsim.routing.A_Star;
 
 import vanetsim.debug.Debug;
+import vanetsim.map.Map;
 import vanetsim.map.Node;
 import vanetsim.map.Street;
 import vanetsim.routing.RoutingAlgorithm;
+import vanetsim.simulation.SimulationContext;
 
 import java.util.ArrayDeque;
 
@@ -20,6 +22,9 @@ import java.util.ArrayDeque;
  * An own data structure is used which is basically the official <code>PriorityQueue</code> implementation but with
  * unnecessary function calls and casts removed. This uses about 25% less cpu than the original <code>PriorityQueue</code>
  * and about 40% less than a <code>TreeSet</code>. A basic <code>ArrayList</code> would take about 4x the performance.
+ * When routing by time, a pairing heap may be used instead (see <code>SimulationContext.setPairingHeapRouting()</code>).
+ * The straight line used as heuristic may be improved with landmarks (see <code>A_Star_Landmarks</code>).
+ * On long routes, searching from both ends at the same time is faster (see <code>A_Star_Bidirectional</code>).
  * 
  * Note for developers: It makes no sense to try to process streets which only have 2 crossings (no real junctions!) as one large street.
  * It surely saves some sqrt-operations but you trade this with lots of necessary checks and lookups and (what is a larger problem) you need
@@ -29,6 +34,9 @@ import java.util.ArrayDeque;
  */
 public final class A_Star_Algorithm implements RoutingAlgorithm {
 	
+	/** The bidirectional search used instead if enabled (see <code>SimulationContext.setBidirectionalRouting()</code>). */
+	private final A_Star_Bidirectional bidirectional_ = new A_Star_Bidirectional();
+
 	/**
 	 * Instantiates a new A_Star_Algo.
 	 */
@@ -62,7 +70,7 @@ public final class A_Star_Algorithm implements RoutingAlgorithm {
 	private A_Star_Node computeRoute(int mode, int direction, Street startStreet, double startStreetPos, int targetX, int targetY, Street targetStreet, double targetStreetPos, Street[] penaltyStreets, int[] penaltyDirections, int[] penalties, int penaltySize, int additionalVar){
 		int distanceAdd;
 		long dx, dy;
-		double f, g, distance;
+		double f, g, distance, estimate;
 		boolean target1found = false, target2found = false, endNodeMayBeDestination;
 		int speed;
 		Node tmpNode;
@@ -70,11 +78,34 @@ public final class A_Star_Algorithm implements RoutingAlgorithm {
 		A_Star_Node currentNode, successor, startNode;
 		Street[] outgoingStreets;
 		Street tmpStreet;
-		A_Star_Queue openList = new A_Star_Queue();
+		A_Star_OpenList openList;
+		if(mode == 1 && SimulationContext.current().getPairingHeapRouting()) openList = new A_Star_PairingHeap();
+		else openList = new A_Star_Queue();
+
+		// with landmarks, the heuristic is the larger one of the straight line and the lower bound to the nodes of the target street.
+		// The costs of a route are then the exact costs (g and the rest of the target street) so that both ends of the target street compare correctly.
+		A_Star_Landmarks landmarks = null;
+		int[] landmarkTargets = null;
+		double[] landmarkTargetCosts = null;
+		int landmarkTargetCount = 0;
+		int landmarkCount = SimulationContext.current().getLandmarkCount();
+		if(landmarkCount > 0 && (mode == 0 || mode == 1)){
+			landmarks = Map.getInstance().prepareLandmarks(landmarkCount);
+			landmarkTargets = new int[2];
+			landmarkTargetCosts = new double[2];
+			if(targetStreet.getSpeed() > additionalVar) speed = additionalVar;
+			else speed = targetStreet.getSpeed();
+			if(!targetStreet.isOneway()){
+				landmarkTargets[landmarkTargetCount] = targetStreet.getEndNode().getNodeID();
+				landmarkTargetCosts[landmarkTargetCount++] = (mode == 0)? (targetStreet.getLength() - targetStreetPos) : ((targetStreet.getLength() - targetStreetPos)/speed);
+			}
+			landmarkTargets[landmarkTargetCount] = targetStreet.getStartNode().getNodeID();
+			landmarkTargetCosts[landmarkTargetCount++] = (mode == 0)? targetStreetPos : (targetStreetPos/speed);
+		}
 		
 		// get LookupTable from factory. The LookupTable is needed for a mapping between our normal map nodes and the nodes for routing
 		int[] tmp = new int[1];
-		A_Star_LookupTable<Node, A_Star_Node> lookupTable = A_Star_LookupTableFactory.getTable(tmp);
+		A_Star_LookupTable<Node, A_Star_Node> lookupTable = A_Star_LookupTableFactory.getInstance().getTable(tmp);
 		int counter = tmp[0];
 		
 		if(targetStreet.isOneway()) endNodeMayBeDestination = false;
@@ -130,15 +161,16 @@ public final class A_Star_Algorithm implements RoutingAlgorithm {
 			// found target?
 			if (endNodeMayBeDestination && currentNode.getRealNode() == targetStreet.getEndNode()){
 				if(target1found){
-					A_Star_LookupTableFactory.putTable(counter, lookupTable);
+					A_Star_LookupTableFactory.getInstance().putTable(counter, lookupTable);
 					return currentNode;
 				}
 				else {	//we're near the end but didn't add the costs for the last street yet
-					if(mode == 0) f = currentNode.getF() + (targetStreet.getLength() - targetStreetPos);
+					g = (landmarks == null)? currentNode.getF() : currentNode.getG();
+					if(mode == 0) f = g + (targetStreet.getLength() - targetStreetPos);
 					else {
 						if(targetStreet.getSpeed() > additionalVar) speed = additionalVar;
 						else speed = targetStreet.getSpeed();
-						f = currentNode.getF() + ((targetStreet.getLength() - targetStreetPos)/speed);
+						f = g + ((targetStreet.getLength() - targetStreetPos)/speed);
 					}
 					currentNode.setF(f);
 					currentNode.setG(f);
@@ -147,15 +179,16 @@ public final class A_Star_Algorithm implements RoutingAlgorithm {
 				}
 			} else if(currentNode.getRealNode() == targetStreet.getStartNode()){
 				if(target2found){
-					A_Star_LookupTableFactory.putTable(counter, lookupTable);
+					A_Star_LookupTableFactory.getInstance().putTable(counter, lookupTable);
 					return currentNode;
 				}
 				else {	//we're near the end but didn't add the costs for the last street yet
-					if(mode == 0) f = currentNode.getF() + targetStreetPos;
+					g = (landmarks == null)? currentNode.getF() : currentNode.getG();
+					if(mode == 0) f = g + targetStreetPos;
 					else {	//time calculation
 						if(targetStreet.getSpeed() > additionalVar) speed = additionalVar;
 						else speed = targetStreet.getSpeed();
-						f = currentNode.getF() + (targetStreetPos/speed);
+						f = g + (targetStreetPos/speed);
 					}
 					currentNode.setF(f);
 					currentNode.setG(f);
@@ -211,6 +244,12 @@ public final class A_Star_Algorithm implements RoutingAlgorithm {
 							else g = currentNode.getG() + (tmpStreet.getLength()/tmpStreet.getSpeed());
 							f = g + (distance/additionalVar);	//approximation based on maxspeed (stored in additionalVar) so that real time is always underestimated!
 						}
+						if(landmarks != null){
+							estimate = landmarks.estimate(mode, tmpNode, landmarkTargets, landmarkTargetCosts, landmarkTargetCount, additionalVar);
+							if(mode == 0) estimate += distanceAdd;
+							else estimate += (double)distanceAdd/additionalVar;
+							if(g + estimate > f) f = g + estimate;
+						}
 						if(!successor.isInOpenList()){		// not yet investigated...
 							successor.setPredecessor(currentNode);
 							successor.setF(f);
@@ -259,7 +298,7 @@ public final class A_Star_Algorithm implements RoutingAlgorithm {
 			}
 	    } while (!openList.isEmpty());
 	    // there's no route to the destination!
-		A_Star_LookupTableFactory.putTable(counter, lookupTable);
+		A_Star_LookupTableFactory.getInstance().putTable(counter, lookupTable);
 		return null;	    
 	}
 	
@@ -289,6 +328,7 @@ public final class A_Star_Algorithm implements RoutingAlgorithm {
 	 * @see	vanetsim.routing.RoutingAlgorithm#getRouting(int, int, int, int, Street, double, int, int, Street, double, Street[], int[], int[], int, int)
 	 */
 	public ArrayDeque<Node> getRouting(int mode, int direction, int startX, int startY, Street startStreet, double startStreetPos, int targetX, int targetY, Street targetStreet, double targetStreetPos, Street[] penaltyStreets, int[] penaltyDirections, int[] penalties, int penaltySize, int additionalVar){
+		if((mode == 0 || mode == 1) && SimulationContext.current().getBidirectionalRouting()) return bidirectional_.computeRoute(mode, direction, startX, startY, startStreet, startStreetPos, targetX, targetY, targetStreet, targetStreetPos, penaltyStreets, penaltyDirections, penalties, penaltySize, additionalVar);
 		A_Star_Node curNode = computeRoute(mode, direction, startStreet, startStreetPos, targetX, targetY, targetStreet, targetStreetPos, penaltyStreets, penaltyDirections, penalties, penaltySize, additionalVar);
 		ArrayDeque<Node> result = new ArrayDeque<Node>(255);
 		while(curNode != null){
@@ -0,0 +1,302 @@
+package vanetsim.routing.A_Star;
+
+import vanetsim.map.Node;
+import vanetsim.map.Street;
+import vanetsim.simulation.SimulationContext;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bidirectional variant of the <code>A_Star_Algorithm</code>. One search runs forward from the nodes of the start street
+ * over the outgoing streets, the other one backward from the nodes of the target street over the incoming streets (see
+ * <code>Node.getIncomingStreets()</code>). The searches meet in the middle, so on long routes much fewer nodes are
+ * investigated than by a single search which grows a large ball around the start.
+ * <br>
+ * Both searches use the same heuristic with opposite signs: half of the straight line to the target minus half of the straight
+ * line from the start. Only then a node taken from one list has its final cost and the search can stop as soon as the
+ * smallest f-values of both lists together aren't smaller than the best route found so far. The landmarks of the
+ * <code>A_Star_Algorithm</code> are not used here.
+ * <br>
+ * Like the normal search, the route ends at the start node of the target street (adding the costs to the target position) or, if
+ * the target street isn't a oneway street, at its end node. Penalties are added to the costs of the streets they are on.
+ */
+final class A_Star_Bidirectional {
+
+	/**
+	 * Instantiates a new A_Star_Bidirectional.
+	 */
+	A_Star_Bidirectional(){
+	}
+
+	/**
+	 * Calculates a route.
+	 *
+	 * @param mode				The mode in which to operate. <code>0</code> means calculating with street lengths, <code>1</code> means calculating based on speed/time
+	 * @param direction			<code>0</code>=don't care about direction, <code>-1</code>=from startNode to endNode, <code>1</code>=from endNode to startNode
+	 * @param startX			the x coordinate of the start point (not used, the point is calculated from the street and the position)
+	 * @param startY			the y coordinate of the start point (not used, the point is calculated from the street and the position)
+	 * @param startStreet		the street on which the start point lies
+	 * @param startStreetPos	the position measured in cm from the startNode of the <code>startStreet</code>
+	 * @param targetX			the x coordinate of the target point (not used, the point is calculated from the street and the position)
+	 * @param targetY			the y coordinate of the target point (not used, the point is calculated from the street and the position)
+	 * @param targetStreet		the street on which the target point lies
+	 * @param targetStreetPos	the position measured in cm from the startNode of the <code>targetStreet</code>
+	 * @param penaltyStreets	an array with all streets which have penalties.
+	 * @param penaltyDirections	an array with directions corresponding to penaltyStreets. <code>1</code> in the array means from endNode to startNode,
+	 * 							<code>0</code> means both directions and <code>-1</code> means from startNode to endNode
+	 * @param penalties			an array with all penalties measured in cm.
+	 * @param penaltySize		how many penalties exist.
+	 * @param additionalVar		can be used to set the maximum speed for calculations in <code>mode=1</code>
+	 *
+	 * @return the nodes of the route beginning with the start node or an empty deque if there's no route
+	 */
+	ArrayDeque<Node> computeRoute(int mode, int direction, int startX, int startY, Street startStreet, double startStreetPos, int targetX, int targetY, Street targetStreet, double targetStreetPos, Street[] penaltyStreets, int[] penaltyDirections, int[] penalties, int penaltySize, int additionalVar){
+		double scale = (mode == 0)? 1 : additionalVar;		// converts the straight line into a lower bound for the costs
+		// the heuristic is only a lower bound if the points really lie on the streets (vehicles pass the point where they started their trip)
+		double startPointX = getX(startStreet, startStreetPos), startPointY = getY(startStreet, startStreetPos);
+		double targetPointX = getX(targetStreet, targetStreetPos), targetPointY = getY(targetStreet, targetStreetPos);
+		A_Star_OpenList forwardList, backwardList;
+		if(mode == 1 && SimulationContext.current().getPairingHeapRouting()){
+			forwardList = new A_Star_PairingHeap();
+			backwardList = new A_Star_PairingHeap();
+		} else {
+			forwardList = new A_Star_Queue();
+			backwardList = new A_Star_Queue();
+		}
+		int[] tmp = new int[1];
+		A_Star_LookupTable<Node, A_Star_Node> forwardTable = A_Star_LookupTableFactory.getInstance().getTable(tmp);
+		int forwardCounter = tmp[0];
+		A_Star_LookupTable<Node, A_Star_Node> backwardTable = A_Star_LookupTableFactory.getInstance().getTable(tmp);
+		int backwardCounter = tmp[0];
+
+		// the nodes of the start and the target street with the costs on these streets
+		double speed = 1;
+		if(mode == 1) speed = Math.min(startStreet.getSpeed(), additionalVar);
+		if(direction > -1) addStart(startStreet.getStartNode(), startStreetPos/speed, forwardTable, forwardCounter, forwardList, startPointX, startPointY, targetPointX, targetPointY, scale, 1);
+		if(direction < 1) addStart(startStreet.getEndNode(), (startStreet.getLength() - startStreetPos)/speed, forwardTable, forwardCounter, forwardList, startPointX, startPointY, targetPointX, targetPointY, scale, 1);
+		if(mode == 1) speed = Math.min(targetStreet.getSpeed(), additionalVar);
+		if(!targetStreet.isOneway()) addStart(targetStreet.getEndNode(), (targetStreet.getLength() - targetStreetPos)/speed, backwardTable, backwardCounter, backwardList, startPointX, startPointY, targetPointX, targetPointY, scale, -1);
+		addStart(targetStreet.getStartNode(), targetStreetPos/speed, backwardTable, backwardCounter, backwardList, startPointX, startPointY, targetPointX, targetPointY, scale, -1);
+
+		double best = Double.POSITIVE_INFINITY, g;
+		Node meeting = null, tmpNode;
+		A_Star_Node currentNode, successor, other, forwardTop, backwardTop;
+		int counter, otherCounter, sign, i;
+		Node[] startNodes = {startStreet.getStartNode(), startStreet.getEndNode()};
+		for(i = 0; i < startNodes.length; ++i){	// the start and the target street may share a node
+			currentNode = getReached(startNodes[i], forwardTable, forwardCounter);
+			other = getReached(startNodes[i], backwardTable, backwardCounter);
+			if(currentNode != null && other != null && currentNode.getG() + other.getG() < best){
+				best = currentNode.getG() + other.getG();
+				meeting = startNodes[i];
+			}
+		}
+
+		boolean forward = true;
+		A_Star_OpenList list;
+		A_Star_LookupTable<Node, A_Star_Node> table, otherTable;
+		Street[] streets;
+		Street tmpStreet;
+		while(true){
+			forwardTop = forwardList.peek();
+			backwardTop = backwardList.peek();
+			// one of the searches has found everything it can reach or no better route is possible anymore
+			if(forwardTop == null || backwardTop == null || forwardTop.getF() + backwardTop.getF() >= best) break;
+			if(forward){
+				list = forwardList;
+				table = forwardTable;
+				counter = forwardCounter;
+				otherTable = backwardTable;
+				otherCounter = backwardCounter;
+				sign = 1;
+			} else {
+				list = backwardList;
+				table = backwardTable;
+				counter = backwardCounter;
+				otherTable = forwardTable;
+				otherCounter = forwardCounter;
+				sign = -1;
+			}
+			forward = !forward;
+			currentNode = list.poll();
+			currentNode.setInOpenList(false);
+			currentNode.setInClosedList(true);
+			streets = (sign == 1)? currentNode.getRealNode().getOutgoingStreets() : currentNode.getRealNode().getIncomingStreets();	// both already take care of one-way-routes
+			for(i = 0; i < streets.length; ++i){
+				tmpStreet = streets[i];
+				tmpNode = tmpStreet.getStartNode();
+				if(tmpNode == currentNode.getRealNode()) tmpNode = tmpStreet.getEndNode();
+
+				successor = table.get(tmpNode);
+				if(successor == null){
+					successor = new A_Star_Node(tmpNode, counter);
+					table.put(tmpNode, successor);
+				} else if(successor.getCounter() != counter) successor.reset(counter);
+				if(successor.isInClosedList()) continue;
+
+				if(mode == 0) g = currentNode.getG() + tmpStreet.getLength();
+				else g = currentNode.getG() + tmpStreet.getLength()/Math.min(tmpStreet.getSpeed(), additionalVar);
+				if(penaltySize > 0){
+					// the backward search uses the street from the successor to the current node
+					if(sign == 1) g += getPenalty(tmpStreet, currentNode.getRealNode(), penaltyStreets, penaltyDirections, penalties, penaltySize)/scale;
+					else g += getPenalty(tmpStreet, tmpNode, penaltyStreets, penaltyDirections, penalties, penaltySize)/scale;
+				}
+				if(!successor.isInOpenList()){
+					successor.setPredecessor(currentNode);
+					successor.setG(g);
+					successor.setF(g + sign * getPotential(tmpNode, startPointX, startPointY, targetPointX, targetPointY, scale));
+					successor.setInOpenList(true);
+					list.add(successor);
+				} else if(g < successor.getG()){
+					successor.setPredecessor(currentNode);
+					successor.setF(successor.getF() - successor.getG() + g);	// the heuristic stays the same
+					successor.setG(g);
+					list.signalDecreasedF(successor);
+				} else continue;
+
+				other = getReached(tmpNode, otherTable, otherCounter);
+				if(other != null && g + other.getG() < best){
+					best = g + other.getG();
+					meeting = tmpNode;
+				}
+			}
+		}
+
+		ArrayDeque<Node> result = new ArrayDeque<Node>(255);
+		if(meeting != null){
+			A_Star_Node curNode = forwardTable.get(meeting);
+			while(curNode != null){
+				result.addFirst(curNode.getRealNode());
+				curNode = curNode.getPredecessor();
+			}
+			curNode = backwardTable.get(meeting).getPredecessor();
+			while(curNode != null){
+				result.addLast(curNode.getRealNode());
+				curNode = curNode.getPredecessor();
+			}
+		}
+		A_Star_LookupTableFactory.getInstance().putTable(forwardCounter, forwardTable);
+		A_Star_LookupTableFactory.getInstance().putTable(backwardCounter, backwardTable);
+		return result;
+	}
+
+	/**
+	 * Adds a node where one of the searches starts. If the node has already been added with smaller costs, nothing is done.
+	 *
+	 * @param node		the node
+	 * @param costs		the costs to reach the node from the start point (forward) or the target point from the node (backward)
+	 * @param table		the LookupTable of the search
+	 * @param counter	the counter of the search
+	 * @param list		the OpenList of the search
+	 * @param startX	the x coordinate of the start point
+	 * @param startY	the y coordinate of the start point
+	 * @param targetX	the x coordinate of the target point
+	 * @param targetY	the y coordinate of the target point
+	 * @param scale		the value to divide the straight line by
+	 * @param sign		<code>1</code> for the forward search, <code>-1</code> for the backward search
+	 */
+	private static void addStart(Node node, double costs, A_Star_LookupTable<Node, A_Star_Node> table, int counter, A_Star_OpenList list, double startX, double startY, double targetX, double targetY, double scale, int sign){
+		A_Star_Node startNode = table.get(node);
+		if(startNode == null){
+			startNode = new A_Star_Node(node, counter);
+			table.put(node, startNode);
+		} else if(startNode.getCounter() != counter) startNode.reset(counter);
+		if(startNode.isInOpenList()){
+			if(startNode.getG() <= costs) return;
+			startNode.setF(startNode.getF() - startNode.getG() + costs);
+			startNode.setG(costs);
+			list.signalDecreasedF(startNode);
+		} else {
+			startNode.setPredecessor(null);
+			startNode.setG(costs);
+			startNode.setF(costs + sign * getPotential(node, startX, startY, targetX, targetY, scale));
+			startNode.setInOpenList(true);
+			list.add(startNode);
+		}
+	}
+
+	/**
+	 * Gets the A*-node of a search if the search has already reached a node.
+	 *
+	 * @param node		the node
+	 * @param table		the LookupTable of the search
+	 * @param counter	the counter of the search
+	 *
+	 * @return the A*-node or <code>null</code> if the node hasn't been reached yet
+	 */
+	private static A_Star_Node getReached(Node node, A_Star_LookupTable<Node, A_Star_Node> table, int counter){
+		A_Star_Node result = table.get(node);
+		if(result == null || result.getCounter() != counter || (!result.isInOpenList() && !result.isInClosedList())) return null;
+		return result;
+	}
+
+	/**
+	 * Gets the heuristic of the forward search at a node. The backward search uses the negative value.
+	 *
+	 * @param node		the node
+	 * @param startX	the x coordinate of the start point
+	 * @param startY	the y coordinate of the start point
+	 * @param targetX	the x coordinate of the target point
+	 * @param targetY	the y coordinate of the target point
+	 * @param scale		the value to divide the straight line by
+	 *
+	 * @return the heuristic
+	 */
+	private static double getPotential(Node node, double startX, double startY, double targetX, double targetY, double scale){
+		double dx = targetX - node.getX();
+		double dy = targetY - node.getY();
+		double toTarget = Math.sqrt(dx * dx + dy * dy);
+		dx = node.getX() - startX;
+		dy = node.getY() - startY;
+		return (toTarget - Math.sqrt(dx * dx + dy * dy)) / (2 * scale);
+	}
+
+	/**
+	 * Gets the x coordinate of a point on a street.
+	 *
+	 * @param street	the street
+	 * @param position	the position measured in cm from the startNode of the street
+	 *
+	 * @return the x coordinate
+	 */
+	private static double getX(Street street, double position){
+		if(street.getLength() == 0) return street.getStartNode().getX();
+		return street.getStartNode().getX() + (street.getEndNode().getX() - street.getStartNode().getX()) * position / street.getLength();
+	}
+
+	/**
+	 * Gets the y coordinate of a point on a street.
+	 *
+	 * @param street	the street
+	 * @param position	the position measured in cm from the startNode of the street
+	 *
+	 * @return the y coordinate
+	 */
+	private static double getY(Street street, double position){
+		if(street.getLength() == 0) return street.getStartNode().getY();
+		return street.getStartNode().getY() + (street.getEndNode().getY() - street.getStartNode().getY()) * position / street.getLength();
+	}
+
+	/**
+	 * Gets the largest penalty on a street.
+	 *
+	 * @param street			the street
+	 * @param from				the node where the street is entered
+	 * @param penaltyStreets	an array with all streets which have penalties.
+	 * @param penaltyDirections	an array with directions corresponding to penaltyStreets
+	 * @param penalties			an array with all penalties measured in cm.
+	 * @param penaltySize		how many penalties exist.
+	 *
+	 * @return the penalty in cm or <code>0</code> if there is none
+	 */
+	private static int getPenalty(Street street, Node from, Street[] penaltyStreets, int[] penaltyDirections, int[] penalties, int penaltySize){
+		int result = 0;
+		boolean fromStart = (street.getStartNode() == from);
+		for(int j = 0; j < penaltySize; ++j){
+			if(penaltyStreets[j] == street && (fromStart? penaltyDirections[j] < 1 : penaltyDirections[j] > -1)){
+				if(result < penalties[j]) result = penalties[j];
+			}
+		}
+		return result;
+	}
+}
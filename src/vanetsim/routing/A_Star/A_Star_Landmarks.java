@@ -0,0 +1,721 @@
+package vanetsim.routing.A_Star;
+
+import vanetsim.ErrorLog;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Node;
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Precomputed distances from and to a few landmarks for a better heuristic in the <code>A_Star_Algorithm</code> (ALT:
+ * A*, landmarks and triangle inequality). If the distance from a landmark L to every node is known, the distance from a node
+ * v to the target t is at least <code>d(L,t) - d(L,v)</code> and, with the distances to L, at least <code>d(v,L) - d(t,L)</code>.
+ * On road networks, this is usually much closer to the real distance than the straight line, so A* evaluates less nodes.<br>
+ * The landmarks are chosen at the border of the map: the first one is the node farthest away from the node with the lowest ID,
+ * each next one the node farthest away from all landmarks chosen so far. The tables are indexed by the node ID and stored for
+ * both routing modes (length in cm and time in s). They are saved next to the map file (with the extension <code>.alt</code>
+ * added) and read again the next time the same map is loaded. When a street is added, the tables are updated by only
+ * propagating the distances which became shorter.
+ */
+public final class A_Star_Landmarks {
+
+	/** The first bytes of a landmark file. */
+	private static final int MAGIC = 0x5653414C;
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The value of an unreachable node in the distance tables. */
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/** Subtracted from each lower bound by length (in cm) as the distances are rounded. */
+	private static final double DISTANCE_SLACK = 1;
+
+	/** Subtracted from each lower bound by time (in s) as the times are stored with float precision. */
+	private static final double TIME_SLACK = 0.01;
+
+	/** The IDs of the landmarks. */
+	private final int[] landmarks_;
+
+	/** The length of the shortest path from each landmark to each node in cm (indexed by the node ID). */
+	private int[][] distanceFrom_;
+
+	/** The length of the shortest path from each node to each landmark in cm (indexed by the node ID). */
+	private int[][] distanceTo_;
+
+	/** The time of the fastest path from each landmark to each node in s (indexed by the node ID). */
+	private float[][] timeFrom_;
+
+	/** The time of the fastest path from each node to each landmark in s (indexed by the node ID). */
+	private float[][] timeTo_;
+
+	/**
+	 * Creates the landmarks.
+	 *
+	 * @param landmarks		the IDs of the landmarks
+	 * @param distanceFrom	the lengths from each landmark
+	 * @param distanceTo	the lengths to each landmark
+	 * @param timeFrom		the times from each landmark
+	 * @param timeTo		the times to each landmark
+	 */
+	private A_Star_Landmarks(int[] landmarks, int[][] distanceFrom, int[][] distanceTo, float[][] timeFrom, float[][] timeTo){
+		landmarks_ = landmarks;
+		distanceFrom_ = distanceFrom;
+		distanceTo_ = distanceTo;
+		timeFrom_ = timeFrom;
+		timeTo_ = timeTo;
+	}
+
+	/**
+	 * Reads the landmarks of a map from the file next to it or calculates them if there is no valid file.
+	 *
+	 * @param map		the map (completely loaded)
+	 * @param mapFile	the file from which the map was loaded or <code>null</code> if the landmarks shouldn't be saved
+	 * @param count		the amount of landmarks
+	 *
+	 * @return the landmarks
+	 */
+	public static A_Star_Landmarks create(Map map, File mapFile, int count){
+		Node[] nodes = collectNodes(map);
+		long fingerprint = calculateFingerprint(nodes);
+		File file = null;
+		if(mapFile != null){
+			file = new File(mapFile.getPath() + ".alt"); //$NON-NLS-1$
+			if(file.isFile()){
+				try{
+					A_Star_Landmarks result = read(file, nodes.length, fingerprint, count);
+					if(result != null) return result;
+				} catch (Exception e){
+					ErrorLog.log(Messages.getString("A_Star_Landmarks.loadFailed") + file.getName(), 6, A_Star_Landmarks.class.getName(), "create", e); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+
+		double[] distances = new double[nodes.length], minDistances = new double[nodes.length];
+		int[] landmarks = new int[Math.min(count, nodes.length)];
+		int[][] distanceFrom = new int[landmarks.length][], distanceTo = new int[landmarks.length][];
+		float[][] timeFrom = new float[landmarks.length][], timeTo = new float[landmarks.length][];
+		Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+		int first = -1, i, j, best;
+		for(i = 0; i < nodes.length; ++i){
+			if(nodes[i] != null){
+				first = i;
+				break;
+			}
+		}
+		if(first != -1){
+			search(nodes, first, false, 0, distances);
+			best = farthest(nodes, distances);
+			for(i = 0; i < landmarks.length && best != -1; ++i){
+				landmarks[i] = best;
+				search(nodes, best, false, 0, distances);
+				distanceFrom[i] = toInts(distances);
+				for(j = 0; j < nodes.length; ++j){
+					if(distances[j] < minDistances[j]) minDistances[j] = distances[j];
+				}
+				search(nodes, best, true, 0, distances);
+				distanceTo[i] = toInts(distances);
+				search(nodes, best, false, 1, distances);
+				timeFrom[i] = toFloats(distances);
+				search(nodes, best, true, 1, distances);
+				timeTo[i] = toFloats(distances);
+				best = farthest(nodes, minDistances);
+			}
+			if(i < landmarks.length){	// less nodes reachable than landmarks wanted
+				landmarks = Arrays.copyOf(landmarks, i);
+				distanceFrom = Arrays.copyOf(distanceFrom, i);
+				distanceTo = Arrays.copyOf(distanceTo, i);
+				timeFrom = Arrays.copyOf(timeFrom, i);
+				timeTo = Arrays.copyOf(timeTo, i);
+			}
+		} else landmarks = new int[0];
+		A_Star_Landmarks result = new A_Star_Landmarks(landmarks, distanceFrom, distanceTo, timeFrom, timeTo);
+		if(file != null) result.save(map, file);
+		return result;
+	}
+
+	/**
+	 * Gets the amount of landmarks.
+	 *
+	 * @return the amount
+	 */
+	public int getCount(){
+		return landmarks_.length;
+	}
+
+	/**
+	 * Calculates a lower bound for the costs from a node to the end of the route. By time, the tables assume that every street
+	 * is driven at its own maximum speed. A vehicle which is slower than that needs at least the length divided by its maximum
+	 * speed, so the larger one of both bounds is used.
+	 *
+	 * @param mode			<code>0</code> for the length in cm, <code>1</code> for the time in s
+	 * @param node			the node
+	 * @param targets		the IDs of the nodes at which the route may end
+	 * @param targetCosts	the costs added when the route ends at each of these nodes
+	 * @param targetCount	the amount of target nodes
+	 * @param maxSpeed		the maximum speed of the vehicle in cm/s (only used in <code>mode=1</code>)
+	 *
+	 * @return the lower bound (<code>0</code> if nothing is known about the node)
+	 */
+	public double estimate(int mode, Node node, int[] targets, double[] targetCosts, int targetCount, int maxSpeed){
+		int id = node.getNodeID(), i, target;
+		double result = Double.POSITIVE_INFINITY, bound, tmp;
+		if(landmarks_.length == 0) return 0;
+		for(i = 0; i < targetCount; ++i){
+			target = targets[i];
+			if(id >= distanceFrom_[0].length || target >= distanceFrom_[0].length) return 0;
+			bound = estimateDistance(id, target) - DISTANCE_SLACK;
+			if(mode == 1){
+				bound /= maxSpeed;
+				tmp = estimateTime(id, target) - TIME_SLACK;
+				if(tmp > bound) bound = tmp;
+			}
+			if(bound < 0) bound = 0;
+			bound += targetCosts[i];
+			if(bound < result) result = bound;
+		}
+		if(result == Double.POSITIVE_INFINITY) return 0;
+		return result;
+	}
+
+	/**
+	 * Calculates a lower bound for the length of the path between two nodes.
+	 *
+	 * @param id		the ID of the node where the path starts
+	 * @param target	the ID of the node where the path ends
+	 *
+	 * @return the lower bound in cm
+	 */
+	private double estimateDistance(int id, int target){
+		double bound = 0, tmp;
+		int[] from, to;
+		for(int j = 0; j < landmarks_.length; ++j){
+			from = distanceFrom_[j];
+			to = distanceTo_[j];
+			if(from[target] != UNREACHABLE && from[id] != UNREACHABLE){
+				tmp = (double)from[target] - from[id];
+				if(tmp > bound) bound = tmp;
+			}
+			if(to[id] != UNREACHABLE && to[target] != UNREACHABLE){
+				tmp = (double)to[id] - to[target];
+				if(tmp > bound) bound = tmp;
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * Calculates a lower bound for the time of the path between two nodes if every street is driven at its maximum speed.
+	 *
+	 * @param id		the ID of the node where the path starts
+	 * @param target	the ID of the node where the path ends
+	 *
+	 * @return the lower bound in s
+	 */
+	private double estimateTime(int id, int target){
+		double bound = 0, tmp;
+		float[] from, to;
+		for(int j = 0; j < landmarks_.length; ++j){
+			from = timeFrom_[j];
+			to = timeTo_[j];
+			tmp = (double)from[target] - from[id];		// NaN if both are unreachable
+			if(tmp > bound && tmp != Double.POSITIVE_INFINITY) bound = tmp;
+			tmp = (double)to[id] - to[target];
+			if(tmp > bound && tmp != Double.POSITIVE_INFINITY) bound = tmp;
+		}
+		return bound;
+	}
+
+	/**
+	 * Updates the tables after a street has been added to the map. A new street can only make paths shorter, so only the
+	 * nodes which can now be reached faster over the new street are updated. Must not be called while routes are calculated.
+	 *
+	 * @param street	the new street
+	 */
+	public synchronized void signalStreetAdded(Street street){
+		int maxID = Math.max(street.getStartNode().getNodeID(), street.getEndNode().getNodeID());
+		int i;
+		if(landmarks_.length > 0 && maxID >= distanceFrom_[0].length){
+			int oldLength = distanceFrom_[0].length;
+			for(i = 0; i < landmarks_.length; ++i){
+				distanceFrom_[i] = Arrays.copyOf(distanceFrom_[i], maxID + 1);
+				distanceTo_[i] = Arrays.copyOf(distanceTo_[i], maxID + 1);
+				timeFrom_[i] = Arrays.copyOf(timeFrom_[i], maxID + 1);
+				timeTo_[i] = Arrays.copyOf(timeTo_[i], maxID + 1);
+				Arrays.fill(distanceFrom_[i], oldLength, maxID + 1, UNREACHABLE);
+				Arrays.fill(distanceTo_[i], oldLength, maxID + 1, UNREACHABLE);
+				Arrays.fill(timeFrom_[i], oldLength, maxID + 1, Float.POSITIVE_INFINITY);
+				Arrays.fill(timeTo_[i], oldLength, maxID + 1, Float.POSITIVE_INFINITY);
+			}
+		}
+		Heap heap = new Heap();
+		for(i = 0; i < landmarks_.length; ++i){
+			propagate(street, i, false, 0, heap);
+			propagate(street, i, true, 0, heap);
+			propagate(street, i, false, 1, heap);
+			propagate(street, i, true, 1, heap);
+		}
+	}
+
+	/**
+	 * Saves the tables next to a map file.
+	 *
+	 * @param map	the map
+	 * @param file	the file to write to
+	 */
+	public synchronized void save(Map map, File file){
+		try{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try{
+				Node[] nodes = collectNodes(map);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(calculateFingerprint(nodes));
+				out.writeInt(nodes.length);
+				out.writeInt(landmarks_.length);
+				for(int i = 0; i < landmarks_.length; ++i){
+					out.writeInt(landmarks_[i]);
+					writeTable(out, distanceFrom_[i], nodes.length);
+					writeTable(out, distanceTo_[i], nodes.length);
+					writeTable(out, timeFrom_[i], nodes.length);
+					writeTable(out, timeTo_[i], nodes.length);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (Exception e){
+			file.delete();
+			ErrorLog.log(Messages.getString("A_Star_Landmarks.saveFailed") + file.getName(), 6, A_Star_Landmarks.class.getName(), "save", e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Updates one table after a street has been added.
+	 *
+	 * @param street	the new street
+	 * @param landmark	the number of the landmark
+	 * @param reverse	<code>false</code> for the table from the landmark, <code>true</code> for the one to the landmark
+	 * @param mode		<code>0</code> for the lengths, <code>1</code> for the times
+	 * @param heap		an empty heap to use
+	 */
+	private void propagate(Street street, int landmark, boolean reverse, int mode, Heap heap){
+		Node start = street.getStartNode(), end = street.getEndNode();
+		double weight = getWeight(street, mode);
+		if(weight == Double.POSITIVE_INFINITY) return;
+		// the new edges, seen in the direction of the search
+		relaxEdge(start, end, weight, landmark, reverse, mode, heap);
+		if(!street.isOneway()) relaxEdge(end, start, weight, landmark, reverse, mode, heap);
+		int id, i;
+		Node node, other;
+		Street[] streets;
+		double dist, newDist;
+		while(!heap.isEmpty()){
+			dist = heap.peekKey();
+			node = heap.pollNode();
+			id = node.getNodeID();
+			if(dist > getValue(landmark, reverse, mode, id)) continue;		// outdated entry
+			streets = reverse? node.getIncomingStreets() : node.getOutgoingStreets();
+			for(i = 0; i < streets.length; ++i){
+				other = (streets[i].getStartNode() == node)? streets[i].getEndNode() : streets[i].getStartNode();
+				newDist = dist + getWeight(streets[i], mode);
+				if(newDist < getValue(landmark, reverse, mode, other.getNodeID())){
+					setValue(landmark, reverse, mode, other.getNodeID(), newDist);
+					heap.add(other, getValue(landmark, reverse, mode, other.getNodeID()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a new edge makes the path to a node shorter and adds the node to the heap if so.
+	 *
+	 * @param from		the node where the edge starts
+	 * @param to		the node where the edge ends
+	 * @param weight	the weight of the edge
+	 * @param landmark	the number of the landmark
+	 * @param reverse	<code>false</code> for the table from the landmark, <code>true</code> for the one to the landmark
+	 * @param mode		<code>0</code> for the lengths, <code>1</code> for the times
+	 * @param heap		the heap of the nodes to update
+	 */
+	private void relaxEdge(Node from, Node to, double weight, int landmark, boolean reverse, int mode, Heap heap){
+		if(reverse){	// the search to the landmark goes backwards
+			Node tmp = from;
+			from = to;
+			to = tmp;
+		}
+		double dist = getValue(landmark, reverse, mode, from.getNodeID());
+		if(dist == Double.POSITIVE_INFINITY) return;
+		if(dist + weight < getValue(landmark, reverse, mode, to.getNodeID())){
+			setValue(landmark, reverse, mode, to.getNodeID(), dist + weight);
+			heap.add(to, getValue(landmark, reverse, mode, to.getNodeID()));
+		}
+	}
+
+	/**
+	 * Gets a value of a table.
+	 *
+	 * @param landmark	the number of the landmark
+	 * @param reverse	<code>false</code> for the table from the landmark, <code>true</code> for the one to the landmark
+	 * @param mode		<code>0</code> for the lengths, <code>1</code> for the times
+	 * @param id		the ID of the node
+	 *
+	 * @return the value or {@link Double#POSITIVE_INFINITY} if the node is unreachable
+	 */
+	private double getValue(int landmark, boolean reverse, int mode, int id){
+		if(mode == 0){
+			int value = (reverse? distanceTo_ : distanceFrom_)[landmark][id];
+			if(value == UNREACHABLE) return Double.POSITIVE_INFINITY;
+			return value;
+		} else return (reverse? timeTo_ : timeFrom_)[landmark][id];
+	}
+
+	/**
+	 * Sets a value of a table.
+	 *
+	 * @param landmark	the number of the landmark
+	 * @param reverse	<code>false</code> for the table from the landmark, <code>true</code> for the one to the landmark
+	 * @param mode		<code>0</code> for the lengths, <code>1</code> for the times
+	 * @param id		the ID of the node
+	 * @param value		the new value
+	 */
+	private void setValue(int landmark, boolean reverse, int mode, int id, double value){
+		if(mode == 0) (reverse? distanceTo_ : distanceFrom_)[landmark][id] = toInt(value);
+		else (reverse? timeTo_ : timeFrom_)[landmark][id] = (float)value;
+	}
+
+	/**
+	 * Gets the weight of a street.
+	 *
+	 * @param street	the street
+	 * @param mode		<code>0</code> for the length, <code>1</code> for the time at the maximum speed of the street
+	 *
+	 * @return the weight
+	 */
+	private static double getWeight(Street street, int mode){
+		if(mode == 0) return street.getLength();
+		else if(street.getSpeed() > 0) return street.getLength()/street.getSpeed();
+		else return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Calculates the shortest paths from or to a node with Dijkstra's algorithm.
+	 *
+	 * @param nodes		the nodes by their ID (<code>null</code> for unused IDs)
+	 * @param source	the ID of the node
+	 * @param reverse	<code>false</code> for the paths from the node, <code>true</code> for the paths to the node
+	 * @param mode		<code>0</code> for the lengths, <code>1</code> for the times
+	 * @param distances	the array to store the results in ({@link Double#POSITIVE_INFINITY} for unreachable nodes)
+	 */
+	private static void search(Node[] nodes, int source, boolean reverse, int mode, double[] distances){
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		Heap heap = new Heap();
+		distances[source] = 0;
+		heap.add(nodes[source], 0);
+		int i;
+		Node node, other;
+		Street[] streets;
+		double dist, newDist;
+		while(!heap.isEmpty()){
+			dist = heap.peekKey();
+			node = heap.pollNode();
+			if(dist > distances[node.getNodeID()]) continue;	// outdated entry
+			streets = reverse? node.getIncomingStreets() : node.getOutgoingStreets();
+			for(i = 0; i < streets.length; ++i){
+				other = (streets[i].getStartNode() == node)? streets[i].getEndNode() : streets[i].getStartNode();
+				newDist = dist + getWeight(streets[i], mode);
+				if(newDist < distances[other.getNodeID()]){
+					distances[other.getNodeID()] = newDist;
+					heap.add(other, newDist);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the node with the largest finite distance. With the same distance, the lowest ID wins.
+	 *
+	 * @param nodes		the nodes by their ID
+	 * @param distances	the distances
+	 *
+	 * @return the ID or <code>-1</code> if all nodes have a distance of <code>0</code> or are unreachable
+	 */
+	private static int farthest(Node[] nodes, double[] distances){
+		int result = -1;
+		double max = 0;
+		for(int i = 0; i < distances.length; ++i){
+			if(nodes[i] != null && distances[i] > max && distances[i] != Double.POSITIVE_INFINITY){
+				max = distances[i];
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts a length to the value stored in the tables.
+	 *
+	 * @param value	the length in cm
+	 *
+	 * @return the rounded length or {@link #UNREACHABLE}
+	 */
+	private static int toInt(double value){
+		if(value >= UNREACHABLE) return UNREACHABLE;
+		return (int)Math.round(value);
+	}
+
+	/**
+	 * Converts lengths to a table.
+	 *
+	 * @param values	the lengths in cm
+	 *
+	 * @return the table
+	 */
+	private static int[] toInts(double[] values){
+		int[] result = new int[values.length];
+		for(int i = 0; i < values.length; ++i) result[i] = toInt(values[i]);
+		return result;
+	}
+
+	/**
+	 * Converts times to a table.
+	 *
+	 * @param values	the times in s
+	 *
+	 * @return the table
+	 */
+	private static float[] toFloats(double[] values){
+		float[] result = new float[values.length];
+		for(int i = 0; i < values.length; ++i) result[i] = (float)values[i];
+		return result;
+	}
+
+	/**
+	 * Collects the nodes of all regions by their ID.
+	 *
+	 * @param map	the map
+	 *
+	 * @return the nodes (<code>null</code> for unused IDs)
+	 */
+	private static Node[] collectNodes(Map map){
+		Region[][] regions = map.getRegions();
+		Node[] regionNodes;
+		int maxID = -1, i, j, k;
+		for(i = 0; i < regions.length; ++i){
+			for(j = 0; j < regions[i].length; ++j){
+				regionNodes = regions[i][j].getNodes();
+				for(k = 0; k < regionNodes.length; ++k){
+					if(regionNodes[k].getNodeID() > maxID) maxID = regionNodes[k].getNodeID();
+				}
+			}
+		}
+		Node[] result = new Node[maxID + 1];
+		for(i = 0; i < regions.length; ++i){
+			for(j = 0; j < regions[i].length; ++j){
+				regionNodes = regions[i][j].getNodes();
+				for(k = 0; k < regionNodes.length; ++k) result[regionNodes[k].getNodeID()] = regionNodes[k];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Calculates a fingerprint of the nodes and the streets relevant for routing.
+	 *
+	 * @param nodes	the nodes by their ID
+	 *
+	 * @return the fingerprint
+	 */
+	private static long calculateFingerprint(Node[] nodes){
+		long hash = 0xcbf29ce484222325L;
+		Street[] streets;
+		Street street;
+		int i, j;
+		hash = mix(hash, nodes.length);
+		for(i = 0; i < nodes.length; ++i){
+			if(nodes[i] == null){
+				hash = mix(hash, -1);
+				continue;
+			}
+			hash = mix(hash, nodes[i].getX());
+			hash = mix(hash, nodes[i].getY());
+			streets = nodes[i].getOutgoingStreets();
+			hash = mix(hash, streets.length);
+			for(j = 0; j < streets.length; ++j){
+				street = streets[j];
+				hash = mix(hash, ((street.getStartNode() == nodes[i])? street.getEndNode() : street.getStartNode()).getNodeID());
+				hash = mix(hash, Double.doubleToLongBits(street.getLength()));
+				hash = mix(hash, street.getSpeed());
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Adds a value to a fingerprint.
+	 *
+	 * @param hash	the fingerprint so far
+	 * @param value	the value
+	 *
+	 * @return the new fingerprint
+	 */
+	private static long mix(long hash, long value){
+		hash ^= value;
+		hash *= 0x100000001b3L;
+		return hash ^ (hash >>> 29);
+	}
+
+	/**
+	 * Reads the tables from a file.
+	 *
+	 * @param file			the file
+	 * @param length		the length of the tables (the highest node ID + 1)
+	 * @param fingerprint	the fingerprint of the map
+	 * @param count			the amount of landmarks wanted
+	 *
+	 * @return the landmarks or <code>null</code> if the file belongs to another map or has another amount of landmarks
+	 *
+	 * @throws IOException if reading fails
+	 */
+	private static A_Star_Landmarks read(File file, int length, long fingerprint, int count) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint || in.readInt() != length) return null;
+			int size = in.readInt();
+			if(size != Math.min(count, length)) return null;
+			int[] landmarks = new int[size];
+			int[][] distanceFrom = new int[size][length], distanceTo = new int[size][length];
+			float[][] timeFrom = new float[size][length], timeTo = new float[size][length];
+			int i, j;
+			for(i = 0; i < size; ++i){
+				landmarks[i] = in.readInt();
+				for(j = 0; j < length; ++j) distanceFrom[i][j] = in.readInt();
+				for(j = 0; j < length; ++j) distanceTo[i][j] = in.readInt();
+				for(j = 0; j < length; ++j) timeFrom[i][j] = in.readFloat();
+				for(j = 0; j < length; ++j) timeTo[i][j] = in.readFloat();
+			}
+			return new A_Star_Landmarks(landmarks, distanceFrom, distanceTo, timeFrom, timeTo);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a table. Entries beyond the given length (nodes which don't exist anymore) are not written.
+	 *
+	 * @param out		the stream to write to
+	 * @param values	the table
+	 * @param length	the amount of entries to write
+	 *
+	 * @throws IOException if writing fails
+	 */
+	private static void writeTable(DataOutputStream out, int[] values, int length) throws IOException{
+		for(int i = 0; i < length; ++i) out.writeInt((i < values.length)? values[i] : UNREACHABLE);
+	}
+
+	/**
+	 * Writes a table. Entries beyond the given length (nodes which don't exist anymore) are not written.
+	 *
+	 * @param out		the stream to write to
+	 * @param values	the table
+	 * @param length	the amount of entries to write
+	 *
+	 * @throws IOException if writing fails
+	 */
+	private static void writeTable(DataOutputStream out, float[] values, int length) throws IOException{
+		for(int i = 0; i < length; ++i) out.writeFloat((i < values.length)? values[i] : Float.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * A binary min-heap of nodes for the Dijkstra searches. A node may be added several times, outdated entries are skipped
+	 * when polling.
+	 */
+	private static final class Heap {
+
+		/** The nodes in heap order. */
+		private Node[] nodes_ = new Node[64];
+
+		/** The keys in heap order. */
+		private double[] keys_ = new double[64];
+
+		/** The number of elements in the heap. */
+		private int size_ = 0;
+
+		/**
+		 * Checks if this heap is empty.
+		 *
+		 * @return <code>true</code> if it's empty, else <code>false</code>
+		 */
+		boolean isEmpty(){
+			return size_ == 0;
+		}
+
+		/**
+		 * Gets the smallest key.
+		 *
+		 * @return the key
+		 */
+		double peekKey(){
+			return keys_[0];
+		}
+
+		/**
+		 * Adds a node.
+		 *
+		 * @param node	the node
+		 * @param key	the key
+		 */
+		void add(Node node, double key){
+			if(size_ == nodes_.length){
+				nodes_ = Arrays.copyOf(nodes_, size_ * 2);
+				keys_ = Arrays.copyOf(keys_, size_ * 2);
+			}
+			int pos = size_++, parent;
+			while(pos > 0){
+				parent = (pos - 1) >>> 1;
+				if(key >= keys_[parent]) break;
+				nodes_[pos] = nodes_[parent];
+				keys_[pos] = keys_[parent];
+				pos = parent;
+			}
+			nodes_[pos] = node;
+			keys_[pos] = key;
+		}
+
+		/**
+		 * Removes the node with the smallest key.
+		 *
+		 * @return the node
+		 */
+		Node pollNode(){
+			Node result = nodes_[0];
+			Node node = nodes_[--size_];
+			double key = keys_[size_];
+			nodes_[size_] = null;
+			int pos = 0, half = size_ >>> 1, child;
+			while(pos < half){
+				child = (pos << 1) + 1;
+				if(child + 1 < size_ && keys_[child + 1] < keys_[child]) ++child;
+				if(key <= keys_[child]) break;
+				nodes_[pos] = nodes_[child];
+				keys_[pos] = keys_[child];
+				pos = child;
+			}
+			if(size_ > 0){
+				nodes_[pos] = node;
+				keys_[pos] = key;
+			}
+			return result;
+		}
+	}
+}
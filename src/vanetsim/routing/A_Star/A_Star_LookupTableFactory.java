@@ -2,6 +2,7 @@ package vanetsim.routing.A_Star;
 
 import vanetsim.debug.Debug;
 import vanetsim.map.Node;
+import vanetsim.simulation.SimulationContext;
 
 import java.util.ArrayDeque;
 
@@ -13,14 +14,24 @@ import java.util.ArrayDeque;
  * which is relatively costly because of the huge amount of objects and necessary garbage collection.
  * This factory takes correctly care of multithreading so you may concurrently calculate routes. However, this may take some memory
  * as every concurrent LookupTable is completely independent and will be stored for the whole program life!<br>
+ * Each <code>SimulationContext</code> has its own factory as the size of the tables depends on its map.
  */
 public final class A_Star_LookupTableFactory{
 	
 	/** A queue with the LookupTables. */
-	private static final ArrayDeque<A_Star_LookupTable<Node, A_Star_Node>> table_ = new ArrayDeque<A_Star_LookupTable<Node, A_Star_Node>>();
+	private final ArrayDeque<A_Star_LookupTable<Node, A_Star_Node>> table_ = new ArrayDeque<A_Star_LookupTable<Node, A_Star_Node>>();
 	
 	/** A counter per LookupTable value to detect if an <code>A_Star_Node</code> in the LookupTable is from a previous run or not. */
-	private static final ArrayDeque<Integer> counter_ = new ArrayDeque<Integer>();
+	private final ArrayDeque<Integer> counter_ = new ArrayDeque<Integer>();
+	
+	/**
+	 * Gets the factory of the <code>SimulationContext</code> bound to the calling thread.
+	 * 
+	 * @return the factory of the current context
+	 */
+	public static A_Star_LookupTableFactory getInstance(){
+		return SimulationContext.current().getLookupTableFactory();
+	}
 	
 	/**
 	 * Gets a LookupTable. Don't forget to put the LookupTable back if you don't need it anymore!
@@ -29,7 +40,7 @@ public final class A_Star_LookupTableFactory{
 	 * 
 	 * @return the LookupTable
 	 */
-	public static synchronized A_Star_LookupTable<Node, A_Star_Node> getTable(int[] counter){
+	public synchronized A_Star_LookupTable<Node, A_Star_Node> getTable(int[] counter){
 		if(table_.isEmpty()){
 			counter[0] = Integer.MIN_VALUE;
 			return new A_Star_LookupTable<Node, A_Star_Node>(Node.getMaxNodeID()+1);
@@ -49,7 +60,7 @@ public final class A_Star_LookupTableFactory{
 	 * @param counter	the counter value
 	 * @param table		the LookupTable
 	 */
-	public static synchronized void putTable(int counter, A_Star_LookupTable<Node, A_Star_Node> table){
+	public synchronized void putTable(int counter, A_Star_LookupTable<Node, A_Star_Node> table){
 		table_.add(table);
 		counter_.add(counter);
 	}
@@ -57,7 +68,7 @@ public final class A_Star_LookupTableFactory{
 	/**
 	 * Clear the cached versions. This should be done on map reload to free otherwise unnecessarily wasted memory.
 	 */
-	public static synchronized void clear(){
+	public synchronized void clear(){
 
 		Debug.callFunctionInfo("A_Star_LookupTableFactory","clear()",Debug.ISLOGGED);
 
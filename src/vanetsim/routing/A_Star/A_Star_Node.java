@@ -30,6 +30,9 @@ public final class A_Star_Node implements Comparable<Object>{
 	
 	/** A value to determine if this node is valid for the current routing calculation (if not, this node must be reset). */
 	private int counter_ = 0;
+
+	/** The position of this node in the <code>A_Star_OpenList</code> or <code>-1</code> if it isn't in the list. */
+	private int queueIndex_ = -1;
 	
 	/**
 	 * Instantiates a new A_Star_Node from a node existing on the map.
@@ -71,6 +74,7 @@ public final class A_Star_Node implements Comparable<Object>{
 		f_ = 0;
 		inOpenList_ = false;
 		inClosedList_ = false;
+		queueIndex_ = -1;
 	}
 	
 	/**
@@ -118,6 +122,24 @@ public final class A_Star_Node implements Comparable<Object>{
 		inOpenList_ = state;
 	}
 	
+	/**
+	 * Gets the position of this node in the <code>A_Star_OpenList</code>. Only used by the list itself.
+	 * 
+	 * @return the position or <code>-1</code> if it isn't in the list
+	 */
+	int getQueueIndex(){
+		return queueIndex_;
+	}
+	
+	/**
+	 * Sets the position of this node in the <code>A_Star_OpenList</code>. Only used by the list itself.
+	 * 
+	 * @param index	the position or <code>-1</code> if it isn't in the list anymore
+	 */
+	void setQueueIndex(int index){
+		queueIndex_ = index;
+	}
+	
 	/**
 	 * Gets the f value (=approximated distance/time/penalty... from this point to the target).
 	 * 
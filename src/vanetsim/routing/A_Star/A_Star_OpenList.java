@@ -0,0 +1,52 @@
+package vanetsim.routing.A_Star;
+
+/**
+ * The OpenList of the <code>A_Star_Algorithm</code> (=nodes which need to be evaluated), ordered by the f-value of the nodes.
+ * The position of a node in the list is stored in the node itself (see <code>A_Star_Node.getQueueIndex()</code>), so a node
+ * may only be in one list at the same time.
+ */
+public interface A_Star_OpenList {
+
+	/**
+	 * Inserts a node.
+	 *
+	 * @param node	the node to add
+	 */
+	public void add(A_Star_Node node);
+
+	/**
+	 * Call this function after you have set a node to a smaller f-value. This saves from first removing
+	 * and later adding the element.
+	 *
+	 * @param node	the node which has a smaller f-value
+	 */
+	public void signalDecreasedF(A_Star_Node node);
+
+	/**
+	 * Checks if this list is empty.
+	 *
+	 * @return <code>true</code> if it's empty, else <code>false</code>
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * Gets the node with the smallest f-value without removing it.
+	 *
+	 * @return the node or <code>null</code> if the list is empty
+	 */
+	public A_Star_Node peek();
+
+	/**
+	 * Polls (get and remove) the node with the smallest f-value.
+	 *
+	 * @return the node or <code>null</code> if the list is empty
+	 */
+	public A_Star_Node poll();
+
+	/**
+	 * Removes a node from this list.
+	 *
+	 * @param node	the node to be removed from this list, if present
+	 */
+	public void remove(A_Star_Node node);
+}
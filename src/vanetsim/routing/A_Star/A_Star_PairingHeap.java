@@ -0,0 +1,222 @@
+package vanetsim.routing.A_Star;
+
+import java.util.Arrays;
+
+/**
+ * An OpenList for the <code>A_Star_Algorithm</code> based on a pairing heap (two-pass variant). Adding a node and decreasing
+ * its f-value take constant time, only polling takes amortized logarithmic time. When routing by time, the f-value of a node
+ * is lowered often, so this is faster than the binary heap of the <code>A_Star_Queue</code> on large maps.
+ * To avoid creating an object per entry, the tree is stored in int arrays which are indexed by the position stored in the
+ * nodes (see <code>A_Star_Node.getQueueIndex()</code>). Free positions are reused.
+ */
+public final class A_Star_PairingHeap implements A_Star_OpenList{
+
+	/** The nodes at each position. */
+	private A_Star_Node[] nodes_;
+
+	/** The position of the first child of each position or <code>-1</code>. */
+	private int[] child_;
+
+	/** The position of the next sibling of each position or <code>-1</code>. Also links the free positions. */
+	private int[] next_;
+
+	/** The position of the previous sibling of each position, the parent for a first child or <code>-1</code> for the root. */
+	private int[] previous_;
+
+	/** The roots merged in the first pass when polling. */
+	private int[] pairs_;
+
+	/** The position of the root or <code>-1</code> if the heap is empty. */
+	private int root_ = -1;
+
+	/** The first free position which has been used before or <code>-1</code>. */
+	private int free_ = -1;
+
+	/** The amount of positions used so far. */
+	private int used_ = 0;
+
+	/** The number of elements in the heap. */
+	private int size_ = 0;
+
+	/**
+	 * Creates a new A_Star_PairingHeap with 100 elements starting capacity.
+	 */
+	public A_Star_PairingHeap() {
+		nodes_ = new A_Star_Node[100];
+		child_ = new int[100];
+		next_ = new int[100];
+		previous_ = new int[100];
+		pairs_ = new int[100];
+	}
+
+	/**
+	 * Inserts the specified element into this heap.
+	 *
+	 * @param node	the node to add
+	 */
+	public void add(A_Star_Node node) {
+		int pos;
+		if (free_ != -1){
+			pos = free_;
+			free_ = next_[pos];
+		} else {
+			if (used_ == nodes_.length){
+				int newCapacity = ((used_ < 64)?((used_ + 1) * 2):((used_ / 2) * 3));
+				nodes_ = Arrays.copyOf(nodes_, newCapacity);
+				child_ = Arrays.copyOf(child_, newCapacity);
+				next_ = Arrays.copyOf(next_, newCapacity);
+				previous_ = Arrays.copyOf(previous_, newCapacity);
+				pairs_ = new int[newCapacity];
+			}
+			pos = used_++;
+		}
+		nodes_[pos] = node;
+		child_[pos] = -1;
+		next_[pos] = -1;
+		previous_[pos] = -1;
+		node.setQueueIndex(pos);
+		++size_;
+		root_ = meld(root_, pos);
+	}
+
+	/**
+	 * Call this function after you have set a node to a smaller f-value. The subtree of the node is cut off and
+	 * merged with the root.
+	 *
+	 * @param node	the node which has a smaller f-value
+	 */
+	public void signalDecreasedF(A_Star_Node node) {
+		int pos = node.getQueueIndex();
+		if (pos < 0 || pos >= used_ || nodes_[pos] != node || pos == root_) return;
+		cut(pos);
+		root_ = meld(root_, pos);
+	}
+
+	/**
+	 * Checks if this heap is empty.
+	 *
+	 * @return <code>true</code> if it's empty, else <code>false</code>
+	 */
+	public boolean isEmpty(){
+		return (size_==0?true:false);
+	}
+
+	/**
+	 * Gets the first element without removing it.
+	 *
+	 * @return the node or <code>null</code> if the heap is empty
+	 */
+	public A_Star_Node peek() {
+		return (size_ == 0)? null : nodes_[root_];
+	}
+
+	/**
+	 * Polls (get and remove) the first element.
+	 *
+	 * @return the node
+	 */
+	public A_Star_Node poll() {
+		if (size_ == 0) return null;
+		int pos = root_;
+		A_Star_Node result = nodes_[pos];
+		root_ = mergePairs(child_[pos]);
+		release(pos);
+		return result;
+	}
+
+	/**
+	 * Removes a node from this heap.
+	 *
+	 * @param node	the node to be removed from this heap, if present
+	 */
+	public void remove(A_Star_Node node) {
+		int pos = node.getQueueIndex();
+		if (pos < 0 || pos >= used_ || nodes_[pos] != node) return;
+		if (pos == root_) poll();
+		else {
+			cut(pos);
+			root_ = meld(root_, mergePairs(child_[pos]));
+			release(pos);
+		}
+	}
+
+	/**
+	 * Frees a position after its node has been removed.
+	 *
+	 * @param pos	the position
+	 */
+	private void release(int pos) {
+		nodes_[pos].setQueueIndex(-1);
+		nodes_[pos] = null;
+		next_[pos] = free_;
+		free_ = pos;
+		--size_;
+	}
+
+	/**
+	 * Cuts a subtree from its parent.
+	 *
+	 * @param pos	the root of the subtree (not the root of the heap)
+	 */
+	private void cut(int pos) {
+		int previous = previous_[pos];
+		if (child_[previous] == pos) child_[previous] = next_[pos];	// first child
+		else next_[previous] = next_[pos];
+		if (next_[pos] != -1) previous_[next_[pos]] = previous;
+		next_[pos] = -1;
+		previous_[pos] = -1;
+	}
+
+	/**
+	 * Merges two trees. The root with the larger f-value becomes the first child of the other one.
+	 *
+	 * @param a	the root of the first tree (without siblings) or <code>-1</code>
+	 * @param b	the root of the second tree (without siblings) or <code>-1</code>
+	 *
+	 * @return the root of the merged tree
+	 */
+	private int meld(int a, int b) {
+		if (a == -1) return b;
+		if (b == -1) return a;
+		if (nodes_[b].getF() < nodes_[a].getF()){
+			int tmp = a;
+			a = b;
+			b = tmp;
+		}
+		int first = child_[a];
+		next_[b] = first;
+		if (first != -1) previous_[first] = b;
+		previous_[b] = a;
+		child_[a] = b;
+		return a;
+	}
+
+	/**
+	 * Merges a list of siblings into one tree: first in pairs from left to right, then the pairs from right to left.
+	 *
+	 * @param first	the first sibling or <code>-1</code>
+	 *
+	 * @return the root of the merged tree or <code>-1</code>
+	 */
+	private int mergePairs(int first) {
+		if (first == -1) return -1;
+		int count = 0, a, b, pos = first;
+		while (pos != -1){
+			a = pos;
+			b = next_[a];
+			if (b == -1){
+				pos = -1;
+			} else {
+				pos = next_[b];
+				next_[b] = -1;
+				previous_[b] = -1;
+			}
+			next_[a] = -1;
+			previous_[a] = -1;
+			pairs_[count++] = meld(a, b);
+		}
+		int result = pairs_[--count];
+		while (count > 0) result = meld(pairs_[--count], result);
+		return result;
+	}
+}
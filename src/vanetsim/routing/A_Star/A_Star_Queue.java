@@ -36,10 +36,12 @@ import java.util.Arrays;
  * This class is almost the same as <code>java.util.PriorityQueue</code> from Sun OpenJDK 1.7 but is
  * simplified for the specific usage as a high-performance queue for the <code>A_Star_Algo</code>.
  * It also has an added feature to change the value of an element without needing to readd.
+ * Each node knows its position in the heap array, so decreasing the f-value of a node or removing it
+ * doesn't need to search for it.
  * It only includes the functions needed for this algorithm and thus cannot be used as a multi-purpose
  * container anymore!
  */
-public final class A_Star_Queue{
+public final class A_Star_Queue implements A_Star_OpenList{
 	
 	/** The queue is represented by an array (binary heap). */
 	private A_Star_Node[] queue_;
@@ -76,20 +78,10 @@ public final class A_Star_Queue{
 			queue_ = Arrays.copyOf(queue_, newCapacity);
 		}
 		size_ = i + 1;
-		if (i == 0) queue_[0] = node;
-		else {
-			// code from siftup-function
-			A_Star_Node e;
-			int parent;
-			while (i > 0) {
-				parent = (i - 1) >>> 1;
-				e = queue_[parent];
-				if (node.getF() >= e.getF()) break;
-				queue_[i] = e;
-				i = parent;
-			}
-			queue_[i] = node;
-		}
+		if (i == 0){
+			queue_[0] = node;
+			node.setQueueIndex(0);
+		} else siftUp(i, node);
 	}
 
 	/**
@@ -99,22 +91,8 @@ public final class A_Star_Queue{
 	 * @param node	the node which has a smaller f-value
 	 */
 	public void signalDecreasedF(A_Star_Node node) {
-		for (int i = 0; i < size_; ++i) {
-			if (node == queue_[i]){
-				// code from siftup-function
-				A_Star_Node e;
-				int parent;
-				while (i > 0) {
-					parent = (i - 1) >>> 1;
-					e = queue_[parent];
-					if (node.getF() >= e.getF()) break;
-					queue_[i] = e;
-					i = parent;
-				}
-				queue_[i] = node;
-				break;
-			}
-		}
+		int i = node.getQueueIndex();
+		if (i >= 0 && i < size_ && queue_[i] == node) siftUp(i, node);
 	}
 	
 	/**
@@ -126,6 +104,15 @@ public final class A_Star_Queue{
 		return (size_==0?true:false);
 	}
 
+	/**
+	 * Gets the first element without removing it.
+	 * 
+	 * @return the node or <code>null</code> if the queue is empty
+	 */
+	public A_Star_Node peek() {
+		return (size_ == 0)? null : queue_[0];
+	}
+
 	/**
 	 * Polls (get and remove) the first element.
 	 * 
@@ -137,23 +124,8 @@ public final class A_Star_Queue{
 		A_Star_Node result = queue_[0];
 		A_Star_Node node = queue_[s];
 		queue_[s] = null;
-		if (s != 0){
-			// code from siftdown-function
-			int pos = 0;
-			int half = size_ >>> 1;        // loop while a non-leaf
-			A_Star_Node c;
-			int child;
-			while (pos < half) {
-				child = (pos << 1) + 1; // assume left child is least
-				c = queue_[child];
-				int right = child + 1;
-				if (right < size_ && c.getF() > queue_[right].getF()) c = queue_[child = right];
-				if (node.getF() <= c.getF()) break;
-				queue_[pos] = c;
-				pos = child;
-			}
-			queue_[pos] = node;
-		}
+		result.setQueueIndex(-1);
+		if (s != 0) siftDown(0, node);
 		return result;
 	}
 	
@@ -163,17 +135,16 @@ public final class A_Star_Queue{
 	 * @param node	the node to be removed from this queue, if present
 	 */
 	public void remove(A_Star_Node node) {
-		for (int i = 0; i < size_; ++i) {
-			if (node == queue_[i]){
-				int s = --size_;
-				if (s == i) queue_[i] = null;// removed last element	
-				else {
-					A_Star_Node moved = queue_[s];
-					queue_[s] = null;
-					siftDown(i, moved);
-					if (queue_[i] == moved) siftUp(i, moved);
-				}
-			}
+		int i = node.getQueueIndex();
+		if (i < 0 || i >= size_ || queue_[i] != node) return;
+		int s = --size_;
+		node.setQueueIndex(-1);
+		if (s == i) queue_[i] = null;// removed last element
+		else {
+			A_Star_Node moved = queue_[s];
+			queue_[s] = null;
+			siftDown(i, moved);
+			if (queue_[i] == moved) siftUp(i, moved);
 		}
 	}
 
@@ -193,9 +164,11 @@ public final class A_Star_Queue{
 			e = queue_[parent];
 			if (node.getF() >= e.getF()) break;
 			queue_[pos] = e;
+			e.setQueueIndex(pos);
 			pos = parent;
 		}
 		queue_[pos] = node;
+		node.setQueueIndex(pos);
 	}
 
 	/**
@@ -217,8 +190,10 @@ public final class A_Star_Queue{
 			if (right < size_ && c.getF() > queue_[right].getF()) c = queue_[child = right];
 			if (node.getF() <= c.getF()) break;
 			queue_[pos] = c;
+			c.setQueueIndex(pos);
 			pos = child;
 		}
 		queue_[pos] = node;
+		node.setQueueIndex(pos);
 	}
 }
@@ -0,0 +1,96 @@
+package vanetsim.routing.CH;
+
+import vanetsim.map.Map;
+import vanetsim.map.Node;
+import vanetsim.map.Street;
+import vanetsim.routing.A_Star.A_Star_Algorithm;
+import vanetsim.routing.RoutingAlgorithm;
+import vanetsim.simulation.SimulationContext;
+
+import java.util.ArrayDeque;
+
+/**
+ * A routing algorithm which searches on the contraction hierarchies of the map (see <code>CH_Graph</code>). This is orders
+ * of magnitude faster than A* but only works with the weights used when building the hierarchies. So the
+ * <code>A_Star_Algorithm</code> is used instead if
+ * <ul>
+ * <li>the hierarchies are disabled (see <code>SimulationContext.setHierarchyRouting()</code>)</li>
+ * <li>there are penalties</li>
+ * <li>a vehicle routing by time is slower than the fastest street (the streets would need other weights)</li>
+ * <li>the mode is neither <code>0</code> nor <code>1</code></li>
+ * <li>the map has been changed after the hierarchies were built</li>
+ * </ul>
+ */
+public final class CH_Algorithm implements RoutingAlgorithm{
+
+	/** The algorithm used when the hierarchies can't be used. */
+	private final A_Star_Algorithm fallback_ = new A_Star_Algorithm();
+
+	/**
+	 * Instantiates a new CH_Algorithm.
+	 */
+	public CH_Algorithm(){
+	}
+
+	/**
+	 * Gets a routing result.
+	 *
+	 * @param mode				The mode in which to operate. <code>0</code> means calculating with street lengths, <code>1</code> means calculating based on speed/time
+	 * @param direction			<code>0</code>=don't care about direction, <code>-1</code>=from startNode to endNode, <code>1</code>=from endNode to startNode
+	 * @param startX			the x coordinate of the start point
+	 * @param startY			the y coordinate of the start point
+	 * @param startStreet		the street on which the start point lies
+	 * @param startStreetPos	the position measured in cm from the startNode of the <code>startStreet</code>
+	 * @param targetX			the x coordinate of the target point
+	 * @param targetY			the y coordinate of the target point
+	 * @param targetStreet		the street on which the target point lies
+	 * @param targetStreetPos	the position measured in cm from the startNode of the <code>targetStreet</code>
+	 * @param penaltyStreets	an array with all streets which have penalties.
+	 * @param penaltyDirections	an array with directions corresponding to penaltyStreets. <code>1</code> in the array means from endNode to startNode,
+	 * 							<code>0</code> means both directions and <code>-1</code> means from startNode to endNode
+	 * @param penalties			an array with all penalties measured in cm.
+	 * @param penaltySize		how many penalties exist.
+	 * @param additionalVar		can be used to set the maximum speed for calculations in <code>mode=1</code>
+	 *
+	 * @return An <code>ArrayDeque</code> for returning the result. The first element will be the start node and the last will be the end node of the routing.
+	 *
+	 * @see	vanetsim.routing.RoutingAlgorithm#getRouting(int, int, int, int, Street, double, int, int, Street, double, Street[], int[], int[], int, int)
+	 */
+	public ArrayDeque<Node> getRouting(int mode, int direction, int startX, int startY, Street startStreet, double startStreetPos, int targetX, int targetY, Street targetStreet, double targetStreetPos, Street[] penaltyStreets, int[] penaltyDirections, int[] penalties, int penaltySize, int additionalVar){
+		CH_Graph graph = null;
+		if(penaltySize == 0 && (mode == CH_Graph.MODE_DISTANCE || mode == CH_Graph.MODE_TIME) && SimulationContext.current().getHierarchyRouting()){
+			graph = Map.getInstance().prepareRoutingHierarchies().getGraph(mode);
+			if(mode == CH_Graph.MODE_TIME && additionalVar < graph.getMaxSpeed()) graph = null;
+		}
+		if(graph == null) return fallback_.getRouting(mode, direction, startX, startY, startStreet, startStreetPos, targetX, targetY, targetStreet, targetStreetPos, penaltyStreets, penaltyDirections, penalties, penaltySize, additionalVar);
+
+		int startNode = graph.getIndex(startStreet.getStartNode()), startEnd = graph.getIndex(startStreet.getEndNode());
+		int targetStart = graph.getIndex(targetStreet.getStartNode()), targetEnd = graph.getIndex(targetStreet.getEndNode());
+		if(startNode == -1 || startEnd == -1 || targetStart == -1 || targetEnd == -1) return fallback_.getRouting(mode, direction, startX, startY, startStreet, startStreetPos, targetX, targetY, targetStreet, targetStreetPos, penaltyStreets, penaltyDirections, penalties, penaltySize, additionalVar);
+
+		// the same costs for the first and the last street as in the A_Star_Algorithm
+		double startSpeed = 1, targetSpeed = 1;
+		if(mode == CH_Graph.MODE_TIME){
+			startSpeed = startStreet.getSpeed();
+			targetSpeed = targetStreet.getSpeed();
+		}
+		int[] sources = new int[2], targets = new int[2];
+		double[] sourceCosts = new double[2], targetCosts = new double[2];
+		int sourceCount = 0, targetCount = 0;
+		if(direction > -1){
+			sources[sourceCount] = startNode;
+			sourceCosts[sourceCount++] = startStreetPos/startSpeed;
+		}
+		if(direction < 1){
+			sources[sourceCount] = startEnd;
+			sourceCosts[sourceCount++] = (startStreet.getLength() - startStreetPos)/startSpeed;
+		}
+		if(!targetStreet.isOneway()){
+			targets[targetCount] = targetEnd;
+			targetCosts[targetCount++] = (targetStreet.getLength() - targetStreetPos)/targetSpeed;
+		}
+		targets[targetCount] = targetStart;
+		targetCosts[targetCount++] = targetStreetPos/targetSpeed;
+		return graph.route(sources, sourceCosts, sourceCount, targets, targetCosts, targetCount);
+	}
+}
@@ -0,0 +1,388 @@
+package vanetsim.routing.CH;
+
+import vanetsim.map.Node;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * A contraction hierarchy for one weighting of the streets (length or time). Every node has a rank and every edge
+ * (original street or shortcut) is stored at its lower node: upward edges in the forward graph, edges coming down to a node
+ * in the backward graph. A query searches upwards from the start and from the target at the same time and meets at the
+ * highest node of the shortest path, so only a tiny part of the map is visited. Shortcuts remember the node they skip so
+ * the full path can be unpacked afterwards.<br>
+ * The graph is immutable and may be used by several threads, each query gets its own <code>CH_Query</code> from a pool.
+ */
+public final class CH_Graph {
+
+	/** The weighting by length (<code>mode=0</code> of the routing). */
+	public static final int MODE_DISTANCE = 0;
+
+	/** The weighting by time (<code>mode=1</code> of the routing). */
+	public static final int MODE_TIME = 1;
+
+	/** The weighting of the edges. */
+	private final int mode_;
+
+	/** The highest speed of all streets. Queries by time are only valid for vehicles which may drive at least this fast. */
+	private final int maxSpeed_;
+
+	/** The nodes of the map. The position in this array is the index used everywhere else. */
+	private final Node[] nodes_;
+
+	/** The index of each node by its node ID or <code>-1</code>. */
+	private final int[] indexByID_;
+
+	/** The rank of each node (the order in which they were contracted). */
+	private final int[] rank_;
+
+	/** The first upward edge of each node (with one more element for the end). */
+	private final int[] forwardFirst_;
+
+	/** The higher node of each upward edge. */
+	private final int[] forwardTarget_;
+
+	/** The weight of each upward edge. */
+	private final double[] forwardWeight_;
+
+	/** The node skipped by each upward edge or <code>-1</code> for a street. */
+	private final int[] forwardMiddle_;
+
+	/** The first downward edge of each node (with one more element for the end). */
+	private final int[] backwardFirst_;
+
+	/** The higher node from which each downward edge comes. */
+	private final int[] backwardSource_;
+
+	/** The weight of each downward edge. */
+	private final double[] backwardWeight_;
+
+	/** The node skipped by each downward edge or <code>-1</code> for a street. */
+	private final int[] backwardMiddle_;
+
+	/** The workspaces of the queries which are not used right now. */
+	private final ArrayDeque<CH_Query> queries_ = new ArrayDeque<CH_Query>();
+
+	/**
+	 * Creates a hierarchy. Only used by the <code>CH_Preprocessor</code> and when reading a hierarchy.
+	 *
+	 * @param mode				the weighting of the edges
+	 * @param maxSpeed			the highest speed of all streets
+	 * @param nodes				the nodes of the map
+	 * @param rank				the rank of each node
+	 * @param forwardFirst		the first upward edge of each node
+	 * @param forwardTarget		the higher node of each upward edge
+	 * @param forwardWeight		the weight of each upward edge
+	 * @param forwardMiddle		the node skipped by each upward edge
+	 * @param backwardFirst		the first downward edge of each node
+	 * @param backwardSource	the higher node of each downward edge
+	 * @param backwardWeight	the weight of each downward edge
+	 * @param backwardMiddle	the node skipped by each downward edge
+	 */
+	CH_Graph(int mode, int maxSpeed, Node[] nodes, int[] rank, int[] forwardFirst, int[] forwardTarget, double[] forwardWeight, int[] forwardMiddle, int[] backwardFirst, int[] backwardSource, double[] backwardWeight, int[] backwardMiddle){
+		mode_ = mode;
+		maxSpeed_ = maxSpeed;
+		nodes_ = nodes;
+		rank_ = rank;
+		forwardFirst_ = forwardFirst;
+		forwardTarget_ = forwardTarget;
+		forwardWeight_ = forwardWeight;
+		forwardMiddle_ = forwardMiddle;
+		backwardFirst_ = backwardFirst;
+		backwardSource_ = backwardSource;
+		backwardWeight_ = backwardWeight;
+		backwardMiddle_ = backwardMiddle;
+		int maxID = -1, i;
+		for(i = 0; i < nodes.length; ++i){
+			if(nodes[i].getNodeID() > maxID) maxID = nodes[i].getNodeID();
+		}
+		indexByID_ = new int[maxID + 1];
+		for(i = 0; i < indexByID_.length; ++i) indexByID_[i] = -1;
+		for(i = 0; i < nodes.length; ++i) indexByID_[nodes[i].getNodeID()] = i;
+	}
+
+	/**
+	 * Gets the weighting of the edges.
+	 *
+	 * @return {@link #MODE_DISTANCE} or {@link #MODE_TIME}
+	 */
+	public int getMode(){
+		return mode_;
+	}
+
+	/**
+	 * Gets the highest speed of all streets.
+	 *
+	 * @return the speed in cm/s
+	 */
+	public int getMaxSpeed(){
+		return maxSpeed_;
+	}
+
+	/**
+	 * Gets the amount of nodes.
+	 *
+	 * @return the amount
+	 */
+	public int getNodeCount(){
+		return nodes_.length;
+	}
+
+	/**
+	 * Gets the amount of edges (streets and shortcuts).
+	 *
+	 * @return the amount
+	 */
+	public int getEdgeCount(){
+		return forwardTarget_.length + backwardSource_.length;
+	}
+
+	/**
+	 * Gets the index of a node.
+	 *
+	 * @param node	the node
+	 *
+	 * @return the index or <code>-1</code> if the node wasn't on the map when the hierarchy was built
+	 */
+	public int getIndex(Node node){
+		int id = node.getNodeID();
+		if(id < 0 || id >= indexByID_.length) return -1;
+		int index = indexByID_[id];
+		if(index == -1 || nodes_[index] != node) return -1;
+		return index;
+	}
+
+	/**
+	 * Finds the shortest path from one of the start nodes to one of the target nodes.
+	 *
+	 * @param sources		the indices of the start nodes
+	 * @param sourceCosts	the costs to reach each start node
+	 * @param sourceCount	the amount of start nodes
+	 * @param targets		the indices of the target nodes
+	 * @param targetCosts	the costs added when the path ends at each target node
+	 * @param targetCount	the amount of target nodes
+	 *
+	 * @return the nodes of the path beginning with the start node or an empty deque if there's no path
+	 */
+	public ArrayDeque<Node> route(int[] sources, double[] sourceCosts, int sourceCount, int[] targets, double[] targetCosts, int targetCount){
+		CH_Query query;
+		synchronized(queries_){
+			query = queries_.poll();
+		}
+		if(query == null) query = new CH_Query(this);
+		try{
+			return query.route(sources, sourceCosts, sourceCount, targets, targetCosts, targetCount);
+		} finally {
+			synchronized(queries_){
+				queries_.add(query);
+			}
+		}
+	}
+
+	/**
+	 * Gets the node at an index.
+	 *
+	 * @param index	the index
+	 *
+	 * @return the node
+	 */
+	Node getNode(int index){
+		return nodes_[index];
+	}
+
+	/**
+	 * Gets the rank of a node.
+	 *
+	 * @param index	the index of the node
+	 *
+	 * @return the rank
+	 */
+	int getRank(int index){
+		return rank_[index];
+	}
+
+	/**
+	 * Gets the first upward edge of a node.
+	 *
+	 * @param index	the index of the node
+	 *
+	 * @return the number of the edge
+	 */
+	int getForwardFirst(int index){
+		return forwardFirst_[index];
+	}
+
+	/**
+	 * Gets the higher node of an upward edge.
+	 *
+	 * @param edge	the number of the edge
+	 *
+	 * @return the index of the node
+	 */
+	int getForwardTarget(int edge){
+		return forwardTarget_[edge];
+	}
+
+	/**
+	 * Gets the weight of an upward edge.
+	 *
+	 * @param edge	the number of the edge
+	 *
+	 * @return the weight
+	 */
+	double getForwardWeight(int edge){
+		return forwardWeight_[edge];
+	}
+
+	/**
+	 * Gets the first downward edge of a node.
+	 *
+	 * @param index	the index of the node
+	 *
+	 * @return the number of the edge
+	 */
+	int getBackwardFirst(int index){
+		return backwardFirst_[index];
+	}
+
+	/**
+	 * Gets the higher node of a downward edge.
+	 *
+	 * @param edge	the number of the edge
+	 *
+	 * @return the index of the node
+	 */
+	int getBackwardSource(int edge){
+		return backwardSource_[edge];
+	}
+
+	/**
+	 * Gets the weight of a downward edge.
+	 *
+	 * @param edge	the number of the edge
+	 *
+	 * @return the weight
+	 */
+	double getBackwardWeight(int edge){
+		return backwardWeight_[edge];
+	}
+
+	/**
+	 * Gets the node skipped by the edge between two nodes.
+	 *
+	 * @param from	the index of the node where the edge starts
+	 * @param to	the index of the node where the edge ends
+	 *
+	 * @return the index of the skipped node or <code>-1</code> if the edge is a street
+	 */
+	int getMiddle(int from, int to){
+		int i;
+		if(rank_[from] < rank_[to]){
+			for(i = forwardFirst_[from]; i < forwardFirst_[from + 1]; ++i){
+				if(forwardTarget_[i] == to) return forwardMiddle_[i];
+			}
+		} else {
+			for(i = backwardFirst_[to]; i < backwardFirst_[to + 1]; ++i){
+				if(backwardSource_[i] == from) return backwardMiddle_[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes this hierarchy. The nodes are not written, they are given when reading.
+	 *
+	 * @param out	the stream to write to
+	 *
+	 * @throws IOException if writing fails
+	 */
+	void write(DataOutputStream out) throws IOException{
+		out.writeInt(mode_);
+		out.writeInt(maxSpeed_);
+		out.writeInt(nodes_.length);
+		writeInts(out, rank_);
+		writeInts(out, forwardFirst_);
+		writeInts(out, forwardTarget_);
+		writeDoubles(out, forwardWeight_);
+		writeInts(out, forwardMiddle_);
+		writeInts(out, backwardFirst_);
+		writeInts(out, backwardSource_);
+		writeDoubles(out, backwardWeight_);
+		writeInts(out, backwardMiddle_);
+	}
+
+	/**
+	 * Reads a hierarchy written by {@link #write(DataOutputStream)}.
+	 *
+	 * @param in	the stream to read from
+	 * @param nodes	the nodes of the map in the same order as when the hierarchy was written
+	 *
+	 * @return the hierarchy
+	 *
+	 * @throws IOException if reading fails or the hierarchy doesn't fit to the nodes
+	 */
+	static CH_Graph read(DataInputStream in, Node[] nodes) throws IOException{
+		int mode = in.readInt();
+		int maxSpeed = in.readInt();
+		if(in.readInt() != nodes.length) throw new IOException("wrong node count"); //$NON-NLS-1$
+		return new CH_Graph(mode, maxSpeed, nodes, readInts(in), readInts(in), readInts(in), readDoubles(in), readInts(in), readInts(in), readInts(in), readDoubles(in), readInts(in));
+	}
+
+	/**
+	 * Writes an array with its length.
+	 *
+	 * @param out		the stream to write to
+	 * @param values	the array
+	 *
+	 * @throws IOException if writing fails
+	 */
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException{
+		out.writeInt(values.length);
+		for(int i = 0; i < values.length; ++i) out.writeInt(values[i]);
+	}
+
+	/**
+	 * Writes an array with its length.
+	 *
+	 * @param out		the stream to write to
+	 * @param values	the array
+	 *
+	 * @throws IOException if writing fails
+	 */
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException{
+		out.writeInt(values.length);
+		for(int i = 0; i < values.length; ++i) out.writeDouble(values[i]);
+	}
+
+	/**
+	 * Reads an array written by {@link #writeInts(DataOutputStream, int[])}.
+	 *
+	 * @param in	the stream to read from
+	 *
+	 * @return the array
+	 *
+	 * @throws IOException if reading fails
+	 */
+	private static int[] readInts(DataInputStream in) throws IOException{
+		int[] values = new int[in.readInt()];
+		for(int i = 0; i < values.length; ++i) values[i] = in.readInt();
+		return values;
+	}
+
+	/**
+	 * Reads an array written by {@link #writeDoubles(DataOutputStream, double[])}.
+	 *
+	 * @param in	the stream to read from
+	 *
+	 * @return the array
+	 *
+	 * @throws IOException if reading fails
+	 */
+	private static double[] readDoubles(DataInputStream in) throws IOException{
+		double[] values = new double[in.readInt()];
+		for(int i = 0; i < values.length; ++i) values[i] = in.readDouble();
+		return values;
+	}
+}
@@ -0,0 +1,160 @@
+package vanetsim.routing.CH;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of node indices ordered by a <code>double</code> key. Each index may only be in the heap once and
+ * its position is stored, so the key of an index can be changed without searching it. Used by the preprocessing and
+ * the queries of the contraction hierarchies.
+ */
+final class CH_Heap {
+
+	/** The indices in heap order. */
+	private int[] heap_;
+
+	/** The keys in heap order. */
+	private double[] keys_;
+
+	/** The position of each index in the heap or <code>-1</code> if it isn't in the heap. */
+	private final int[] positions_;
+
+	/** The number of elements in the heap. */
+	private int size_ = 0;
+
+	/**
+	 * Creates a new heap.
+	 *
+	 * @param capacity	the amount of indices (<code>0</code> to <code>capacity - 1</code>)
+	 */
+	CH_Heap(int capacity) {
+		heap_ = new int[16];
+		keys_ = new double[16];
+		positions_ = new int[capacity];
+		for (int i = 0; i < capacity; ++i) positions_[i] = -1;
+	}
+
+	/**
+	 * Checks if this heap is empty.
+	 *
+	 * @return <code>true</code> if it's empty, else <code>false</code>
+	 */
+	boolean isEmpty() {
+		return size_ == 0;
+	}
+
+	/**
+	 * Checks if an index is in the heap.
+	 *
+	 * @param index	the index
+	 *
+	 * @return <code>true</code> if it's in the heap, else <code>false</code>
+	 */
+	boolean contains(int index) {
+		return positions_[index] != -1;
+	}
+
+	/**
+	 * Gets the smallest key.
+	 *
+	 * @return the key or {@link Double#POSITIVE_INFINITY} if the heap is empty
+	 */
+	double peekKey() {
+		if (size_ == 0) return Double.POSITIVE_INFINITY;
+		return keys_[0];
+	}
+
+	/**
+	 * Gets the index with the smallest key without removing it.
+	 *
+	 * @return the index
+	 */
+	int peek() {
+		return heap_[0];
+	}
+
+	/**
+	 * Adds an index or changes its key if it's already in the heap.
+	 *
+	 * @param index	the index
+	 * @param key	the key
+	 */
+	void update(int index, double key) {
+		int pos = positions_[index];
+		if (pos == -1){
+			if (size_ == heap_.length){
+				int newCapacity = (size_ / 2) * 3 + 16;
+				heap_ = Arrays.copyOf(heap_, newCapacity);
+				keys_ = Arrays.copyOf(keys_, newCapacity);
+			}
+			siftUp(size_++, index, key);
+		} else if (key < keys_[pos]) siftUp(pos, index, key);
+		else siftDown(pos, index, key);
+	}
+
+	/**
+	 * Removes the index with the smallest key.
+	 *
+	 * @return the index
+	 */
+	int poll() {
+		int result = heap_[0];
+		positions_[result] = -1;
+		int s = --size_;
+		if (s > 0) siftDown(0, heap_[s], keys_[s]);
+		return result;
+	}
+
+	/**
+	 * Removes all elements.
+	 */
+	void clear() {
+		for (int i = 0; i < size_; ++i) positions_[heap_[i]] = -1;
+		size_ = 0;
+	}
+
+	/**
+	 * Moves an element up until its key isn't smaller than the key of its parent.
+	 *
+	 * @param pos	the position to fill
+	 * @param index	the index of the element
+	 * @param key	the key of the element
+	 */
+	private void siftUp(int pos, int index, double key) {
+		int parent;
+		while (pos > 0) {
+			parent = (pos - 1) >>> 1;
+			if (key >= keys_[parent]) break;
+			heap_[pos] = heap_[parent];
+			keys_[pos] = keys_[parent];
+			positions_[heap_[pos]] = pos;
+			pos = parent;
+		}
+		heap_[pos] = index;
+		keys_[pos] = key;
+		positions_[index] = pos;
+	}
+
+	/**
+	 * Moves an element down until its key isn't larger than the keys of its children.
+	 *
+	 * @param pos	the position to fill
+	 * @param index	the index of the element
+	 * @param key	the key of the element
+	 */
+	private void siftDown(int pos, int index, double key) {
+		int half = size_ >>> 1, child, right;
+		while (pos < half) {
+			child = (pos << 1) + 1;
+			right = child + 1;
+			if (right < size_ && keys_[right] < keys_[child]) child = right;
+			if (key <= keys_[child]) break;
+			heap_[pos] = heap_[child];
+			keys_[pos] = keys_[child];
+			positions_[heap_[pos]] = pos;
+			pos = child;
+		}
+		heap_[pos] = index;
+		keys_[pos] = key;
+		positions_[index] = pos;
+	}
+}
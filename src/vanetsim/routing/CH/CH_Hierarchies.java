@@ -0,0 +1,239 @@
+package vanetsim.routing.CH;
+
+import vanetsim.ErrorLog;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Node;
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The contraction hierarchies of a map, one for routing by distance and one for routing by time. They are built once after
+ * the map has been loaded and saved in a file next to the map file (with the extension <code>.ch</code> added). The next
+ * time the same map is loaded, they are read from this file instead. The file stores a fingerprint of the nodes and streets,
+ * so it's built again if the map has been changed.
+ */
+public final class CH_Hierarchies {
+
+	/** The first bytes of a hierarchy file. */
+	private static final int MAGIC = 0x56534348;
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The hierarchy for routing by distance. */
+	private final CH_Graph distanceGraph_;
+
+	/** The hierarchy for routing by time. */
+	private final CH_Graph timeGraph_;
+
+	/**
+	 * Creates the hierarchies.
+	 *
+	 * @param distanceGraph	the hierarchy for routing by distance
+	 * @param timeGraph		the hierarchy for routing by time
+	 */
+	private CH_Hierarchies(CH_Graph distanceGraph, CH_Graph timeGraph){
+		distanceGraph_ = distanceGraph;
+		timeGraph_ = timeGraph;
+	}
+
+	/**
+	 * Reads the hierarchies of a map from the file next to it or builds them if there is no valid file.
+	 *
+	 * @param map		the map (completely loaded)
+	 * @param mapFile	the file from which the map was loaded or <code>null</code> if the hierarchies shouldn't be saved
+	 *
+	 * @return the hierarchies
+	 */
+	public static CH_Hierarchies create(Map map, File mapFile){
+		final Node[] nodes = collectNodes(map);
+		int maxID = -1, i;
+		for(i = 0; i < nodes.length; ++i){
+			if(nodes[i].getNodeID() > maxID) maxID = nodes[i].getNodeID();
+		}
+		final int[] indices = new int[maxID + 1];
+		for(i = 0; i < indices.length; ++i) indices[i] = -1;
+		for(i = 0; i < nodes.length; ++i) indices[nodes[i].getNodeID()] = i;
+		long fingerprint = calculateFingerprint(nodes, indices);
+
+		File file = null;
+		if(mapFile != null){
+			file = new File(mapFile.getPath() + ".ch"); //$NON-NLS-1$
+			if(file.isFile()){
+				try{
+					CH_Hierarchies result = read(file, nodes, fingerprint);
+					if(result != null) return result;
+				} catch (Exception e){
+					ErrorLog.log(Messages.getString("CH_Hierarchies.loadFailed") + file.getName(), 6, CH_Hierarchies.class.getName(), "create", e); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+
+		// build both hierarchies at the same time
+		final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		CH_Hierarchies result;
+		try{
+			ForkJoinTask<CH_Graph> time = pool.submit(new Callable<CH_Graph>(){
+				public CH_Graph call(){
+					return new CH_Preprocessor(CH_Graph.MODE_TIME, nodes, indices).build(pool);
+				}
+			});
+			CH_Graph distance = pool.invoke(ForkJoinTask.adapt(new Callable<CH_Graph>(){
+				public CH_Graph call(){
+					return new CH_Preprocessor(CH_Graph.MODE_DISTANCE, nodes, indices).build(pool);
+				}
+			}));
+			result = new CH_Hierarchies(distance, time.join());
+		} finally {
+			pool.shutdown();
+		}
+
+		if(file != null){
+			try{
+				result.write(file, fingerprint);
+			} catch (Exception e){
+				file.delete();
+				ErrorLog.log(Messages.getString("CH_Hierarchies.saveFailed") + file.getName(), 6, CH_Hierarchies.class.getName(), "create", e); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the hierarchy for a routing mode.
+	 *
+	 * @param mode	the mode of the routing (<code>0</code> for distance, <code>1</code> for time)
+	 *
+	 * @return the hierarchy or <code>null</code> if there is none for this mode
+	 */
+	public CH_Graph getGraph(int mode){
+		if(mode == CH_Graph.MODE_DISTANCE) return distanceGraph_;
+		else if(mode == CH_Graph.MODE_TIME) return timeGraph_;
+		else return null;
+	}
+
+	/**
+	 * Collects the nodes of all regions. The order only depends on the map file.
+	 *
+	 * @param map	the map
+	 *
+	 * @return the nodes
+	 */
+	private static Node[] collectNodes(Map map){
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		Region[][] regions = map.getRegions();
+		Node[] regionNodes;
+		int i, j, k;
+		for(i = 0; i < regions.length; ++i){
+			for(j = 0; j < regions[i].length; ++j){
+				regionNodes = regions[i][j].getNodes();
+				for(k = 0; k < regionNodes.length; ++k) nodes.add(regionNodes[k]);
+			}
+		}
+		return nodes.toArray(new Node[nodes.size()]);
+	}
+
+	/**
+	 * Calculates a fingerprint of the nodes and the streets relevant for routing.
+	 *
+	 * @param nodes		the nodes
+	 * @param indices	the index of each node by its node ID
+	 *
+	 * @return the fingerprint
+	 */
+	private static long calculateFingerprint(Node[] nodes, int[] indices){
+		long hash = 0xcbf29ce484222325L;
+		Street[] streets;
+		Street street;
+		Node other;
+		int i, j;
+		hash = mix(hash, nodes.length);
+		for(i = 0; i < nodes.length; ++i){
+			hash = mix(hash, nodes[i].getX());
+			hash = mix(hash, nodes[i].getY());
+			streets = nodes[i].getOutgoingStreets();
+			hash = mix(hash, streets.length);
+			for(j = 0; j < streets.length; ++j){
+				street = streets[j];
+				other = (street.getStartNode() == nodes[i])? street.getEndNode() : street.getStartNode();
+				hash = mix(hash, (other.getNodeID() < indices.length)? indices[other.getNodeID()] : -1);
+				hash = mix(hash, Double.doubleToLongBits(street.getLength()));
+				hash = mix(hash, street.getSpeed());
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Adds a value to a fingerprint.
+	 *
+	 * @param hash	the fingerprint so far
+	 * @param value	the value
+	 *
+	 * @return the new fingerprint
+	 */
+	private static long mix(long hash, long value){
+		hash ^= value;
+		hash *= 0x100000001b3L;
+		return hash ^ (hash >>> 29);
+	}
+
+	/**
+	 * Reads the hierarchies from a file.
+	 *
+	 * @param file			the file
+	 * @param nodes			the nodes of the map
+	 * @param fingerprint	the fingerprint of the map
+	 *
+	 * @return the hierarchies or <code>null</code> if the file belongs to another map
+	 *
+	 * @throws IOException if reading fails
+	 */
+	private static CH_Hierarchies read(File file, Node[] nodes, long fingerprint) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint) return null;
+			CH_Graph distance = CH_Graph.read(in, nodes);
+			CH_Graph time = CH_Graph.read(in, nodes);
+			if(distance.getMode() != CH_Graph.MODE_DISTANCE || time.getMode() != CH_Graph.MODE_TIME) return null;
+			return new CH_Hierarchies(distance, time);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the hierarchies to a file.
+	 *
+	 * @param file			the file
+	 * @param fingerprint	the fingerprint of the map
+	 *
+	 * @throws IOException if writing fails
+	 */
+	private void write(File file, long fingerprint) throws IOException{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			distanceGraph_.write(out);
+			timeGraph_.write(out);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,398 @@
+package vanetsim.routing.CH;
+
+import vanetsim.map.Node;
+import vanetsim.map.Street;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a <code>CH_Graph</code> by contracting the nodes of the map one after another. Contracting a node removes it from
+ * the remaining graph and adds a shortcut between two of its neighbours if the path over the node is the only shortest path
+ * between them (checked by a small Dijkstra search, the witness search). The node which adds the fewest edges is contracted
+ * next, so unimportant nodes like those in residential areas get a low rank and highways get a high one.<br>
+ * The first priorities of all nodes are calculated in parallel, the contraction itself has to be done in order.
+ */
+final class CH_Preprocessor {
+
+	/** How many nodes a witness search may settle before it gives up (and a shortcut is added to be safe). */
+	private static final int WITNESS_SETTLE_LIMIT = 500;
+
+	/** How many nodes a witness search may settle when only estimating the shortcuts for the priority of a node. */
+	private static final int ESTIMATE_SETTLE_LIMIT = 50;
+
+	/** How many nodes are handled by one task when calculating the first priorities. */
+	private static final int PARALLEL_THRESHOLD = 256;
+
+	/** The weighting of the edges. */
+	private final int mode_;
+
+	/** The nodes of the map. */
+	private final Node[] nodes_;
+
+	/** The outgoing edges of each node. */
+	private final EdgeList[] out_;
+
+	/** The incoming edges of each node. */
+	private final EdgeList[] in_;
+
+	/** How many neighbours of a node have already been contracted. */
+	private final int[] deletedNeighbours_;
+
+	/** The highest speed of all streets. */
+	private int maxSpeed_ = 0;
+
+	/** The workspace of the witness searches of each thread. */
+	private final ThreadLocal<Workspace> workspaces_ = new ThreadLocal<Workspace>(){
+		protected Workspace initialValue(){
+			return new Workspace(nodes_.length);
+		}
+	};
+
+	/**
+	 * Creates the graph which will be contracted.
+	 *
+	 * @param mode		{@link CH_Graph#MODE_DISTANCE} or {@link CH_Graph#MODE_TIME}
+	 * @param nodes		all nodes of the map
+	 * @param indices	the index of each node by its node ID
+	 */
+	CH_Preprocessor(int mode, Node[] nodes, int[] indices){
+		mode_ = mode;
+		nodes_ = nodes;
+		out_ = new EdgeList[nodes.length];
+		in_ = new EdgeList[nodes.length];
+		deletedNeighbours_ = new int[nodes.length];
+		int i, j, other;
+		double weight;
+		Street[] streets;
+		Street street;
+		for(i = 0; i < nodes.length; ++i){
+			out_[i] = new EdgeList();
+			in_[i] = new EdgeList();
+		}
+		for(i = 0; i < nodes.length; ++i){
+			streets = nodes[i].getOutgoingStreets();	// already takes care of one-way streets
+			for(j = 0; j < streets.length; ++j){
+				street = streets[j];
+				if(street.getSpeed() > maxSpeed_) maxSpeed_ = street.getSpeed();
+				if(street.getStartNode() == nodes[i]) other = indices[street.getEndNode().getNodeID()];
+				else other = indices[street.getStartNode().getNodeID()];
+				if(other == -1 || other == i) continue;
+				if(mode == CH_Graph.MODE_DISTANCE) weight = street.getLength();
+				else if(street.getSpeed() > 0) weight = street.getLength()/street.getSpeed();
+				else continue;
+				out_[i].add(other, weight, -1);
+				in_[other].add(i, weight, -1);
+			}
+		}
+	}
+
+	/**
+	 * Contracts all nodes and creates the hierarchy.
+	 *
+	 * @param pool	the pool to calculate the first priorities in
+	 *
+	 * @return the hierarchy
+	 */
+	CH_Graph build(ForkJoinPool pool){
+		int count = nodes_.length, i, j, node, rank = 0;
+		final double[] priorities = new double[count];
+		pool.invoke(new PriorityTask(priorities, 0, count));
+		CH_Heap queue = new CH_Heap(count);
+		for(i = 0; i < count; ++i) queue.update(i, priorities[i]);
+
+		int[] ranks = new int[count];
+		Workspace workspace = workspaces_.get();
+		double priority;
+		EdgeList edges;
+		while(!queue.isEmpty()){
+			node = queue.poll();
+			// lazy update: the priority may have become worse since it was calculated
+			priority = calculatePriority(node, workspace);
+			if(!queue.isEmpty() && priority > queue.peekKey()){
+				queue.update(node, priority);
+				continue;
+			}
+			contract(node, workspace, true);
+			ranks[node] = rank++;
+			// the edges of the node now only lead to higher nodes and are kept, the neighbours forget them
+			for(i = 0; i < out_[node].size_; ++i) in_[out_[node].nodes_[i]].remove(node);
+			for(i = 0; i < in_[node].size_; ++i) out_[in_[node].nodes_[i]].remove(node);
+			// the priorities of the neighbours are only updated when they are taken from the queue
+			for(j = 0; j < 2; ++j){
+				edges = (j == 0)? out_[node] : in_[node];
+				for(i = 0; i < edges.size_; ++i) ++deletedNeighbours_[edges.nodes_[i]];
+			}
+		}
+
+		// every edge is stored at its lower node: the outgoing edges as upward, the incoming ones as downward edges
+		int[] forwardFirst = new int[count + 1], backwardFirst = new int[count + 1];
+		for(i = 0; i < count; ++i){
+			forwardFirst[i + 1] = forwardFirst[i] + out_[i].size_;
+			backwardFirst[i + 1] = backwardFirst[i] + in_[i].size_;
+		}
+		int[] forwardTarget = new int[forwardFirst[count]], forwardMiddle = new int[forwardFirst[count]];
+		double[] forwardWeight = new double[forwardFirst[count]];
+		int[] backwardSource = new int[backwardFirst[count]], backwardMiddle = new int[backwardFirst[count]];
+		double[] backwardWeight = new double[backwardFirst[count]];
+		for(i = 0; i < count; ++i){
+			edges = out_[i];
+			System.arraycopy(edges.nodes_, 0, forwardTarget, forwardFirst[i], edges.size_);
+			System.arraycopy(edges.weights_, 0, forwardWeight, forwardFirst[i], edges.size_);
+			System.arraycopy(edges.middles_, 0, forwardMiddle, forwardFirst[i], edges.size_);
+			edges = in_[i];
+			System.arraycopy(edges.nodes_, 0, backwardSource, backwardFirst[i], edges.size_);
+			System.arraycopy(edges.weights_, 0, backwardWeight, backwardFirst[i], edges.size_);
+			System.arraycopy(edges.middles_, 0, backwardMiddle, backwardFirst[i], edges.size_);
+		}
+		return new CH_Graph(mode_, maxSpeed_, nodes_, ranks, forwardFirst, forwardTarget, forwardWeight, forwardMiddle, backwardFirst, backwardSource, backwardWeight, backwardMiddle);
+	}
+
+	/**
+	 * Calculates how good it would be to contract a node now. Smaller is better.
+	 *
+	 * @param node		the index of the node
+	 * @param workspace	the workspace for the witness searches
+	 *
+	 * @return the priority
+	 */
+	private double calculatePriority(int node, Workspace workspace){
+		int shortcuts = contract(node, workspace, false);
+		return 2 * (shortcuts - out_[node].size_ - in_[node].size_) + deletedNeighbours_[node];
+	}
+
+	/**
+	 * Finds the shortcuts needed when contracting a node.
+	 *
+	 * @param node		the index of the node
+	 * @param workspace	the workspace for the witness searches
+	 * @param add		<code>true</code> to add the shortcuts, <code>false</code> to only count them
+	 *
+	 * @return the amount of shortcuts
+	 */
+	private int contract(int node, Workspace workspace, boolean add){
+		EdgeList in = in_[node], out = out_[node];
+		int shortcuts = 0, i, j, source, target;
+		double maxOut = 0, weight;
+		for(j = 0; j < out.size_; ++j){
+			if(out.weights_[j] > maxOut) maxOut = out.weights_[j];
+		}
+		for(i = 0; i < in.size_; ++i){
+			source = in.nodes_[i];
+			workspace.search(source, node, in.weights_[i] + maxOut, out, add? WITNESS_SETTLE_LIMIT : ESTIMATE_SETTLE_LIMIT);
+			for(j = 0; j < out.size_; ++j){
+				target = out.nodes_[j];
+				if(target == source) continue;
+				weight = in.weights_[i] + out.weights_[j];
+				if(workspace.getDistance(target) <= weight) continue;	// there's a witness path which isn't longer
+				++shortcuts;
+				if(add){
+					out_[source].add(target, weight, node);
+					in_[target].add(source, weight, node);
+				}
+			}
+		}
+		return shortcuts;
+	}
+
+	/**
+	 * Calculates the first priorities of a range of nodes, splitting it if it's large.
+	 */
+	private final class PriorityTask extends RecursiveAction {
+
+		/** The <code>serialVersionUID</code> for serialization. */
+		private static final long serialVersionUID = 1L;
+
+		/** The array to store the priorities in. */
+		private final double[] priorities_;
+
+		/** The first node of the range. */
+		private final int from_;
+
+		/** The node after the range. */
+		private final int to_;
+
+		/**
+		 * Creates a task.
+		 *
+		 * @param priorities	the array to store the priorities in
+		 * @param from			the first node of the range
+		 * @param to			the node after the range
+		 */
+		PriorityTask(double[] priorities, int from, int to){
+			priorities_ = priorities;
+			from_ = from;
+			to_ = to;
+		}
+
+		/**
+		 * Calculates the priorities or splits the range.
+		 */
+		protected void compute(){
+			if(to_ - from_ <= PARALLEL_THRESHOLD){
+				Workspace workspace = workspaces_.get();
+				for(int i = from_; i < to_; ++i) priorities_[i] = calculatePriority(i, workspace);
+			} else {
+				int middle = (from_ + to_) >>> 1;
+				invokeAll(new PriorityTask(priorities_, from_, middle), new PriorityTask(priorities_, middle, to_));
+			}
+		}
+	}
+
+	/**
+	 * The arrays needed for a witness search.
+	 */
+	private final class Workspace {
+
+		/** The distance of each node from the start. */
+		private final double[] distances_;
+
+		/** The search in which the distance of each node was set. */
+		private final int[] stamps_;
+
+		/** The search in which each node was one of the nodes to be reached. */
+		private final int[] targetStamps_;
+
+		/** The open nodes. */
+		private final CH_Heap heap_;
+
+		/** The number of the current search. */
+		private int stamp_ = 0;
+
+		/**
+		 * Creates a workspace.
+		 *
+		 * @param count	the amount of nodes
+		 */
+		Workspace(int count){
+			distances_ = new double[count];
+			stamps_ = new int[count];
+			targetStamps_ = new int[count];
+			heap_ = new CH_Heap(count);
+		}
+
+		/**
+		 * Searches the shortest paths from a node without going over the node which is contracted. Only nodes which haven't
+		 * been contracted yet are reachable as the edges to the others have been removed.
+		 *
+		 * @param source	the index of the start node
+		 * @param excluded	the index of the node which is contracted
+		 * @param maxDist	the distance after which the search can stop
+		 * @param targets	the edges to the nodes which need to be reached. The search stops when all of them are settled.
+		 * @param limit		how many nodes may be settled
+		 */
+		void search(int source, int excluded, double maxDist, EdgeList targets, int limit){
+			if(++stamp_ == 0){
+				Arrays.fill(stamps_, 0);
+				Arrays.fill(targetStamps_, 0);
+				stamp_ = 1;
+			}
+			int remaining = 0, settled = 0, node, other, i;
+			for(i = 0; i < targets.size_; ++i){
+				if(targetStamps_[targets.nodes_[i]] != stamp_ && targets.nodes_[i] != source){
+					targetStamps_[targets.nodes_[i]] = stamp_;
+					++remaining;
+				}
+			}
+			heap_.clear();
+			stamps_[source] = stamp_;
+			distances_[source] = 0;
+			heap_.update(source, 0);
+			double dist;
+			EdgeList edges;
+			while(remaining > 0 && !heap_.isEmpty() && heap_.peekKey() <= maxDist && settled < limit){
+				node = heap_.poll();
+				++settled;
+				if(targetStamps_[node] == stamp_) --remaining;
+				edges = out_[node];
+				for(i = 0; i < edges.size_; ++i){
+					other = edges.nodes_[i];
+					if(other == excluded) continue;
+					dist = distances_[node] + edges.weights_[i];
+					if(stamps_[other] != stamp_ || dist < distances_[other]){
+						stamps_[other] = stamp_;
+						distances_[other] = dist;
+						heap_.update(other, dist);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Gets the distance of a node found by the last search. Nodes which were found but not settled may have a
+		 * distance which is too large, which only leads to an unnecessary shortcut.
+		 *
+		 * @param node	the index of the node
+		 *
+		 * @return the distance or {@link Double#POSITIVE_INFINITY} if it wasn't reached
+		 */
+		double getDistance(int node){
+			if(stamps_[node] != stamp_) return Double.POSITIVE_INFINITY;
+			return distances_[node];
+		}
+	}
+
+	/**
+	 * The edges going out from or coming into a node. Holds at most one edge to each other node.
+	 */
+	private static final class EdgeList {
+
+		/** The other node of each edge. */
+		private int[] nodes_ = new int[4];
+
+		/** The weight of each edge. */
+		private double[] weights_ = new double[4];
+
+		/** The node skipped by each edge or <code>-1</code> for a street. */
+		private int[] middles_ = new int[4];
+
+		/** The number of edges. */
+		private int size_ = 0;
+
+		/**
+		 * Adds an edge. If there already is an edge to the same node, only the shorter one is kept.
+		 *
+		 * @param node		the other node
+		 * @param weight	the weight
+		 * @param middle	the node skipped by the edge or <code>-1</code>
+		 */
+		void add(int node, double weight, int middle){
+			for(int i = 0; i < size_; ++i){
+				if(nodes_[i] == node){
+					if(weight < weights_[i]){
+						weights_[i] = weight;
+						middles_[i] = middle;
+					}
+					return;
+				}
+			}
+			if(size_ == nodes_.length){
+				nodes_ = Arrays.copyOf(nodes_, size_ * 2);
+				weights_ = Arrays.copyOf(weights_, size_ * 2);
+				middles_ = Arrays.copyOf(middles_, size_ * 2);
+			}
+			nodes_[size_] = node;
+			weights_[size_] = weight;
+			middles_[size_] = middle;
+			++size_;
+		}
+
+		/**
+		 * Removes the edge to a node if there is one. The last edge takes its place.
+		 *
+		 * @param node	the other node
+		 */
+		void remove(int node){
+			for(int i = 0; i < size_; ++i){
+				if(nodes_[i] == node){
+					--size_;
+					nodes_[i] = nodes_[size_];
+					weights_[i] = weights_[size_];
+					middles_[i] = middles_[size_];
+					return;
+				}
+			}
+		}
+	}
+}
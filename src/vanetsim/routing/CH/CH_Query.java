@@ -0,0 +1,269 @@
+package vanetsim.routing.CH;
+
+import vanetsim.map.Node;
+
+import java.util.ArrayDeque;
+
+/**
+ * The workspace of a query on a <code>CH_Graph</code>. Runs two Dijkstra searches which only follow edges to higher nodes:
+ * one from the start nodes on the upward edges and one from the target nodes on the downward edges in reverse. The best
+ * path is the one with the smallest sum of both distances at a node reached by both searches. The arrays are kept between
+ * queries and marked with a stamp, so they don't need to be cleared.
+ */
+final class CH_Query {
+
+	/** The hierarchy to search in. */
+	private final CH_Graph graph_;
+
+	/** The distance of each node from the start in the forward search. */
+	private final double[] forwardDist_;
+
+	/** The previous node of each node in the forward search or <code>-1</code> for a start node. */
+	private final int[] forwardParent_;
+
+	/** The query in which the forward distance of each node was set. */
+	private final int[] forwardStamp_;
+
+	/** The distance of each node to the target in the backward search. */
+	private final double[] backwardDist_;
+
+	/** The next node of each node in the backward search or <code>-1</code> for a target node. */
+	private final int[] backwardParent_;
+
+	/** The query in which the backward distance of each node was set. */
+	private final int[] backwardStamp_;
+
+	/** The open nodes of the forward search. */
+	private final CH_Heap forwardHeap_;
+
+	/** The open nodes of the backward search. */
+	private final CH_Heap backwardHeap_;
+
+	/** The pairs of nodes which still need to be unpacked. */
+	private int[] unpackStack_ = new int[64];
+
+	/** The number of the current query. */
+	private int stamp_ = 0;
+
+	/**
+	 * Creates a new workspace.
+	 *
+	 * @param graph	the hierarchy to search in
+	 */
+	CH_Query(CH_Graph graph){
+		graph_ = graph;
+		int count = graph.getNodeCount();
+		forwardDist_ = new double[count];
+		forwardParent_ = new int[count];
+		forwardStamp_ = new int[count];
+		backwardDist_ = new double[count];
+		backwardParent_ = new int[count];
+		backwardStamp_ = new int[count];
+		forwardHeap_ = new CH_Heap(count);
+		backwardHeap_ = new CH_Heap(count);
+	}
+
+	/**
+	 * Finds the shortest path from one of the start nodes to one of the target nodes.
+	 *
+	 * @param sources		the indices of the start nodes
+	 * @param sourceCosts	the costs to reach each start node
+	 * @param sourceCount	the amount of start nodes
+	 * @param targets		the indices of the target nodes
+	 * @param targetCosts	the costs added when the path ends at each target node
+	 * @param targetCount	the amount of target nodes
+	 *
+	 * @return the nodes of the path beginning with the start node or an empty deque if there's no path
+	 */
+	ArrayDeque<Node> route(int[] sources, double[] sourceCosts, int sourceCount, int[] targets, double[] targetCosts, int targetCount){
+		if(++stamp_ == 0){	// overflow, all old stamps would become valid again
+			for(int i = 0; i < forwardStamp_.length; ++i){
+				forwardStamp_[i] = 0;
+				backwardStamp_[i] = 0;
+			}
+			stamp_ = 1;
+		}
+		forwardHeap_.clear();
+		backwardHeap_.clear();
+		double best = Double.POSITIVE_INFINITY;
+		int meeting = -1, i, node, other, edge, end;
+		double dist;
+		for(i = 0; i < sourceCount; ++i){
+			node = sources[i];
+			if(forwardStamp_[node] == stamp_ && forwardDist_[node] <= sourceCosts[i]) continue;
+			forwardStamp_[node] = stamp_;
+			forwardDist_[node] = sourceCosts[i];
+			forwardParent_[node] = -1;
+			forwardHeap_.update(node, sourceCosts[i]);
+		}
+		for(i = 0; i < targetCount; ++i){
+			node = targets[i];
+			if(backwardStamp_[node] == stamp_ && backwardDist_[node] <= targetCosts[i]) continue;
+			backwardStamp_[node] = stamp_;
+			backwardDist_[node] = targetCosts[i];
+			backwardParent_[node] = -1;
+			backwardHeap_.update(node, targetCosts[i]);
+			if(forwardStamp_[node] == stamp_ && forwardDist_[node] + targetCosts[i] < best){
+				best = forwardDist_[node] + targetCosts[i];
+				meeting = node;
+			}
+		}
+
+		// alternate between both searches, each one stops when it can't find a better path anymore
+		boolean forward = true;
+		while(true){
+			if(forwardHeap_.peekKey() >= best) forward = false;
+			else if(backwardHeap_.peekKey() >= best) forward = true;
+			if(forward){
+				if(forwardHeap_.peekKey() >= best) break;
+				node = forwardHeap_.poll();
+				if(isStalled(node, true)) continue;
+				end = graph_.getForwardFirst(node + 1);
+				for(edge = graph_.getForwardFirst(node); edge < end; ++edge){
+					other = graph_.getForwardTarget(edge);
+					dist = forwardDist_[node] + graph_.getForwardWeight(edge);
+					if(forwardStamp_[other] != stamp_ || dist < forwardDist_[other]){
+						forwardStamp_[other] = stamp_;
+						forwardDist_[other] = dist;
+						forwardParent_[other] = node;
+						forwardHeap_.update(other, dist);
+						if(backwardStamp_[other] == stamp_ && dist + backwardDist_[other] < best){
+							best = dist + backwardDist_[other];
+							meeting = other;
+						}
+					}
+				}
+			} else {
+				if(backwardHeap_.peekKey() >= best) break;
+				node = backwardHeap_.poll();
+				if(isStalled(node, false)) continue;
+				end = graph_.getBackwardFirst(node + 1);
+				for(edge = graph_.getBackwardFirst(node); edge < end; ++edge){
+					other = graph_.getBackwardSource(edge);
+					dist = backwardDist_[node] + graph_.getBackwardWeight(edge);
+					if(backwardStamp_[other] != stamp_ || dist < backwardDist_[other]){
+						backwardStamp_[other] = stamp_;
+						backwardDist_[other] = dist;
+						backwardParent_[other] = node;
+						backwardHeap_.update(other, dist);
+						if(forwardStamp_[other] == stamp_ && forwardDist_[other] + dist < best){
+							best = forwardDist_[other] + dist;
+							meeting = other;
+						}
+					}
+				}
+			}
+			forward = !forward;
+		}
+
+		ArrayDeque<Node> result = new ArrayDeque<Node>();
+		if(meeting == -1) return result;
+
+		// the start node and the upward part of the path are unpacked from the meeting node backwards
+		ArrayDeque<Node> upward = new ArrayDeque<Node>();
+		node = meeting;
+		while(forwardParent_[node] != -1){
+			other = forwardParent_[node];
+			unpack(other, node, upward, true);
+			node = other;
+		}
+		result.add(graph_.getNode(node));
+		result.addAll(upward);
+		node = meeting;
+		while(backwardParent_[node] != -1){
+			other = backwardParent_[node];
+			unpack(node, other, result, false);
+			node = other;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if a node can be reached shorter over a higher node which has already been found (stall-on-demand). A search
+	 * only goes upwards, so the distance of such a node isn't the real one and its edges don't need to be followed.
+	 *
+	 * @param node		the index of the node
+	 * @param forward	<code>true</code> for the forward search, <code>false</code> for the backward search
+	 *
+	 * @return <code>true</code> if the node doesn't need to be expanded, else <code>false</code>
+	 */
+	private boolean isStalled(int node, boolean forward){
+		int edge, end, other;
+		if(forward){
+			// edges coming down from higher nodes to this node
+			end = graph_.getBackwardFirst(node + 1);
+			for(edge = graph_.getBackwardFirst(node); edge < end; ++edge){
+				other = graph_.getBackwardSource(edge);
+				if(forwardStamp_[other] == stamp_ && forwardDist_[other] + graph_.getBackwardWeight(edge) < forwardDist_[node]) return true;
+			}
+		} else {
+			// edges going up from this node to higher nodes
+			end = graph_.getForwardFirst(node + 1);
+			for(edge = graph_.getForwardFirst(node); edge < end; ++edge){
+				other = graph_.getForwardTarget(edge);
+				if(backwardStamp_[other] == stamp_ && backwardDist_[other] + graph_.getForwardWeight(edge) < backwardDist_[node]) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the nodes of an edge (street or shortcut) to a path, excluding its start node.
+	 *
+	 * @param from		the index of the node where the edge starts
+	 * @param to		the index of the node where the edge ends
+	 * @param path		the path to add the nodes to
+	 * @param reverse	<code>true</code> to add the nodes in reverse order at the beginning of the path (without
+	 * 					<code>from</code> but with <code>to</code>, too), <code>false</code> to add them at the end
+	 */
+	private void unpack(int from, int to, ArrayDeque<Node> path, boolean reverse){
+		int size = 0, a, b, middle;
+		if(reverse){
+			// the reverse order is the same as unpacking the second half first
+			unpackStack_[size++] = from;
+			unpackStack_[size++] = to;
+			while(size > 0){
+				b = unpackStack_[--size];
+				a = unpackStack_[--size];
+				middle = graph_.getMiddle(a, b);
+				if(middle == -1) path.addFirst(graph_.getNode(b));
+				else {
+					ensureStack(size + 4);
+					unpackStack_[size++] = a;
+					unpackStack_[size++] = middle;
+					unpackStack_[size++] = middle;
+					unpackStack_[size++] = b;
+				}
+			}
+		} else {
+			unpackStack_[size++] = from;
+			unpackStack_[size++] = to;
+			while(size > 0){
+				b = unpackStack_[--size];
+				a = unpackStack_[--size];
+				middle = graph_.getMiddle(a, b);
+				if(middle == -1) path.addLast(graph_.getNode(b));
+				else {
+					ensureStack(size + 4);
+					unpackStack_[size++] = middle;
+					unpackStack_[size++] = b;
+					unpackStack_[size++] = a;
+					unpackStack_[size++] = middle;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grows the stack used for unpacking if needed.
+	 *
+	 * @param size	the needed size
+	 */
+	private void ensureStack(int size){
+		if(size > unpackStack_.length){
+			int[] newStack = new int[Math.max(size, unpackStack_.length * 2)];
+			System.arraycopy(unpackStack_, 0, newStack, 0, unpackStack_.length);
+			unpackStack_ = newStack;
+		}
+	}
+}
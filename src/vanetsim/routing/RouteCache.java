@@ -0,0 +1,451 @@
+package vanetsim.routing;
+
+import vanetsim.ErrorLog;
+import vanetsim.localization.Messages;
+import vanetsim.map.Node;
+import vanetsim.map.Street;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Stores the routes calculated by the vehicles of a simulation. Many vehicles drive between the same waypoints and a vehicle
+ * which is recycled (see <code>Vehicle.reset()</code>) calculates the same routes again, so taking them from the cache saves
+ * most of the routing time. A route is stored by its start street, direction, target street, routing mode and speed class
+ * and by the positions on both streets, as these decide at which nodes the route starts and ends. The speed class is the
+ * maximum speed of the vehicle when routing by time (it changes the costs of the faster streets) and <code>0</code> when
+ * routing by distance. So a route from the cache is always the same as the one the routing algorithm would return.
+ * <p>
+ * Routes calculated with penalties (see <code>KnownPenalties</code>) depend on what a vehicle knows, so they are neither
+ * taken from nor put into the cache. Routes over a street are removed when a blocking starts or stops on it
+ * (see <code>StartBlocking</code> and <code>StopBlocking</code>), all routes are removed when the map or the routing settings
+ * change.
+ * <p>
+ * The cache is split into segments which are locked separately, so threads routing at the same time rarely wait for each
+ * other. Each segment is a <code>LinkedHashMap</code> in access order which evicts the route used the longest time ago when
+ * it's full. The hits and misses are counted and can be read through JMX (see <code>RouteCacheMBean</code>).
+ */
+public final class RouteCache implements RouteCacheMBean {
+
+    /** The maximum amount of routes stored if nothing else is set. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** The amount of segments. */
+    private static final int SEGMENT_COUNT = 16;
+
+    /** The segments. The segment of a route is chosen by the hash code of its key. */
+    private final Segment[] segments_ = new Segment[SEGMENT_COUNT];
+
+    /** The maximum amount of routes stored. */
+    private volatile int capacity_;
+
+    /** The maximum amount of routes stored in one segment. */
+    private volatile int segmentCapacity_;
+
+    /** Increased each time routes are removed, so that routes calculated before aren't stored anymore. */
+    private volatile int generation_ = 0;
+
+    /** How often a route was found. */
+    private final LongAdder hits_ = new LongAdder();
+
+    /** How often a route wasn't found. */
+    private final LongAdder misses_ = new LongAdder();
+
+    /** How often a route was calculated without the cache. */
+    private final LongAdder bypassed_ = new LongAdder();
+
+    /** How many routes were removed because a segment was full. */
+    private final LongAdder evicted_ = new LongAdder();
+
+    /** How many routes were removed because of a blocking. */
+    private final LongAdder invalidated_ = new LongAdder();
+
+    /** The name under which this cache is registered as MBean or <code>null</code> if it isn't registered. */
+    private ObjectName objectName_ = null;
+
+
+    /**
+     * Creates a new cache with the default capacity.
+     */
+    public RouteCache(){
+        for(int i = 0; i < SEGMENT_COUNT; ++i) segments_[i] = new Segment();
+        setCapacity(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Gets a route from the cache or calculates it with a routing algorithm and stores it. The parameters are the same as
+     * in <code>RoutingAlgorithm.getRouting()</code>.
+     *
+     * @param algorithm			the algorithm used if the route isn't in the cache
+     * @param mode				The mode in which to operate. <code>0</code> means calculating with street lengths, <code>1</code> means calculating based on speed/time
+     * @param direction			<code>0</code>=don't care about direction, <code>-1</code>=from startNode to endNode, <code>1</code>=from endNode to startNode
+     * @param startX			the x coordinate of the start point
+     * @param startY			the y coordinate of the start point
+     * @param startStreet		the street on which the start point lies
+     * @param startStreetPos	the position measured in cm from the startNode of the <code>startStreet</code>
+     * @param targetX			the x coordinate of the target point
+     * @param targetY			the y coordinate of the target point
+     * @param targetStreet		the street on which the target point lies
+     * @param targetStreetPos	the position measured in cm from the startNode of the <code>targetStreet</code>
+     * @param penaltyStreets	an array with all streets which have penalties.
+     * @param penaltyDirections	an array with directions corresponding to penaltyStreets. <code>1</code> in the array means from endNode to startNode,
+     * 							<code>0</code> means both directions and <code>-1</code> means from startNode to endNode
+     * @param penalties			an array with all penalties measured in cm.
+     * @param penaltySize		how many penalties exist.
+     * @param additionalVar		can be used to set the maximum speed for calculations in <code>mode=1</code>
+     *
+     * @return An <code>ArrayDeque</code> for returning the result. The first element will be the start node and the last will be the end node of the routing.
+     *
+     * @see vanetsim.routing.RoutingAlgorithm#getRouting(int, int, int, int, Street, double, int, int, Street, double, Street[], int[], int[], int, int)
+     */
+    public ArrayDeque<Node> getRouting(RoutingAlgorithm algorithm, int mode, int direction, int startX, int startY, Street startStreet, double startStreetPos, int targetX, int targetY, Street targetStreet, double targetStreetPos, Street[] penaltyStreets, int[] penaltyDirections, int[] penalties, int penaltySize, int additionalVar){
+        if(penaltySize > 0 || segmentCapacity_ == 0){
+            bypassed_.increment();
+            return algorithm.getRouting(mode, direction, startX, startY, startStreet, startStreetPos, targetX, targetY, targetStreet, targetStreetPos, penaltyStreets, penaltyDirections, penalties, penaltySize, additionalVar);
+        }
+        Key key = new Key(startStreet, startStreetPos, direction, targetStreet, targetStreetPos, mode, (mode == 0)? 0 : additionalVar);
+        Segment segment = segments_[(key.hashCode() & Integer.MAX_VALUE) % SEGMENT_COUNT];
+        Node[] route;
+        synchronized(segment){
+            route = segment.get(key);
+        }
+        if(route != null){
+            hits_.increment();
+            ArrayDeque<Node> result = new ArrayDeque<Node>(Math.max(route.length, 1));
+            for(int i = 0; i < route.length; ++i) result.add(route[i]);
+            return result;
+        }
+        misses_.increment();
+        int generation = generation_;
+        ArrayDeque<Node> result = algorithm.getRouting(mode, direction, startX, startY, startStreet, startStreetPos, targetX, targetY, targetStreet, targetStreetPos, penaltyStreets, penaltyDirections, penalties, penaltySize, additionalVar);
+        route = result.toArray(new Node[result.size()]);
+        synchronized(segment){
+            if(generation == generation_) segment.put(key, route);	// else the route might use a street on which a blocking has changed meanwhile
+        }
+        return result;
+    }
+
+    /**
+     * Removes all routes which start or end on a street or go over it. Called when a blocking starts or stops on the street.
+     *
+     * @param street	the street
+     */
+    public void invalidate(Street street){
+        ++generation_;
+        Iterator<Map.Entry<Key, Node[]>> iterator;
+        Map.Entry<Key, Node[]> entry;
+        for(int i = 0; i < SEGMENT_COUNT; ++i){
+            synchronized(segments_[i]){
+                iterator = segments_[i].entrySet().iterator();
+                while(iterator.hasNext()){
+                    entry = iterator.next();
+                    if(entry.getKey().startStreet_ == street || entry.getKey().targetStreet_ == street || usesStreet(entry.getValue(), street)){
+                        iterator.remove();
+                        invalidated_.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a route goes over a street. Streets connecting the same nodes can't be told apart, so these count as well.
+     *
+     * @param route		the nodes of the route
+     * @param street	the street
+     *
+     * @return <code>true</code> if two successive nodes of the route are the nodes of the street, else <code>false</code>
+     */
+    private static boolean usesStreet(Node[] route, Street street){
+        Node startNode = street.getStartNode(), endNode = street.getEndNode();
+        for(int i = 1; i < route.length; ++i){
+            if((route[i-1] == startNode && route[i] == endNode) || (route[i-1] == endNode && route[i] == startNode)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all routes.
+     */
+    public void clear(){
+        ++generation_;
+        for(int i = 0; i < SEGMENT_COUNT; ++i){
+            synchronized(segments_[i]){
+                segments_[i].clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the maximum amount of routes stored.
+     *
+     * @return the amount or <code>0</code> if the cache is switched off
+     */
+    public int getCapacity(){
+        return capacity_;
+    }
+
+    /**
+     * Sets the maximum amount of routes stored. All routes stored so far are removed.
+     *
+     * @param capacity	the amount or <code>0</code> to switch the cache off
+     */
+    public void setCapacity(int capacity){
+        if(capacity < 0) capacity = 0;
+        capacity_ = capacity;
+        segmentCapacity_ = (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+        clear();
+    }
+
+    /**
+     * Gets the amount of routes stored right now.
+     *
+     * @return the amount
+     */
+    public int getSize(){
+        int size = 0;
+        for(int i = 0; i < SEGMENT_COUNT; ++i){
+            synchronized(segments_[i]){
+                size += segments_[i].size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets how often a route was found in the cache.
+     *
+     * @return the amount of hits
+     */
+    public long getHits(){
+        return hits_.sum();
+    }
+
+    /**
+     * Gets how often a route wasn't found in the cache and had to be calculated.
+     *
+     * @return the amount of misses
+     */
+    public long getMisses(){
+        return misses_.sum();
+    }
+
+    /**
+     * Gets the share of the routes found in the cache, not counting those which bypassed it.
+     *
+     * @return the hit rate between <code>0</code> and <code>1</code>
+     */
+    public double getHitRate(){
+        long hits = hits_.sum(), total = hits + misses_.sum();
+        if(total == 0) return 0;
+        else return (double)hits / total;
+    }
+
+    /**
+     * Gets how often a route was calculated without the cache because the vehicle knew about penalties.
+     *
+     * @return the amount of routes
+     */
+    public long getBypassed(){
+        return bypassed_.sum();
+    }
+
+    /**
+     * Gets how many routes were removed because the cache was full.
+     *
+     * @return the amount of routes
+     */
+    public long getEvicted(){
+        return evicted_.sum();
+    }
+
+    /**
+     * Gets how many routes were removed because a blocking started or stopped on one of their streets.
+     *
+     * @return the amount of routes
+     */
+    public long getInvalidated(){
+        return invalidated_.sum();
+    }
+
+    /**
+     * Resets the hits, misses and the other counters.
+     */
+    public void resetStatistics(){
+        hits_.reset();
+        misses_.reset();
+        bypassed_.reset();
+        evicted_.reset();
+        invalidated_.reset();
+    }
+
+    /**
+     * Writes the hits, misses and the other counters to the log.
+     */
+    public void logStatistics(){
+        ErrorLog.log(Messages.getString("RouteCache.hits") + getHits() + Messages.getString("RouteCache.misses") + getMisses() + Messages.getString("RouteCache.hitRate") + Math.round(getHitRate() * 1000) / 10.0 + Messages.getString("RouteCache.bypassed") + getBypassed() + Messages.getString("RouteCache.evicted") + getEvicted() + Messages.getString("RouteCache.invalidated") + getInvalidated(), 2, RouteCache.class.getName(), "logStatistics", null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+    }
+
+    /**
+     * Registers this cache at the platform MBean server so that it can be read with JMX clients. A cache registered
+     * before under the same name is replaced.
+     *
+     * @param name	the name to distinguish several caches
+     *
+     * @return <code>true</code> if it was registered, else <code>false</code>
+     */
+    public synchronized boolean registerMBean(String name){
+        unregisterMBean();
+        try{
+            ObjectName objectName = new ObjectName("vanetsim:type=RouteCache,name=" + ObjectName.quote(name)); //$NON-NLS-1$
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if(server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            objectName_ = objectName;
+            return true;
+        } catch (Exception e){
+            ErrorLog.log(Messages.getString("RouteCache.registerFailed") + name, 6, RouteCache.class.getName(), "registerMBean", e); //$NON-NLS-1$ //$NON-NLS-2$
+            return false;
+        }
+    }
+
+    /**
+     * Removes this cache from the platform MBean server.
+     */
+    public synchronized void unregisterMBean(){
+        if(objectName_ != null){
+            try{
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName_);
+            } catch (Exception e){}
+            objectName_ = null;
+        }
+    }
+
+
+    /**
+     * The values a route is stored by. Streets are compared by identity as different streets between the same nodes
+     * are equal (see <code>Street.equals()</code>).
+     */
+    private static final class Key {
+
+        /** The street on which the route starts. */
+        private final Street startStreet_;
+
+        /** The position on the start street. */
+        private final double startStreetPos_;
+
+        /** The direction on the start street. */
+        private final int direction_;
+
+        /** The street on which the route ends. */
+        private final Street targetStreet_;
+
+        /** The position on the target street. */
+        private final double targetStreetPos_;
+
+        /** The routing mode. */
+        private final int mode_;
+
+        /** The speed class. */
+        private final int speedClass_;
+
+        /** The hash code, calculated once as the key is used at least twice. */
+        private final int hashCode_;
+
+        /**
+         * Creates a new key.
+         *
+         * @param startStreet		the street on which the route starts
+         * @param startStreetPos	the position on the start street
+         * @param direction			the direction on the start street
+         * @param targetStreet		the street on which the route ends
+         * @param targetStreetPos	the position on the target street
+         * @param mode				the routing mode
+         * @param speedClass		the speed class
+         */
+        Key(Street startStreet, double startStreetPos, int direction, Street targetStreet, double targetStreetPos, int mode, int speedClass){
+            startStreet_ = startStreet;
+            startStreetPos_ = startStreetPos;
+            direction_ = direction;
+            targetStreet_ = targetStreet;
+            targetStreetPos_ = targetStreetPos;
+            mode_ = mode;
+            speedClass_ = speedClass;
+            int hash = System.identityHashCode(startStreet);
+            hash = 31 * hash + System.identityHashCode(targetStreet);
+            hash = 31 * hash + Double.hashCode(startStreetPos);
+            hash = 31 * hash + Double.hashCode(targetStreetPos);
+            hash = 31 * hash + direction;
+            hash = 31 * hash + mode;
+            hash = 31 * hash + speedClass;
+            hashCode_ = hash ^ (hash >>> 16);
+        }
+
+        /**
+         * Gets the hash code.
+         *
+         * @return the hash code
+         *
+         * @see java.lang.Object#hashCode()
+         */
+        public int hashCode(){
+            return hashCode_;
+        }
+
+        /**
+         * Checks if another key describes the same route.
+         *
+         * @param other	the other key
+         *
+         * @return <code>true</code> if all values are the same, else <code>false</code>
+         *
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        public boolean equals(Object other){
+            if(other == this) return true;
+            if(!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return key.hashCode_ == hashCode_ && key.startStreet_ == startStreet_ && key.targetStreet_ == targetStreet_ && key.startStreetPos_ == startStreetPos_ && key.targetStreetPos_ == targetStreetPos_ && key.direction_ == direction_ && key.mode_ == mode_ && key.speedClass_ == speedClass_;
+        }
+    }
+
+    /**
+     * A part of the cache. Only used while locked.
+     */
+    private final class Segment extends LinkedHashMap<Key, Node[]> {
+
+        /** The <code>serialVersionUID</code> for serialization. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new segment in access order.
+         */
+        Segment(){
+            super(16, 0.75f, true);
+        }
+
+        /**
+         * Evicts the route used the longest time ago if the segment is full.
+         *
+         * @param eldest	the route used the longest time ago
+         *
+         * @return <code>true</code> if it is removed, else <code>false</code>
+         *
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        protected boolean removeEldestEntry(Map.Entry<Key, Node[]> eldest){
+            if(size() > segmentCapacity_){
+                evicted_.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package vanetsim.routing;
+
+/**
+ * The management interface of the <code>RouteCache</code>, so that the hit rate can be read and the cache resized with any JMX
+ * client (for example JConsole) while the simulation is running.
+ */
+public interface RouteCacheMBean {
+
+    /**
+     * Gets the maximum amount of routes stored.
+     *
+     * @return the amount or <code>0</code> if the cache is switched off
+     */
+    public int getCapacity();
+
+    /**
+     * Sets the maximum amount of routes stored. All routes stored so far are removed.
+     *
+     * @param capacity	the amount or <code>0</code> to switch the cache off
+     */
+    public void setCapacity(int capacity);
+
+    /**
+     * Gets the amount of routes stored right now.
+     *
+     * @return the amount
+     */
+    public int getSize();
+
+    /**
+     * Gets how often a route was found in the cache.
+     *
+     * @return the amount of hits
+     */
+    public long getHits();
+
+    /**
+     * Gets how often a route wasn't found in the cache and had to be calculated.
+     *
+     * @return the amount of misses
+     */
+    public long getMisses();
+
+    /**
+     * Gets the share of the routes found in the cache, not counting those which bypassed it.
+     *
+     * @return the hit rate between <code>0</code> and <code>1</code>
+     */
+    public double getHitRate();
+
+    /**
+     * Gets how often a route was calculated without the cache because the vehicle knew about penalties.
+     *
+     * @return the amount of routes
+     */
+    public long getBypassed();
+
+    /**
+     * Gets how many routes were removed because the cache was full.
+     *
+     * @return the amount of routes
+     */
+    public long getEvicted();
+
+    /**
+     * Gets how many routes were removed because a blocking started or stopped on one of their streets.
+     *
+     * @return the amount of routes
+     */
+    public long getInvalidated();
+
+    /**
+     * Resets the hits, misses and the other counters.
+     */
+    public void resetStatistics();
+
+    /**
+     * Removes all routes.
+     */
+    public void clear();
+}
@@ -0,0 +1,200 @@
+package vanetsim.scenario;
+
+import vanetsim.simulation.SimulationMaster;
+import vanetsim.simulation.TimingWheel;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track which vehicles of a region have work in the current step so that the phases don't need to look at all
+ * the other vehicles:
+ * <ul>
+ * <li>awake vehicles are driving (or about to start) and are processed in every step.</li>
+ * <li>sleeping vehicles wait at a waypoint. Their <code>adjustSpeed()</code> would only count down the wait time and
+ * <code>move()</code> would do nothing, so they are kept in a <code>TimingWheel</code> until the time they need to be processed again.
+ * The wait time is corrected when they wake up.</li>
+ * <li>dormant vehicles have reached their last destination and won't be recycled. They are never processed again
+ * (unless they are changed from outside, see <code>Vehicle.setCurWaitTime()</code> and <code>Vehicle.reset()</code>).</li>
+ * </ul>
+ * The awake vehicles are kept in the order of the vehicle array of the region so the results are exactly the same as
+ * when all vehicles are processed. If the vehicle array of the region changes, the set is rebuilt from the states stored
+ * in the vehicles. A set is only used by the thread working on its region.
+ */
+public final class ActiveVehicleSet {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The vehicle array of the region this set was built from. */
+    private Vehicle[] source_ = null;
+
+    /** If the set needs to be rebuilt even if the vehicle array of the region hasn't changed. */
+    private volatile boolean rebuild_ = true;
+
+    /** If recycling was enabled when the set was built. Vehicles which could be recycled are dormant if it's disabled. */
+    private boolean recyclingEnabled_ = false;
+
+    /** The indices (in <code>source_</code>) of the awake vehicles in ascending order. */
+    private int[] awake_ = new int[0];
+
+    /** The awake vehicles in the same order as <code>awake_</code>. */
+    private Vehicle[] awakeVehicles_ = new Vehicle[0];
+
+    /** The amount of awake vehicles. */
+    private int awakeCount_ = 0;
+
+    /** The indices of the sleeping vehicles, scheduled at their wake-up time. */
+    private final TimingWheel sleeping_ = new TimingWheel(SimulationMaster.TIME_PER_STEP, 0);
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Prepares a step: rebuilds the set if the vehicles of the region have changed or wakes up all sleeping vehicles which
+     * need to be processed in this step.
+     *
+     * @param vehicles			the current vehicle array of the region
+     * @param time				the simulation time at the beginning of the step
+     * @param recyclingEnabled	if vehicles may be recycled
+     *
+     * @return the amount of awake vehicles
+     */
+    public int beginStep(Vehicle[] vehicles, int time, boolean recyclingEnabled){
+        if(vehicles != source_ || rebuild_ || recyclingEnabled != recyclingEnabled_){
+            rebuild(vehicles, time, recyclingEnabled);
+            return awakeCount_;
+        }
+        int count = sleeping_.advance(time);
+        int[] woken = sleeping_.getFired();
+        for(int i = 0; i < count; ++i) vehicles[woken[i]].wakeUp(time);
+        if(count > 0) merge(woken, count);
+        return awakeCount_;
+    }
+
+    /**
+     * Puts all awake vehicles to sleep which only need to wait in the coming steps. Has to be called directly after
+     * <code>adjustSpeed()</code> was called on all awake vehicles.
+     *
+     * @param time			the simulation time at the beginning of the step
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    public void endAdjustSpeed(int time, int timePerStep){
+        int count = 0, wakeUpTime;
+        for(int i = 0; i < awakeCount_; ++i){
+            wakeUpTime = awakeVehicles_[i].sleep(time, timePerStep, recyclingEnabled_);
+            if(wakeUpTime == 0){
+                awake_[count] = awake_[i];
+                awakeVehicles_[count] = awakeVehicles_[i];
+                ++count;
+            } else if(wakeUpTime != Vehicle.DORMANT) sleeping_.schedule(wakeUpTime, awake_[i]);
+        }
+        for(int i = count; i < awakeCount_; ++i) awakeVehicles_[i] = null;
+        awakeCount_ = count;
+    }
+
+    /**
+     * Gets the awake vehicles. Only the first {@link #getAwakeCount()} entries are valid.
+     *
+     * @return the awake vehicles in the order of the vehicle array of the region
+     */
+    public Vehicle[] getAwakeVehicles(){
+        return awakeVehicles_;
+    }
+
+    /**
+     * Gets the amount of awake vehicles.
+     *
+     * @return the amount
+     */
+    public int getAwakeCount(){
+        return awakeCount_;
+    }
+
+    /**
+     * Forces a rebuild of the set in the next step, for example because a vehicle was changed from outside.
+     */
+    public void invalidate(){
+        rebuild_ = true;
+    }
+
+    /**
+     * Rebuilds the set from the states stored in the vehicles.
+     *
+     * @param vehicles			the current vehicle array of the region
+     * @param time				the simulation time at the beginning of the step
+     * @param recyclingEnabled	if vehicles may be recycled
+     */
+    private void rebuild(Vehicle[] vehicles, int time, boolean recyclingEnabled){
+        rebuild_ = false;
+        source_ = vehicles;
+        recyclingEnabled_ = recyclingEnabled;
+        sleeping_.clear(time);
+        if(awake_.length < vehicles.length){
+            awake_ = new int[vehicles.length];
+            awakeVehicles_ = new Vehicle[vehicles.length];
+        } else Arrays.fill(awakeVehicles_, null);
+        int count = 0, wakeUpTime;
+        for(int i = 0; i < vehicles.length; ++i){
+            wakeUpTime = vehicles[i].getWakeUpTime();
+            if(wakeUpTime == Vehicle.DORMANT){
+                if(vehicles[i].isDormant(recyclingEnabled)) continue;
+                vehicles[i].wakeUp(time);
+            } else if(wakeUpTime != 0){
+                if(wakeUpTime > time){
+                    sleeping_.schedule(wakeUpTime, i);
+                    continue;
+                }
+                vehicles[i].wakeUp(time);
+            }
+            awake_[count] = i;
+            awakeVehicles_[count] = vehicles[i];
+            ++count;
+        }
+        awakeCount_ = count;
+    }
+
+    /**
+     * Merges the woken vehicles into the awake vehicles so that the order of the region is kept.
+     *
+     * @param woken	the indices of the woken vehicles (sorted by this method)
+     * @param count	the amount of woken vehicles
+     */
+    private void merge(int[] woken, int count){
+        Arrays.sort(woken, 0, count);
+        int total = awakeCount_ + count;
+        int[] indices = awake_;
+        Vehicle[] vehicles = awakeVehicles_;
+        if(indices.length < total){
+            indices = new int[Math.max(total, source_.length)];
+            vehicles = new Vehicle[indices.length];
+        }
+        // merge from the back so that it also works in place
+        int i = awakeCount_ - 1, j = count - 1, k = total - 1;
+        while(j >= 0){
+            if(i >= 0 && awake_[i] > woken[j]){
+                indices[k] = awake_[i];
+                vehicles[k] = awakeVehicles_[i];
+                --i;
+            } else {
+                indices[k] = woken[j];
+                vehicles[k] = source_[woken[j]];
+                --j;
+            }
+            --k;
+        }
+        if(indices != awake_){
+            System.arraycopy(awake_, 0, indices, 0, i + 1);
+            System.arraycopy(awakeVehicles_, 0, vehicles, 0, i + 1);
+            awake_ = indices;
+            awakeVehicles_ = vehicles;
+        }
+        awakeCount_ = total;
+    }
+}
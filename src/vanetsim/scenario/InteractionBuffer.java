@@ -0,0 +1,204 @@
+package vanetsim.scenario;
+
+import vanetsim.map.Junction;
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+import vanetsim.simulation.PhasePipeline;
+
+import java.util.Arrays;
+
+/**
+ * Buffers the changes which vehicles of one region make on objects shared with other vehicles (lanes, regions and
+ * junctions) while a phase is running in the deterministic mode. Normally these changes are made directly by whichever
+ * thread gets there first, so the order of vehicles on a lane or in a region depends on the amount of threads.
+ * <br>
+ * After the phase, the changes of all regions are applied by one thread in a fixed order: sorted by the steady ID of the vehicle
+ * and in the order a single vehicle made them. As all other changes a vehicle makes only concern itself, the results are
+ * the same for any amount of threads then.
+ */
+public final class InteractionBuffer {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** Adds the vehicle to a lane container (<code>Street.addLaneObject()</code>). */
+    static final byte ADD_LANE_OBJECT = 0;
+
+    /** Removes the vehicle from a lane container (<code>Street.delLaneObject()</code>). */
+    static final byte DEL_LANE_OBJECT = 1;
+
+    /** Sorts the vehicle in its lane container after its position has changed (<code>Street.updateLaneObject()</code>). */
+    static final byte UPDATE_LANE_OBJECT = 2;
+
+    /** Moves the vehicle into the region it is in now. */
+    static final byte UPDATE_REGION = 3;
+
+    /** Recycles the vehicle (<code>Vehicle.reset()</code>). */
+    static final byte RESET = 4;
+
+    /** Allows another vehicle to pass a junction (<code>Junction.allowOtherVehicle()</code>). */
+    static final byte ALLOW_OTHER_VEHICLE = 5;
+
+    /** The vehicles which made the changes. */
+    private Vehicle[] vehicles_ = new Vehicle[16];
+
+    /** The steady IDs of the vehicles when the changes were made. */
+    private int[] keys_ = new int[16];
+
+    /** The types of the changes. */
+    private byte[] types_ = new byte[16];
+
+    /** The street or junction the change is made on. */
+    private Object[] targets_ = new Object[16];
+
+    /** The direction on the street. */
+    private boolean[] directions_ = new boolean[16];
+
+    /** The amount of buffered changes. */
+    private int size_ = 0;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Buffers a change. Synchronized as a vehicle might still be listed in the vehicle array of another region for a step.
+     *
+     * @param vehicle	the vehicle making the change
+     * @param type		the type of the change
+     * @param target	the street or junction (<code>null</code> if not needed)
+     * @param direction	the direction on the street
+     */
+    synchronized void add(Vehicle vehicle, byte type, Object target, boolean direction){
+        if(size_ == vehicles_.length){
+            int length = size_ * 2;
+            Vehicle[] newVehicles = new Vehicle[length];
+            System.arraycopy(vehicles_, 0, newVehicles, 0, size_);
+            vehicles_ = newVehicles;
+            int[] newKeys = new int[length];
+            System.arraycopy(keys_, 0, newKeys, 0, size_);
+            keys_ = newKeys;
+            byte[] newTypes = new byte[length];
+            System.arraycopy(types_, 0, newTypes, 0, size_);
+            types_ = newTypes;
+            Object[] newTargets = new Object[length];
+            System.arraycopy(targets_, 0, newTargets, 0, size_);
+            targets_ = newTargets;
+            boolean[] newDirections = new boolean[length];
+            System.arraycopy(directions_, 0, newDirections, 0, size_);
+            directions_ = newDirections;
+        }
+        vehicles_[size_] = vehicle;
+        keys_[size_] = vehicle.getSteadyID();
+        types_[size_] = type;
+        targets_[size_] = target;
+        directions_[size_] = direction;
+        ++size_;
+    }
+
+    /**
+     * Gets the amount of buffered changes.
+     *
+     * @return the amount
+     */
+    public int size(){
+        return size_;
+    }
+
+    /**
+     * Applies the buffered changes of all regions and empties the buffers. Must only be called by a single thread while no
+     * phase is running and while the changes are not buffered (see <code>SimulationContext.setDeferInteractions()</code>).
+     *
+     * @param regions		all regions of the map
+     * @param pipeline	the pipeline to which changes which couldn't be applied are reported
+     */
+    public static void applyAll(Region[][] regions, PhasePipeline pipeline){
+        int total = 0, count = 0, i, j, k;
+        InteractionBuffer buffer;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j) total += regions[i][j].getInteractionBuffer().size_;
+        }
+        if(total == 0) return;
+
+        // the buffers are collected in the fixed order of the regions. A vehicle only writes into one buffer during a phase, so
+        // sorting by steady ID and position keeps the order of its own changes.
+        InteractionBuffer[] buffers = new InteractionBuffer[total];
+        int[] entries = new int[total];
+        long[] order = new long[total];
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j){
+                buffer = regions[i][j].getInteractionBuffer();
+                for(k = 0; k < buffer.size_; ++k){
+                    buffers[count] = buffer;
+                    entries[count] = k;
+                    order[count] = ((long)buffer.keys_[k] << 32) | count;
+                    ++count;
+                }
+            }
+        }
+        Arrays.sort(order);
+        for(i = 0; i < total; ++i){
+            j = (int)(order[i] & 0xFFFFFFFFL);
+            // the try/catch-expressions are done per change so that all others are applied (same fail-safety as in the phases)
+            try{
+                buffers[j].apply(entries[j]);
+            } catch (Exception e){
+                pipeline.reportFailedChange(e);
+            }
+        }
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j) regions[i][j].getInteractionBuffer().clear();
+        }
+    }
+
+    /**
+     * Applies a single buffered change.
+     *
+     * @param entry	the index of the change
+     */
+    private void apply(int entry){
+        Vehicle vehicle = vehicles_[entry];
+        switch(types_[entry]){
+            case ADD_LANE_OBJECT:
+                ((Street)targets_[entry]).addLaneObject(vehicle, directions_[entry]);
+                break;
+
+            case DEL_LANE_OBJECT:
+                ((Street)targets_[entry]).delLaneObject(vehicle, directions_[entry]);
+                break;
+
+            case UPDATE_LANE_OBJECT:
+                ((Street)targets_[entry]).updateLaneObject(vehicle, directions_[entry], vehicle.getCurPosition());
+                break;
+
+            case UPDATE_REGION:
+                vehicle.updateRegion();
+                break;
+
+            case RESET:
+                vehicle.reset();
+                break;
+
+            case ALLOW_OTHER_VEHICLE:
+                ((Junction)targets_[entry]).allowOtherVehicle();
+                break;
+        }
+    }
+
+    /**
+     * Removes all buffered changes.
+     */
+    private void clear(){
+        for(int i = 0; i < size_; ++i){
+            vehicles_[i] = null;
+            targets_[i] = null;
+        }
+        size_ = 0;
+    }
+}
@@ -2,6 +2,11 @@ package vanetsim.scenario;
 
 import vanetsim.gui.Renderer;
 import vanetsim.map.Street;
+import vanetsim.simulation.MapIndex;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * Stores all known penalties for streets. The streets are stored together with their direction and a penalty
@@ -121,4 +126,48 @@ public class KnownPenalties{
 		routeUpdateNecessary_ = new boolean[2];
 		size = 0;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes all known penalties (see <code>Checkpoint</code>).
+	 * 
+	 * @param out	the stream to write to
+	 * @param index	the index of the map
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	public synchronized void writeState(DataOutputStream out, MapIndex index) throws IOException{
+		out.writeInt(size);
+		for(int i = 0; i < size; ++i){
+			out.writeInt(index.getStreetNumber(streets_[i]));
+			out.writeInt(directions_[i]);
+			out.writeInt(penalties_[i]);
+			out.writeInt(validUntil_[i]);
+			out.writeBoolean(routeUpdateNecessary_[i]);
+		}
+	}
+
+	/**
+	 * Replaces all known penalties with the ones written by {@link #writeState(DataOutputStream, MapIndex)}.
+	 * 
+	 * @param in	the stream to read from
+	 * @param index	the index of the map
+	 * 
+	 * @throws IOException if reading fails
+	 */
+	public synchronized void readState(DataInputStream in, MapIndex index) throws IOException{
+		size = in.readInt();
+		int length = Math.max(2, size);
+		streets_ = new Street[length];
+		directions_ = new int[length];
+		penalties_ = new int[length];
+		validUntil_ = new int[length];
+		routeUpdateNecessary_ = new boolean[length];
+		for(int i = 0; i < size; ++i){
+			streets_[i] = index.getStreet(in.readInt());
+			directions_[i] = in.readInt();
+			penalties_[i] = in.readInt();
+			validUntil_[i] = in.readInt();
+			routeUpdateNecessary_[i] = in.readBoolean();
+		}
+	}
+}
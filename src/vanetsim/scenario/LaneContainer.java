@@ -10,8 +10,12 @@ package vanetsim.scenario;
  * (for example when an overhaul occurs) you don't need to remove and re-add (which could be quite costly) but
  * rather just call <code>updatePosition()</code>. Checking for the next or previous LaneObject is O(1) and no
  * lookup is necessary (directly stored within the object).<br>
- * Insertion, removal and update is synchronized. As iterating through the objects needs to be done externally
- * (by calling <code>getNext()</code> or <code>getPrevious()</code>), it is not synchronized!
+ * Nothing is synchronized: a container has a single writer. While the phases of a step are running, only the thread
+ * working on the main region of the street changes it, all other threads hand their changes over to that region
+ * (see <code>Region.handOffLaneObject()</code>). Between the steps, the container may be changed by a single thread.
+ * Reading (by calling <code>getNext()</code> or <code>getPrevious()</code>) is safe while the speeds are adjusted as no
+ * container changes then. With the double-buffered state (see <code>LaneObject.publishState()</code>), all changes are
+ * handed over so no container changes while the vehicles are processed.
  */
 public class LaneContainer{
 
@@ -43,7 +47,8 @@ public class LaneContainer{
      *
      * @param object	the object to add
      */
-    public synchronized void addSorted(LaneObject object) {
+    public void addSorted(LaneObject object) {
+        object.publishState();	// others might read the published state of the object in the next step
         if (size_ == 0){	//empty
             head_ = tail_ = object;
         } else {
@@ -87,13 +92,29 @@ public class LaneContainer{
         ++size_;
     }
 
+    /**
+     * Adds an element at the tail without looking at its position. Only used to rebuild a container in an order which is
+     * known to be correct (see <code>Checkpoint</code>).
+     *
+     * @param object	the object to add
+     */
+    public void append(LaneObject object){
+        object.publishState();
+        object.setNext(null);
+        object.setPrevious(tail_);
+        if(size_ == 0) head_ = object;
+        else tail_.setNext(object);
+        tail_ = object;
+        ++size_;
+    }
+
     /**
      * Updates position of a LaneObject and changes the order in this LaneContainer to guarantee a consistent state.
      *
      * @param object 		the object to check
      * @param newPosition	the new position of the object
      */
-    public synchronized void updatePosition(LaneObject object, double newPosition){
+    public void updatePosition(LaneObject object, double newPosition){
         object.curPosition_ = newPosition;
         if(size_ > 1){
             LaneObject nextObject = object.getNext();
@@ -178,7 +199,7 @@ public class LaneContainer{
      *
      * @param object the object to remove
      */
-    public synchronized void remove(LaneObject object) {
+    public void remove(LaneObject object) {
         LaneObject prev = object.getPrevious();
         LaneObject next = object.getNext();
         if (next == null){
@@ -35,6 +35,24 @@ public class LaneObject{
     /** The direction of the object on the street.<br> <code>true</code> = moving from startNode to endNode<br> <code>false</code> = moving from endNode to startNode */
     protected boolean curDirection_ = true;
 
+    /** The position published in slot 0 (see {@link #publishState(int)}). */
+    private double publishedPosition0_;
+
+    /** The position published in slot 1. */
+    private double publishedPosition1_;
+
+    /** The speed published in slot 0. */
+    private double publishedSpeed0_;
+
+    /** The speed published in slot 1. */
+    private double publishedSpeed1_;
+
+    /** The lane published in slot 0. */
+    private int publishedLane0_ = 1;
+
+    /** The lane published in slot 1. */
+    private int publishedLane1_ = 1;
+
     /**
      * Calculate position on map (curX and curY). Needed for rendering, communication and so on.
      */
@@ -104,6 +122,72 @@ public class LaneObject{
         return curLane_;
     }
 
+    /**
+     * Gets the position of this object as seen by other objects.
+     *
+     * @param slot	the slot of the published state or <code>-1</code> for the current position
+     *
+     * @return the position measured in cm from startNode
+     */
+    public double getCurPosition(int slot){
+        if(slot < 0) return curPosition_;
+        else if(slot == 0) return publishedPosition0_;
+        else return publishedPosition1_;
+    }
+
+    /**
+     * Gets the speed of this object as seen by other objects.
+     *
+     * @param slot	the slot of the published state or <code>-1</code> for the current speed
+     *
+     * @return the speed in cm/s
+     */
+    public int getCurSpeed(int slot){
+        if(slot < 0) return (int)Math.round(curSpeed_);
+        else if(slot == 0) return (int)Math.round(publishedSpeed0_);
+        else return (int)Math.round(publishedSpeed1_);
+    }
+
+    /**
+     * Gets the lane of this object as seen by other objects.
+     *
+     * @param slot	the slot of the published state or <code>-1</code> for the current lane
+     *
+     * @return the lane measured from the right side of the street
+     */
+    public int getCurLane(int slot){
+        if(slot < 0) return curLane_;
+        else if(slot == 0) return publishedLane0_;
+        else return publishedLane1_;
+    }
+
+    /**
+     * Publishes the current position, speed and lane in one slot. With the double-buffered state, objects write into one
+     * slot during a step while the others read from the other slot, the slots are swapped after the step.
+     *
+     * @param slot	the slot (<code>0</code> or <code>1</code>)
+     */
+    public void publishState(int slot){
+        if(slot == 0){
+            publishedPosition0_ = curPosition_;
+            publishedSpeed0_ = curSpeed_;
+            publishedLane0_ = curLane_;
+        } else {
+            publishedPosition1_ = curPosition_;
+            publishedSpeed1_ = curSpeed_;
+            publishedLane1_ = curLane_;
+        }
+    }
+
+    /**
+     * Publishes the current position, speed and lane in both slots. Used when an object is added to a lane so that it's
+     * seen at its current state regardless of the slot read in the next step.
+     */
+    public void publishState(){
+        publishState(0);
+        publishState(1);
+    }
+
     /**
      * Gets the current street.
      *
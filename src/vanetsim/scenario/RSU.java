@@ -2,7 +2,6 @@ package vanetsim.scenario;
 
 import vanetsim.gui.Renderer;
 import vanetsim.gui.controlpanels.ReportingControlPanel;
-import vanetsim.map.Map;
 import vanetsim.map.Node;
 import vanetsim.map.Region;
 import vanetsim.map.Street;
@@ -39,9 +38,6 @@ public final class RSU {
 	/** If beacons are enabled */
 	private static boolean beaconsEnabled_ = Vehicle.getBeaconsEnabled();
 	
-	/** A reference to the map so that we don't need to call this over and over again. */
-	private static final Map MAP = Map.getInstance();
-	
 	/** An array holding all regions of the map. */
 	private static Region[][] regions_;
 	
@@ -8,6 +8,8 @@ import vanetsim.gui.helpers.MouseClickManager;
 import vanetsim.map.Map;
 import vanetsim.map.Region;
 import vanetsim.scenario.events.EventList;
+import vanetsim.simulation.SimulationClock;
+import vanetsim.simulation.SimulationContext;
 
 import java.io.File;
 
@@ -22,9 +24,6 @@ public class Scenario {
      * //  instance variable
      * ////////////////////////
      */
-    /** The only instance of this class (singleton). */
-    private static final Scenario INSTANCE = new Scenario();
-
     /** A flag to signal if loading is ready. While loading is in progress, simulation and rendering is not possible. */
     private boolean ready_ = true;
 
@@ -38,7 +37,7 @@ public class Scenario {
      * ////////////////////////
      */
     /**
-     * Empty, private constructor in order to disable instancing.
+     * Private constructor in order to disable instancing. Use {@link #createInstance()}.
      */
     private Scenario() {
 
@@ -60,21 +59,23 @@ public class Scenario {
             /** 初始化地圖，lock不讓模擬執行 */
             ready_ = false;
             /** 停止SimulationMaster的執行緒 */
-            if(!Renderer.getInstance().isConsoleStart()) VanetSimStart.getSimulationMaster().stopThread();
+            if(SimulationContext.current().hasGui()) VanetSimStart.getSimulationMaster().stopThread();
             /** 設定SimulateControlPanel的控制面板 */
-            if(!Renderer.getInstance().isConsoleStart()) VanetSimStart.getMainControlPanel().getSimulatePanel().setSimulationStop();
+            if(SimulationContext.current().hasGui()) VanetSimStart.getMainControlPanel().getSimulatePanel().setSimulationStop();
 
             KnownVehiclesList.setTimePassed(0);
             KnownRSUsList.setTimePassed(0);
 
-            Renderer.getInstance().setTimePassed(0);
-            Renderer.getInstance().setMarkedVehicle(null);
-            Renderer.getInstance().setShowVehicles(false);
-            Renderer.getInstance().setShowRSUs(false);
-            Renderer.getInstance().setShowMixZones(false);
-            Renderer.getInstance().setAttackedVehicle(null);
-            Renderer.getInstance().setAttackerVehicle(null);
-            Renderer.getInstance().setShowAttackers(false);
+            SimulationClock.setTime(0);
+            if(!SimulationContext.current().getHeadless()){
+                Renderer.getInstance().setMarkedVehicle(null);
+                Renderer.getInstance().setShowVehicles(false);
+                Renderer.getInstance().setShowRSUs(false);
+                Renderer.getInstance().setShowMixZones(false);
+                Renderer.getInstance().setAttackedVehicle(null);
+                Renderer.getInstance().setAttackerVehicle(null);
+                Renderer.getInstance().setShowAttackers(false);
+            }
 
 
             Vehicle.setMaximumCommunicationDistance(0);
@@ -84,7 +85,7 @@ public class Scenario {
             Vehicle.setAttackedVehicleID_(0);
 
 
-            if(!Renderer.getInstance().isConsoleStart()) MouseClickManager.getInstance().cleanMarkings();
+            if(SimulationContext.current().hasGui()) MouseClickManager.getInstance().cleanMarkings();
             /** Regions 其初始值為 null */
             Region[][] Regions = Map.getInstance().getRegions();
             /** Region_max_x 其初始值為 0 */
@@ -106,17 +107,26 @@ public class Scenario {
              *  於2017/11/14_2319 完成實作
              * */
 
-            if(!Renderer.getInstance().isConsoleStart())VanetSimStart.getMainControlPanel().getEditPanel().getEditEventPanel().updateList();
+            if(SimulationContext.current().hasGui())VanetSimStart.getMainControlPanel().getEditPanel().getEditEventPanel().updateList();
         }
     }
 
     /**
-     * Gets the single instance of this scenario.
+     * Gets the scenario of the <code>SimulationContext</code> bound to the calling thread.
      *
-     * @return single instance of this scenario
+     * @return the scenario of the current context
      */
     public static Scenario getInstance(){
-        return INSTANCE;
+        return SimulationContext.current().getScenario();
+    }
+
+    /**
+     * Creates a new, empty scenario. Only used by the <code>SimulationContext</code>.
+     *
+     * @return the new scenario
+     */
+    public static Scenario createInstance(){
+        return new Scenario();
     }
 
     /**
@@ -1,6 +1,9 @@
 package vanetsim.scenario;
 
 import java.awt.Color;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.Iterator;
 import java.util.Random;
@@ -14,15 +17,19 @@ import vanetsim.gui.Renderer;
 import vanetsim.gui.controlpanels.ReportingControlPanel;
 import vanetsim.gui.helpers.PrivacyLogWriter;
 import vanetsim.localization.Messages;
+import vanetsim.map.Junction;
 import vanetsim.map.Map;
 import vanetsim.map.Node;
 import vanetsim.map.Region;
 import vanetsim.map.Street;
 import vanetsim.routing.RoutingAlgorithm;
 import vanetsim.routing.WayPoint;
-import vanetsim.routing.A_Star.A_Star_Algorithm;
+import vanetsim.routing.CH.CH_Algorithm;
 import vanetsim.scenario.messages.Message;
 import vanetsim.scenario.messages.PenaltyMessage;
+import vanetsim.simulation.Checkpoint;
+import vanetsim.simulation.MapIndex;
+import vanetsim.simulation.SimulationContext;
 
 /**
  * A vehicle which can move and communicate (if wifi is enabled).
@@ -34,14 +41,14 @@ public class Vehicle extends LaneObject{
      * //  instance variable
      * ///////////////////////////////////
      */
-    /** A reference to the map so that we don't need to call this over and over again. */
-    private static final Map MAP = Map.getInstance();
-
     /** A reference to the reporting control panel so that we don't need to call this over and over again. */
     private static final ReportingControlPanel REPORT_PANEL = getReportingPanel();
 
     private static final int PRIORITY_TIMEOUT = 5000;
 
+    /** The wake-up time of a vehicle which doesn't need to be processed anymore (see <code>ActiveVehicleSet</code>). */
+    static final int DORMANT = Integer.MAX_VALUE;
+
     /** When known vehicles are rechecked for outdated entries. Measured in milliseconds. */
     private static final int KNOWN_VEHICLES_TIMEOUT_CHECKINTERVAL = 30000;
 
@@ -79,24 +86,8 @@ public class Vehicle extends LaneObject{
     /** How long the attacker waits (steps) to check if has new information about the attacked vehicle and needs to reroute. */
     private static final int ATTACKER_INTERVAL = 50;
 
-    /** A global random number generator used to initialize the generators of the vehicles. */
-    private static final Random RANDOM = new Random(1L);
-
-    /** The routing algorithm used. */
-    private static final RoutingAlgorithm ROUTING_ALGO = new A_Star_Algorithm();
-
-    /** The routing mode used. See the A_Star_Algo for details. */
-    private static int routingMode_ = 1;
-
-    /** The minimum time a vehicle must have traveled to get recycled. This shall prevent very shortliving
-     * vehicles from consuming lots of CPU time for recycling. */
-    private static int minTravelTimeForRecycling_ = 60000;
-
-    /** If communication is enabled */
-    private static boolean communicationEnabled_ = true;
-
-    /** If beacons are enabled */
-    private static boolean beaconsEnabled_ = true;
+    /** The routing algorithm used (A* unless the contraction hierarchies are enabled in the context). */
+    private static final RoutingAlgorithm ROUTING_ALGO = new CH_Algorithm();
 
     /** If mix zones are enabled */
     private static boolean mixZonesEnabled_ = true;
@@ -107,23 +98,6 @@ public class Vehicle extends LaneObject{
     /** If the fallback mode only sends messages which are in flooding/broadcast mode. */
     private static boolean mixZonesFallbackFloodingOnly_ = true;
 
-    /** How large a mix is in cm. Set in the common settings */
-    private static int mixZoneRadius_ = 10000;
-
-    /** How large a mix is in cm max. */
-    private static int maxMixZoneRadius_ = 0;
-
-    /** How long a vehicle waits to communicate again (in milliseconds). Also used for cleaning up outdated known messages. */
-    private static int communicationInterval_ = 160;
-
-    /** How long a vehicle waits to send its beacons again. */
-    private static int beaconInterval_ = 240;
-
-    /** The maximum communication distance a vehicle has. */
-    private static int maximumCommunicationDistance_ = 0;
-
-    /** An array holding all regions of the map. */
-    private static Region[][] regions_;
 
     /** If monitoring the beacon is enabled or not. */
     private static boolean beaconMonitorEnabled_ = false;
@@ -140,9 +114,6 @@ public class Vehicle extends LaneObject{
     /** The maximum y coordinate which is checked during beacon monitoring. */
     private static int beaconMonitorMaxY_ = -1;
 
-    /** If recycling of vehicles is allowed or not */
-    private static boolean recyclingEnabled_ = true;
-
     /** List of all AttackRSUs */
     private static AttackRSU arsuList[] = new AttackRSU[0];
 
@@ -164,9 +135,6 @@ public class Vehicle extends LaneObject{
     /** encrypted beacon communication in Mix-Zones */
     private static boolean encryptedBeaconsInMix_ = false;
 
-    /** A counter for the steady id */
-    private static int steadyIDCounter = 0;
-
     /** time between silent-periods (in ms)*/
     private static int TIME_BETWEEN_SILENT_PERIODS = 10000;
 
@@ -181,6 +149,9 @@ public class Vehicle extends LaneObject{
 
     // object variables begin here
 
+    /** The context this vehicle belongs to. Holds the map and all settings common to the vehicles of a simulation. */
+    private final SimulationContext context_ = SimulationContext.current();
+
     /** The destinations this vehicle wants to visit. */
     public ArrayDeque<WayPoint> originalDestinations_;
 
@@ -234,6 +205,9 @@ public class Vehicle extends LaneObject{
     /** An ID used to track vehicles after changing pseudonyms (for logging purpose only) */
     private int steadyID_;
 
+    /** The first steady ID of this vehicle. Unlike the steady ID, it doesn't change when the vehicle is recycled. */
+    private int creationNumber_ = -1;
+
     /** The destinations this vehicle wants to visit. */
     private ArrayDeque<WayPoint> destinations_;
 
@@ -273,6 +247,15 @@ public class Vehicle extends LaneObject{
     /** The current region. */
     private Region curRegion_;
 
+    /** The index of this vehicle in the vehicle array of its region (<code>-1</code> if it isn't in any region). */
+    private int regionIndex_ = -1;
+
+    /** If this vehicle has started driving in the current step but is only added to its lane container after its move. */
+    private boolean laneAdditionPending_ = false;
+
+    /** The slot of the published state of other objects read in the current step (<code>-1</code> to read their current state). */
+    private int readSlot_ = -1;
+
     /** The time in milliseconds before doing the next movement. During waiting the vehicle communicates but does not
      * block other cars from passing. */
     private int curWaitTime_;
@@ -331,6 +314,18 @@ public class Vehicle extends LaneObject{
     /** If the vehicle may be reused. */
     private boolean mayBeRecycled_ = false;
 
+    /** The time of the step in which the vehicle needs to be processed again if it's sleeping in an <code>ActiveVehicleSet</code>. <code>0</code> if it's awake. */
+    private int wakeUpTime_ = 0;
+
+    /** The wait time when the vehicle was put to sleep. */
+    private int sleepWaitTime_ = 0;
+
+    /** The time of the step in which the vehicle was put to sleep. */
+    private int sleepTime_ = 0;
+
+    /** The time per step when the vehicle was put to sleep. */
+    private int sleepTimePerStep_ = 1;
+
     /** Used to reroute the attacker after leaving the mix-zone */
     private Boolean attackerWasInMix = false;
 
@@ -405,8 +400,9 @@ public class Vehicle extends LaneObject{
         if(destinations != null && destinations.size()>1){
             originalDestinations_ = destinations;
             destinations_ = originalDestinations_.clone();
-            ID_ = RANDOM.nextLong();
-            steadyID_ = steadyIDCounter++;
+            ID_ = context_.getRandom().nextLong();
+            steadyID_ = context_.nextSteadyID();
+            creationNumber_ = steadyID_;
             vehicleLength_ = vehicleLength;
             maxSpeed_ = maxSpeed;
             emergencyVehicle_ = emergencyVehicle;
@@ -418,7 +414,7 @@ public class Vehicle extends LaneObject{
             maxBrakingDistance_ = maxSpeed_ + maxSpeed_ * maxSpeed_ / (2 * brakingRate_);	// see http://de.wikipedia.org/wiki/Bremsweg
             startingWayPoint_ = destinations_.pollFirst();		// take the first element and remove it from the destinations!
             wiFiEnabled_ = wiFiEnabled;
-            ownRandom_ = new Random(RANDOM.nextLong());
+            ownRandom_ = new Random(context_.getRandom().nextLong());
             curX_ = startingWayPoint_.getX();
             curY_ = startingWayPoint_.getY();
 
@@ -451,8 +447,8 @@ public class Vehicle extends LaneObject{
             calculatePosition();
 
             //set the countdowns so that not all fire at the same time!
-            beaconCountdown_ = (int)Math.round(curPosition_)%beaconInterval_;
-            communicationCountdown_ = (int)Math.round(curPosition_)%communicationInterval_;
+            beaconCountdown_ = (int)Math.round(curPosition_)%context_.getBeaconInterval();
+            communicationCountdown_ = (int)Math.round(curPosition_)%context_.getCommunicationInterval();
             mixCheckCountdown_ = (int)Math.round(curPosition_)%MIX_CHECK_INTERVAL;
             knownVehiclesTimeoutCountdown_ = (int)Math.round(curPosition_)%KNOWN_VEHICLES_TIMEOUT_CHECKINTERVAL;
             knownPenaltiesTimeoutCountdown_ = (int)Math.round(curPosition_)%KNOWN_PENALTIES_TIMEOUT_CHECKINTERVAL;
@@ -492,9 +488,9 @@ public class Vehicle extends LaneObject{
 
 
 
-            // ArrayDeque<Node> routing = ROUTING_ALGO.getRouting(routingMode_, direction, curX_, curY_, curStreet_, curPosition_, nextPoint.getX(), nextPoint.getY(), nextPoint.getStreet(), nextPoint.getPositionOnStreet(), knownPenalties_.getStreets(), knownPenalties_.getDirections(), knownPenalties_.getPenalties(), knownPenalties_.getSize(), maxSpeed_);
+            // ArrayDeque<Node> routing = ROUTING_ALGO.getRouting(context_.getRoutingMode(), direction, curX_, curY_, curStreet_, curPosition_, nextPoint.getX(), nextPoint.getY(), nextPoint.getStreet(), nextPoint.getPositionOnStreet(), knownPenalties_.getStreets(), knownPenalties_.getDirections(), knownPenalties_.getPenalties(), knownPenalties_.getSize(), maxSpeed_);
 
-            ArrayDeque<Node> routing = ROUTING_ALGO.getRouting(routingMode_, direction, startX, startY, curStreet_, curPosition_, nextPoint.getX(), nextPoint.getY(), nextPoint.getStreet(), nextPoint.getPositionOnStreet(), knownPenalties_.getStreets(), knownPenalties_.getDirections(), knownPenalties_.getPenalties(), knownPenalties_.getSize(), maxSpeed_);
+            ArrayDeque<Node> routing = context_.getRouteCache().getRouting(ROUTING_ALGO, context_.getRoutingMode(), direction, startX, startY, curStreet_, curPosition_, nextPoint.getX(), nextPoint.getY(), nextPoint.getStreet(), nextPoint.getPositionOnStreet(), knownPenalties_.getStreets(), knownPenalties_.getDirections(), knownPenalties_.getPenalties(), knownPenalties_.getSize(), maxSpeed_);
 
             if(routing.size() > 0){
                 if(routing.size() == 1){
@@ -561,7 +557,7 @@ public class Vehicle extends LaneObject{
                 if(!isReroute && destinations_.size() < 2) {
                     active_ = false;
                     curWaitTime_ = Integer.MIN_VALUE;
-                    if(totalTravelTime_ >= minTravelTimeForRecycling_) mayBeRecycled_ = true;
+                    if(totalTravelTime_ >= context_.getMinTravelTimeForRecycling()) mayBeRecycled_ = true;
                 }
                 return false;
             }
@@ -581,12 +577,15 @@ public class Vehicle extends LaneObject{
 
     public void adjustSpeed(int timePerStep){
         waitingForSignal_ = false;
+        readSlot_ = context_.getStateReadSlot();
         if(curWaitTime_ != 0 && curWaitTime_ != Integer.MIN_VALUE){
             if(curWaitTime_ <= timePerStep){
                 curWaitTime_ = 0;
                 active_ = true;
                 brakeForDestination_ = false;
-                curStreet_.addLaneObject(this, curDirection_);
+                // no lane container may change while the speeds are adjusted so the vehicle is added after its move
+                if(context_.getHandOffLaneChanges()) laneAdditionPending_ = true;
+                else addLaneObject(curStreet_, curDirection_, false);
             } else curWaitTime_ -= timePerStep;
         }
 
@@ -723,7 +722,7 @@ public class Vehicle extends LaneObject{
                 // =================================
                 if(newSpeed_ > maxSpeed_) newSpeed_ = maxSpeed_;
                 else if (newSpeed_ < 0) newSpeed_ = 0;	//no negative speed
-                if(newSpeed_ > curStreet_.getSpeed() && this != Renderer.getInstance().getAttackerVehicle()) newSpeed_ = curStreet_.getSpeed();
+                if(newSpeed_ > curStreet_.getSpeed() && (context_.getHeadless() || this != Renderer.getInstance().getAttackerVehicle())) newSpeed_ = curStreet_.getSpeed();
             }
 
 
@@ -735,7 +734,7 @@ public class Vehicle extends LaneObject{
 
             // in this first simulation step, no other communication is done. So we can we can some work concerning messages and
             // known vehicles here without synchronization problems!
-            if(isWiFiEnabled() && communicationEnabled_){
+            if(isWiFiEnabled() && context_.getCommunicationEnabled()){
                 if(knownMessages_.hasNewMessages()) knownMessages_.processMessages();
                 communicationCountdown_ -= timePerStep;
                 if(communicationCountdown_ < 1) knownMessages_.checkOutdatedMessages(true);
@@ -746,7 +745,7 @@ public class Vehicle extends LaneObject{
                     knownPenaltiesTimeoutCountdown_ += KNOWN_PENALTIES_TIMEOUT_CHECKINTERVAL;
                 }
 
-                if(beaconsEnabled_){
+                if(context_.getBeaconsEnabled()){
                     beaconCountdown_ -= timePerStep;
 
                     // recheck known vehicles for outdated entries.
@@ -814,7 +813,7 @@ public class Vehicle extends LaneObject{
                             if(destX != -1 && destY != -1){
                                 int direction = -1;
                                 if(!curDirection_) direction = 1;
-                                int time = Renderer.getInstance().getTimePassed();
+                                int time = context_.getTime();
                                 PenaltyMessage message = new PenaltyMessage(destX, destY, PENALTY_MESSAGE_RADIUS, time + PENALTY_MESSAGE_VALID, curStreet_, direction, PENALTY_MESSAGE_VALUE, time + PENALTY_VALID);
                                 long dx = message.getDestinationX_() - curX_;
                                 long dy = message.getDestinationY_() - curY_;
@@ -868,11 +867,11 @@ public class Vehicle extends LaneObject{
                         else MapMaxY = Integer.MAX_VALUE;
 
                         // Get the regions to be considered
-                        Region tmpregion = MAP.getRegionOfPoint(MapMinX, MapMinY);
+                        Region tmpregion = context_.getMap().getRegionOfPoint(MapMinX, MapMinY);
                         RegionMinX = tmpregion.getX();
                         RegionMinY = tmpregion.getY();
 
-                        tmpregion = MAP.getRegionOfPoint(MapMaxX, MapMaxY);
+                        tmpregion = context_.getMap().getRegionOfPoint(MapMaxX, MapMaxY);
                         RegionMaxX = tmpregion.getX();
                         RegionMaxY = tmpregion.getY();
 
@@ -880,7 +879,7 @@ public class Vehicle extends LaneObject{
                         for(i = RegionMinX; i <= RegionMaxX; ++i){
 
                             for(j = RegionMinY; j <= RegionMaxY; ++j){
-                                Node[] mixNodes = regions_[i][j].getMixZoneNodes();
+                                Node[] mixNodes = context_.getRegions()[i][j].getMixZoneNodes();
                                 size = mixNodes.length;
                                 for(k = 0; k < size; ++k){
                                     node = mixNodes[k];
@@ -906,8 +905,8 @@ public class Vehicle extends LaneObject{
 
                         if(needsToMix != isInMixZone_){
                             if(privacyDataLogged_){
-                                if(needsToMix) 	PrivacyLogWriter.log(Renderer.getInstance().getTimePassed() + ":Steady ID:" + this.steadyID_ + ":Pseudonym:" + Long.toHexString(this.ID_) + ":TraveledDistance:" + totalTravelDistance_ + ":TraveledTime:" + totalTravelTime_ + ":Node ID:" + curMixNode_.getNodeID() + ":Direction:IN" + ":Street:" + this.getCurStreet().getName() + ":StreetSpeed:" + this.getCurStreet().getSpeed() + ":VehicleSpeed:" + this.getCurSpeed() +  ":x:" + this.curX_ + ":y:" + this.curY_);
-                                else PrivacyLogWriter.log(Renderer.getInstance().getTimePassed() + ":Steady ID:" + this.steadyID_ + ":Pseudonym:" + Long.toHexString(this.ID_) + ":TraveledDistance:" + totalTravelDistance_ + ":TraveledTime:" + totalTravelTime_ + ":Node ID:" + curMixNode_.getNodeID() + ":Direction:OUT" + ":Street:" + this.getCurStreet().getName() + ":StreetSpeed:" + this.getCurStreet().getSpeed() + ":VehicleSpeed:" + this.getCurSpeed() + ":x:" + this.curX_ + ":y:" + this.curY_);
+                                if(needsToMix) 	PrivacyLogWriter.log(context_.getTime() + ":Steady ID:" + this.steadyID_ + ":Pseudonym:" + Long.toHexString(this.ID_) + ":TraveledDistance:" + totalTravelDistance_ + ":TraveledTime:" + totalTravelTime_ + ":Node ID:" + curMixNode_.getNodeID() + ":Direction:IN" + ":Street:" + this.getCurStreet().getName() + ":StreetSpeed:" + this.getCurStreet().getSpeed() + ":VehicleSpeed:" + this.getCurSpeed() +  ":x:" + this.curX_ + ":y:" + this.curY_);
+                                else PrivacyLogWriter.log(context_.getTime() + ":Steady ID:" + this.steadyID_ + ":Pseudonym:" + Long.toHexString(this.ID_) + ":TraveledDistance:" + totalTravelDistance_ + ":TraveledTime:" + totalTravelTime_ + ":Node ID:" + curMixNode_.getNodeID() + ":Direction:OUT" + ":Street:" + this.getCurStreet().getName() + ":StreetSpeed:" + this.getCurStreet().getSpeed() + ":VehicleSpeed:" + this.getCurSpeed() + ":x:" + this.curX_ + ":y:" + this.curY_);
                             }
                             if(needsToMix){
                                 ++IDsChanged_;
@@ -946,18 +945,18 @@ public class Vehicle extends LaneObject{
         int neededFreeDistance = curBrakingDistance_ / 2;
         // check the lane object in front of us (on our street)
         if(next_ != null){
-            if(next_.getCurLane() == lane){	// next one is on the same lane
+            if(next_.getCurLane(readSlot_) == lane){	// next one is on the same lane
                 foundNextVehicle = true;
-                if((curDirection_ && next_.getCurPosition()-curPosition_ < neededFreeDistance) || (!curDirection_ && curPosition_-next_.getCurPosition() < neededFreeDistance)){
-                    if(curSpeed_ > next_.getCurSpeed()-brakingRate_) return false;
+                if((curDirection_ && next_.getCurPosition(readSlot_)-curPosition_ < neededFreeDistance) || (!curDirection_ && curPosition_-next_.getCurPosition(readSlot_) < neededFreeDistance)){
+                    if(curSpeed_ > next_.getCurSpeed(readSlot_)-brakingRate_) return false;
                 }
             } else {	// need to search for the next which is on our lane
                 LaneObject tmpLaneObject = next_.getNext();
                 while(tmpLaneObject != null){
-                    if(tmpLaneObject.getCurLane() == lane){
+                    if(tmpLaneObject.getCurLane(readSlot_) == lane){
                         foundNextVehicle = true;
-                        if((curDirection_ && tmpLaneObject.getCurPosition()-curPosition_ < neededFreeDistance) || (!curDirection_ && curPosition_-tmpLaneObject.getCurPosition() < neededFreeDistance)){
-                            if(curSpeed_ > next_.getCurSpeed()-brakingRate_) return false;
+                        if((curDirection_ && tmpLaneObject.getCurPosition(readSlot_)-curPosition_ < neededFreeDistance) || (!curDirection_ && curPosition_-tmpLaneObject.getCurPosition(readSlot_) < neededFreeDistance)){
+                            if(curSpeed_ > next_.getCurSpeed(readSlot_)-brakingRate_) return false;
                         }
                         break;	// only check the first on our lane!
                     }
@@ -981,10 +980,10 @@ public class Vehicle extends LaneObject{
                 if(!foundNextVehicle){
                     tmpLaneObject = tmpStreet.getFirstLaneObject(tmpDirection);
                     while(tmpLaneObject != null){
-                        if(tmpLaneObject.getCurLane() == lane){
+                        if(tmpLaneObject.getCurLane(readSlot_) == lane){
                             foundNextVehicle = true;
-                            if((tmpDirection && tmpLaneObject.getCurPosition()+distance < neededFreeDistance) || (!tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition()+distance < neededFreeDistance)){
-                                if(curSpeed_ > tmpLaneObject.getCurSpeed()-brakingRate_) return false;
+                            if((tmpDirection && tmpLaneObject.getCurPosition(readSlot_)+distance < neededFreeDistance) || (!tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition(readSlot_)+distance < neededFreeDistance)){
+                                if(curSpeed_ > tmpLaneObject.getCurSpeed(readSlot_)-brakingRate_) return false;
                             }
                             break;
                         }
@@ -1006,18 +1005,18 @@ public class Vehicle extends LaneObject{
         boolean foundPreviousVehicle = false;
         // check the lane object before us (on our street)
         if(previous_ != null){
-            if(previous_.getCurLane() == lane){	// is on the same lane
+            if(previous_.getCurLane(readSlot_) == lane){	// is on the same lane
                 foundPreviousVehicle = true;
-                if((curDirection_ && curPosition_-previous_.getCurPosition() < neededFreeDistance) || (!curDirection_ && previous_.getCurPosition()-curPosition_ < neededFreeDistance)){
-                    if(curSpeed_ > previous_.getCurSpeed()-brakingRate_) return false;
+                if((curDirection_ && curPosition_-previous_.getCurPosition(readSlot_) < neededFreeDistance) || (!curDirection_ && previous_.getCurPosition(readSlot_)-curPosition_ < neededFreeDistance)){
+                    if(curSpeed_ > previous_.getCurSpeed(readSlot_)-brakingRate_) return false;
                 }
             } else {	// need to search for the previous one which is on our lane
                 LaneObject tmpLaneObject = previous_.getPrevious();
                 while(tmpLaneObject != null){
-                    if(tmpLaneObject.getCurLane() == lane){
+                    if(tmpLaneObject.getCurLane(readSlot_) == lane){
                         foundPreviousVehicle = true;
-                        if((curDirection_ && curPosition_-tmpLaneObject.getCurPosition() < neededFreeDistance) || (!curDirection_ && tmpLaneObject.getCurPosition()-curPosition_ < neededFreeDistance)){
-                            if(curSpeed_ > previous_.getCurSpeed()-brakingRate_) return false;
+                        if((curDirection_ && curPosition_-tmpLaneObject.getCurPosition(readSlot_) < neededFreeDistance) || (!curDirection_ && tmpLaneObject.getCurPosition(readSlot_)-curPosition_ < neededFreeDistance)){
+                            if(curSpeed_ > previous_.getCurSpeed(readSlot_)-brakingRate_) return false;
                         }
                         break;	// only check the first on our lane!
                     }
@@ -1059,10 +1058,10 @@ public class Vehicle extends LaneObject{
                 if(!foundPreviousVehicle){
                     tmpLaneObject = tmpStreet.getFirstLaneObject(tmpDirection);
                     while(tmpLaneObject != null){
-                        if(tmpLaneObject.getCurLane() == lane){
+                        if(tmpLaneObject.getCurLane(readSlot_) == lane){
                             foundNextVehicle = true;
-                            if((tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition()+distance < neededFreeDistance) || (!tmpDirection && tmpLaneObject.getCurPosition()+distance < neededFreeDistance)){
-                                if(curSpeed_ > tmpLaneObject.getCurSpeed()-brakingRate_) return false;
+                            if((tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition(readSlot_)+distance < neededFreeDistance) || (!tmpDirection && tmpLaneObject.getCurPosition(readSlot_)+distance < neededFreeDistance)){
+                                if(curSpeed_ > tmpLaneObject.getCurSpeed(readSlot_)-brakingRate_) return false;
                             }
                             break;
                         }
@@ -1090,22 +1089,22 @@ public class Vehicle extends LaneObject{
         boolean foundNextVehicle = false;
         // check the lane object in front of us (on our street). This is separated from the loop beneath as this is done most of the time!
         if(next_ != null){
-            if(next_.getCurLane() == lane){	// next one is on the same lane
+            if(next_.getCurLane(readSlot_) == lane){	// next one is on the same lane
                 foundNextVehicle = true;
-                if((curDirection_ && next_.getCurPosition()-curPosition_ < curBrakingDistance_) || /** 正向且 */
-                        (!curDirection_ && curPosition_-next_.getCurPosition() < curBrakingDistance_)){
+                if((curDirection_ && next_.getCurPosition(readSlot_)-curPosition_ < curBrakingDistance_) || /** 正向且 */
+                        (!curDirection_ && curPosition_-next_.getCurPosition(readSlot_) < curBrakingDistance_)){
 
-                    if(curSpeed_ > next_.getCurSpeed()-brakingRate_) return 1;
+                    if(curSpeed_ > next_.getCurSpeed(readSlot_)-brakingRate_) return 1;
                 }
             } else {	// need to search for the next which is on our lane
                 LaneObject tmpLaneObject = next_.getNext();
                 while(tmpLaneObject != null){
-                    if(tmpLaneObject.getCurLane() == lane){
+                    if(tmpLaneObject.getCurLane(readSlot_) == lane){
                         foundNextVehicle = true;
-                        if((curDirection_ && tmpLaneObject.getCurPosition()-curPosition_ < curBrakingDistance_) ||
-                                (!curDirection_ && curPosition_-tmpLaneObject.getCurPosition() < curBrakingDistance_)){
+                        if((curDirection_ && tmpLaneObject.getCurPosition(readSlot_)-curPosition_ < curBrakingDistance_) ||
+                                (!curDirection_ && curPosition_-tmpLaneObject.getCurPosition(readSlot_) < curBrakingDistance_)){
 
-                            if(curSpeed_ > next_.getCurSpeed()-brakingRate_) return 1;
+                            if(curSpeed_ > next_.getCurSpeed(readSlot_)-brakingRate_) return 1;
                         }
                         break;	// only check the first on our lane!
                     }
@@ -1176,7 +1175,7 @@ public class Vehicle extends LaneObject{
                 // Check if next street has smaller speed limit
                 if(tmpStreet.getSpeed() < curSpeed_) {
                     if(gotJunctionPermission) {
-                        junctionAllowed_.getJunction().allowOtherVehicle();
+                        allowOtherVehicle(junctionAllowed_.getJunction());
                         junctionAllowed_ = null;
                     }
                     return 2;
@@ -1186,12 +1185,12 @@ public class Vehicle extends LaneObject{
                 if(!foundNextVehicle){
                     tmpLaneObject = tmpStreet.getFirstLaneObject(tmpDirection);
                     while(tmpLaneObject != null){
-                        if(tmpLaneObject.getCurLane() == tmpLane){
+                        if(tmpLaneObject.getCurLane(readSlot_) == tmpLane){
                             foundNextVehicle = true;
-                            if((tmpDirection && tmpLaneObject.getCurPosition()+distance < curBrakingDistance_) || (!tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition()+distance < curBrakingDistance_)){
-                                if(curSpeed_ > tmpLaneObject.getCurSpeed()-brakingRate_){
+                            if((tmpDirection && tmpLaneObject.getCurPosition(readSlot_)+distance < curBrakingDistance_) || (!tmpDirection && tmpStreet.getLength()-tmpLaneObject.getCurPosition(readSlot_)+distance < curBrakingDistance_)){
+                                if(curSpeed_ > tmpLaneObject.getCurSpeed(readSlot_)-brakingRate_){
                                     if(gotJunctionPermission) {
-                                        junctionAllowed_.getJunction().allowOtherVehicle();
+                                        allowOtherVehicle(junctionAllowed_.getJunction());
                                         junctionAllowed_ = null;
                                     }
                                     return 1;
@@ -1216,12 +1215,18 @@ public class Vehicle extends LaneObject{
 
     /**
      * Resets this vehicle so that it can be reused. It will travel on the same route as last time!
+     * In the deterministic mode, this is done at the end of the phase.
      */
     public void reset(){
+        // new steady IDs have to be given out in a fixed order
+        if(context_.getDeferInteractions()){
+            curRegion_.getInteractionBuffer().add(this, InteractionBuffer.RESET, null, false);
+            return;
+        }
         //reset countdowns and other variables
 
         ID_ = ownRandom_.nextLong();
-        steadyID_ = steadyIDCounter++;
+        steadyID_ = context_.nextSteadyID();
         curSpeed_ = brakingRate_/2;
         newSpeed_ = curSpeed_;
         accuWaitTime_ = 0;
@@ -1240,8 +1245,8 @@ public class Vehicle extends LaneObject{
         communicationCountdown_ = 0;
         knownVehiclesTimeoutCountdown_ = 0;
         knownPenaltiesTimeoutCountdown_ = 0;
-        beaconCountdown_ = (int)Math.round(curPosition_)%beaconInterval_;
-        communicationCountdown_ = (int)Math.round(curPosition_)%communicationInterval_;
+        beaconCountdown_ = (int)Math.round(curPosition_)%context_.getBeaconInterval();
+        communicationCountdown_ = (int)Math.round(curPosition_)%context_.getCommunicationInterval();
         mixCheckCountdown_ = (int)Math.round(curPosition_)%MIX_CHECK_INTERVAL;
         lastMessageCreated = 0;
         stopTime_ = 0;
@@ -1280,18 +1285,18 @@ public class Vehicle extends LaneObject{
                 curWaitTime_ = destinations_.pollFirst().getWaittime();
             }
         }
+        laneAdditionPending_ = false;
         if(curWaitTime_ == 0){
             active_ = true;
-            curStreet_.addLaneObject(this, curDirection_);
+            addLaneObject(curStreet_, curDirection_, mustHandOff(curStreet_));
         }
         calculatePosition();
 
         //reset region
-        curRegion_.delVehicle(this);
-        curRegion_ = MAP.getRegionOfPoint(curX_, curY_);
-        curRegion_.addVehicle(this, false);
+        updateRegion();
 
         mayBeRecycled_ = false;
+        wakeUpTime_ = 0;
     }
 
     /**
@@ -1345,7 +1350,7 @@ public class Vehicle extends LaneObject{
                         if(destinations_.isEmpty()){
                             active_ = false;	//found no new destination where we can route to
                             curWaitTime_ = Integer.MIN_VALUE;
-                            if(totalTravelTime_ >= minTravelTimeForRecycling_) mayBeRecycled_ = true;
+                            if(totalTravelTime_ >= context_.getMinTravelTimeForRecycling()) mayBeRecycled_ = true;
                             break;
                         } else brakeForDestinationCountdown_ = Integer.MAX_VALUE;
                         if(curWaitTime_ > 0){
@@ -1373,7 +1378,7 @@ public class Vehicle extends LaneObject{
                         if(destinations_.isEmpty()){
                             active_ = false;	//found no new destination where we can route to
                             curWaitTime_ = Integer.MIN_VALUE;
-                            if(totalTravelTime_ >= minTravelTimeForRecycling_) mayBeRecycled_ = true;
+                            if(totalTravelTime_ >= context_.getMinTravelTimeForRecycling()) mayBeRecycled_ = true;
                             break;
                         } else brakeForDestinationCountdown_ = Integer.MAX_VALUE;
                         if(curWaitTime_ > 0){
@@ -1385,13 +1390,13 @@ public class Vehicle extends LaneObject{
                     curStreet_ = routeStreets_[routePosition_];
                     if(curDirection_){
                         if(curStreet_.getStartNode() == junctionAllowed_){
-                            junctionAllowed_.getJunction().allowOtherVehicle();
+                            allowOtherVehicle(junctionAllowed_.getJunction());
                             junctionAllowed_ = null;
                         }
                         newPosition = 0;
                     } else {
                         if(curStreet_.getEndNode() == junctionAllowed_){
-                            junctionAllowed_.getJunction().allowOtherVehicle();
+                            allowOtherVehicle(junctionAllowed_.getJunction());
                             junctionAllowed_ = null;
                         }
                         newPosition = curStreet_.getLength();
@@ -1401,8 +1406,16 @@ public class Vehicle extends LaneObject{
                     movement = 0;
                 }
             }
-            if(!active_ || curWaitTime_ != 0) {
-                oldStreet.delLaneObject(this, oldDirection);
+            if(laneAdditionPending_){	// not in a lane container yet, so it's just added where it is now
+                laneAdditionPending_ = false;
+                if(curStreet_.getLanesCount() < curLane_){
+                    curLane_ = curStreet_.getLanesCount();
+                    newLane_ = curLane_;
+                }
+                curPosition_ = newPosition;
+                if(active_ && curWaitTime_ == 0) addLaneObject(curStreet_, curDirection_, mustHandOff(curStreet_));
+            } else if(!active_ || curWaitTime_ != 0) {
+                delLaneObject(oldStreet, oldDirection, mustHandOff(oldStreet));
                 curPosition_ = newPosition;
             }
             else if(curStreet_ != oldStreet || curDirection_ != oldDirection){
@@ -1410,11 +1423,13 @@ public class Vehicle extends LaneObject{
                     curLane_ = curStreet_.getLanesCount();
                     newLane_ = curLane_;
                 }
-                oldStreet.delLaneObject(this, oldDirection);
+                // if one of the changes is handed over, the other one has to be handed over as well to keep their order
+                boolean handOff = mustHandOff(oldStreet) || mustHandOff(curStreet_);
+                delLaneObject(oldStreet, oldDirection, handOff);
                 curPosition_ = newPosition;
-                curStreet_.addLaneObject(this, curDirection_);
+                addLaneObject(curStreet_, curDirection_, handOff);
             } else if (curLane_ > 1){	// all vehicles which are on multilanes and which did not change street need to call the update method in the LaneContainer to preserve order!
-                curStreet_.updateLaneObject(this, curDirection_, newPosition);	// updates curPosition_ in the synchronized method!
+                updateLaneObject(newPosition, mustHandOff(curStreet_));	// updates curPosition_ in the lane container!
             } else {
                 curPosition_ = newPosition;
             }
@@ -1430,20 +1445,427 @@ public class Vehicle extends LaneObject{
 
             // recalculate region
             if(curX_ < curRegion_.getLeftBoundary() || curX_ > curRegion_.getRightBoundary() || curY_ < curRegion_.getUpperBoundary() || curY_ > curRegion_.getLowerBoundary()){
-                curRegion_.delVehicle(this);
-                curRegion_ = MAP.getRegionOfPoint(curX_, curY_);
-                curRegion_.addVehicle(this, false);
+                if(context_.getDeferInteractions()) curRegion_.getInteractionBuffer().add(this, InteractionBuffer.UPDATE_REGION, null, false);
+                else updateRegion();
             }
         }
 
     }
 
+    /**
+     * Moves this vehicle into the region of its current position. While the phases of a step are running, the vehicle
+     * arrays of the regions are only changed after the step (see <code>Region.applyMigrations()</code>).
+     */
+    void updateRegion(){
+        Region oldRegion = curRegion_;
+        curRegion_ = context_.getMap().getRegionOfPoint(curX_, curY_);
+        if(context_.getBufferMigrations()){
+            if(oldRegion != curRegion_) oldRegion.addEmigrant(this);
+        } else {
+            oldRegion.delVehicle(this);
+            curRegion_.addVehicle(this, false);
+        }
+    }
+
+    /**
+     * Checks if a change of a lane container of a street has to be handed over to the main region of the street because
+     * another thread might be working on it.
+     *
+     * @param street	the street
+     *
+     * @return <code>true</code> if the change has to be handed over, <code>false</code> if it may be done directly
+     */
+    private boolean mustHandOff(Street street){
+        // with the double-buffered state, containers of the own region are read by the other vehicles while this one moves
+        return context_.getHandOffLaneChanges() && street.getMainRegion() != null && (street.getMainRegion() != curRegion_ || context_.getStateReadSlot() != -1);
+    }
+
+    /**
+     * Adds this vehicle to a lane container. Buffered until the end of the phase in the deterministic mode.
+     *
+     * @param street	the street
+     * @param direction	the direction on the street
+     * @param handOff	<code>true</code> to hand the change over to the main region of the street
+     */
+    private void addLaneObject(Street street, boolean direction, boolean handOff){
+        if(context_.getDeferInteractions()) curRegion_.getInteractionBuffer().add(this, InteractionBuffer.ADD_LANE_OBJECT, street, direction);
+        else if(handOff) street.getMainRegion().handOffLaneObject(this, street, direction, Region.ADD_LANE_OBJECT);
+        else street.addLaneObject(this, direction);
+    }
+
+    /**
+     * Removes this vehicle from a lane container. Buffered until the end of the phase in the deterministic mode.
+     *
+     * @param street	the street
+     * @param direction	the direction on the street
+     * @param handOff	<code>true</code> to hand the change over to the main region of the street
+     */
+    private void delLaneObject(Street street, boolean direction, boolean handOff){
+        if(context_.getDeferInteractions()) curRegion_.getInteractionBuffer().add(this, InteractionBuffer.DEL_LANE_OBJECT, street, direction);
+        else if(handOff) street.getMainRegion().handOffLaneObject(this, street, direction, Region.DEL_LANE_OBJECT);
+        else street.delLaneObject(this, direction);
+    }
+
+    /**
+     * Sets a new position on the current street and keeps the order in the lane container. In the deterministic mode or if
+     * the change is handed over, the position is set directly and the order is restored later.
+     *
+     * @param newPosition	the new position
+     * @param handOff		<code>true</code> to hand the change over to the main region of the street
+     */
+    private void updateLaneObject(double newPosition, boolean handOff){
+        if(context_.getDeferInteractions()){
+            curPosition_ = newPosition;
+            curRegion_.getInteractionBuffer().add(this, InteractionBuffer.UPDATE_LANE_OBJECT, curStreet_, curDirection_);
+        } else if(handOff){
+            curPosition_ = newPosition;
+            curStreet_.getMainRegion().handOffLaneObject(this, curStreet_, curDirection_, Region.UPDATE_LANE_OBJECT);
+        } else curStreet_.updateLaneObject(this, curDirection_, newPosition);
+    }
+
+    /**
+     * Allows another vehicle to pass a junction. Buffered until the end of the phase in the deterministic mode and until
+     * the end of the step with the double-buffered state.
+     *
+     * @param junction	the junction
+     */
+    private void allowOtherVehicle(Junction junction){
+        if(context_.getDeferInteractions() || context_.getStateReadSlot() != -1) curRegion_.getInteractionBuffer().add(this, InteractionBuffer.ALLOW_OTHER_VEHICLE, junction, false);
+        else junction.allowOtherVehicle();
+    }
+
+    /**
+     * Copies the state needed for a move into a row of a <code>VehicleStateStore</code>. Only vehicles which simply
+     * drive on on the first lane of their current street can be moved by the store.
+     *
+     * @param store		the store
+     * @param row		the row
+     * @param region	the region the store belongs to
+     *
+     * @return <code>true</code> if the store may move this vehicle, <code>false</code> if {@link #move(int)} has to be used
+     */
+    boolean exportKinematics(VehicleStateStore store, int row, Region region){
+        if(curWaitTime_ != 0 || curStreet_ == null || newLane_ > 1 || curRegion_ != region || laneAdditionPending_) return false;
+        double limit;
+        if(routePosition_ == routeStreets_.length-1 && destinations_.peekFirst().getStreet() == curStreet_) limit = destinations_.peekFirst().getPositionOnStreet();
+        else if(curDirection_) limit = curStreet_.getLength();
+        else limit = 0;
+        store.setRow(row, curStreet_, curDirection_, newLane_, newSpeed_, curPosition_, limit);
+        return true;
+    }
+
+    /**
+     * Copies the values needed for the braking distance into a row of a <code>VehicleStateStore</code>.
+     *
+     * @param store	the store
+     * @param row	the row
+     *
+     * @return <code>true</code> if {@link #adjustSpeed(int)} would recalculate the braking distance in this step, else <code>false</code>
+     */
+    boolean exportBraking(VehicleStateStore store, int row){
+        if(!active_ || curWaitTime_ != 0 || curStreet_ == null || curSpeed_ == speedAtLastBrakingDistanceCalculation_) return false;
+        store.setBrakingRow(row, curSpeed_, brakingRate_);
+        return true;
+    }
+
+    /**
+     * Takes over a braking distance calculated by a <code>VehicleStateStore</code> for the current speed.
+     *
+     * @param brakingDistance	the braking distance in cm
+     */
+    void importBrakingDistance(int brakingDistance){
+        speedAtLastBrakingDistanceCalculation_ = curSpeed_;
+        curBrakingDistance_ = brakingDistance;
+    }
+
+    /**
+     * Checks if this vehicle only needs to wait in the coming steps. Called by the <code>ActiveVehicleSet</code> after
+     * {@link #adjustSpeed(int)}.
+     *
+     * @param time				the simulation time at the beginning of the step
+     * @param timePerStep		the time in milliseconds for one step
+     * @param recyclingEnabled	if vehicles may be recycled
+     *
+     * @return <code>0</code> if the vehicle has to be processed in the next step, {@link #DORMANT} if it never needs to be
+     * 			processed again, else the time of the step in which it needs to be processed again
+     */
+    int sleep(int time, int timePerStep, boolean recyclingEnabled){
+        if(isDormant(recyclingEnabled)){
+            wakeUpTime_ = DORMANT;
+            return DORMANT;
+        }
+        if(mayBeRecycled_ || curWaitTime_ <= timePerStep) return 0;
+        // adjustSpeed() starts the vehicle in the step in which the remaining wait time is at most one step
+        long wakeUpTime = time + ((curWaitTime_ + (long)timePerStep - 1) / timePerStep) * timePerStep;
+        if(wakeUpTime >= DORMANT) return 0;
+        sleepWaitTime_ = curWaitTime_;
+        sleepTime_ = time;
+        sleepTimePerStep_ = timePerStep;
+        wakeUpTime_ = (int)wakeUpTime;
+        return wakeUpTime_;
+    }
+
+    /**
+     * Wakes up a sleeping or dormant vehicle. The wait time is set to the value it would have if the vehicle
+     * had been processed in all steps.
+     *
+     * @param time	the simulation time at the beginning of the step
+     */
+    void wakeUp(int time){
+        if(wakeUpTime_ != 0 && wakeUpTime_ != DORMANT && time > sleepTime_){
+            curWaitTime_ = sleepWaitTime_ - ((time - sleepTime_)/sleepTimePerStep_ - 1) * sleepTimePerStep_;
+        }
+        wakeUpTime_ = 0;
+    }
+
+    /**
+     * Gets the time of the step in which this vehicle needs to be processed again.
+     *
+     * @return <code>0</code> if the vehicle is awake, {@link #DORMANT} if it doesn't need to be processed anymore, else the time
+     */
+    int getWakeUpTime(){
+        return wakeUpTime_;
+    }
+
+    /**
+     * Checks if this vehicle has reached its last destination and won't be recycled.
+     *
+     * @param recyclingEnabled	if vehicles may be recycled
+     *
+     * @return <code>true</code> if it doesn't need to be processed anymore
+     */
+    boolean isDormant(boolean recyclingEnabled){
+        return !active_ && curWaitTime_ == Integer.MIN_VALUE && (!mayBeRecycled_ || !recyclingEnabled);
+    }
+
+    /**
+     * Takes over the result of a move done by a <code>VehicleStateStore</code>. Same as {@link #move(int)} for a vehicle
+     * which stays on its street.
+     *
+     * @param position		the new position on the street
+     * @param x				the new x coordinate
+     * @param y				the new y coordinate
+     * @param movement		the distance moved
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    void importKinematics(double position, int x, int y, double movement, int timePerStep){
+        curLane_ = newLane_;
+        curSpeed_ = newSpeed_;
+        if(isWaitingForSignal_()) accuWaitTime_ += timePerStep;
+        totalTravelTime_ += timePerStep;
+        totalTravelDistance_ += movement;
+        curPosition_ = position;
+        curX_ = x;
+        curY_ = y;
+    }
+
+    /**
+     * Checks if this vehicle is in the lane container of its current street.
+     *
+     * @return <code>true</code> if it's in a lane container
+     */
+    private boolean isOnLane(){
+        return active_ && curWaitTime_ == 0 && curStreet_ != null && !laneAdditionPending_;
+    }
+
+    /**
+     * Writes the state of this vehicle so that a copy of it in another process can be updated with {@link #readState(DataInputStream, MapIndex, boolean)}.
+     * Must not be called while the phases of a step are running.
+     *
+     * @param out	the stream to write to
+     * @param index	the index of the map
+     * @param full	<code>true</code> to write everything needed to continue simulating this vehicle, <code>false</code> to only
+     * 				write what other vehicles can see (position, lane, speed)
+     *
+     * @throws IOException if writing fails
+     */
+    public void writeState(DataOutputStream out, MapIndex index, boolean full) throws IOException{
+        out.writeInt(index.getStreetNumber(curStreet_));
+        out.writeBoolean(curDirection_);
+        out.writeInt(curLane_);
+        out.writeDouble(curPosition_);
+        out.writeDouble(curSpeed_);
+        out.writeBoolean(active_);
+        out.writeInt(curWaitTime_);
+        if(full){
+            out.writeInt(newLane_);
+            out.writeDouble(newSpeed_);
+            out.writeInt(routeStreets_.length);
+            for(int i = 0; i < routeStreets_.length; ++i){
+                out.writeInt(index.getStreetNumber(routeStreets_[i]));
+                out.writeBoolean(routeDirections_[i]);
+            }
+            out.writeInt(routePosition_);
+            out.writeInt(destinations_.size());
+            out.writeInt(totalTravelTime_);
+            out.writeLong(totalTravelDistance_);
+            out.writeInt(accuWaitTime_);
+            out.writeInt(accuBlockingTime_);
+            out.writeInt(curBrakingDistance_);
+            out.writeDouble(speedAtLastBrakingDistanceCalculation_);
+            out.writeBoolean(brakeForDestination_);
+            out.writeInt(brakeForDestinationCountdown_);
+            out.writeInt(destinationCheckCountdown_);
+            out.writeInt(laneChangeCountdown);
+            out.writeInt(index.getNodeNumber(junctionAllowed_));
+            out.writeBoolean(waitingForSignal_);
+            out.writeBoolean(mayBeRecycled_);
+            out.writeLong(ID_);
+            out.writeInt(steadyID_);
+        }
+    }
+
+    /**
+     * Takes over the state written by {@link #writeState(DataOutputStream, MapIndex, boolean)} in another process. The lane
+     * containers and the region are updated directly, so this must not be called while the phases of a step are running.
+     *
+     * @param in	the stream to read from
+     * @param index	the index of the map
+     * @param full	<code>true</code> if the full state was written
+     *
+     * @throws IOException if reading fails
+     */
+    public void readState(DataInputStream in, MapIndex index, boolean full) throws IOException{
+        if(isOnLane()) curStreet_.delLaneObject(this, curDirection_);
+        curStreet_ = index.getStreet(in.readInt());
+        curDirection_ = in.readBoolean();
+        curLane_ = in.readInt();
+        curPosition_ = in.readDouble();
+        curSpeed_ = in.readDouble();
+        active_ = in.readBoolean();
+        curWaitTime_ = in.readInt();
+        laneAdditionPending_ = false;
+        if(full){
+            newLane_ = in.readInt();
+            newSpeed_ = in.readDouble();
+            int i = in.readInt();
+            routeStreets_ = new Street[i];
+            routeDirections_ = new boolean[i];
+            for(i = 0; i < routeStreets_.length; ++i){
+                routeStreets_[i] = index.getStreet(in.readInt());
+                routeDirections_[i] = in.readBoolean();
+            }
+            routePosition_ = in.readInt();
+            // destinations are only ever taken from the front so the remaining ones can be restored from the original ones
+            i = in.readInt();
+            destinations_ = originalDestinations_.clone();
+            destinations_.pollFirst();	// the starting point
+            while(destinations_.size() > i) destinations_.pollFirst();
+            totalTravelTime_ = in.readInt();
+            totalTravelDistance_ = in.readLong();
+            accuWaitTime_ = in.readInt();
+            accuBlockingTime_ = in.readInt();
+            curBrakingDistance_ = in.readInt();
+            speedAtLastBrakingDistanceCalculation_ = in.readDouble();
+            brakeForDestination_ = in.readBoolean();
+            brakeForDestinationCountdown_ = in.readInt();
+            destinationCheckCountdown_ = in.readInt();
+            laneChangeCountdown = in.readInt();
+            junctionAllowed_ = index.getNode(in.readInt());
+            waitingForSignal_ = in.readBoolean();
+            mayBeRecycled_ = in.readBoolean();
+            ID_ = in.readLong();
+            steadyID_ = in.readInt();
+            wakeUpTime_ = 0;
+        } else {
+            newLane_ = curLane_;
+            newSpeed_ = curSpeed_;
+        }
+        if(curStreet_ == null) return;
+        if(isOnLane()) curStreet_.addLaneObject(this, curDirection_);
+        calculatePosition();
+        Region region = context_.getMap().getRegionOfPoint(curX_, curY_);
+        if(region != curRegion_){
+            curRegion_.delVehicle(this);
+            curRegion_ = region;
+            curRegion_.addVehicle(this, false);
+        }
+    }
+
+    /**
+     * Removes this vehicle from its lane container because another process doesn't report its state anymore. It stays
+     * where it is but doesn't block other vehicles until its state is read again.
+     */
+    public void leaveLane(){
+        if(isOnLane()) curStreet_.delLaneObject(this, curDirection_);
+        active_ = false;
+    }
+
+    /**
+     * Writes the complete state of this vehicle for a checkpoint: the full state of {@link #writeState(DataOutputStream, MapIndex, boolean)}
+     * together with the countdowns, the sleep state, the random number generator and the known penalties.
+     * The region and the lane container are written by the <code>Checkpoint</code>.
+     *
+     * @param out	the stream to write to
+     * @param index	the index of the map
+     *
+     * @throws IOException if writing fails
+     */
+    public void writeCheckpoint(DataOutputStream out, MapIndex index) throws IOException{
+        writeState(out, index, true);
+        out.writeInt(curX_);
+        out.writeInt(curY_);
+        out.writeInt(communicationCountdown_);
+        out.writeInt(beaconCountdown_);
+        out.writeInt(mixCheckCountdown_);
+        out.writeInt(knownVehiclesTimeoutCountdown_);
+        out.writeInt(knownRSUsTimeoutCountdown_);
+        out.writeInt(knownPenaltiesTimeoutCountdown_);
+        out.writeInt(lastMessageCreated);
+        out.writeInt(stopTime_);
+        out.writeInt(messagesCreated_);
+        out.writeInt(IDsChanged_);
+        out.writeBoolean(isInMixZone_);
+        out.writeInt(index.getNodeNumber(curMixNode_));
+        out.writeBoolean(isArrived_);
+        out.writeInt(wakeUpTime_);
+        out.writeInt(sleepWaitTime_);
+        out.writeInt(sleepTime_);
+        out.writeInt(sleepTimePerStep_);
+        Checkpoint.writeRandom(out, ownRandom_);
+        knownPenalties_.writeState(out, index);
+    }
+
+    /**
+     * Restores the state written by {@link #writeCheckpoint(DataOutputStream, MapIndex)}. The lane containers and the
+     * region are restored afterwards by the <code>Checkpoint</code>.
+     *
+     * @param in	the stream to read from
+     * @param index	the index of the map
+     *
+     * @throws IOException if reading fails
+     */
+    public void readCheckpoint(DataInputStream in, MapIndex index) throws IOException{
+        readState(in, index, true);
+        curX_ = in.readInt();
+        curY_ = in.readInt();
+        communicationCountdown_ = in.readInt();
+        beaconCountdown_ = in.readInt();
+        mixCheckCountdown_ = in.readInt();
+        knownVehiclesTimeoutCountdown_ = in.readInt();
+        knownRSUsTimeoutCountdown_ = in.readInt();
+        knownPenaltiesTimeoutCountdown_ = in.readInt();
+        lastMessageCreated = in.readInt();
+        stopTime_ = in.readInt();
+        messagesCreated_ = in.readInt();
+        IDsChanged_ = in.readInt();
+        isInMixZone_ = in.readBoolean();
+        curMixNode_ = index.getNode(in.readInt());
+        isArrived_ = in.readBoolean();
+        wakeUpTime_ = in.readInt();
+        sleepWaitTime_ = in.readInt();
+        sleepTime_ = in.readInt();
+        sleepTimePerStep_ = in.readInt();
+        ownRandom_ = Checkpoint.readRandom(in);
+        knownPenalties_.readState(in, index);
+    }
+
 
     /**
      * ///////// getter & setter (start) ///////////
      */
     public static ReportingControlPanel getReportingPanel(){
-        if(Renderer.getInstance().isConsoleStart()) return null;
+        if(!SimulationContext.current().hasGui()) return null;
         else return VanetSimStart.getMainControlPanel().getReportingPanel();
     }
 
@@ -1700,6 +2122,33 @@ public class Vehicle extends LaneObject{
         curRegion_ = region;
     }
 
+    /**
+     * Gets the region in which this vehicle is found.
+     *
+     * @return the region
+     */
+    public Region getRegion(){
+        return curRegion_;
+    }
+
+    /**
+     * Gets the index of this vehicle in the vehicle array of its region. Only used by the region.
+     *
+     * @return the index or <code>-1</code> if this vehicle isn't in a region
+     */
+    public int getRegionIndex(){
+        return regionIndex_;
+    }
+
+    /**
+     * Sets the index of this vehicle in the vehicle array of its region. Only used by the region.
+     *
+     * @param index	the index or <code>-1</code> if this vehicle was removed from its region
+     */
+    public void setRegionIndex(int index){
+        regionIndex_ = index;
+    }
+
     /**
      * Gets the ID used in beacons encoded in HEX so that it's shorter. If the vehicle is not wifi
      * enabled, brackets are used to indicate this.
@@ -1717,7 +2166,7 @@ public class Vehicle extends LaneObject{
      * @return the interval in milliseconds
      */
     public static int getCommunicationInterval(){
-        return communicationInterval_;
+        return SimulationContext.current().getCommunicationInterval();
     }
 
     /**
@@ -1726,7 +2175,7 @@ public class Vehicle extends LaneObject{
      * @return the interval in milliseconds
      */
     public static int getBeaconInterval(){
-        return beaconInterval_;
+        return SimulationContext.current().getBeaconInterval();
     }
 
 
@@ -1736,7 +2185,7 @@ public class Vehicle extends LaneObject{
      * @return	<code>true</code> if communication is enabled, else <code>false</code>
      */
     public static boolean getCommunicationEnabled(){
-        return communicationEnabled_;
+        return SimulationContext.current().getCommunicationEnabled();
     }
 
     /**
@@ -1745,7 +2194,7 @@ public class Vehicle extends LaneObject{
      * @return	<code>true</code> if recycling is enabled, else <code>false</code>
      */
     public static boolean getRecyclingEnabled(){
-        return recyclingEnabled_;
+        return SimulationContext.current().getRecyclingEnabled();
     }
 
     /**
@@ -1754,7 +2203,7 @@ public class Vehicle extends LaneObject{
      * @return <code>true</code> if beacons are enabled, else <code>false</code>
      */
     public static boolean getBeaconsEnabled(){
-        return beaconsEnabled_;
+        return SimulationContext.current().getBeaconsEnabled();
     }
 
     /**
@@ -1791,7 +2240,7 @@ public class Vehicle extends LaneObject{
      * @return the routing mode
      */
     public static int getRoutingMode(){
-        return routingMode_;
+        return SimulationContext.current().getRoutingMode();
     }
 
     /**
@@ -1800,7 +2249,7 @@ public class Vehicle extends LaneObject{
      * @return the maximum communication distance in cm
      */
     public static int getMaximumCommunicationDistance(){
-        return maximumCommunicationDistance_;
+        return SimulationContext.current().getMaximumCommunicationDistance();
     }
 
     /**
@@ -1810,7 +2259,7 @@ public class Vehicle extends LaneObject{
      * @return the time in milliseconds
      */
     public static int getMinTravelTimeForRecycling(){
-        return minTravelTimeForRecycling_;
+        return SimulationContext.current().getMinTravelTimeForRecycling();
     }
 
     /**
@@ -1819,7 +2268,7 @@ public class Vehicle extends LaneObject{
      * @return the mix zone radius in cm
      */
     public static int getMixZoneRadius(){
-        return mixZoneRadius_;
+        return SimulationContext.current().getMixZoneRadius();
     }
 
     /**
@@ -1828,23 +2277,23 @@ public class Vehicle extends LaneObject{
      * @param maxMixZoneRadius	the maximum radius of the mix zones in cm
      */
     public static void setMaxMixZoneRadius(int maxMixZoneRadius) {
-        maxMixZoneRadius_ = maxMixZoneRadius;
+        SimulationContext.current().setMaxMixZoneRadius(maxMixZoneRadius);
     }
 
     /**
      * Gets the maximum mix zone radius used in the scenario.
      *
-     * @return maxMixZoneRadius_ the maximum mix zone radius in cm
+     * @return the maximum mix zone radius in cm
      */
     public static int getMaxMixZoneRadius() {
-        return maxMixZoneRadius_;
+        return SimulationContext.current().getMaxMixZoneRadius();
     }
 
     /**
      * Resets the global random number generator
      */
     public static void resetGlobalRandomGenerator(){
-        RANDOM.setSeed(1L);
+        SimulationContext.current().getRandom().setSeed(1L);
     }
 
     /**
@@ -1853,7 +2302,7 @@ public class Vehicle extends LaneObject{
      * @param mixZoneRadius	the radius of the mix zones in cm
      */
     public static void setMixZoneRadius(int mixZoneRadius){
-        mixZoneRadius_ = mixZoneRadius;
+        SimulationContext.current().setMixZoneRadius(mixZoneRadius);
     }
 
     /**
@@ -1863,7 +2312,7 @@ public class Vehicle extends LaneObject{
      * @param minTravelTimeForRecycling	the time in milliseconds
      */
     public static void setMinTravelTimeForRecycling(int minTravelTimeForRecycling){
-        minTravelTimeForRecycling_ = minTravelTimeForRecycling;
+        SimulationContext.current().setMinTravelTimeForRecycling(minTravelTimeForRecycling);
     }
 
     /**
@@ -1872,7 +2321,7 @@ public class Vehicle extends LaneObject{
      * @param maximumCommunicationDistance	the maximum communication distance in cm
      */
     public static void setMaximumCommunicationDistance(int maximumCommunicationDistance){
-        maximumCommunicationDistance_ = maximumCommunicationDistance;
+        SimulationContext.current().setMaximumCommunicationDistance(maximumCommunicationDistance);
     }
 
     /**
@@ -1881,7 +2330,7 @@ public class Vehicle extends LaneObject{
      * @param regions	the array with all regions
      */
     public static void setRegions(Region[][] regions){
-        regions_ = regions;
+        SimulationContext.current().setRegions(regions);
     }
 
     /**
@@ -1890,7 +2339,7 @@ public class Vehicle extends LaneObject{
      * @param communicationInterval	the new value
      */
     public static void setCommunicationInterval(int communicationInterval){
-        communicationInterval_ = communicationInterval;
+        SimulationContext.current().setCommunicationInterval(communicationInterval);
     }
 
     /**
@@ -1899,7 +2348,7 @@ public class Vehicle extends LaneObject{
      * @param beaconInterval	the new value
      */
     public static void setBeaconInterval(int beaconInterval){
-        beaconInterval_ = beaconInterval;
+        SimulationContext.current().setBeaconInterval(beaconInterval);
     }
 
     /**
@@ -1909,7 +2358,7 @@ public class Vehicle extends LaneObject{
      */
     public static void setCommunicationEnabled(boolean state){
         RSU.setCommunicationEnabled(state);
-        communicationEnabled_ = state;
+        SimulationContext.current().setCommunicationEnabled(state);
     }
 
     /**
@@ -1918,7 +2367,7 @@ public class Vehicle extends LaneObject{
      * @param state	<code>true</code> to enable recycling, else <code>false</code>
      */
     public static void setRecyclingEnabled(boolean state){
-        recyclingEnabled_ = state;
+        SimulationContext.current().setRecyclingEnabled(state);
     }
 
     /**
@@ -1928,7 +2377,7 @@ public class Vehicle extends LaneObject{
      */
     public static void setBeaconsEnabled(boolean state){
         RSU.setBeaconsEnabled(state);
-        beaconsEnabled_ = state;
+        SimulationContext.current().setBeaconsEnabled(state);
     }
 
     /**
@@ -2045,7 +2494,25 @@ public class Vehicle extends LaneObject{
      * @param mode	the new routing mode
      */
     public static void setRoutingMode(int mode){
-        routingMode_ = mode;
+        SimulationContext.current().setRoutingMode(mode);
+    }
+
+    /**
+     * Gets the steady ID which (unlike the ID) doesn't change through mixing. A new one is given out when the vehicle is recycled.
+     *
+     * @return the steady ID
+     */
+    public int getSteadyID(){
+        return steadyID_;
+    }
+
+    /**
+     * Gets the first steady ID of this vehicle, which stays the same when the vehicle is recycled.
+     *
+     * @return the steady ID given out when this vehicle was created
+     */
+    public int getCreationNumber(){
+        return creationNumber_;
     }
 
     /**
@@ -2092,6 +2559,10 @@ public class Vehicle extends LaneObject{
      */
     public void setCurWaitTime(int curWaitTime) {
         curWaitTime_ = curWaitTime;
+        if(wakeUpTime_ != 0){
+            wakeUpTime_ = 0;
+            if(curRegion_ != null) curRegion_.getActiveVehicleSet().invalidate();
+        }
     }
 
     /**
@@ -2100,6 +2571,10 @@ public class Vehicle extends LaneObject{
      * @return curWaitTime_ the current wait time
      */
     public int getCurWaitTime() {
+        if(wakeUpTime_ != 0 && wakeUpTime_ != DORMANT){	// sleeping, the wait time is only updated on wake-up
+            int time = context_.getTime();
+            if(time > sleepTime_) return sleepWaitTime_ - ((time - sleepTime_)/sleepTimePerStep_ - 1) * sleepTimePerStep_;
+        }
         return curWaitTime_;
     }
 
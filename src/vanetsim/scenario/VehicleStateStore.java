@@ -0,0 +1,310 @@
+package vanetsim.scenario;
+
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+
+/**
+ * Keeps the kinematic state of the vehicles of one region in primitive arrays (one row per vehicle) so that the movement
+ * of all vehicles which simply drive on along their current street can be calculated in one tight loop instead of
+ * following the references of each vehicle to its street and nodes.
+ * <br>
+ * A step works in three parts:
+ * <ol>
+ * <li>gather: each active vehicle copies its speed, position and the position it may at most reach without leaving the
+ * street or passing its destination into its row. The geometry of the street is only read again if the street, the
+ * direction or the lane of the vehicle have changed.</li>
+ * <li>kernel: the new positions and coordinates are calculated for all rows in simple loops over the arrays. Rows which would leave the street, pass a
+ * destination or the region are marked to use the normal way.</li>
+ * <li>scatter: in the original order of the vehicles, the results are written back or <code>Vehicle.move()</code> is called.</li>
+ * </ol>
+ * The braking distances needed by <code>Vehicle.adjustSpeed()</code> are calculated the same way before the speeds are adjusted.
+ * <br>
+ * The vehicles stay the authoritative place of their state, the results are exactly the same as with <code>Vehicle.move()</code>.
+ * A store is only used by the thread working on its region.
+ */
+public final class VehicleStateStore {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The amount of rows used in the current step. */
+    private int count_ = 0;
+
+    /** If the row may use the fast way. */
+    private boolean[] fast_ = new boolean[0];
+
+    /** The speed in cm/s the vehicle will drive with in this step. */
+    private double[] speed_ = new double[0];
+
+    /** The position on the street before the step. */
+    private double[] position_ = new double[0];
+
+    /** The position on the street after the step. */
+    private double[] newPosition_ = new double[0];
+
+    /** The position which may be reached at most in this step without leaving the street or passing a destination. */
+    private double[] limit_ = new double[0];
+
+    /** The new x coordinate. */
+    private int[] x_ = new int[0];
+
+    /** The new y coordinate. */
+    private int[] y_ = new int[0];
+
+    /** The movement in this step in cm. */
+    private double[] movement_ = new double[0];
+
+    /** The street the geometry of the row belongs to. */
+    private Street[] street_ = new Street[0];
+
+    /** The direction the geometry of the row belongs to. */
+    private boolean[] direction_ = new boolean[0];
+
+    /** The direction as factor for the movement (<code>1</code> or <code>-1</code>). */
+    private double[] sign_ = new double[0];
+
+    /** The lane the geometry of the row belongs to. */
+    private int[] lane_ = new int[0];
+
+    /** <code>0.5</code> (for rounding) + offset of the lane + x coordinate of the start node. */
+    private double[] baseX_ = new double[0];
+
+    /** <code>0.5</code> (for rounding) + offset of the lane + y coordinate of the start node. */
+    private double[] baseY_ = new double[0];
+
+    /** The difference of the x coordinates of end and start node. */
+    private double[] deltaX_ = new double[0];
+
+    /** The difference of the y coordinates of end and start node. */
+    private double[] deltaY_ = new double[0];
+
+    /** The length of the street. */
+    private double[] length_ = new double[0];
+
+    /** The braking rate in cm/s^2 (for the braking distance). */
+    private int[] brakingRate_ = new int[0];
+
+    /** The calculated braking distance in cm. */
+    private int[] brakingDistance_ = new int[0];
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Moves all active vehicles of a region or recycles the inactive ones. Does the same as calling <code>move()</code>
+     * respectively <code>reset()</code> on each vehicle in the order of the array.
+     *
+     * @param region			the region
+     * @param vehicles			the vehicles of the region
+     * @param count				the amount of vehicles to use from the array
+     * @param timePerStep		the time in milliseconds for one step
+     * @param recyclingEnabled	if vehicles may be recycled
+     */
+    public void move(Region region, Vehicle[] vehicles, int count, int timePerStep, boolean recyclingEnabled){
+        int i;
+        ensureCapacity(count);
+        count_ = count;
+
+        // gather
+        for(i = 0; i < count_; ++i){
+            fast_[i] = vehicles[i].isActive() && vehicles[i].exportKinematics(this, i, region);
+        }
+
+        moveKernel(timePerStep/1000.0, region.getLeftBoundary(), region.getRightBoundary(), region.getUpperBoundary(), region.getLowerBoundary());
+
+        // scatter (in original order as moving a vehicle to another street may depend on the positions of the vehicles before)
+        for(i = 0; i < count_; ++i){
+            if(fast_[i]) vehicles[i].importKinematics(newPosition_[i], x_[i], y_[i], movement_[i], timePerStep);
+            else if(vehicles[i].isActive()) vehicles[i].move(timePerStep);
+            else if(recyclingEnabled && vehicles[i].getMayBeRecycled()) vehicles[i].reset();
+        }
+    }
+
+    /**
+     * Updates the braking distances of all vehicles of a region whose speed has changed since the last calculation.
+     * Called before <code>adjustSpeed()</code> which then doesn't need to calculate them anymore.
+     *
+     * @param vehicles	the vehicles of the region
+     * @param count		the amount of vehicles to use from the array
+     */
+    public void updateBrakingDistances(Vehicle[] vehicles, int count){
+        int i;
+        ensureCapacity(count);
+        count_ = count;
+        for(i = 0; i < count_; ++i){
+            fast_[i] = vehicles[i].exportBraking(this, i);
+        }
+        brakingKernel();
+        for(i = 0; i < count_; ++i){
+            if(fast_[i]) vehicles[i].importBrakingDistance(brakingDistance_[i]);
+        }
+    }
+
+    /**
+     * Calculates the new positions and coordinates of all rows. Rows which can't be moved here are marked.
+     * The loops only work on primitive arrays without method calls or object accesses so that the JIT compiler can unroll
+     * and vectorize them (the Vector API in <code>jdk.incubator.vector</code> doesn't exist on Java 8, for which the project is
+     * built). All calculations give exactly the same values as in <code>Vehicle.move()</code> and
+     * <code>LaneObject.calculatePosition()</code>.
+     *
+     * @param seconds	the time of one step in seconds
+     * @param left		the left boundary of the region
+     * @param right		the right boundary of the region
+     * @param upper		the upper boundary of the region
+     * @param lower		the lower boundary of the region
+     */
+    private void moveKernel(double seconds, int left, int right, int upper, int lower){
+        int count = count_, i, x, y;
+        boolean[] fast = fast_;
+        double[] speed = speed_, position = position_, newPosition = newPosition_, movement = movement_, sign = sign_, limit = limit_;
+        double[] baseX = baseX_, baseY = baseY_, deltaX = deltaX_, deltaY = deltaY_, length = length_;
+        int[] xs = x_, ys = y_;
+        double percentOnStreet;
+
+        for(i = 0; i < count; ++i){
+            movement[i] = speed[i] * seconds;
+        }
+        // a - b is the same as a + (-1 * b)
+        for(i = 0; i < count; ++i){
+            newPosition[i] = (movement[i] > 0) ? position[i] + sign[i] * movement[i] : position[i];
+        }
+        // leaving the street or passing the destination has to be done by the vehicle
+        for(i = 0; i < count; ++i){
+            fast[i] = fast[i] & (movement[i] <= 0 || (newPosition[i] - limit[i]) * sign[i] <= 0);
+        }
+        for(i = 0; i < count; ++i){
+            percentOnStreet = newPosition[i] / length[i];
+            // Math.floor() is exactly specified and gives the same results as StrictMath.floor()
+            xs[i] = (int) Math.floor(baseX[i] + (deltaX[i] * percentOnStreet));
+            ys[i] = (int) Math.floor(baseY[i] + (deltaY[i] * percentOnStreet));
+        }
+        // region changes have to be done by the vehicle
+        for(i = 0; i < count; ++i){
+            x = xs[i];
+            y = ys[i];
+            fast[i] = fast[i] & x >= left & x <= right & y >= upper & y <= lower;
+        }
+    }
+
+    /**
+     * Calculates the braking distances of all rows (same formula as in <code>Vehicle.adjustSpeed()</code>).
+     */
+    private void brakingKernel(){
+        int count = count_, i, distance;
+        double[] speed = speed_;
+        int[] brakingRate = brakingRate_, brakingDistance = brakingDistance_;
+        for(i = 0; i < count; ++i){
+            distance = (int) Math.floor(0.5d + speed[i] + speed[i] * speed[i] / (2 * brakingRate[i]));
+            brakingDistance[i] = (distance < 500) ? 500 : distance;
+        }
+    }
+
+    /**
+     * Fills a row with the speed and braking rate of a vehicle. Called by the vehicle.
+     *
+     * @param row			the row
+     * @param speed			the current speed
+     * @param brakingRate	the braking rate
+     */
+    void setBrakingRow(int row, double speed, int brakingRate){
+        speed_[row] = speed;
+        brakingRate_[row] = brakingRate;
+    }
+
+    /**
+     * Fills a row with the state of a vehicle. Called by the vehicle.
+     *
+     * @param row		the row
+     * @param street	the current street
+     * @param direction	the current direction
+     * @param lane		the lane used in this step
+     * @param speed		the speed used in this step
+     * @param position	the current position on the street
+     * @param limit		the position which may be reached at most without leaving the street or passing a destination
+     */
+    void setRow(int row, Street street, boolean direction, int lane, double speed, double position, double limit){
+        speed_[row] = speed;
+        position_[row] = position;
+        limit_[row] = limit;
+        if(street_[row] != street || direction_[row] != direction || lane_[row] != lane){
+            street_[row] = street;
+            direction_[row] = direction;
+            sign_[row] = direction ? 1 : -1;
+            lane_[row] = lane;
+            // same calculation as in LaneObject.calculatePosition()
+            double addX, addY, rightmost;
+            if(street.isOneway()){
+                if(street.getLanesCount()%2 == 0) rightmost = street.getLanesCount()/2 + 0.5;
+                else rightmost = street.getLanesCount()/2 + 1;
+            } else rightmost = street.getLanesCount() + 0.5;
+            if(direction){
+                addX = street.getXFactor() * (rightmost - lane);
+                addY = street.getYFactor() * (rightmost - lane);
+            } else {
+                addX = - street.getXFactor() * (rightmost - lane);
+                addY = - street.getYFactor() * (rightmost - lane);
+            }
+            baseX_[row] = 0.5d + addX + street.getStartNode().getX();
+            baseY_[row] = 0.5d + addY + street.getStartNode().getY();
+            deltaX_[row] = street.getEndNode().getX() - street.getStartNode().getX();
+            deltaY_[row] = street.getEndNode().getY() - street.getStartNode().getY();
+            length_[row] = street.getLength();
+        }
+    }
+
+    /**
+     * Makes sure that there are enough rows. The geometry of existing rows is kept.
+     *
+     * @param capacity	the amount of rows needed
+     */
+    private void ensureCapacity(int capacity){
+        int old = fast_.length;
+        if(capacity <= old) return;
+        if(capacity < old * 2) capacity = old * 2;
+        fast_ = new boolean[capacity];
+        speed_ = new double[capacity];
+        position_ = new double[capacity];
+        newPosition_ = new double[capacity];
+        limit_ = new double[capacity];
+        x_ = new int[capacity];
+        y_ = new int[capacity];
+        movement_ = new double[capacity];
+        brakingRate_ = new int[capacity];
+        brakingDistance_ = new int[capacity];
+
+        Street[] street = new Street[capacity];
+        System.arraycopy(street_, 0, street, 0, old);
+        street_ = street;
+        boolean[] direction = new boolean[capacity];
+        System.arraycopy(direction_, 0, direction, 0, old);
+        direction_ = direction;
+        double[] tmp = new double[capacity];
+        System.arraycopy(sign_, 0, tmp, 0, old);
+        sign_ = tmp;
+        int[] lane = new int[capacity];
+        System.arraycopy(lane_, 0, lane, 0, old);
+        lane_ = lane;
+        tmp = new double[capacity];
+        System.arraycopy(baseX_, 0, tmp, 0, old);
+        baseX_ = tmp;
+        tmp = new double[capacity];
+        System.arraycopy(baseY_, 0, tmp, 0, old);
+        baseY_ = tmp;
+        tmp = new double[capacity];
+        System.arraycopy(deltaX_, 0, tmp, 0, old);
+        deltaX_ = tmp;
+        tmp = new double[capacity];
+        System.arraycopy(deltaY_, 0, tmp, 0, old);
+        deltaY_ = tmp;
+        tmp = new double[capacity];
+        System.arraycopy(length_, 0, tmp, 0, old);
+        length_ = tmp;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Iterator;
 import java.util.PriorityQueue;
 
 import vanetsim.debug.Debug;
+import vanetsim.simulation.SimulationContext;
 
 
 /**
@@ -12,9 +13,6 @@ import vanetsim.debug.Debug;
  */
 public final class EventList{
 
-	/** The only instance of this class (singleton). */
-	private static final EventList INSTANCE = new EventList();
-
 	/** A <code>PriorityQueue</code> storing all coming events. */
 	private final PriorityQueue<Event> allEvents_ = new PriorityQueue<Event>(16);
 
@@ -22,7 +20,7 @@ public final class EventList{
 	private final ArrayList<StartBlocking> currentBlockings_ = new ArrayList<StartBlocking>(16);
 
 	/**
-	 * Empty, private constructor in order to disable instancing.
+	 * Private constructor in order to disable instancing. Use {@link #createInstance()}.
 	 */
 	private EventList(){
 		Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
@@ -31,12 +29,21 @@ public final class EventList{
 	}
 
 	/**
-	 * Gets the single instance of this EventList.
+	 * Gets the EventList of the <code>SimulationContext</code> bound to the calling thread.
 	 *
-	 * @return single instance of this EventList
+	 * @return the EventList of the current context
 	 */
 	public static EventList getInstance(){
-		return INSTANCE;
+		return SimulationContext.current().getEventList();
+	}
+
+	/**
+	 * Creates a new, empty EventList. Only used by the <code>SimulationContext</code>.
+	 *
+	 * @return the new EventList
+	 */
+	public static EventList createInstance(){
+		return new EventList();
 	}
 
 	/**
@@ -129,6 +136,17 @@ public final class EventList{
 		currentBlockings_.remove(event);
 	}
 
+	/**
+	 * Gets the time of the next event which has not been processed yet.
+	 *
+	 * @return the time in milliseconds or <code>Integer.MAX_VALUE</code> if there's no event left
+	 */
+	public int getNextEventTime(){
+		Event tmpEvent = allEvents_.peek();
+		if(tmpEvent == null) return Integer.MAX_VALUE;
+		else return tmpEvent.getTime();
+	}
+
 	/**
 	 * Process next event(s).
 	 *
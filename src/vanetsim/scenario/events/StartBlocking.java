@@ -9,6 +9,7 @@ import vanetsim.debug.Debug;
 import vanetsim.localization.Messages;
 import vanetsim.map.MapHelper;
 import vanetsim.map.Street;
+import vanetsim.simulation.SimulationContext;
 
 /**
  * This class represents an event which starts blocking on a street.
@@ -116,6 +117,7 @@ public final class StartBlocking extends Event{
      */
     public void execute(){
         EventList.getInstance().addCurrentBlockings(this);
+        SimulationContext.current().getRouteCache().invalidate(affectedStreet_);
         if(blockingObjects_ == null) blockingObjects_ = new ArrayList<BlockingObject>(2);
         int lanes = Math.min(affectedLanes_, affectedStreet_.getLanesCount()+1);	//don't create more blockings than street has lanes.
         if(affectedDirection_ == 0 || affectedDirection_ == 1){
@@ -9,6 +9,7 @@ import java.util.Iterator;
 import vanetsim.ErrorLog;
 import vanetsim.debug.Debug;
 import vanetsim.localization.Messages;
+import vanetsim.simulation.SimulationContext;
 
 /**
  * This class represents an event which ends blocking on a street ("unblock").
@@ -128,6 +129,7 @@ public final class StopBlocking extends Event{
             blockingObjects.get(i).removeFromLane();
         }
         EventList.getInstance().delCurrentBlockings(startBlockingEvent_);
+        SimulationContext.current().getRouteCache().invalidate(startBlockingEvent_.getStreet());
     }
 
     /**
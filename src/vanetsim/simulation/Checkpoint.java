@@ -0,0 +1,383 @@
+package vanetsim.simulation;
+
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Node;
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+import vanetsim.scenario.KnownRSUsList;
+import vanetsim.scenario.KnownVehiclesList;
+import vanetsim.scenario.LaneObject;
+import vanetsim.scenario.Vehicle;
+import vanetsim.scenario.events.BlockingObject;
+import vanetsim.scenario.events.EventList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves the state of a running simulation to a binary file and restores it, so that the simulation can be continued later
+ * with exactly the same results as without the interruption. A checkpoint contains everything which changes while the
+ * simulation runs:
+ * <ul>
+ * <li>the vehicles with their routes, countdowns, sleep state, random number generators and known penalties</li>
+ * <li>the order of the vehicles in the regions and of the objects in the lane containers</li>
+ * <li>the queues of the junctions and the timers of the traffic lights</li>
+ * <li>the simulation time, the steady ID counter and the random number generator of the context</li>
+ * </ul>
+ * The map and the scenario are not part of a checkpoint. Before restoring, the same map and scenario have to be loaded
+ * (vehicles are referenced by the order in which they were created, see <code>MapIndex</code>). The events which were
+ * executed until the time of the checkpoint are executed again when restoring, the blocking objects they create are
+ * then put back into the lanes at their saved positions.
+ * <br>
+ * Both functions work on the context bound to the calling thread and must not be called while a step is running. As the
+ * schedulers recalculate the junctions when they are created, the scheduler has to be created before restoring.
+ */
+public final class Checkpoint {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The first bytes of a checkpoint file. */
+    private static final int MAGIC = 0x56534350;
+
+    /** The version of the file format. */
+    private static final int VERSION = 1;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Not used, only static methods.
+     */
+    private Checkpoint(){
+    }
+
+    /**
+     * Saves the state of the simulation. Lane changes which are still handed over to other regions are applied before and
+     * the timers of the traffic lights are counted down to the current step.
+     *
+     * @param file	the file to write to (compressed with GZIP)
+     *
+     * @throws IOException if writing fails
+     */
+    public static void save(File file) throws IOException{
+        Region[][] regions = Map.getInstance().getRegions();
+        settleLaneHandoffs(regions);
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j) regions[i][j].synchronizeTrafficLights(SimulationMaster.TIME_PER_STEP);
+        }
+        MapIndex index = new MapIndex(regions);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+        try{
+            write(out, regions, index);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Restores the state of the simulation. The map and the scenario of the saved simulation have to be loaded and no step
+     * may have been done since.
+     *
+     * @param file	the file to read from
+     *
+     * @throws IOException if reading fails or the checkpoint doesn't belong to the loaded map and scenario
+     */
+    public static void restore(File file) throws IOException{
+        Region[][] regions = Map.getInstance().getRegions();
+        settleLaneHandoffs(regions);
+        MapIndex index = new MapIndex(regions);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        try{
+            read(in, regions, index);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a random number generator so that it continues with the same numbers after {@link #readRandom(DataInputStream)}.
+     *
+     * @param out		the stream to write to
+     * @param random	the random number generator
+     *
+     * @throws IOException if writing fails
+     */
+    public static void writeRandom(DataOutputStream out, Random random) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        ObjectOutputStream objects = new ObjectOutputStream(bytes);
+        objects.writeObject(random);
+        objects.close();
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Reads a random number generator written by {@link #writeRandom(DataOutputStream, Random)}.
+     *
+     * @param in	the stream to read from
+     *
+     * @return the random number generator
+     *
+     * @throws IOException if reading fails
+     */
+    public static Random readRandom(DataInputStream in) throws IOException{
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try{
+            return (Random)objects.readObject();
+        } catch (ClassNotFoundException e){
+            throw new IOException(e);
+        } finally {
+            objects.close();
+        }
+    }
+
+    /**
+     * Applies all lane changes which are handed over to the main regions of the streets. Normally this is done at the
+     * beginning of the next step, but the lane containers have to be complete when they are saved.
+     *
+     * @param regions	all regions of the map
+     */
+    private static void settleLaneHandoffs(Region[][] regions){
+        int i, j;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j) regions[i][j].applyLaneHandoffs(false);
+        }
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j) regions[i][j].applyLaneHandoffs(true);
+        }
+    }
+
+    /**
+     * Writes the state of the simulation.
+     *
+     * @param out		the stream to write to
+     * @param regions	all regions of the map
+     * @param index		the index of the map
+     *
+     * @throws IOException if writing fails
+     */
+    private static void write(DataOutputStream out, Region[][] regions, MapIndex index) throws IOException{
+        SimulationContext context = SimulationContext.current();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(Map.getInstance().getMapWidth());
+        out.writeInt(Map.getInstance().getMapHeight());
+        out.writeInt(regions.length);
+        out.writeInt((regions.length > 0) ? regions[0].length : 0);
+        out.writeInt(index.getStreetCount());
+        out.writeInt(index.getNodeCount());
+        out.writeInt(index.getVehicleCount());
+
+        out.writeInt(SimulationClock.getTime());
+        out.writeInt(countEvents());
+        out.writeInt(EventList.getInstance().getCurrentBlockingsArrayList().size());
+        out.writeInt(context.getSteadyIDCount());
+        writeRandom(out, context.getRandom());
+
+        int i, j, k;
+        for(i = 0; i < index.getVehicleCount(); ++i) index.getVehicle(i).writeCheckpoint(out, index);
+
+        Vehicle[] vehicles;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j){
+                vehicles = regions[i][j].getVehicleArray();
+                out.writeInt(vehicles.length);
+                for(k = 0; k < vehicles.length; ++k) out.writeInt(index.getVehicleNumber(vehicles[k]));
+            }
+        }
+
+        // blocking objects are referenced by their position in the blockings (their events are executed again when restoring)
+        ArrayList<BlockingObject> blockingObjects = getBlockingObjects();
+        IdentityHashMap<LaneObject, Integer> blockingNumbers = new IdentityHashMap<LaneObject, Integer>();
+        for(i = 0; i < blockingObjects.size(); ++i) blockingNumbers.put(blockingObjects.get(i), i);
+        Street street;
+        for(i = 0; i < index.getStreetCount(); ++i){
+            street = index.getStreet(i);
+            writeLane(out, street.getFirstLaneObject(true), index, blockingNumbers);
+            writeLane(out, street.getFirstLaneObject(false), index, blockingNumbers);
+            out.writeInt(street.getStartNodeTrafficLightState());
+            out.writeInt(street.getEndNodeTrafficLightState());
+        }
+
+        Node node;
+        for(i = 0; i < index.getNodeCount(); ++i){
+            node = index.getNode(i);
+            if(node.getJunction() != null) node.getJunction().writeState(out, index);
+            if(node.getTrafficLight_() != null) node.getTrafficLight_().writeState(out);
+        }
+    }
+
+    /**
+     * Writes the objects of a lane container in their order.
+     *
+     * @param out				the stream to write to
+     * @param object			the first object of the lane container
+     * @param index				the index of the map
+     * @param blockingNumbers	the numbers of the blocking objects
+     *
+     * @throws IOException if writing fails or an object can't be referenced
+     */
+    private static void writeLane(DataOutputStream out, LaneObject object, MapIndex index, IdentityHashMap<LaneObject, Integer> blockingNumbers) throws IOException{
+        int count = 0;
+        for(LaneObject tmpObject = object; tmpObject != null; tmpObject = tmpObject.getNext()) ++count;
+        out.writeInt(count);
+        int number;
+        Integer blockingNumber;
+        for(; object != null; object = object.getNext()){
+            if(object instanceof Vehicle){
+                number = index.getVehicleNumber((Vehicle)object);
+                if(number == -1) throw new IOException(Messages.getString("Checkpoint.unknownLaneObject")); //$NON-NLS-1$
+                out.writeInt(number);
+            } else {
+                blockingNumber = blockingNumbers.get(object);
+                if(blockingNumber == null) throw new IOException(Messages.getString("Checkpoint.unknownLaneObject")); //$NON-NLS-1$
+                out.writeInt(-1 - blockingNumber.intValue());
+            }
+        }
+    }
+
+    /**
+     * Reads the state of the simulation.
+     *
+     * @param in		the stream to read from
+     * @param regions	all regions of the map
+     * @param index		the index of the map
+     *
+     * @throws IOException if reading fails or the checkpoint doesn't fit
+     */
+    private static void read(DataInputStream in, Region[][] regions, MapIndex index) throws IOException{
+        SimulationContext context = SimulationContext.current();
+        if(in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException(Messages.getString("Checkpoint.wrongFormat")); //$NON-NLS-1$
+        if(in.readInt() != Map.getInstance().getMapWidth() || in.readInt() != Map.getInstance().getMapHeight() || in.readInt() != regions.length
+                || in.readInt() != ((regions.length > 0) ? regions[0].length : 0) || in.readInt() != index.getStreetCount() || in.readInt() != index.getNodeCount()){
+            throw new IOException(Messages.getString("Checkpoint.wrongMap")); //$NON-NLS-1$
+        }
+        if(in.readInt() != index.getVehicleCount()) throw new IOException(Messages.getString("Checkpoint.wrongScenario")); //$NON-NLS-1$
+
+        int time = in.readInt();
+        // the events create the same blockings as in the saved run
+        EventList.getInstance().processEvents(time);
+        if(in.readInt() != countEvents() || in.readInt() != EventList.getInstance().getCurrentBlockingsArrayList().size()) throw new IOException(Messages.getString("Checkpoint.wrongScenario")); //$NON-NLS-1$
+        context.setSteadyIDCount(in.readInt());
+        context.setRandom(readRandom(in));
+
+        int i, j, k;
+        for(i = 0; i < index.getVehicleCount(); ++i) index.getVehicle(i).readCheckpoint(in, index);
+
+        Vehicle[] vehicles;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j){
+                vehicles = new Vehicle[in.readInt()];
+                for(k = 0; k < vehicles.length; ++k){
+                    vehicles[k] = index.getVehicle(in.readInt());
+                    vehicles[k].setRegion(regions[i][j]);
+                }
+                regions[i][j].setVehicles(vehicles);
+            }
+        }
+
+        // rebuild all lane containers in the saved order
+        for(i = 0; i < index.getVehicleCount(); ++i){
+            index.getVehicle(i).setNext(null);
+            index.getVehicle(i).setPrevious(null);
+        }
+        for(i = 0; i < index.getStreetCount(); ++i) index.getStreet(i).clearLanes();
+        ArrayList<BlockingObject> blockingObjects = getBlockingObjects();
+        Street street;
+        for(i = 0; i < index.getStreetCount(); ++i){
+            street = index.getStreet(i);
+            readLane(in, street, true, index, blockingObjects);
+            readLane(in, street, false, index, blockingObjects);
+            street.setStartNodeTrafficLightState(in.readInt());
+            street.setEndNodeTrafficLightState(in.readInt());
+        }
+
+        Node node;
+        for(i = 0; i < index.getNodeCount(); ++i){
+            node = index.getNode(i);
+            if(node.getJunction() != null) node.getJunction().readState(in, index);
+            if(node.getTrafficLight_() != null) node.getTrafficLight_().readState(in);
+        }
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j) regions[i][j].rescheduleTrafficLights();
+        }
+
+        KnownVehiclesList.setTimePassed(time);
+        KnownRSUsList.setTimePassed(time);
+        SimulationClock.setTime(time);
+    }
+
+    /**
+     * Reads the objects of a lane container and appends them.
+     *
+     * @param in				the stream to read from
+     * @param street			the street
+     * @param direction			the direction of the lane container
+     * @param index				the index of the map
+     * @param blockingObjects	the blocking objects
+     *
+     * @throws IOException if reading fails or an object doesn't exist
+     */
+    private static void readLane(DataInputStream in, Street street, boolean direction, MapIndex index, ArrayList<BlockingObject> blockingObjects) throws IOException{
+        int count = in.readInt(), number;
+        for(int i = 0; i < count; ++i){
+            number = in.readInt();
+            if(number >= 0) street.appendLaneObject(index.getVehicle(number), direction);
+            else if(-1 - number < blockingObjects.size()) street.appendLaneObject(blockingObjects.get(-1 - number), direction);
+            else throw new IOException(Messages.getString("Checkpoint.wrongScenario")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Gets the blocking objects of all current blockings in a fixed order.
+     *
+     * @return the blocking objects
+     */
+    private static ArrayList<BlockingObject> getBlockingObjects(){
+        ArrayList<BlockingObject> result = new ArrayList<BlockingObject>();
+        ArrayList<BlockingObject> tmpObjects;
+        for(int i = 0; i < EventList.getInstance().getCurrentBlockingsArrayList().size(); ++i){
+            tmpObjects = EventList.getInstance().getCurrentBlockingsArrayList().get(i).getBlockingObjects();
+            if(tmpObjects != null) result.addAll(tmpObjects);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the events which haven't been executed yet.
+     *
+     * @return the amount of events
+     */
+    private static int countEvents(){
+        int count = 0;
+        for(Iterator<?> events = EventList.getInstance().getIterator(); events.hasNext(); events.next()) ++count;
+        return count;
+    }
+}
@@ -0,0 +1,24 @@
+package vanetsim.simulation;
+
+/**
+ * A thread which keeps the <code>SimulationContext</code> bound to it in a field. The simulation threads (the
+ * <code>WorkerThread</code>s and the threads of the <code>WorkStealingScheduler</code>) ask for their context several times
+ * per vehicle and step, so {@link SimulationContext#current()} reads it from here instead of looking it up in the
+ * <code>ThreadLocal</code>. Only the thread itself may call the methods.
+ */
+interface ContextThread {
+
+    /**
+     * Gets the context bound to this thread.
+     *
+     * @return the context or <code>null</code> if none was bound
+     */
+    public SimulationContext getBoundContext();
+
+    /**
+     * Binds a context to this thread.
+     *
+     * @param context	the context or <code>null</code> to use the default context
+     */
+    public void setBoundContext(SimulationContext context);
+}
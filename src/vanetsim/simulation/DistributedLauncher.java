@@ -0,0 +1,146 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.localization.Messages;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a distributed simulation with several processes on the local machine, mainly for testing. Each process is a new
+ * JVM with the same class path which runs a <code>HeadlessEngine</code> on its part of the map (see <code>RegionPartition</code>)
+ * and exchanges the vehicles at the borders with the others (see <code>GhostExchange</code>). All processes create the same
+ * random vehicles, so they start with the same scenario.
+ */
+public final class DistributedLauncher {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The port of the first process if none is given. */
+    private static final int DEFAULT_BASE_PORT = 47100;
+
+    /** The argument which marks a started process. */
+    private static final String NODE_ARGUMENT = "-node"; //$NON-NLS-1$
+
+    /** How long to wait for a process before checking the others again (in milliseconds). */
+    private static final int POLL_INTERVAL = 100;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Not used, only static methods.
+     */
+    private DistributedLauncher(){
+    }
+
+    /**
+     * Starts the processes and waits until all of them have finished. If one of them fails, the others are stopped as they
+     * would wait for its vehicles forever.
+     *
+     * @param map			the map file
+     * @param vehicles		the amount of random vehicles
+     * @param time			the time until the simulation stops (in milliseconds)
+     * @param processes		the amount of processes
+     * @param basePort		the port of the first process, the others use the following ports
+     * @param threads		the amount of threads in each process
+     *
+     * @return <code>true</code> if all processes finished without error, else <code>false</code>
+     *
+     * @throws Exception if a process can't be started
+     */
+    public static boolean launch(File map, int vehicles, int time, int processes, int basePort, int threads) throws Exception{
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        ArrayList<Process> started = new ArrayList<Process>();
+        try{
+            for(int i = 0; i < processes; ++i){
+                ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), DistributedLauncher.class.getName(), NODE_ARGUMENT, //$NON-NLS-1$ //$NON-NLS-2$
+                        String.valueOf(i), String.valueOf(processes), String.valueOf(basePort), map.getPath(), String.valueOf(vehicles), String.valueOf(time), String.valueOf(threads));
+                builder.inheritIO();
+                started.add(builder.start());
+            }
+            int running = started.size();
+            boolean[] finished = new boolean[started.size()];
+            while(running > 0){
+                for(int i = 0; i < started.size(); ++i){
+                    if(finished[i]) continue;
+                    Process process = started.get(i);
+                    if(!process.waitFor(POLL_INTERVAL / started.size() + 1, TimeUnit.MILLISECONDS)) continue;
+                    finished[i] = true;
+                    --running;
+                    if(process.exitValue() != 0){
+                        ErrorLog.log(Messages.getString("DistributedLauncher.processFailed") + i, 7, DistributedLauncher.class.getName(), "launch", null); //$NON-NLS-1$ //$NON-NLS-2$
+                        return false;	// the others are destroyed below
+                    }
+                }
+            }
+            return true;
+        } finally {
+            for(int i = 0; i < started.size(); ++i) started.get(i).destroy();
+        }
+    }
+
+    /**
+     * Runs one process of a distributed simulation.
+     *
+     * @param process	the number of this process
+     * @param processes	the amount of processes
+     * @param basePort	the port of the first process
+     * @param map		the map file
+     * @param vehicles	the amount of random vehicles
+     * @param time		the time until the simulation stops (in milliseconds)
+     * @param threads	the amount of threads
+     *
+     * @return <code>true</code> if the simulation was run, <code>false</code> if the map couldn't be loaded or the processes couldn't connect
+     */
+    private static boolean runNode(int process, int processes, int basePort, File map, int vehicles, int time, int threads){
+        HeadlessEngine engine = new HeadlessEngine(threads);
+        try{
+            if(!engine.loadMap(map)) return false;
+            engine.createRandomVehicles(vehicles, 1L);
+            if(!engine.distribute(process, processes, basePort)) return false;
+            long start = System.currentTimeMillis();
+            engine.runUntil(time);
+            System.out.println(Messages.getString("DistributedLauncher.process") + process + ": " + engine.getExchange().getActiveVehicleCount() + Messages.getString("DistributedLauncher.activeVehicles") + (System.currentTimeMillis() - start) + " ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+            return true;
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Runs a distributed simulation from the command line.
+     *
+     * @param args	<code>args[0]</code> = map file, <code>args[1]</code> = amount of random vehicles, <code>args[2]</code> = time until the simulation stops (in milliseconds),
+     * 				<code>args[3]</code> = amount of processes, <code>args[4]</code> (optional) = port of the first process, <code>args[5]</code> (optional) = amount of threads per process
+     */
+    public static void main(String[] args){
+        System.setProperty("java.awt.headless", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+        SimulationContext.getDefault().setHeadless(true);	// no dialogs from the error log
+        boolean result;
+        try{
+            if(args.length > 0 && NODE_ARGUMENT.equals(args[0])){
+                result = runNode(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), new File(args[4]), Integer.parseInt(args[5]), Integer.parseInt(args[6]), Integer.parseInt(args[7]));
+            } else {
+                int basePort = DEFAULT_BASE_PORT, processes = Integer.parseInt(args[3]);
+                int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / processes);
+                if(args.length > 4) basePort = Integer.parseInt(args[4]);
+                if(args.length > 5) threads = Integer.parseInt(args[5]);
+                result = launch(new File(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), processes, basePort, threads);
+            }
+        } catch (Exception e){
+            ErrorLog.log(Messages.getString("DistributedLauncher.failed"), 7, DistributedLauncher.class.getName(), "main", e); //$NON-NLS-1$ //$NON-NLS-2$
+            result = false;
+        }
+        System.exit(result ? 0 : 1);
+    }
+}
@@ -0,0 +1,291 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.debug.Debug;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Region;
+import vanetsim.scenario.Vehicle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many simulations in parallel on one map, for example to sweep parameters or to do several replications with different
+ * seeds. The map is loaded only once. All runs share its streets, nodes and regions, each run only has its own vehicles, lanes,
+ * junction queues and traffic light states (see <code>Map.setRunSlots()</code>).
+ * The result of each run is written as one line (separated by semicolons) to a common output as soon as the run has finished.
+ * <p>
+ * Note that the beacon interval, the communication interval and the mix zone radius are set per run and written to the
+ * output, but don't change the results in this version: the communication and mix zone steps of <code>Vehicle.adjustSpeed()</code>
+ * are disabled, and no mix zones are added to the junctions without graphical user interface. Only the amount of vehicles,
+ * the seed and the duration currently lead to different results.
+ */
+public final class EnsembleRunner {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The context which loaded the map. Its slot <code>0</code> is never simulated and serves as template for the runs. */
+    private final SimulationContext network_ = new SimulationContext();
+
+    /** The runs to do. */
+    private final ArrayList<RunParameters> runs_ = new ArrayList<RunParameters>();
+
+    /** How many runs are simulated at the same time. */
+    private final int parallelRuns_;
+
+    /** How many threads each run uses. */
+    private final int threadsPerRun_;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new ensemble runner.
+     *
+     * @param parallelRuns	how many runs are simulated at the same time
+     * @param threadsPerRun	how many threads each run uses
+     */
+    public EnsembleRunner(int parallelRuns, int threadsPerRun){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "EnsembleRunner(int parallelRuns, int threadsPerRun)", Debug.ISLOGGED);
+
+        if(parallelRuns < 1) parallelRuns = 1;
+        if(threadsPerRun < 1) threadsPerRun = 1;
+        parallelRuns_ = parallelRuns;
+        threadsPerRun_ = threadsPerRun;
+    }
+
+    /**
+     * Loads the map shared by all runs.
+     *
+     * @param file	the map file
+     *
+     * @return <code>true</code> if the map could be loaded, else <code>false</code>
+     */
+    public boolean loadMap(File file){
+        HeadlessEngine engine = new HeadlessEngine(network_, 1);
+        boolean result = engine.loadMap(file);
+        engine.shutdown();
+        if(result){
+            // slot 0 stays untouched as template, all runs use the slots after it
+            network_.getMap().setRunSlots(parallelRuns_ + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a run.
+     *
+     * @param vehicles				the amount of random vehicles
+     * @param beaconInterval		the interval between beacons in milliseconds
+     * @param communicationInterval	the interval between messages in milliseconds
+     * @param mixZoneRadius			the radius of the mix zones in cm
+     * @param seed					the seed for the random numbers of this run
+     * @param duration				the simulated time in milliseconds
+     */
+    public void addRun(int vehicles, int beaconInterval, int communicationInterval, int mixZoneRadius, long seed, int duration){
+        runs_.add(new RunParameters(runs_.size(), vehicles, beaconInterval, communicationInterval, mixZoneRadius, seed, duration));
+    }
+
+    /**
+     * Simulates all runs and writes their results. Returns after all runs have finished.
+     *
+     * @param output	where to write the results. Each line is flushed directly.
+     */
+    public void runAll(final Writer output){
+        final ArrayBlockingQueue<Integer> freeSlots = new ArrayBlockingQueue<Integer>(parallelRuns_);
+        for(int i = 1; i <= parallelRuns_; ++i) freeSlots.add(i);
+        writeLine(output, "run;vehicles;beaconInterval;communicationInterval;mixZoneRadius;seed;time;activeVehicles;averageSpeed;travelDistance;wallTime"); //$NON-NLS-1$
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelRuns_);
+        for(int i = 0; i < runs_.size(); ++i){
+            final RunParameters parameters = runs_.get(i);
+            executor.execute(new Runnable(){
+                public void run(){
+                    Integer slot = null;
+                    try{
+                        slot = freeSlots.take();
+                        writeLine(output, simulate(parameters, slot));
+                    } catch (Exception e){
+                        ErrorLog.log(Messages.getString("EnsembleRunner.runFailed") + parameters.run_, 6, EnsembleRunner.class.getName(), "runAll", e); //$NON-NLS-1$ //$NON-NLS-2$
+                    } finally {
+                        if(slot != null) freeSlots.add(slot);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try{
+            while(!executor.awaitTermination(1, TimeUnit.MINUTES));
+        } catch (InterruptedException e){
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Simulates a single run.
+     *
+     * @param parameters	the parameters of the run
+     * @param slot			the run slot of the map to use
+     *
+     * @return the result line
+     */
+    private String simulate(RunParameters parameters, int slot){
+        long start = System.currentTimeMillis();
+        network_.getMap().resetRunSlot(slot);
+        SimulationContext context = new SimulationContext(network_, slot);
+        context.getRandom().setSeed(parameters.seed_);
+        context.setBeaconInterval(parameters.beaconInterval_);
+        context.setCommunicationInterval(parameters.communicationInterval_);
+        context.setMixZoneRadius(parameters.mixZoneRadius_);
+        HeadlessEngine engine = new HeadlessEngine(context, threadsPerRun_);
+        try{
+            engine.createRandomVehicles(parameters.vehicles_, parameters.seed_);
+            engine.runUntil(parameters.duration_);
+        } finally {
+            engine.shutdown();
+        }
+
+        int active = 0;
+        long speedSum = 0, distanceSum = 0;
+        SimulationContext previous = context.bind();
+        try{
+            Region[][] regions = Map.getInstance().getRegions();
+            Vehicle[] vehicles;
+            for(int i = 0; i < regions.length; ++i){
+                for(int j = 0; j < regions[i].length; ++j){
+                    vehicles = regions[i][j].getVehicleArray();
+                    for(int k = 0; k < vehicles.length; ++k){
+                        distanceSum += vehicles[k].getTotalTravelDistance();
+                        if(vehicles[k].isActive()){
+                            ++active;
+                            speedSum += vehicles[k].getCurSpeed();
+                        }
+                    }
+                }
+            }
+            Map.getInstance().clearVehicles();	// free the memory of the run
+        } finally {
+            SimulationContext.restore(previous);
+        }
+        return parameters.run_ + ";" + parameters.vehicles_ + ";" + parameters.beaconInterval_ + ";" + parameters.communicationInterval_ + ";" + parameters.mixZoneRadius_ + ";" + parameters.seed_ + ";" + context.getTime() + ";" + active + ";" + ((active == 0) ? 0 : speedSum / active) + ";" + distanceSum + ";" + (System.currentTimeMillis() - start); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+    }
+
+    /**
+     * Writes a line to the output. Synchronized as all runs write to the same output.
+     *
+     * @param output	the output
+     * @param line		the line
+     */
+    private static void writeLine(Writer output, String line){
+        synchronized(output){
+            try{
+                output.write(line);
+                output.write(System.getProperty("line.separator")); //$NON-NLS-1$
+                output.flush();
+            } catch (IOException e){
+                ErrorLog.log(Messages.getString("EnsembleRunner.writeFailed"), 6, EnsembleRunner.class.getName(), "writeLine", e); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+    }
+
+    /**
+     * Runs a parameter sweep from the command line. Every combination of vehicle amount, beacon interval and mix zone radius
+     * is simulated with the given amount of replications (seeds <code>1</code> to <code>replications</code>). The results are
+     * written to the console. See the class description for the parameters which don't change the results yet.
+     *
+     * @param args	<code>args[0]</code> = map file, <code>args[1]</code> = time until each simulation stops (in milliseconds),
+     * 				<code>args[2]</code> = comma separated amounts of vehicles, <code>args[3]</code> = comma separated beacon intervals,
+     * 				<code>args[4]</code> = comma separated mix zone radii (in cm), <code>args[5]</code> = amount of replications,
+     * 				<code>args[6]</code> (optional) = amount of parallel runs
+     */
+    public static void main(String[] args){
+        System.setProperty("java.awt.headless", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+        SimulationContext.getDefault().setHeadless(true);
+        int parallelRuns = Runtime.getRuntime().availableProcessors();
+        if(args.length > 6) parallelRuns = Integer.parseInt(args[6]);
+        EnsembleRunner runner = new EnsembleRunner(parallelRuns, 1);
+        if(!runner.loadMap(new File(args[0]))) System.exit(1);
+        int duration = Integer.parseInt(args[1]);
+        String[] vehicles = args[2].split(","); //$NON-NLS-1$
+        String[] beaconIntervals = args[3].split(","); //$NON-NLS-1$
+        String[] mixZoneRadii = args[4].split(","); //$NON-NLS-1$
+        int replications = Integer.parseInt(args[5]);
+        for(int i = 0; i < vehicles.length; ++i){
+            for(int j = 0; j < beaconIntervals.length; ++j){
+                for(int k = 0; k < mixZoneRadii.length; ++k){
+                    for(int l = 1; l <= replications; ++l){
+                        runner.addRun(Integer.parseInt(vehicles[i].trim()), Integer.parseInt(beaconIntervals[j].trim()), Vehicle.getCommunicationInterval(), Integer.parseInt(mixZoneRadii[k].trim()), l, duration);
+                    }
+                }
+            }
+        }
+        runner.runAll(new OutputStreamWriter(System.out));
+        System.exit(0);
+    }
+
+
+    /**
+     * The parameters of one run.
+     */
+    private static final class RunParameters {
+
+        /** The number of the run. */
+        private final int run_;
+
+        /** The amount of random vehicles. */
+        private final int vehicles_;
+
+        /** The interval between beacons in milliseconds. */
+        private final int beaconInterval_;
+
+        /** The interval between messages in milliseconds. */
+        private final int communicationInterval_;
+
+        /** The radius of the mix zones in cm. */
+        private final int mixZoneRadius_;
+
+        /** The seed for the random numbers. */
+        private final long seed_;
+
+        /** The simulated time in milliseconds. */
+        private final int duration_;
+
+        /**
+         * Creates the parameters of a run.
+         *
+         * @param run					the number of the run
+         * @param vehicles				the amount of random vehicles
+         * @param beaconInterval		the interval between beacons in milliseconds
+         * @param communicationInterval	the interval between messages in milliseconds
+         * @param mixZoneRadius			the radius of the mix zones in cm
+         * @param seed					the seed for the random numbers
+         * @param duration				the simulated time in milliseconds
+         */
+        RunParameters(int run, int vehicles, int beaconInterval, int communicationInterval, int mixZoneRadius, long seed, int duration){
+            run_ = run;
+            vehicles_ = vehicles;
+            beaconInterval_ = beaconInterval;
+            communicationInterval_ = communicationInterval;
+            mixZoneRadius_ = mixZoneRadius;
+            seed_ = seed;
+            duration_ = duration;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.debug.Debug;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Region;
+import vanetsim.scenario.Vehicle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.BitSet;
+import java.util.Iterator;
+
+/**
+ * Exchanges the state of the vehicles at the borders of a <code>RegionPartition</code> with the other processes of a
+ * distributed simulation after every step. All processes load the same map and scenario, but each one only simulates the
+ * vehicles in its own regions. After a step, a process sends to each other process:
+ * <ul>
+ * <li>the full state of all vehicles which moved from its own regions into a region of the other process. The other process
+ * continues simulating them from then on.</li>
+ * <li>the position, lane and speed of all vehicles in its own regions next to a region of the other process. The other
+ * process puts them into its lane containers, so that its own vehicles near the border brake for them as usual.</li>
+ * <li>the vehicles which were reported in the last step but aren't anymore. They are taken out of the lane containers.</li>
+ * </ul>
+ * The processes are connected to each other by sockets on the local host. The frames of a step are sent and received with
+ * a non-blocking <code>Selector</code>, so large frames can't block two processes sending to each other at the same time.
+ * Receiving the frames of all other processes also keeps the processes in the same step.
+ * <br>
+ * Junctions are arbitrated by each process on its own copy. A vehicle which is handed over while it is on a junction
+ * releases the junction in the new process, the copy in the old process is released by the timeout of the junction.
+ */
+public final class GhostExchange {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** Record: the full state of a vehicle which is simulated by the receiver from now on. */
+    private static final byte RECORD_MIGRANT = 1;
+
+    /** Record: the visible state of a vehicle near the border. */
+    private static final byte RECORD_GHOST = 2;
+
+    /** Record: a vehicle which isn't reported anymore. */
+    private static final byte RECORD_LEAVE = 3;
+
+    /** How long to wait for the other processes when connecting (in milliseconds). */
+    private static final int CONNECT_TIMEOUT = 60000;
+
+    /** The partition of the map. */
+    private final RegionPartition partition_;
+
+    /** The regions of this process. */
+    private final Region[] ownRegions_;
+
+    /** The numbers of the streets, nodes and vehicles which are the same in all processes. */
+    private final MapIndex index_;
+
+    /** The connections to the other processes (<code>null</code> for this process). */
+    private final SocketChannel[] channels_;
+
+    /** The selector for all connections. */
+    private Selector selector_ = null;
+
+    /** The vehicle arrays of the own regions at the beginning of the step. */
+    private Vehicle[][] ownVehicles_ = new Vehicle[0][];
+
+    /** For each process, the vehicles reported as ghosts in the last step. */
+    private final BitSet[] reported_;
+
+    /** If the exchange works. Set to <code>false</code> if a connection is lost. */
+    private boolean connected_ = false;
+
+    /** The amount of bytes sent so far. */
+    private long bytesSent_ = 0;
+
+    /** The amount of vehicles handed over to other processes so far. */
+    private long migrantsSent_ = 0;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new exchange. The map and the vehicles have to be loaded already and no step may have been done.
+     *
+     * @param partition	the partition of the map
+     */
+    public GhostExchange(RegionPartition partition){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "GhostExchange(RegionPartition partition)", Debug.ISLOGGED);
+
+        partition_ = partition;
+        ownRegions_ = partition.getOwnRegions()[0];
+        index_ = new MapIndex(Map.getInstance().getRegions());
+        channels_ = new SocketChannel[partition.getProcessCount()];
+        reported_ = new BitSet[partition.getProcessCount()];
+        for(int i = 0; i < reported_.length; ++i) reported_[i] = new BitSet();
+    }
+
+    /**
+     * Connects to all other processes. Process <code>p</code> listens on port <code>basePort + p</code>, connects to all
+     * processes with a lower number and waits for the ones with a higher number.
+     *
+     * @param basePort	the port of process <code>0</code>
+     *
+     * @return <code>true</code> if all connections could be made, else <code>false</code>
+     */
+    public boolean connect(int basePort){
+        int process = partition_.getProcess(), count = partition_.getProcessCount(), i;
+        InetAddress host = InetAddress.getLoopbackAddress();
+        ServerSocketChannel server = null;
+        try{
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(host, basePort + process));
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+            ByteBuffer hello = ByteBuffer.allocate(4);
+            for(i = 0; i < process; ++i){
+                while(true){
+                    try{
+                        channels_[i] = SocketChannel.open(new InetSocketAddress(host, basePort + i));
+                        break;
+                    } catch (IOException e){
+                        // the other process may not listen yet
+                        if(System.currentTimeMillis() > deadline) throw e;
+                        try{
+                            Thread.sleep(100);
+                        } catch (InterruptedException e2){
+                            throw e;
+                        }
+                    }
+                }
+                hello.clear();
+                hello.putInt(process);
+                hello.flip();
+                while(hello.hasRemaining()) channels_[i].write(hello);
+            }
+            for(i = process + 1; i < count; ++i){
+                SocketChannel channel = server.accept();
+                hello.clear();
+                while(hello.hasRemaining()){
+                    if(channel.read(hello) == -1) throw new IOException();
+                }
+                hello.flip();
+                channels_[hello.getInt()] = channel;
+            }
+            selector_ = Selector.open();
+            for(i = 0; i < count; ++i){
+                if(i == process) continue;
+                channels_[i].setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+                channels_[i].configureBlocking(false);
+                channels_[i].register(selector_, 0, Integer.valueOf(i));
+            }
+            connected_ = true;
+            ErrorLog.log(Messages.getString("GhostExchange.connected") + process + Messages.getString("GhostExchange.regions") + ownRegions_.length + Messages.getString("GhostExchange.processes") + count, 3, GhostExchange.class.getName(), "connect", null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        } catch (IOException e){
+            ErrorLog.log(Messages.getString("GhostExchange.connectFailed"), 7, GhostExchange.class.getName(), "connect", e); //$NON-NLS-1$ //$NON-NLS-2$
+            close();
+        } finally {
+            try{
+                if(server != null) server.close();
+            } catch (IOException e){}
+        }
+        return connected_;
+    }
+
+    /**
+     * Has to be called before the phases of a step are run. Remembers which vehicles are in the own regions.
+     */
+    public void beginStep(){
+        if(ownVehicles_.length != ownRegions_.length) ownVehicles_ = new Vehicle[ownRegions_.length][];
+        for(int i = 0; i < ownRegions_.length; ++i) ownVehicles_[i] = ownRegions_[i].getVehicleArray();
+    }
+
+    /**
+     * Has to be called after all phases and the traffic lights of a step are done. Applies all lane changes which are still
+     * handed over (the schedulers only apply them in the own regions), updates the traffic lights of the other processes and
+     * exchanges the vehicles at the borders.
+     *
+     * @param time			the simulation time after the step
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    public void finishStep(int time, int timePerStep){
+        Region[][] regions = Map.getInstance().getRegions();
+        int i, j;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j) regions[i][j].applyLaneHandoffs(false);
+        }
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j) regions[i][j].applyLaneHandoffs(true);
+        }
+        partition_.changeForeignTrafficLights(timePerStep);
+        if(!connected_) return;
+        try{
+            ByteBuffer[] frames = writeFrames(time);
+            ByteBuffer[] received = transfer(frames);
+            for(i = 0; i < received.length; ++i){
+                if(received[i] != null) readFrame(received[i], i, time);
+            }
+        } catch (IOException e){
+            // the other processes can't be reached anymore, so at least the own regions are simulated on
+            ErrorLog.log(Messages.getString("GhostExchange.connectionLost"), 7, GhostExchange.class.getName(), "finishStep", e); //$NON-NLS-1$ //$NON-NLS-2$
+            close();
+        }
+    }
+
+    /**
+     * Creates the frames for all other processes.
+     *
+     * @param time	the simulation time after the step
+     *
+     * @return the frames with their length in front (<code>null</code> for this process)
+     *
+     * @throws IOException never, the frames are written to memory
+     */
+    private ByteBuffer[] writeFrames(int time) throws IOException{
+        int count = partition_.getProcessCount(), process = partition_.getProcess(), i, j, number, owner;
+        ByteArrayOutputStream[] bytes = new ByteArrayOutputStream[count];
+        DataOutputStream[] outs = new DataOutputStream[count];
+        BitSet[] reported = new BitSet[count];
+        BitSet[] migrated = new BitSet[count];
+        for(i = 0; i < count; ++i){
+            if(i == process) continue;
+            bytes[i] = new ByteArrayOutputStream();
+            outs[i] = new DataOutputStream(bytes[i]);
+            outs[i].writeInt(0);	// the length, filled in at the end
+            outs[i].writeInt(time);
+            reported[i] = new BitSet();
+            migrated[i] = new BitSet();
+        }
+        Vehicle vehicle;
+
+        // vehicles which left the own regions
+        for(i = 0; i < ownVehicles_.length; ++i){
+            for(j = 0; j < ownVehicles_[i].length; ++j){
+                vehicle = ownVehicles_[i][j];
+                if(partition_.isOwn(vehicle.getRegion())) continue;
+                number = index_.getVehicleNumber(vehicle);
+                if(number == -1) continue;
+                owner = partition_.getOwner(vehicle.getRegion());
+                outs[owner].writeByte(RECORD_MIGRANT);
+                outs[owner].writeInt(number);
+                vehicle.writeState(outs[owner], index_, true);
+                migrated[owner].set(number);
+                ++migrantsSent_;
+            }
+        }
+
+        // vehicles in the own regions next to other processes
+        Vehicle[] vehicles;
+        long neighbours;
+        for(i = 0; i < ownRegions_.length; ++i){
+            neighbours = partition_.getNeighbours(ownRegions_[i]);
+            if(neighbours == 0) continue;
+            vehicles = ownRegions_[i].getVehicleArray();
+            for(j = 0; j < vehicles.length; ++j){
+                number = index_.getVehicleNumber(vehicles[j]);
+                if(number == -1) continue;
+                for(owner = 0; owner < count; ++owner){
+                    if((neighbours & (1L << owner)) == 0) continue;
+                    outs[owner].writeByte(RECORD_GHOST);
+                    outs[owner].writeInt(number);
+                    vehicles[j].writeState(outs[owner], index_, false);
+                    reported[owner].set(number);
+                }
+            }
+        }
+
+        ByteBuffer[] frames = new ByteBuffer[count];
+        for(i = 0; i < count; ++i){
+            if(i == process) continue;
+            // vehicles reported in the last step which moved away from the border
+            for(number = reported_[i].nextSetBit(0); number >= 0; number = reported_[i].nextSetBit(number + 1)){
+                if(!reported[i].get(number) && !migrated[i].get(number)){
+                    outs[i].writeByte(RECORD_LEAVE);
+                    outs[i].writeInt(number);
+                }
+            }
+            reported_[i] = reported[i];
+            outs[i].flush();
+            frames[i] = ByteBuffer.wrap(bytes[i].toByteArray());
+            frames[i].putInt(0, frames[i].limit() - 4);
+            bytesSent_ += frames[i].limit();
+        }
+        return frames;
+    }
+
+    /**
+     * Sends the frames to all other processes and receives their frames at the same time.
+     *
+     * @param frames	the frames to send
+     *
+     * @return the received frames without their length
+     *
+     * @throws IOException if a connection fails
+     */
+    private ByteBuffer[] transfer(ByteBuffer[] frames) throws IOException{
+        int count = partition_.getProcessCount(), pending = 0, i;
+        ByteBuffer[] lengths = new ByteBuffer[count];
+        ByteBuffer[] received = new ByteBuffer[count];
+        for(i = 0; i < count; ++i){
+            if(i == partition_.getProcess()) continue;
+            lengths[i] = ByteBuffer.allocate(4);
+            channels_[i].keyFor(selector_).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            pending += 2;
+        }
+        SelectionKey key;
+        SocketChannel channel;
+        Iterator<SelectionKey> keys;
+        while(pending > 0){
+            selector_.select();
+            keys = selector_.selectedKeys().iterator();
+            while(keys.hasNext()){
+                key = keys.next();
+                keys.remove();
+                i = ((Integer)key.attachment()).intValue();
+                channel = (SocketChannel)key.channel();
+                if(key.isWritable()){
+                    channel.write(frames[i]);
+                    if(!frames[i].hasRemaining()){
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                        --pending;
+                    }
+                }
+                if(key.isReadable()){
+                    // first the length, then exactly one frame so that the next step stays in the socket
+                    if(received[i] == null){
+                        if(channel.read(lengths[i]) == -1) throw new IOException();
+                        if(!lengths[i].hasRemaining()) received[i] = ByteBuffer.allocate(lengths[i].getInt(0));
+                    }
+                    if(received[i] != null){
+                        if(received[i].hasRemaining() && channel.read(received[i]) == -1) throw new IOException();
+                        if(!received[i].hasRemaining()){
+                            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                            --pending;
+                        }
+                    }
+                }
+            }
+        }
+        return received;
+    }
+
+    /**
+     * Applies a frame received from another process.
+     *
+     * @param frame		the frame
+     * @param process	the process which sent it
+     * @param time		the simulation time after the step
+     *
+     * @throws IOException if the frame is damaged or from another step
+     */
+    private void readFrame(ByteBuffer frame, int process, int time) throws IOException{
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.array()));
+        if(in.readInt() != time) throw new IOException(Messages.getString("GhostExchange.wrongStep") + process); //$NON-NLS-1$
+        byte type;
+        Vehicle vehicle;
+        while(in.available() > 0){
+            type = in.readByte();
+            vehicle = index_.getVehicle(in.readInt());
+            if(type == RECORD_MIGRANT) vehicle.readState(in, index_, true);
+            else if(type == RECORD_GHOST) vehicle.readState(in, index_, false);
+            else if(type == RECORD_LEAVE) vehicle.leaveLane();
+            else throw new IOException(Messages.getString("GhostExchange.unknownRecord") + process); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Gets the partition of the map.
+     *
+     * @return the partition
+     */
+    public RegionPartition getPartition(){
+        return partition_;
+    }
+
+    /**
+     * Counts the active vehicles simulated by this process.
+     *
+     * @return the amount of active vehicles in the own regions
+     */
+    public int getActiveVehicleCount(){
+        Vehicle[] vehicles;
+        int count = 0;
+        for(int i = 0; i < ownRegions_.length; ++i){
+            vehicles = ownRegions_[i].getVehicleArray();
+            for(int j = 0; j < vehicles.length; ++j){
+                if(vehicles[j].isActive()) ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closes all connections. The own regions may still be simulated afterwards but nothing is exchanged anymore.
+     */
+    public void close(){
+        if(connected_) ErrorLog.log(Messages.getString("GhostExchange.statistics") + bytesSent_ / 1024 + Messages.getString("GhostExchange.kbSent") + migrantsSent_, 2, GhostExchange.class.getName(), "close", null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        connected_ = false;
+        for(int i = 0; i < channels_.length; ++i){
+            try{
+                if(channels_[i] != null) channels_[i].close();
+            } catch (IOException e){}
+            channels_[i] = null;
+        }
+        try{
+            if(selector_ != null) selector_.close();
+        } catch (IOException e){}
+        selector_ = null;
+    }
+}
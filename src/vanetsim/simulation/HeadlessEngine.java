@@ -0,0 +1,395 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.debug.Debug;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.routing.WayPoint;
+import vanetsim.scenario.KnownRSUsList;
+import vanetsim.scenario.KnownVehiclesList;
+import vanetsim.scenario.Vehicle;
+import vanetsim.scenario.events.EventList;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Runs a simulation without any graphical user interface. Neither the <code>Renderer</code> nor any Swing component is
+ * created, the time is kept in the <code>SimulationClock</code> and the steps are done by a <code>WorkStealingScheduler</code>
+ * directly from the calling thread. Typical use:
+ * <pre>
+ * HeadlessEngine engine = new HeadlessEngine(4);
+ * engine.loadMap(new File("map.xml"));
+ * engine.createRandomVehicles(1000, 1L);
+ * engine.runUntil(60000);
+ * engine.shutdown();
+ * </pre>
+ * Each engine has its own <code>SimulationContext</code> (map, scenario, events, random numbers, time and vehicle settings)
+ * which is bound to the calling thread while a method of the engine runs. Several engines may therefore be used at the same time
+ * from different threads, for example to run independent replications of a simulation in one JVM. With
+ * {@link #distribute(int, int, int)}, an engine only simulates a part of the map together with engines in other processes.
+ */
+public final class HeadlessEngine {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The time between two exports of the <code>StepProfiler</code> when started from the command line (in milliseconds). */
+    private static final long PROFILER_EXPORT_INTERVAL = 1000;
+
+    /** The context of this engine. */
+    private final SimulationContext context_;
+
+    /** The phases run in each step. */
+    private final PhasePipeline pipeline_ = PhasePipeline.createDefault();
+
+    /** The amount of threads used. */
+    private final int parallelism_;
+
+    /** The scheduler doing the steps. Created with the first step. */
+    private WorkStealingScheduler scheduler_ = null;
+
+    /** The exchange with the other processes if only a part of the map is simulated by this engine. */
+    private GhostExchange exchange_ = null;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new engine with its own context. No part of the simulation in this context tries to access the graphical user interface.
+     *
+     * @param parallelism	the amount of threads used for the simulation
+     */
+    public HeadlessEngine(int parallelism){
+        this(new SimulationContext(), parallelism);
+    }
+
+    /**
+     * Creates a new engine working on an existing context. If the context shares the map of another context
+     * (see <code>EnsembleRunner</code>), {@link #loadMap(File)} must not be called.
+     *
+     * @param context		the context
+     * @param parallelism	the amount of threads used for the simulation
+     */
+    public HeadlessEngine(SimulationContext context, int parallelism){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "HeadlessEngine(SimulationContext context, int parallelism)", Debug.ISLOGGED);
+
+        context_ = context;
+        context_.setHeadless(true);
+        if(parallelism < 1) parallelism = 1;
+        parallelism_ = parallelism;
+    }
+
+    /**
+     * Loads a map. Files ending with <code>.zip</code> are unzipped.
+     *
+     * @param file	the map file
+     *
+     * @return <code>true</code> if the map could be loaded, else <code>false</code>
+     */
+    public boolean loadMap(File file){
+        SimulationContext previous = context_.bind();
+        try{
+            shutdownScheduler();
+            Map.getInstance().load(file, file.getName().toLowerCase().endsWith(".zip")); //$NON-NLS-1$
+            return Map.getInstance().getReadyState() && Map.getInstance().getRegions() != null;
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Creates random vehicles with two destinations each, similar to the random vehicle creation in the edit panel.
+     *
+     * @param amount	the amount of vehicles
+     * @param seed		the seed for the random number generator
+     *
+     * @return the amount of vehicles created. Might be less than requested if the map is almost empty.
+     */
+    public int createRandomVehicles(int amount, long seed){
+        SimulationContext previous = context_.bind();
+        try{
+            return doCreateRandomVehicles(amount, seed);
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Creates random vehicles in the context of this engine.
+     *
+     * @param amount	the amount of vehicles
+     * @param seed		the seed for the random number generator
+     *
+     * @return the amount of vehicles created
+     */
+    private int doCreateRandomVehicles(int amount, long seed){
+        Random random = new Random(seed);
+        int maxX = Map.getInstance().getMapWidth();
+        int maxY = Map.getInstance().getMapHeight();
+        int i, j, k, l = 0;
+        ArrayDeque<WayPoint> destinations;
+        // same rules as in the edit panel: it's only tried 4 x amount times!
+        for(i = 0; i < amount;){
+            j = 0;
+            k = 0;
+            ++l;
+            destinations = new ArrayDeque<WayPoint>(2);
+            while(j < 2 && k < 20){	// if snapping fails more than 20 times break
+                try{
+                    ++k;
+                    destinations.add(new WayPoint(random.nextInt(maxX), random.nextInt(maxY), 0));
+                    ++j;
+                } catch (Exception e) {}
+            }
+            if(k < 20){
+                try{
+                    // speeds in cm/s (30-100km/h), communication distance 100m
+                    Vehicle tmpVehicle = new Vehicle(destinations, 250, 833 + random.nextInt(1945), 10000, false, false, 300 + random.nextInt(501), 200 + random.nextInt(301), 1000, random.nextInt(51), Color.black);
+                    Map.getInstance().addVehicle(tmpVehicle);
+                    ++i;
+                } catch (Exception e) {}
+            }
+            if(l > amount*4) break;
+        }
+        ErrorLog.log(Messages.getString("HeadlessEngine.createdVehicles") + i, 3, HeadlessEngine.class.getName(), "createRandomVehicles", null); //$NON-NLS-1$ //$NON-NLS-2$
+        return i;
+    }
+
+    /**
+     * Lets this engine simulate only a part of the map together with other processes (see <code>GhostExchange</code>).
+     * All processes have to load the same map and create the same vehicles before. Blocks until all processes are connected.
+     *
+     * @param process		the number of this process (<code>0</code> to <code>processCount - 1</code>)
+     * @param processCount	the amount of processes
+     * @param basePort		the port on which process <code>0</code> listens, the others use the following ports
+     *
+     * @return <code>true</code> if all processes are connected, else <code>false</code>
+     */
+    public boolean distribute(int process, int processCount, int basePort){
+        SimulationContext previous = context_.bind();
+        try{
+            shutdownScheduler();
+            exchange_ = new GhostExchange(new RegionPartition(Map.getInstance().getRegions(), process, processCount));
+            if(!exchange_.connect(basePort)) exchange_ = null;
+            return exchange_ != null;
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Gets the exchange with the other processes.
+     *
+     * @return the exchange or <code>null</code> if the whole map is simulated by this engine
+     */
+    public GhostExchange getExchange(){
+        return exchange_;
+    }
+
+    /**
+     * Performs one simulation step.
+     */
+    public void step(){
+        SimulationContext previous = context_.bind();
+        try{
+            doStep();
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Performs one simulation step in the context of this engine.
+     */
+    private void doStep(){
+        if(scheduler_ == null) createScheduler();
+        int time = SimulationClock.getTime() + SimulationMaster.TIME_PER_STEP;
+        StepProfiler.ThreadRecord record = context_.getProfiler().getRecord();
+        long start = 0;
+        if(record != null) start = record.begin();
+        EventList.getInstance().processEvents(time);
+        if(record != null) record.compute(StepProfiler.SECTION_EVENTS, start, 0);
+        if(exchange_ != null) exchange_.beginStep();
+        pipeline_.prepareStep();
+        context_.getProfiler().countSteps(1);
+        if(record != null) start = record.begin();
+        scheduler_.doStep();
+        if(record != null) record.waited(StepProfiler.SECTION_WORKERS, start);
+        if(exchange_ != null) exchange_.finishStep(time, SimulationMaster.TIME_PER_STEP);
+        KnownVehiclesList.setTimePassed(time);
+        KnownRSUsList.setTimePassed(time);
+        SimulationClock.setTime(time);
+    }
+
+    /**
+     * Creates the scheduler for the regions simulated by this engine.
+     */
+    private void createScheduler(){
+        scheduler_ = new WorkStealingScheduler((exchange_ == null) ? Map.getInstance().getRegions() : exchange_.getPartition().getOwnRegions(), pipeline_, SimulationMaster.TIME_PER_STEP, parallelism_);
+    }
+
+    /**
+     * Performs a fixed amount of steps.
+     *
+     * @param steps	the amount of steps
+     */
+    public void runSteps(int steps){
+        SimulationContext previous = context_.bind();
+        try{
+            for(int i = 0; i < steps; ++i) doStep();
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Performs steps until the simulation time reaches the target.
+     *
+     * @param time	the target time in milliseconds
+     */
+    public void runUntil(int time){
+        SimulationContext previous = context_.bind();
+        try{
+            while(context_.getTime() < time) doStep();
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Saves the state of the simulation to a file (see <code>Checkpoint</code>).
+     *
+     * @param file	the file
+     *
+     * @return <code>true</code> if the checkpoint was written, else <code>false</code>
+     */
+    public boolean saveCheckpoint(File file){
+        SimulationContext previous = context_.bind();
+        try{
+            Checkpoint.save(file);
+            return true;
+        } catch (IOException e){
+            ErrorLog.log(Messages.getString("Checkpoint.saveFailed") + file, 7, HeadlessEngine.class.getName(), "saveCheckpoint", e); //$NON-NLS-1$ //$NON-NLS-2$
+            return false;
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Continues a simulation saved with {@link #saveCheckpoint(File)}. The same map has to be loaded and the same vehicles
+     * have to be created before, no step may have been done since.
+     *
+     * @param file	the file
+     *
+     * @return <code>true</code> if the state was restored, else <code>false</code>
+     */
+    public boolean restoreCheckpoint(File file){
+        SimulationContext previous = context_.bind();
+        try{
+            // a new scheduler recalculates the junctions, so it has to be created before their state is restored
+            shutdownScheduler();
+            createScheduler();
+            Checkpoint.restore(file);
+            return true;
+        } catch (IOException e){
+            ErrorLog.log(Messages.getString("Checkpoint.restoreFailed") + file, 7, HeadlessEngine.class.getName(), "restoreCheckpoint", e); //$NON-NLS-1$ //$NON-NLS-2$
+            return false;
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Gets the context of this engine.
+     *
+     * @return the context
+     */
+    public SimulationContext getContext(){
+        return context_;
+    }
+
+    /**
+     * Gets the phases run in each step. New phases may be registered here.
+     *
+     * @return the pipeline
+     */
+    public PhasePipeline getPipeline(){
+        return pipeline_;
+    }
+
+    /**
+     * Stops all threads of this engine.
+     */
+    public void shutdown(){
+        shutdownScheduler();
+        if(exchange_ != null){
+            exchange_.close();
+            exchange_ = null;
+        }
+    }
+
+    /**
+     * Stops the scheduler so that a new one is created for the next step (needed after the map has changed).
+     */
+    private void shutdownScheduler(){
+        if(scheduler_ != null){
+            scheduler_.shutdown();
+            scheduler_ = null;
+        }
+    }
+
+    /**
+     * Runs a simulation from the command line.
+     *
+     * @param args	<code>args[0]</code> = map file, <code>args[1]</code> = amount of random vehicles, <code>args[2]</code> = time until the simulation stops (in milliseconds),
+     * 				<code>args[3]</code> (optional) = amount of threads, <code>args[4]</code> (optional) = CSV file to which the <code>StepProfiler</code> writes every second
+     */
+    public static void main(String[] args){
+        System.setProperty("java.awt.headless", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+        SimulationContext.getDefault().setHeadless(true);
+        int threads = Runtime.getRuntime().availableProcessors();
+        if(args.length > 3) threads = Integer.parseInt(args[3]);
+        HeadlessEngine engine = new HeadlessEngine(threads);
+        System.out.println(Messages.getString("ConsoleStart.MapLoad")); //$NON-NLS-1$
+        if(!engine.loadMap(new File(args[0]))){
+            System.exit(1);
+        }
+        System.out.println(Messages.getString("ConsoleStart.MapLoaded")); //$NON-NLS-1$
+        engine.createRandomVehicles(Integer.parseInt(args[1]), 1L);
+        StepProfiler profiler = engine.getContext().getProfiler();
+        if(args.length > 4){
+            profiler.setEnabled(true);
+            profiler.startExport(new File(args[4]), PROFILER_EXPORT_INTERVAL);
+        }
+        System.out.println(Messages.getString("ConsoleStart.SimulationStart")); //$NON-NLS-1$
+        long start = System.currentTimeMillis();
+        engine.runUntil(Integer.parseInt(args[2]));
+        System.out.println("Time:" + (System.currentTimeMillis() - start)); //$NON-NLS-1$
+        System.out.println(Messages.getString("ConsoleStart.SimulationEnded")); //$NON-NLS-1$
+        engine.getPipeline().logStatistics();
+        engine.getContext().getRouteCache().logStatistics();
+        if(args.length > 4){
+            profiler.stopExport();
+            try{
+                profiler.writeCSV(new File(args[4]));
+            } catch (IOException e){
+                ErrorLog.log(Messages.getString("StepProfiler.exportFailed") + args[4], 6, HeadlessEngine.class.getName(), "main", e); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+        engine.shutdown();
+        System.exit(0);
+    }
+}
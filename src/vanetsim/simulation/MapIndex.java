@@ -0,0 +1,201 @@
+package vanetsim.simulation;
+
+import vanetsim.map.Node;
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+import vanetsim.scenario.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * Gives the streets, nodes and vehicles of a map numbers which are the same in every process that loaded the same map
+ * and scenario, so that they can be referenced outside of the JVM. Streets and nodes are numbered in the order of the
+ * regions (row-major) and of their arrays in the regions, vehicles in the order they were created (by their first steady ID,
+ * see <code>Vehicle.getCreationNumber()</code>). Vehicles created after the index was built are not part of it.
+ */
+public final class MapIndex {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** All streets by their number. */
+    private final Street[] streets_;
+
+    /** All nodes by their number. */
+    private final Node[] nodes_;
+
+    /** All vehicles by their number. */
+    private final Vehicle[] vehicles_;
+
+    /** The numbers of the streets. */
+    private final IdentityHashMap<Street, Integer> streetNumbers_ = new IdentityHashMap<Street, Integer>();
+
+    /** The numbers of the nodes. */
+    private final IdentityHashMap<Node, Integer> nodeNumbers_ = new IdentityHashMap<Node, Integer>();
+
+    /** The numbers of the vehicles. */
+    private final IdentityHashMap<Vehicle, Integer> vehicleNumbers_ = new IdentityHashMap<Vehicle, Integer>();
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Builds the index of a map.
+     *
+     * @param regions	all regions of the map
+     */
+    public MapIndex(Region[][] regions){
+        ArrayList<Street> streets = new ArrayList<Street>();
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        ArrayList<Vehicle> vehicles = new ArrayList<Vehicle>();
+        Street[] tmpStreets;
+        Node[] tmpNodes;
+        Vehicle[] tmpVehicles;
+        int i, j, k;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regions[i].length; ++j){
+                // streets crossing several regions are part of all of them but only get one number
+                tmpStreets = regions[i][j].getStreets();
+                for(k = 0; k < tmpStreets.length; ++k){
+                    if(!streetNumbers_.containsKey(tmpStreets[k])){
+                        streetNumbers_.put(tmpStreets[k], streets.size());
+                        streets.add(tmpStreets[k]);
+                    }
+                }
+                tmpNodes = regions[i][j].getNodes();
+                for(k = 0; k < tmpNodes.length; ++k){
+                    if(!nodeNumbers_.containsKey(tmpNodes[k])){
+                        nodeNumbers_.put(tmpNodes[k], nodes.size());
+                        nodes.add(tmpNodes[k]);
+                    }
+                }
+                tmpVehicles = regions[i][j].getVehicleArray();
+                for(k = 0; k < tmpVehicles.length; ++k) vehicles.add(tmpVehicles[k]);
+            }
+        }
+        streets_ = streets.toArray(new Street[streets.size()]);
+        nodes_ = nodes.toArray(new Node[nodes.size()]);
+        vehicles_ = vehicles.toArray(new Vehicle[vehicles.size()]);
+        // the vehicle arrays of the regions depend on the order of additions and removals, the creation order doesn't
+        Arrays.sort(vehicles_, new Comparator<Vehicle>(){
+            public int compare(Vehicle vehicle1, Vehicle vehicle2){
+                return Integer.compare(vehicle1.getCreationNumber(), vehicle2.getCreationNumber());
+            }
+        });
+        for(i = 0; i < vehicles_.length; ++i) vehicleNumbers_.put(vehicles_[i], i);
+    }
+
+    /**
+     * Gets the number of a street.
+     *
+     * @param street	the street (may be <code>null</code>)
+     *
+     * @return the number or <code>-1</code> if the street is <code>null</code> or unknown
+     */
+    public int getStreetNumber(Street street){
+        if(street == null) return -1;
+        Integer number = streetNumbers_.get(street);
+        if(number == null) return -1;
+        else return number.intValue();
+    }
+
+    /**
+     * Gets a street by its number.
+     *
+     * @param number	the number
+     *
+     * @return the street or <code>null</code> if the number is <code>-1</code>
+     */
+    public Street getStreet(int number){
+        if(number == -1) return null;
+        else return streets_[number];
+    }
+
+    /**
+     * Gets the number of a node.
+     *
+     * @param node	the node (may be <code>null</code>)
+     *
+     * @return the number or <code>-1</code> if the node is <code>null</code> or unknown
+     */
+    public int getNodeNumber(Node node){
+        if(node == null) return -1;
+        Integer number = nodeNumbers_.get(node);
+        if(number == null) return -1;
+        else return number.intValue();
+    }
+
+    /**
+     * Gets a node by its number.
+     *
+     * @param number	the number
+     *
+     * @return the node or <code>null</code> if the number is <code>-1</code>
+     */
+    public Node getNode(int number){
+        if(number == -1) return null;
+        else return nodes_[number];
+    }
+
+    /**
+     * Gets the number of a vehicle.
+     *
+     * @param vehicle	the vehicle (may be <code>null</code>)
+     *
+     * @return the number or <code>-1</code> if the vehicle is <code>null</code> or was created after the index
+     */
+    public int getVehicleNumber(Vehicle vehicle){
+        Integer number = vehicleNumbers_.get(vehicle);
+        if(number == null) return -1;
+        else return number.intValue();
+    }
+
+    /**
+     * Gets a vehicle by its number.
+     *
+     * @param number	the number
+     *
+     * @return the vehicle or <code>null</code> if the number is <code>-1</code>
+     */
+    public Vehicle getVehicle(int number){
+        if(number == -1) return null;
+        else return vehicles_[number];
+    }
+
+    /**
+     * Gets the amount of streets in the index.
+     *
+     * @return the amount
+     */
+    public int getStreetCount(){
+        return streets_.length;
+    }
+
+    /**
+     * Gets the amount of nodes in the index.
+     *
+     * @return the amount
+     */
+    public int getNodeCount(){
+        return nodes_.length;
+    }
+
+    /**
+     * Gets the amount of vehicles in the index.
+     *
+     * @return the amount
+     */
+    public int getVehicleCount(){
+        return vehicles_.length;
+    }
+}
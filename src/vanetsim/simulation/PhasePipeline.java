@@ -0,0 +1,610 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+import vanetsim.scenario.ActiveVehicleSet;
+import vanetsim.scenario.InteractionBuffer;
+import vanetsim.scenario.LaneObject;
+import vanetsim.scenario.RSU;
+import vanetsim.scenario.Vehicle;
+
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The ordered list of phases run between the start and the finish barrier of a simulation step. The master decides
+ * once per step which phases have work. Workers skip the other phases without any synchronization and only wait on a
+ * <code>Phaser</code> after phases which need a barrier and are followed by another active phase (the finish barrier
+ * covers the last one). In the deterministic mode, the workers wait after every phase and the changes buffered in the
+ * <code>InteractionBuffer</code>s of the regions are applied in between. With the double-buffered vehicle state, the speeds
+ * are adjusted and the vehicles moved in one phase instead of two, so the barrier between them is not needed.
+ * New phases may be registered at any time, they are used from the next step on.
+ */
+public final class PhasePipeline {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** All registered phases. Replaced on every change so that it can be read without locking. */
+    private volatile SimulationPhase[] phases_ = new SimulationPhase[0];
+
+    /** The phases which have work in the current step. */
+    private SimulationPhase[] stepPhases_ = new SimulationPhase[0];
+
+    /** If the workers need to wait for each other after the phase with the same index in <code>stepPhases_</code>. */
+    private boolean[] stepBarriers_ = new boolean[0];
+
+    /** The phaser synchronizing the workers between two phases. */
+    private Phaser phaser_ = null;
+
+    /** If the current step runs in the deterministic mode. */
+    private boolean deterministic_ = false;
+
+    /** The amount of phases finished in the current step (only counted in the deterministic mode). */
+    private int finishedPhases_ = 0;
+
+    /** If the current step uses the double-buffered vehicle state. */
+    private boolean doubleBuffered_ = false;
+
+    /** The slot of the published state read in the current step if the double-buffered vehicle state is used. */
+    private int readSlot_ = 0;
+
+    /** The first exception thrown while processing a region or applying a buffered change since the failures were last logged. */
+    private final AtomicReference<Exception> failure_ = new AtomicReference<Exception>();
+
+    /** How many regions failed since the failures were last logged. */
+    private final AtomicInteger failures_ = new AtomicInteger(0);
+
+    /** How many buffered changes of the vehicles couldn't be applied since the failures were last logged. */
+    private final AtomicInteger failedChanges_ = new AtomicInteger(0);
+
+    /** If a failure has already been logged as error. Later ones are logged as info so that there's no dialog in every step. */
+    private boolean failureLogged_ = false;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a pipeline with the default phases (applying the lane changes handed over in the last step, adjusting speed and
+     * moving vehicles either in two phases or in one with the double-buffered vehicle state, cleaning up RSUs). As in the
+     * <code>WorkerThread</code>s before, the RSUs are cleaned up after the speeds have been adjusted.
+     *
+     * @return the pipeline
+     */
+    public static PhasePipeline createDefault(){
+        PhasePipeline pipeline = new PhasePipeline();
+        pipeline.register(new LaneHandoffPhase(false));
+        pipeline.register(new LaneHandoffPhase(true));
+        pipeline.register(new AdjustSpeedPhase());
+        pipeline.register(new MovePhase());
+        pipeline.register(new AdjustAndMovePhase());
+        pipeline.register(new RSUCleanupPhase());
+        return pipeline;
+    }
+
+    /**
+     * Appends a phase.
+     *
+     * @param phase	the phase
+     */
+    public void register(SimulationPhase phase){
+        register(phases_.length, phase);
+    }
+
+    /**
+     * Inserts a phase at a specific position.
+     *
+     * @param position	the position (<code>0</code> to run it first)
+     * @param phase		the phase
+     */
+    public synchronized void register(int position, SimulationPhase phase){
+        SimulationPhase[] newArray = new SimulationPhase[phases_.length + 1];
+        System.arraycopy(phases_, 0, newArray, 0, position);
+        newArray[position] = phase;
+        System.arraycopy(phases_, position, newArray, position + 1, phases_.length - position);
+        phases_ = newArray;
+    }
+
+    /**
+     * Sets the amount of workers which run the phases.
+     *
+     * @param parties	the amount of workers
+     */
+    public void setParties(int parties){
+        phaser_ = new Phaser(parties){
+            protected boolean onAdvance(int phase, int registeredParties){
+                // called by the last worker arriving while all others are waiting
+                finishPhase();
+                return super.onAdvance(phase, registeredParties);
+            }
+        };
+    }
+
+    /**
+     * Decides which phases are run in the coming step. Has to be called by the master before the workers are started.
+     * In the deterministic mode, the workers wait for each other after every phase so that the buffered changes can be applied.
+     */
+    public void prepareStep(){
+        SimulationContext context = SimulationContext.current();
+        deterministic_ = context.getDeterministic();
+        finishedPhases_ = 0;
+        boolean doubleBuffered = context.getDoubleBuffered() && !deterministic_;
+        if(doubleBuffered && !doubleBuffered_) publishAll();	// nothing has been published while it was switched off
+        doubleBuffered_ = doubleBuffered;
+        context.setStateReadSlot(doubleBuffered ? readSlot_ : -1);
+        SimulationPhase[] phases = phases_;
+        int count = 0, i;
+        boolean[] active = new boolean[phases.length];
+        for(i = 0; i < phases.length; ++i){
+            active[i] = phases[i].hasWork();
+            phases[i].countStep(!active[i]);
+            if(active[i]) ++count;
+        }
+        if(count != stepPhases_.length) {
+            stepPhases_ = new SimulationPhase[count];
+            stepBarriers_ = new boolean[count];
+        }
+        count = 0;
+        for(i = 0; i < phases.length; ++i){
+            if(active[i]) stepPhases_[count++] = phases[i];
+        }
+        // a barrier is only needed if a following phase uses what the phase wrote
+        boolean dependentFollows = false;
+        for(i = count - 1; i >= 0; --i){
+            stepBarriers_[i] = deterministic_ || (stepPhases_[i].needsBarrier() && dependentFollows);
+            if(!stepPhases_[i].isIndependent()) dependentFollows = true;
+        }
+        context.setDeferInteractions(deterministic_ && count > 0);
+        context.setBufferMigrations(true);
+        context.setHandOffLaneChanges(!deterministic_);
+    }
+
+    /**
+     * Ends a phase on all regions. In the deterministic mode, the changes buffered by the vehicles during the phase are applied.
+     * Changes are buffered again if another phase follows. Must be called by exactly one thread after all workers have finished
+     * the phase (done by the phaser of the workers, the <code>WorkStealingScheduler</code> calls it itself).
+     */
+    public void finishPhase(){
+        if(!deterministic_) return;
+        SimulationContext context = SimulationContext.current();
+        ++finishedPhases_;
+        context.setDeferInteractions(false);
+        InteractionBuffer.applyAll(Map.getInstance().getRegions(), this);
+        if(finishedPhases_ < stepPhases_.length) context.setDeferInteractions(true);
+    }
+
+    /**
+     * Ends a step by moving all vehicles which have left their region into their new regions. With the double-buffered
+     * vehicle state, the buffered junction releases are applied and the slots of the published state are swapped. Must be
+     * called by exactly one thread after all workers have finished all phases (done by the finish barrier of the
+     * <code>SimulationMaster</code>, the <code>WorkStealingScheduler</code> calls it itself).
+     */
+    public void finishStep(){
+        SimulationContext context = SimulationContext.current();
+        context.setHandOffLaneChanges(false);
+        context.setBufferMigrations(false);
+        if(doubleBuffered_){
+            context.setStateReadSlot(-1);
+            InteractionBuffer.applyAll(Map.getInstance().getRegions(), this);
+            readSlot_ = 1 - readSlot_;
+        }
+        Region.applyMigrations(Map.getInstance().getRegions());
+        logFailures();
+    }
+
+    /**
+     * Notes that a region couldn't be processed. The region is skipped in this phase so that the others can still reach the
+     * barrier, the failure is logged when the step is finished. May be called by any thread.
+     *
+     * @param e	the exception thrown
+     */
+    public void reportFailure(Exception e){
+        failure_.compareAndSet(null, e);
+        failures_.incrementAndGet();
+    }
+
+    /**
+     * Notes that a change buffered by a vehicle (see <code>InteractionBuffer</code>) couldn't be applied. The vehicle might then
+     * be missing on its lane or in its region. The failure is logged when the step is finished.
+     *
+     * @param e	the exception thrown
+     */
+    public void reportFailedChange(Exception e){
+        failure_.compareAndSet(null, e);
+        failedChanges_.incrementAndGet();
+    }
+
+    /**
+     * Logs the failures reported since the last call together with the first exception. Must be called by exactly one thread
+     * while no region is processed.
+     */
+    public void logFailures(){
+        if(failures_.get() == 0 && failedChanges_.get() == 0) return;
+        int count = failures_.getAndSet(0), changes = failedChanges_.getAndSet(0);
+        Exception e = failure_.getAndSet(null);
+        if(count > 0) ErrorLog.log(Messages.getString("PhasePipeline.regionsFailed") + count, failureLogged_ ? 5 : 7, PhasePipeline.class.getName(), "logFailures", e); //$NON-NLS-1$ //$NON-NLS-2$
+        if(changes > 0) ErrorLog.log(Messages.getString("PhasePipeline.changesFailed") + changes, failureLogged_ ? 5 : 7, PhasePipeline.class.getName(), "logFailures", (count > 0) ? null : e); //$NON-NLS-1$ //$NON-NLS-2$
+        failureLogged_ = true;
+    }
+
+    /**
+     * Publishes the current state of all objects on the lanes in both slots.
+     */
+    private static void publishAll(){
+        Region[][] regions = Map.getInstance().getRegions();
+        if(regions == null) return;
+        Street[] streets;
+        LaneObject tmpLaneObject;
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j){
+                streets = regions[i][j].getStreets();
+                for(int k = 0; k < streets.length; ++k){
+                    tmpLaneObject = streets[k].getFirstLaneObject(true);
+                    while(tmpLaneObject != null){
+                        tmpLaneObject.publishState();
+                        tmpLaneObject = tmpLaneObject.getNext();
+                    }
+                    tmpLaneObject = streets[k].getFirstLaneObject(false);
+                    while(tmpLaneObject != null){
+                        tmpLaneObject.publishState();
+                        tmpLaneObject = tmpLaneObject.getNext();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adjusts the speed of all vehicles in a region (only of the awake ones if the <code>ActiveVehicleSet</code>s are used).
+     *
+     * @param region		the region
+     * @param vehicles		the cached vehicle array of the region
+     * @param timePerStep	the time in milliseconds for one step
+     *
+     * @return the amount of vehicles whose speed was adjusted
+     */
+    private static int adjustSpeed(Region region, Vehicle[] vehicles, int timePerStep){
+        SimulationContext context = SimulationContext.current();
+        ActiveVehicleSet set = null;
+        int count = vehicles.length;
+        if(context.getActiveVehicleSetsEnabled()){
+            set = region.getActiveVehicleSet();
+            count = set.beginStep(vehicles, SimulationClock.getTime(), Vehicle.getRecyclingEnabled());
+            vehicles = set.getAwakeVehicles();
+        }
+        if(context.getVehicleStateStoreEnabled()) region.getVehicleStateStore().updateBrakingDistances(vehicles, count);
+        for(int i = 0; i < count; ++i){
+            vehicles[i].adjustSpeed(timePerStep);
+        }
+        if(set != null) set.endAdjustSpeed(SimulationClock.getTime(), timePerStep);
+        return count;
+    }
+
+    /**
+     * Moves all active vehicles of a region or recycles them.
+     *
+     * @param region		the region
+     * @param vehicles		the cached vehicle array of the region
+     * @param timePerStep	the time in milliseconds for one step
+     * @param publishSlot	the slot in which the vehicles publish their new state or <code>-1</code> if they don't publish it
+     *
+     * @return the amount of vehicles moved or recycled
+     */
+    private static int move(Region region, Vehicle[] vehicles, int timePerStep, int publishSlot){
+        SimulationContext context = SimulationContext.current();
+        boolean recyclingEnabled = Vehicle.getRecyclingEnabled();
+        int count = vehicles.length, i;
+        if(context.getActiveVehicleSetsEnabled()){
+            ActiveVehicleSet set = region.getActiveVehicleSet();
+            count = set.getAwakeCount();
+            vehicles = set.getAwakeVehicles();
+        }
+        if(context.getVehicleStateStoreEnabled()){
+            region.getVehicleStateStore().move(region, vehicles, count, timePerStep, recyclingEnabled);
+        } else {
+            for(i = 0; i < count; ++i){
+                if(vehicles[i].isActive()) vehicles[i].move(timePerStep);
+                else if(recyclingEnabled && vehicles[i].getMayBeRecycled()) vehicles[i].reset();
+            }
+        }
+        if(publishSlot != -1){
+            for(i = 0; i < count; ++i){
+                vehicles[i].publishState(publishSlot);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the phases which have work in the current step.
+     *
+     * @return the phases
+     */
+    public SimulationPhase[] getStepPhases(){
+        return stepPhases_;
+    }
+
+    /**
+     * Gets all registered phases.
+     *
+     * @return the phases
+     */
+    public SimulationPhase[] getPhases(){
+        return phases_;
+    }
+
+    /**
+     * Runs all active phases of the current step on the regions of one worker.
+     *
+     * @param regions		the regions of the worker
+     * @param vehicles		the cached vehicle arrays
+     * @param rsus			the cached RSU arrays
+     * @param timePerStep	the time in milliseconds for one step
+     * @param record		the record of the worker in the <code>StepProfiler</code> or <code>null</code> if the profiling is switched off
+     */
+    public void runPhases(Region[] regions, Vehicle[][] vehicles, RSU[][] rsus, int timePerStep, StepProfiler.ThreadRecord record){
+        SimulationPhase[] phases = stepPhases_;
+        boolean[] barriers = stepBarriers_;
+        SimulationPhase phase;
+        long phaseTime, regionTime, now, start = 0;
+        int processed;
+        for(int i = 0; i < phases.length; ++i){
+            phase = phases[i];
+            phaseTime = 0;
+            processed = 0;
+            if(record != null) start = record.begin();
+            for(int j = 0; j < regions.length; ++j){
+                regionTime = System.nanoTime();
+                // the try/catch-expressions are done per region so that the worker always arrives at the phaser
+                try{
+                    processed += phase.processRegion(regions[j], vehicles[j], rsus[j], timePerStep);
+                } catch (Exception e){
+                    reportFailure(e);
+                }
+                now = System.nanoTime();
+                regions[j].addMeasuredCost(now - regionTime);
+                phaseTime += now - regionTime;
+            }
+            phase.addTime(phaseTime);
+            if(record != null){
+                record.compute(phase.getProfilerSection(), start, processed);
+                start = System.nanoTime();
+            }
+            if(barriers[i]) phaser_.arriveAndAwaitAdvance();
+            if(record != null) record.addWait(phase.getProfilerSection(), start);
+        }
+    }
+
+    /**
+     * Writes the time spent in each phase to the log.
+     */
+    public void logStatistics(){
+        SimulationPhase[] phases = phases_;
+        for(int i = 0; i < phases.length; ++i){
+            ErrorLog.log(Messages.getString("PhasePipeline.phase") + phases[i].getName() + ": " + phases[i].getTotalTime()/1000000 + Messages.getString("PhasePipeline.msIn") + phases[i].getRuns() + Messages.getString("PhasePipeline.stepsSkipped") + phases[i].getSkips(), 2, PhasePipeline.class.getName(), "logStatistics", null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+        }
+    }
+
+
+    /**
+     * Adjusts the speed of all vehicles (step 3 of a <code>WorkerThread</code>).
+     */
+    private static final class AdjustSpeedPhase extends SimulationPhase {
+
+        /**
+         * Creates the phase.
+         */
+        AdjustSpeedPhase(){
+            super("adjustSpeed", true); //$NON-NLS-1$
+        }
+
+        /**
+         * Run unless the double-buffered vehicle state is used.
+         *
+         * @return <code>true</code> if the speeds are adjusted in a phase of their own
+         */
+        public boolean hasWork(){
+            return SimulationContext.current().getStateReadSlot() == -1;
+        }
+
+        /**
+         * Adjusts the speed of all vehicles in the region.
+         *
+         * @param region		the region
+         * @param vehicles		the cached vehicle array of the region
+         * @param rsus			the RSUs of the region
+         * @param timePerStep	the time in milliseconds for one step
+         *
+         * @return the amount of vehicles whose speed was adjusted
+         */
+        public int processRegion(Region region, Vehicle[] vehicles, RSU[] rsus, int timePerStep){
+            return adjustSpeed(region, vehicles, timePerStep);
+        }
+    }
+
+    /**
+     * Applies the changes of lane containers which were handed over to the main region of the street in the last step
+     * (see <code>Region.handOffLaneObject()</code>). Removals and updates are applied by the first phase, additions by the
+     * second one. Skipped if nothing was handed over.
+     */
+    private static final class LaneHandoffPhase extends SimulationPhase {
+
+        /** <code>true</code> if this phase applies the additions, <code>false</code> for removals and updates. */
+        private final boolean additions_;
+
+        /**
+         * Creates the phase.
+         *
+         * @param additions	<code>true</code> for the phase applying the additions, <code>false</code> for removals and updates
+         */
+        LaneHandoffPhase(boolean additions){
+            super(additions ? "laneAdditions" : "laneRemovals", true); //$NON-NLS-1$ //$NON-NLS-2$
+            additions_ = additions;
+        }
+
+        /**
+         * Checks if any region got changes handed over. Called for both phases before the first one runs.
+         *
+         * @return <code>true</code> if there's at least one change
+         */
+        public boolean hasWork(){
+            Region[][] regions = Map.getInstance().getRegions();
+            if(regions == null) return false;
+            for(int i = 0; i < regions.length; ++i){
+                for(int j = 0; j < regions[i].length; ++j){
+                    if(regions[i][j].hasLaneHandoffs()) return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Applies the changes handed over to the region.
+         *
+         * @param region		the region
+         * @param vehicles		the cached vehicle array of the region
+         * @param rsus			the RSUs of the region
+         * @param timePerStep	the time in milliseconds for one step
+         *
+         * @return the amount of changes applied
+         */
+        public int processRegion(Region region, Vehicle[] vehicles, RSU[] rsus, int timePerStep){
+            return region.applyLaneHandoffs(additions_);
+        }
+    }
+
+    /**
+     * Cleans up old messages of the RSUs. Skipped if there are no RSUs.
+     */
+    private static final class RSUCleanupPhase extends SimulationPhase {
+
+        /**
+         * Creates the phase.
+         */
+        RSUCleanupPhase(){
+            // vehicles don't read anything the cleanup changes and the cleanup doesn't read the vehicles, so no barrier is needed
+            super("rsuCleanup", false, true); //$NON-NLS-1$
+        }
+
+        /**
+         * Checks if there's any RSU on the map.
+         *
+         * @return <code>true</code> if there's at least one RSU
+         */
+        public boolean hasWork(){
+            Region[][] regions = Map.getInstance().getRegions();
+            if(regions == null) return false;
+            for(int i = 0; i < regions.length; ++i){
+                for(int j = 0; j < regions[i].length; ++j){
+                    if(regions[i][j].getRSUs().length > 0) return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Cleans up the RSUs of the region.
+         *
+         * @param region		the region
+         * @param vehicles		the cached vehicle array of the region
+         * @param rsus			the RSUs of the region
+         * @param timePerStep	the time in milliseconds for one step
+         *
+         * @return the amount of RSUs
+         */
+        public int processRegion(Region region, Vehicle[] vehicles, RSU[] rsus, int timePerStep){
+            for(int i = 0; i < rsus.length; ++i){
+                rsus[i].cleanup(timePerStep);
+            }
+            return rsus.length;
+        }
+    }
+
+    /**
+     * Moves all active vehicles or recycles them (step 6 of a <code>WorkerThread</code>).
+     */
+    private static final class MovePhase extends SimulationPhase {
+
+        /**
+         * Creates the phase.
+         */
+        MovePhase(){
+            super("move", true); //$NON-NLS-1$
+        }
+
+        /**
+         * Run unless the double-buffered vehicle state is used.
+         *
+         * @return <code>true</code> if the vehicles are moved in a phase of their own
+         */
+        public boolean hasWork(){
+            return SimulationContext.current().getStateReadSlot() == -1;
+        }
+
+        /**
+         * Moves the vehicles of the region.
+         *
+         * @param region		the region
+         * @param vehicles		the cached vehicle array of the region
+         * @param rsus			the RSUs of the region
+         * @param timePerStep	the time in milliseconds for one step
+         *
+         * @return the amount of vehicles moved or recycled
+         */
+        public int processRegion(Region region, Vehicle[] vehicles, RSU[] rsus, int timePerStep){
+            return move(region, vehicles, timePerStep, -1);
+        }
+    }
+
+    /**
+     * Adjusts the speed of all vehicles and moves them in one pass (steps 3 and 6 of a <code>WorkerThread</code>) if the
+     * double-buffered vehicle state is used. The vehicles only read the state which the other vehicles published at the end
+     * of the last step, all changes of lane containers are handed over and all junction releases are applied after the step,
+     * so it doesn't matter if the neighbours have already been moved.
+     */
+    private static final class AdjustAndMovePhase extends SimulationPhase {
+
+        /**
+         * Creates the phase.
+         */
+        AdjustAndMovePhase(){
+            super("adjustAndMove", true); //$NON-NLS-1$
+        }
+
+        /**
+         * Only run if the double-buffered vehicle state is used.
+         *
+         * @return <code>true</code> if the double-buffered vehicle state is used
+         */
+        public boolean hasWork(){
+            return SimulationContext.current().getStateReadSlot() != -1;
+        }
+
+        /**
+         * Adjusts the speed of the vehicles of the region, moves them and publishes their new state in the slot which is
+         * read in the next step.
+         *
+         * @param region		the region
+         * @param vehicles		the cached vehicle array of the region
+         * @param rsus			the RSUs of the region
+         * @param timePerStep	the time in milliseconds for one step
+         *
+         * @return the amount of vehicles moved or recycled
+         */
+        public int processRegion(Region region, Vehicle[] vehicles, RSU[] rsus, int timePerStep){
+            adjustSpeed(region, vehicles, timePerStep);
+            return move(region, vehicles, timePerStep, 1 - SimulationContext.current().getStateReadSlot());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package vanetsim.simulation;
+
+import vanetsim.map.Region;
+
+/**
+ * Splits the regions of a map between several processes which simulate them together (see <code>GhostExchange</code>).
+ * Like the <code>RegionRebalancer</code> does for the workers, the regions are cut in contiguous blocks of the row-major
+ * order with about the same amount of streets and vehicles, so that a process mostly gets whole columns of regions and only
+ * has few neighbours. The regions of the other processes which touch a region of this process are its ghost regions:
+ * their vehicles are updated from the other processes after every step so that the vehicles near the border can see them.
+ */
+public final class RegionPartition {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The maximum amount of processes (the neighbours of a region are stored as bits of a <code>long</code>). */
+    public static final int MAX_PROCESSES = 64;
+
+    /** The cost of a region regardless of its content. Prevents empty regions from being free. */
+    private static final long REGION_COST = 1;
+
+    /** The amount of regions in y direction. Needed to find the position of a region. */
+    private final int regionCountY_;
+
+    /** The number of this process. */
+    private final int process_;
+
+    /** The amount of processes. */
+    private final int processCount_;
+
+    /** The process owning each region (in row-major order). */
+    private final int[] owners_;
+
+    /** For each region, the other processes which own a region next to it (one bit per process). */
+    private final long[] neighbours_;
+
+    /** The regions of this process in row-major order. */
+    private final Region[] ownRegions_;
+
+    /** The regions of the other processes in row-major order. */
+    private final Region[] foreignRegions_;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Splits the regions. All processes have to use the same map and scenario, so that they get the same partition.
+     *
+     * @param regions		all regions of the map
+     * @param process		the number of this process (<code>0</code> to <code>processCount - 1</code>)
+     * @param processCount	the amount of processes
+     */
+    public RegionPartition(Region[][] regions, int process, int processCount){
+        if(processCount < 1 || processCount > MAX_PROCESSES || process < 0 || process >= processCount) throw new IllegalArgumentException();
+        regionCountY_ = (regions.length > 0) ? regions[0].length : 0;
+        process_ = process;
+        processCount_ = processCount;
+        int count = regions.length * regionCountY_, i, j;
+        owners_ = new int[count];
+        neighbours_ = new long[count];
+
+        long[] costs = new long[count];
+        long total = 0;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regionCountY_; ++j){
+                costs[i * regionCountY_ + j] = regions[i][j].getStreets().length + regions[i][j].getVehicleArray().length + REGION_COST;
+                total += costs[i * regionCountY_ + j];
+            }
+        }
+        // contiguous blocks with about equal costs, at least one region for every process if possible
+        double target = total / (double)processCount;
+        long sum = 0;
+        int start = 0, ownCount = 0;
+        i = 0;
+        for(int k = 0; k < processCount; ++k){
+            if(k == processCount - 1) i = count;
+            else {
+                while(i < count - (processCount - 1 - k) && (i == start || sum + costs[i] / 2.0 <= target * (k + 1))){
+                    sum += costs[i];
+                    ++i;
+                }
+            }
+            for(j = start; j < i; ++j) owners_[j] = k;
+            if(k == process) ownCount = i - start;
+            start = i;
+        }
+
+        ownRegions_ = new Region[ownCount];
+        foreignRegions_ = new Region[count - ownCount];
+        int own = 0, foreign = 0, x, y;
+        for(i = 0; i < regions.length; ++i){
+            for(j = 0; j < regionCountY_; ++j){
+                if(owners_[i * regionCountY_ + j] == process) ownRegions_[own++] = regions[i][j];
+                else foreignRegions_[foreign++] = regions[i][j];
+                for(x = Math.max(0, i - 1); x <= Math.min(regions.length - 1, i + 1); ++x){
+                    for(y = Math.max(0, j - 1); y <= Math.min(regionCountY_ - 1, j + 1); ++y){
+                        if(owners_[x * regionCountY_ + y] != owners_[i * regionCountY_ + j]) neighbours_[i * regionCountY_ + j] |= 1L << owners_[x * regionCountY_ + y];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of this process.
+     *
+     * @return the number
+     */
+    public int getProcess(){
+        return process_;
+    }
+
+    /**
+     * Gets the amount of processes.
+     *
+     * @return the amount
+     */
+    public int getProcessCount(){
+        return processCount_;
+    }
+
+    /**
+     * Gets the process owning a region.
+     *
+     * @param region	the region
+     *
+     * @return the number of the process
+     */
+    public int getOwner(Region region){
+        return owners_[region.getX() * regionCountY_ + region.getY()];
+    }
+
+    /**
+     * Checks if a region is simulated by this process.
+     *
+     * @param region	the region
+     *
+     * @return <code>true</code> if this process owns the region
+     */
+    public boolean isOwn(Region region){
+        return owners_[region.getX() * regionCountY_ + region.getY()] == process_;
+    }
+
+    /**
+     * Gets the other processes which own a region next to a region (including diagonal neighbours).
+     *
+     * @param region	the region
+     *
+     * @return one bit for each process (<code>1L &lt;&lt; process</code>)
+     */
+    public long getNeighbours(Region region){
+        return neighbours_[region.getX() * regionCountY_ + region.getY()];
+    }
+
+    /**
+     * Gets the regions of this process in the form expected by the schedulers.
+     *
+     * @return the regions as a single row
+     */
+    public Region[][] getOwnRegions(){
+        return new Region[][]{ownRegions_.clone()};
+    }
+
+    /**
+     * Gets the regions of the other processes.
+     *
+     * @return the regions in row-major order
+     */
+    public Region[] getForeignRegions(){
+        return foreignRegions_;
+    }
+
+    /**
+     * Checks the states of the traffic lights in the regions of the other processes. The schedulers only do this for the
+     * own regions but the vehicles of this process see the lights of the ghost regions as well.
+     *
+     * @param timePerStep	the time in milliseconds for one step
+     */
+    public void changeForeignTrafficLights(int timePerStep){
+        for(int i = 0; i < foreignRegions_.length; ++i) foreignRegions_[i].changeTrafficLights(timePerStep);
+    }
+}
@@ -0,0 +1,158 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.debug.Debug;
+import vanetsim.localization.Messages;
+import vanetsim.map.Region;
+
+/**
+ * Redistributes the regions between the <code>WorkerThread</code>s according to the work they really caused. The workers
+ * measure the time spent on each region. After a fixed amount of steps, the master checks how unequal the load
+ * of the workers was and if it's too unequal, the regions are split again so that every worker gets about the same load.
+ * The regions stay in the same (row-major) order as in <code>SimulationMaster.createWorkers()</code> so that a worker still gets
+ * neighbouring regions.
+ */
+public final class RegionRebalancer {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** After how many steps the load is checked. 250 steps are 10 seconds of simulation time with the default time per step. */
+    private static final int CHECK_INTERVAL = 250;
+
+    /** If the most loaded worker has more than this factor of the average load, the regions are redistributed. */
+    private static final double IMBALANCE_THRESHOLD = 1.2;
+
+    /** The cost assumed for each vehicle in a region if no time could be measured (in nanoseconds). */
+    private static final long VEHICLE_COST = 1000;
+
+    /** The cost assumed for each region regardless of its content (in nanoseconds). Prevents empty regions from being free. */
+    private static final long REGION_COST = 100;
+
+    /** All regions in the order they are distributed. */
+    private final Region[] regions_;
+
+    /** The amount of regions in y direction. Needed to find the position of a region. */
+    private final int regionCountY_;
+
+    /** The steps done since the last check. */
+    private int steps_ = 0;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new rebalancer.
+     *
+     * @param regions	all regions of the map
+     */
+    public RegionRebalancer(Region[][] regions){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "RegionRebalancer(Region[][] regions)", Debug.ISLOGGED);
+
+        int count = 0;
+        for(int i = 0; i < regions.length; ++i) count += regions[i].length;
+        regions_ = new Region[count];
+        regionCountY_ = (regions.length > 0) ? regions[0].length : 0;
+        count = 0;
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j){
+                regions_[count++] = regions[i][j];
+            }
+        }
+    }
+
+    /**
+     * Has to be called by the master after each block of steps once all workers have passed the finish barrier and before they
+     * are started again. If the load was too unequal, the new regions are handed to the workers which take them over after
+     * the next start barrier.
+     *
+     * @param workers	all workers
+     * @param steps		the amount of steps done in the block (more than one when jumping to a time)
+     *
+     * @return <code>true</code> if the regions were redistributed, else <code>false</code>
+     */
+    public boolean step(WorkerThread[] workers, int steps){
+        steps_ += steps;
+        if(steps_ < CHECK_INTERVAL || workers.length < 2) return false;
+        steps_ = 0;
+
+        int i, j;
+        long[] costs = new long[regions_.length];
+        long total = 0, measured = 0;
+        for(i = 0; i < regions_.length; ++i) measured += regions_[i].getMeasuredCost();
+        for(i = 0; i < regions_.length; ++i){
+            // fall back to the amount of vehicles if nothing was measured (for example while all vehicles wait)
+            if(measured > 0) costs[i] = regions_[i].getMeasuredCost() + REGION_COST;
+            else costs[i] = regions_[i].getVehicleArray().length * VEHICLE_COST + REGION_COST;
+            regions_[i].resetMeasuredCost();
+            total += costs[i];
+        }
+
+        // load of the current distribution
+        long maxLoad = 0, load;
+        Region[] ourRegions;
+        for(i = 0; i < workers.length; ++i){
+            ourRegions = workers[i].getRegions();
+            load = 0;
+            for(j = 0; j < ourRegions.length; ++j) load += costs[indexOf(ourRegions[j])];
+            if(load > maxLoad) maxLoad = load;
+        }
+        double imbalance = maxLoad / (total / (double)workers.length);
+        if(imbalance <= IMBALANCE_THRESHOLD) return false;
+
+        Region[][] newRegions = partition(costs, total, workers.length);
+        for(i = 0; i < workers.length; ++i) workers[i].assignRegions(newRegions[i]);
+        ErrorLog.log(Messages.getString("RegionRebalancer.rebalanced") + Math.round(imbalance * 100) / 100.0, 1, RegionRebalancer.class.getName(), "step", null); //$NON-NLS-1$ //$NON-NLS-2$
+        return true;
+    }
+
+    /**
+     * Splits the regions in contiguous blocks with about equal costs.
+     *
+     * @param costs		the costs of all regions
+     * @param total		the sum of all costs
+     * @param workers	the amount of blocks to create
+     *
+     * @return the blocks
+     */
+    private Region[][] partition(long[] costs, long total, int workers){
+        Region[][] result = new Region[workers][];
+        double target = total / (double)workers;
+        long sum = 0;
+        int start = 0, i = 0;
+        for(int k = 0; k < workers; ++k){
+            if(k == workers - 1) i = regions_.length;
+            else {
+                // take regions until the block reaches its share but leave at least one region for every following worker
+                while(i < regions_.length - (workers - 1 - k) && (i == start || sum + costs[i] / 2.0 <= target * (k + 1))){
+                    sum += costs[i];
+                    ++i;
+                }
+            }
+            result[k] = new Region[i - start];
+            System.arraycopy(regions_, start, result[k], 0, i - start);
+            start = i;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the position of a region.
+     *
+     * @param region	the region
+     *
+     * @return the index in the region array
+     */
+    private int indexOf(Region region){
+        // regions are stored in row-major order
+        return region.getX() * regionCountY_ + region.getY();
+    }
+}
@@ -0,0 +1,39 @@
+package vanetsim.simulation;
+
+/**
+ * The simulation time. All parts of the simulation read the time from here instead of asking the <code>Renderer</code>
+ * so that the simulation also runs without any graphical user interface. The time itself is stored in the
+ * <code>SimulationContext</code> bound to the calling thread.
+ */
+public final class SimulationClock {
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Empty, private constructor in order to disable instancing.
+     */
+    private SimulationClock(){
+    }
+
+    /**
+     * Gets the time passed since simulation start.
+     *
+     * @return the time in milliseconds
+     */
+    public static int getTime(){
+        return SimulationContext.current().getTime();
+    }
+
+    /**
+     * Sets the time passed since simulation start. Should only be called between two steps.
+     *
+     * @param time	the new time in milliseconds
+     */
+    public static void setTime(int time){
+        SimulationContext.current().setTime(time);
+    }
+}
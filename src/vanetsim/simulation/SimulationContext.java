@@ -0,0 +1,893 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.debug.Debug;
+import vanetsim.gui.Renderer;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Region;
+import vanetsim.routing.RouteCache;
+import vanetsim.routing.A_Star.A_Star_LookupTableFactory;
+import vanetsim.scenario.Scenario;
+import vanetsim.scenario.events.EventList;
+
+import java.util.Random;
+
+/**
+ * Everything which belongs to exactly one simulation run: the map, the scenario, the events, the random number generator,
+ * the simulation time, the lookup tables of the routing and the settings common to all vehicles.
+ * The former singletons (<code>Map.getInstance()</code>, <code>Scenario.getInstance()</code>, ...) return the objects of the
+ * context bound to the calling thread. Threads without a bound context use the default context which is the one of the
+ * graphical user interface. This way several independent simulations may run in one JVM as long as each of them uses its own
+ * threads and binds its context to all of them:
+ * <pre>
+ * SimulationContext context = new SimulationContext();
+ * SimulationContext previous = context.bind();
+ * try{
+ *     // load the map, create vehicles, simulate...
+ * } finally {
+ *     SimulationContext.restore(previous);
+ * }
+ * </pre>
+ * The <code>WorkerThread</code>s and the threads of the <code>WorkStealingScheduler</code> automatically use the context of the
+ * thread which created them.
+ */
+public final class SimulationContext {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The context used by all threads which didn't bind another one. */
+    private static final SimulationContext DEFAULT_CONTEXT = new SimulationContext();
+
+    /** The context bound to each thread. */
+    private static final ThreadLocal<SimulationContext> CURRENT = new ThreadLocal<SimulationContext>();
+
+    /** The map. */
+    private final Map map_;
+
+    /** The slot of the mutable state (vehicles, lanes, junction queues, traffic lights) used by this context. <code>0</code> if the map isn't shared. */
+    private final int runSlot_;
+
+    /** The scenario. */
+    private final Scenario scenario_;
+
+    /** All events. */
+    private final EventList eventList_;
+
+    /** The recycled lookup tables of the A* algorithm (they depend on the amount of nodes of the map). */
+    private final A_Star_LookupTableFactory lookupTableFactory_;
+
+    /** The random number generator used to initialize the generators of the vehicles. */
+    private Random random_ = new Random(1L);
+
+    /** How much time has passed since the beginning of the simulation (in milliseconds). */
+    private volatile int time_ = 0;
+
+    /** Counter to generate the IDs of the nodes. Node IDs are used as index in the lookup tables. */
+    private int nodeCounter_ = 0;
+
+    /** Counter to generate the steady IDs of the vehicles. */
+    private int steadyIDCounter_ = 0;
+
+    /** All regions of the map as used by the vehicles. */
+    private Region[][] regions_ = null;
+
+    /** The routing mode used. See the A_Star_Algo for details. */
+    private int routingMode_ = 1;
+
+    /** If the A* algorithm uses a pairing heap as open list when routing by time (see <code>A_Star_PairingHeap</code>). */
+    private boolean pairingHeapRouting_ = false;
+
+    /** If the A* algorithm searches from the start and from the target at the same time (see <code>A_Star_Bidirectional</code>). */
+    private boolean bidirectionalRouting_ = false;
+
+    /** If vehicles are routed on the contraction hierarchies of the map (see <code>CH_Algorithm</code>) instead of with A*. */
+    private boolean hierarchyRouting_ = false;
+
+    /** The amount of landmarks for the heuristic of the A* algorithm (see <code>A_Star_Landmarks</code>) or <code>0</code> to only use the straight line. */
+    private int landmarkCount_ = 0;
+
+    /** The minimum time a vehicle needs to have traveled in order to be able to be recycled (in milliseconds). */
+    private int minTravelTimeForRecycling_ = 60000;
+
+    /** If communication is enabled. */
+    private boolean communicationEnabled_ = true;
+
+    /** If beacons are enabled. */
+    private boolean beaconsEnabled_ = true;
+
+    /** If recycling of vehicles is enabled. */
+    private boolean recyclingEnabled_ = true;
+
+    /** The interval between messages (in milliseconds). */
+    private int communicationInterval_ = 160;
+
+    /** The interval between beacons (in milliseconds). */
+    private int beaconInterval_ = 240;
+
+    /** The radius of the mix zones added to the junctions (in cm). */
+    private int mixZoneRadius_ = 10000;
+
+    /** The largest radius of all mix zones on the map (in cm). */
+    private int maxMixZoneRadius_ = 0;
+
+    /** The maximum communication distance of all vehicles (in cm). */
+    private int maximumCommunicationDistance_ = 0;
+
+    /** If the vehicles are moved with the <code>VehicleStateStore</code> of their region. */
+    private boolean vehicleStateStoreEnabled_ = false;
+
+    /** If only the vehicles which have work are processed (see <code>ActiveVehicleSet</code>). */
+    private boolean activeVehicleSetsEnabled_ = false;
+
+    /** If the results shall be the same for any amount of threads (see <code>InteractionBuffer</code>). */
+    private boolean deterministic_ = false;
+
+    /** If the speeds are adjusted and the vehicles moved in one pass, reading the state the other vehicles had at the end of the last step. */
+    private boolean doubleBuffered_ = false;
+
+    /** If this context is simulated without graphical user interface (see <code>HeadlessEngine</code>). */
+    private volatile boolean headless_ = false;
+
+    /** The engine the <code>SimulationMaster</code> uses when it creates its workers (one of its <code>ENGINE_*</code> constants). */
+    private volatile int engine_ = SimulationMaster.ENGINE_BARRIER;
+
+    // The following flags are read by every vehicle several times per step. They are only changed by a single thread between two
+    // phases and published to the simulation threads by the barriers (or the pool) which start the next phase, so they are not volatile.
+
+    /** The slot of the published state read by the vehicles (see <code>LaneObject.publishState()</code>) or <code>-1</code> to read the current state. */
+    private int stateReadSlot_ = -1;
+
+    /** If changes of lanes, regions and junctions are buffered right now. Only set while the phases of a step are running. */
+    private boolean deferInteractions_ = false;
+
+    /** If changes of lane containers of streets whose main region is processed by another thread are handed over to that region. */
+    private boolean handOffLaneChanges_ = false;
+
+    /** If vehicles leaving their region are only noted and moved after the step. Only set while the phases of a step are running. */
+    private boolean bufferMigrations_ = false;
+
+    /** Records where the time of the steps goes (switched off by default). */
+    private final StepProfiler profiler_ = new StepProfiler(this);
+
+    /** The routes calculated by the vehicles, so that vehicles driving between the same waypoints don't calculate them again. */
+    private final RouteCache routeCache_ = new RouteCache();
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new context with an empty map and scenario.
+     */
+    public SimulationContext(){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "SimulationContext()", Debug.ISLOGGED);
+
+        map_ = Map.createInstance();
+        runSlot_ = 0;
+        scenario_ = Scenario.createInstance();
+        eventList_ = EventList.createInstance();
+        lookupTableFactory_ = new A_Star_LookupTableFactory();
+    }
+
+    /**
+     * Creates a new context which shares the map of another context. The map has to be completely loaded and prepared with
+     * <code>Map.setRunSlots()</code> so that the slot exists. Only the streets, nodes and regions are shared, all vehicles,
+     * lanes, junction queues and traffic light states are kept separately per slot.
+     *
+     * @param network	the context which loaded the map
+     * @param runSlot	the slot of the mutable state used by the new context. Each context sharing the map needs its own slot.
+     */
+    public SimulationContext(SimulationContext network, int runSlot){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "SimulationContext(SimulationContext network, int runSlot)", Debug.ISLOGGED);
+
+        map_ = network.map_;
+        runSlot_ = runSlot;
+        nodeCounter_ = network.getNodeCount();
+        regions_ = network.regions_;
+        scenario_ = Scenario.createInstance();
+        eventList_ = EventList.createInstance();
+        lookupTableFactory_ = new A_Star_LookupTableFactory();
+    }
+
+    /**
+     * Gets the profiler recording where the time of the steps goes.
+     *
+     * @return the profiler
+     */
+    public StepProfiler getProfiler(){
+        return profiler_;
+    }
+
+    /**
+     * Gets the cache of the routes calculated by the vehicles.
+     *
+     * @return the cache
+     */
+    public RouteCache getRouteCache(){
+        return routeCache_;
+    }
+
+    /**
+     * Gets the context bound to the calling thread. The simulation threads keep it in a field (see <code>ContextThread</code>),
+     * all others in a <code>ThreadLocal</code>.
+     *
+     * @return the context bound to this thread or the default context if no context was bound
+     */
+    public static SimulationContext current(){
+        Thread thread = Thread.currentThread();
+        SimulationContext context;
+        if(thread instanceof ContextThread) context = ((ContextThread)thread).getBoundContext();
+        else context = CURRENT.get();
+        if(context == null) return DEFAULT_CONTEXT;
+        else return context;
+    }
+
+    /**
+     * Gets the default context (used by the graphical user interface).
+     *
+     * @return the default context
+     */
+    public static SimulationContext getDefault(){
+        return DEFAULT_CONTEXT;
+    }
+
+    /**
+     * Binds this context to the calling thread.
+     *
+     * @return the context which was bound before (may be <code>null</code>). Pass it to {@link #restore(SimulationContext)} when done.
+     */
+    public SimulationContext bind(){
+        Thread thread = Thread.currentThread();
+        SimulationContext previous;
+        if(thread instanceof ContextThread){
+            previous = ((ContextThread)thread).getBoundContext();
+            ((ContextThread)thread).setBoundContext(this);
+        } else {
+            previous = CURRENT.get();
+            CURRENT.set(this);
+        }
+        return previous;
+    }
+
+    /**
+     * Binds a previous context to the calling thread again.
+     *
+     * @param previous	the context returned by {@link #bind()}
+     */
+    public static void restore(SimulationContext previous){
+        Thread thread = Thread.currentThread();
+        if(thread instanceof ContextThread) ((ContextThread)thread).setBoundContext(previous);
+        else if(previous == null) CURRENT.remove();
+        else CURRENT.set(previous);
+    }
+
+    /**
+     * Gets the map.
+     *
+     * @return the map
+     */
+    public Map getMap(){
+        return map_;
+    }
+
+    /**
+     * Gets the slot of the mutable state used by this context.
+     *
+     * @return the slot
+     */
+    public int getRunSlot(){
+        return runSlot_;
+    }
+
+    /**
+     * Gets the scenario.
+     *
+     * @return the scenario
+     */
+    public Scenario getScenario(){
+        return scenario_;
+    }
+
+    /**
+     * Gets the list of events.
+     *
+     * @return the event list
+     */
+    public EventList getEventList(){
+        return eventList_;
+    }
+
+    /**
+     * Gets the factory for the lookup tables of the A* algorithm.
+     *
+     * @return the factory
+     */
+    public A_Star_LookupTableFactory getLookupTableFactory(){
+        return lookupTableFactory_;
+    }
+
+    /**
+     * Gets the random number generator used to initialize the generators of the vehicles.
+     *
+     * @return the random number generator
+     */
+    public Random getRandom(){
+        return random_;
+    }
+
+    /**
+     * Replaces the random number generator used to initialize the generators of the vehicles (when restoring a checkpoint).
+     *
+     * @param random	the new random number generator
+     */
+    public void setRandom(Random random){
+        random_ = random;
+    }
+
+    /**
+     * Gets the time passed since simulation start.
+     *
+     * @return the time in milliseconds
+     */
+    public int getTime(){
+        return time_;
+    }
+
+    /**
+     * Sets the time passed since simulation start.
+     *
+     * @param time	the new time in milliseconds
+     */
+    public void setTime(int time){
+        time_ = time;
+    }
+
+    /**
+     * Gets a new node ID.
+     *
+     * @return the ID
+     */
+    public synchronized int nextNodeID(){
+        return nodeCounter_++;
+    }
+
+    /**
+     * Gets the amount of node IDs given out.
+     *
+     * @return the highest node ID + 1
+     */
+    public synchronized int getNodeCount(){
+        return nodeCounter_;
+    }
+
+    /**
+     * Resets the node ID counter so that newly created nodes begin with an ID of 0.
+     */
+    public synchronized void resetNodeID(){
+        nodeCounter_ = 0;
+    }
+
+    /**
+     * Gets a new steady ID for a vehicle.
+     *
+     * @return the ID
+     */
+    public synchronized int nextSteadyID(){
+        return steadyIDCounter_++;
+    }
+
+    /**
+     * Gets the amount of steady IDs given out.
+     *
+     * @return the next steady ID
+     */
+    public synchronized int getSteadyIDCount(){
+        return steadyIDCounter_;
+    }
+
+    /**
+     * Sets the counter of the steady IDs so that the next vehicle gets the given ID (when restoring a checkpoint).
+     *
+     * @param count	the next steady ID
+     */
+    public synchronized void setSteadyIDCount(int count){
+        steadyIDCounter_ = count;
+    }
+
+    /**
+     * Gets all regions as used by the vehicles.
+     *
+     * @return the regions
+     */
+    public Region[][] getRegions(){
+        return regions_;
+    }
+
+    /**
+     * Sets the regions used by the vehicles. Call this on map reload!
+     *
+     * @param regions	the array with all regions
+     */
+    public void setRegions(Region[][] regions){
+        regions_ = regions;
+    }
+
+    /**
+     * Gets the routing mode.
+     *
+     * @return the routing mode
+     */
+    public int getRoutingMode(){
+        return routingMode_;
+    }
+
+    /**
+     * Sets the routing mode.
+     *
+     * @param routingMode	the routing mode
+     */
+    public void setRoutingMode(int routingMode){
+        routingMode_ = routingMode;
+    }
+
+    /**
+     * Signals if the A* algorithm uses a pairing heap as open list when routing by time.
+     *
+     * @return <code>true</code> if the pairing heap is used, <code>false</code> for the binary heap
+     */
+    public boolean getPairingHeapRouting(){
+        return pairingHeapRouting_;
+    }
+
+    /**
+     * Sets if the A* algorithm uses a pairing heap as open list when routing by time. Nodes with the same f-value may be
+     * taken in another order than with the binary heap, so routes of the same length may differ.
+     *
+     * @param state	<code>true</code> to use the pairing heap, <code>false</code> for the binary heap
+     */
+    public void setPairingHeapRouting(boolean state){
+        pairingHeapRouting_ = state;
+        routeCache_.clear();
+    }
+
+    /**
+     * Gets if the A* algorithm searches from the start and from the target at the same time.
+     *
+     * @return <code>true</code> if the search is bidirectional, else <code>false</code>
+     */
+    public boolean getBidirectionalRouting(){
+        return bidirectionalRouting_;
+    }
+
+    /**
+     * Sets if the A* algorithm searches from the start and from the target at the same time. This is only used when
+     * routing by distance or by time. Routes of the same length may differ from those found by the normal search.
+     *
+     * @param state	<code>true</code> for the bidirectional search, <code>false</code> to only search from the start
+     */
+    public void setBidirectionalRouting(boolean state){
+        bidirectionalRouting_ = state;
+        routeCache_.clear();
+    }
+
+    /**
+     * Gets if vehicles are routed on the contraction hierarchies of the map.
+     *
+     * @return <code>true</code> if the hierarchies are used, else <code>false</code>
+     */
+    public boolean getHierarchyRouting(){
+        return hierarchyRouting_;
+    }
+
+    /**
+     * Sets if vehicles are routed on the contraction hierarchies of the map. The hierarchies are built (or read from the file
+     * next to the map) when the next map is loaded or on the first routing. Routes of the same length may differ from those
+     * found by A*.
+     *
+     * @param state	<code>true</code> to use the hierarchies, <code>false</code> to always use A*
+     */
+    public void setHierarchyRouting(boolean state){
+        hierarchyRouting_ = state;
+        routeCache_.clear();
+    }
+
+    /**
+     * Gets the amount of landmarks for the heuristic of the A* algorithm.
+     *
+     * @return the amount or <code>0</code> if no landmarks are used
+     */
+    public int getLandmarkCount(){
+        return landmarkCount_;
+    }
+
+    /**
+     * Sets the amount of landmarks for the heuristic of the A* algorithm. 8 to 16 landmarks are a good choice, more make the
+     * tables larger without helping much. The landmarks are calculated (or read from the file next to the map) when the next
+     * map is loaded or on the first routing. Routes of the same length may differ from those found without landmarks.
+     *
+     * @param count	the amount or <code>0</code> to only use the straight line
+     */
+    public void setLandmarkCount(int count){
+        if(count < 0) count = 0;
+        landmarkCount_ = count;
+        routeCache_.clear();
+    }
+
+    /**
+     * Gets the minimum time a vehicle needs to have traveled in order to be able to be recycled.
+     *
+     * @return the time in milliseconds
+     */
+    public int getMinTravelTimeForRecycling(){
+        return minTravelTimeForRecycling_;
+    }
+
+    /**
+     * Sets the minimum time a vehicle needs to have traveled in order to be able to be recycled.
+     *
+     * @param minTravelTimeForRecycling	the time in milliseconds
+     */
+    public void setMinTravelTimeForRecycling(int minTravelTimeForRecycling){
+        minTravelTimeForRecycling_ = minTravelTimeForRecycling;
+    }
+
+    /**
+     * Signals if communication is enabled.
+     *
+     * @return <code>true</code> if communication is enabled, else <code>false</code>
+     */
+    public boolean getCommunicationEnabled(){
+        return communicationEnabled_;
+    }
+
+    /**
+     * Sets if communication is enabled.
+     *
+     * @param state	<code>true</code> to enable communication, else <code>false</code>
+     */
+    public void setCommunicationEnabled(boolean state){
+        communicationEnabled_ = state;
+    }
+
+    /**
+     * Signals if beacons are enabled.
+     *
+     * @return <code>true</code> if beacons are enabled, else <code>false</code>
+     */
+    public boolean getBeaconsEnabled(){
+        return beaconsEnabled_;
+    }
+
+    /**
+     * Sets if beacons are enabled.
+     *
+     * @param state	<code>true</code> to enable beacons, else <code>false</code>
+     */
+    public void setBeaconsEnabled(boolean state){
+        beaconsEnabled_ = state;
+    }
+
+    /**
+     * Signals if recycling of vehicles is enabled.
+     *
+     * @return <code>true</code> if recycling is enabled, else <code>false</code>
+     */
+    public boolean getRecyclingEnabled(){
+        return recyclingEnabled_;
+    }
+
+    /**
+     * Sets if recycling of vehicles is enabled.
+     *
+     * @param state	<code>true</code> to enable recycling, else <code>false</code>
+     */
+    public void setRecyclingEnabled(boolean state){
+        recyclingEnabled_ = state;
+    }
+
+    /**
+     * Gets the interval between messages.
+     *
+     * @return the interval in milliseconds
+     */
+    public int getCommunicationInterval(){
+        return communicationInterval_;
+    }
+
+    /**
+     * Sets the interval between messages.
+     *
+     * @param communicationInterval	the interval in milliseconds
+     */
+    public void setCommunicationInterval(int communicationInterval){
+        communicationInterval_ = communicationInterval;
+    }
+
+    /**
+     * Gets the interval between beacons.
+     *
+     * @return the interval in milliseconds
+     */
+    public int getBeaconInterval(){
+        return beaconInterval_;
+    }
+
+    /**
+     * Sets the interval between beacons.
+     *
+     * @param beaconInterval	the interval in milliseconds
+     */
+    public void setBeaconInterval(int beaconInterval){
+        beaconInterval_ = beaconInterval;
+    }
+
+    /**
+     * Gets the radius of the mix zones added to the junctions.
+     *
+     * @return the radius in cm
+     */
+    public int getMixZoneRadius(){
+        return mixZoneRadius_;
+    }
+
+    /**
+     * Sets the radius of the mix zones added to the junctions.
+     *
+     * @param mixZoneRadius	the radius in cm
+     */
+    public void setMixZoneRadius(int mixZoneRadius){
+        mixZoneRadius_ = mixZoneRadius;
+    }
+
+    /**
+     * Gets the largest radius of all mix zones on the map.
+     *
+     * @return the radius in cm
+     */
+    public int getMaxMixZoneRadius(){
+        return maxMixZoneRadius_;
+    }
+
+    /**
+     * Sets the largest radius of all mix zones on the map.
+     *
+     * @param maxMixZoneRadius	the radius in cm
+     */
+    public void setMaxMixZoneRadius(int maxMixZoneRadius){
+        maxMixZoneRadius_ = maxMixZoneRadius;
+    }
+
+    /**
+     * Gets the maximum communication distance of all vehicles.
+     *
+     * @return the distance in cm
+     */
+    public int getMaximumCommunicationDistance(){
+        return maximumCommunicationDistance_;
+    }
+
+    /**
+     * Sets the maximum communication distance of all vehicles.
+     *
+     * @param maximumCommunicationDistance	the distance in cm
+     */
+    public void setMaximumCommunicationDistance(int maximumCommunicationDistance){
+        maximumCommunicationDistance_ = maximumCommunicationDistance;
+    }
+
+    /**
+     * Signals if the vehicles are moved with the <code>VehicleStateStore</code> of their region.
+     *
+     * @return <code>true</code> if the stores are used, else <code>false</code>
+     */
+    public boolean getVehicleStateStoreEnabled(){
+        return vehicleStateStoreEnabled_;
+    }
+
+    /**
+     * Sets if the vehicles are moved with the <code>VehicleStateStore</code> of their region. This gives the same results
+     * but is faster with a lot of vehicles.
+     *
+     * @param state	<code>true</code> to use the stores, else <code>false</code>
+     */
+    public void setVehicleStateStoreEnabled(boolean state){
+        vehicleStateStoreEnabled_ = state;
+    }
+
+    /**
+     * Signals if only the vehicles which have work are processed in each step.
+     *
+     * @return <code>true</code> if the <code>ActiveVehicleSet</code>s of the regions are used, else <code>false</code>
+     */
+    public boolean getActiveVehicleSetsEnabled(){
+        return activeVehicleSetsEnabled_;
+    }
+
+    /**
+     * Sets if only the vehicles which have work are processed in each step. Waiting and finished vehicles are skipped then,
+     * the results stay the same.
+     *
+     * @param state	<code>true</code> to use the <code>ActiveVehicleSet</code>s of the regions, else <code>false</code>
+     */
+    public void setActiveVehicleSetsEnabled(boolean state){
+        activeVehicleSetsEnabled_ = state;
+    }
+
+    /**
+     * Signals if the deterministic mode is used.
+     *
+     * @return <code>true</code> if the results don't depend on the amount of threads, else <code>false</code>
+     */
+    public boolean getDeterministic(){
+        return deterministic_;
+    }
+
+    /**
+     * Sets if the deterministic mode is used. All changes which vehicles make on lanes, regions and junctions are buffered
+     * then and applied in a fixed order after each phase, so the results are the same for any amount of threads. The results
+     * differ slightly from the normal mode as vehicles only see these changes after the phase.
+     *
+     * @param state	<code>true</code> to use the deterministic mode, else <code>false</code>
+     */
+    public void setDeterministic(boolean state){
+        deterministic_ = state;
+    }
+
+    /**
+     * Signals if the double-buffered vehicle state is used.
+     *
+     * @return <code>true</code> if adjusting speed and moving is done in one pass, else <code>false</code>
+     */
+    public boolean getDoubleBuffered(){
+        return doubleBuffered_;
+    }
+
+    /**
+     * Sets if the double-buffered vehicle state is used. The vehicles then only read the position, speed and lane other
+     * vehicles had at the end of the last step, so adjusting the speed and moving can be done in one pass without waiting
+     * for the other threads in between. Not used in the deterministic mode.
+     *
+     * @param state	<code>true</code> to use the double-buffered state, else <code>false</code>
+     */
+    public void setDoubleBuffered(boolean state){
+        doubleBuffered_ = state;
+    }
+
+    /**
+     * Signals if this context is simulated without graphical user interface.
+     *
+     * @return <code>true</code> if nothing may be shown to the user, else <code>false</code>
+     */
+    public boolean getHeadless(){
+        return headless_;
+    }
+
+    /**
+     * Sets if this context is simulated without graphical user interface. Errors are then not shown in dialogs and the
+     * graphical user interface isn't updated. Other contexts in the same process aren't affected.
+     *
+     * @param state	<code>true</code> if there's no graphical user interface, else <code>false</code>
+     */
+    public void setHeadless(boolean state){
+        headless_ = state;
+    }
+
+    /**
+     * Checks if the graphical user interface may be updated. This is not the case for headless contexts and in console mode.
+     *
+     * @return <code>true</code> if there's a graphical user interface which should be updated
+     */
+    public boolean hasGui(){
+        return !headless_ && !Renderer.getInstance().isConsoleStart();
+    }
+
+    /**
+     * Gets the engine used by the <code>SimulationMaster</code>.
+     *
+     * @return <code>SimulationMaster.ENGINE_BARRIER</code>, <code>ENGINE_WORK_STEALING</code> or <code>ENGINE_VIRTUAL_THREADS</code>
+     */
+    public int getEngine(){
+        return engine_;
+    }
+
+    /**
+     * Sets the engine used by the <code>SimulationMaster</code>. It's only changed when the workers are created the next time
+     * (after a new map or scenario has been loaded). <code>ENGINE_VIRTUAL_THREADS</code> is refused if the runtime doesn't
+     * support virtual threads.
+     *
+     * @param engine	<code>SimulationMaster.ENGINE_BARRIER</code>, <code>ENGINE_WORK_STEALING</code> or <code>ENGINE_VIRTUAL_THREADS</code>
+     *
+     * @return <code>true</code> if the engine was set, else <code>false</code>
+     */
+    public boolean setEngine(int engine){
+        if(engine == SimulationMaster.ENGINE_VIRTUAL_THREADS && !VirtualThreadScheduler.isAvailable()){
+            ErrorLog.log(Messages.getString("VirtualThreadScheduler.notAvailable") + System.getProperty("java.version"), 7, SimulationContext.class.getName(), "setEngine", null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            return false;
+        }
+        if(engine != SimulationMaster.ENGINE_BARRIER && engine != SimulationMaster.ENGINE_WORK_STEALING && engine != SimulationMaster.ENGINE_VIRTUAL_THREADS) return false;
+        engine_ = engine;
+        return true;
+    }
+
+    /**
+     * Gets the slot of the published state which is read in the current step.
+     *
+     * @return the slot (<code>0</code> or <code>1</code>) or <code>-1</code> if the current state is read
+     */
+    public int getStateReadSlot(){
+        return stateReadSlot_;
+    }
+
+    /**
+     * Sets the slot of the published state which is read in the current step. Set by the <code>PhasePipeline</code>.
+     *
+     * @param slot	the slot (<code>0</code> or <code>1</code>) or <code>-1</code> to read the current state
+     */
+    public void setStateReadSlot(int slot){
+        stateReadSlot_ = slot;
+    }
+
+    /**
+     * Signals if changes of lanes, regions and junctions have to be buffered at the moment.
+     *
+     * @return <code>true</code> if they have to be given to the <code>InteractionBuffer</code> of the region
+     */
+    public boolean getDeferInteractions(){
+        return deferInteractions_;
+    }
+
+    /**
+     * Sets if changes of lanes, regions and junctions have to be buffered. Set by the <code>PhasePipeline</code>.
+     *
+     * @param state	<code>true</code> while the phases of a step run in the deterministic mode, else <code>false</code>
+     */
+    public void setDeferInteractions(boolean state){
+        deferInteractions_ = state;
+    }
+
+    /**
+     * Signals if vehicles leaving their region are only noted and moved after the step.
+     *
+     * @return <code>true</code> if <code>Region.addEmigrant()</code> has to be used instead of changing the regions directly
+     */
+    public boolean getBufferMigrations(){
+        return bufferMigrations_;
+    }
+
+    /**
+     * Sets if vehicles leaving their region are only noted and moved after the step. Set by the <code>PhasePipeline</code>.
+     *
+     * @param state	<code>true</code> while the phases of a step run, else <code>false</code>
+     */
+    public void setBufferMigrations(boolean state){
+        bufferMigrations_ = state;
+    }
+
+    /**
+     * Signals if changes of lane containers have to be handed over to the main region of the street (see <code>Region.handOffLaneObject()</code>).
+     *
+     * @return <code>true</code> while the phases of a step run in the normal mode, else <code>false</code>
+     */
+    public boolean getHandOffLaneChanges(){
+        return handOffLaneChanges_;
+    }
+
+    /**
+     * Sets if changes of lane containers have to be handed over to the main region of the street. Set by the <code>PhasePipeline</code>.
+     *
+     * @param state	<code>true</code> while the phases of a step run in the normal mode, else <code>false</code>
+     */
+    public void setHandOffLaneChanges(boolean state){
+        handOffLaneChanges_ = state;
+    }
+}
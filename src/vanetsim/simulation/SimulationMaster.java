@@ -38,8 +38,17 @@ public class SimulationMaster extends Thread {
     /** How much time passes in one step (in milliseconds). 40ms results in a smooth animation with 25fps. */
     public static final int TIME_PER_STEP = 40;
 
-    /** The list with all events */
-    private static final EventList eventList_ = EventList.getInstance();
+    /** The maximum amount of steps done in one block when jumping to a time (10 seconds), so that stopping isn't delayed too long. */
+    public static final int FAST_FORWARD_STEPS = 250;
+
+    /** Engine with a fixed set of <code>WorkerThread</code>s synchronized through <code>CyclicBarrier</code>s (see <code>SimulationContext.setEngine()</code>). */
+    public static final int ENGINE_BARRIER = 0;
+
+    /** Engine with a fork/join pool where idle threads steal per-region tasks (see <code>WorkStealingScheduler</code>). */
+    public static final int ENGINE_WORK_STEALING = 1;
+
+    /** Engine with one virtual thread per region and phase (see <code>VirtualThreadScheduler</code>). Needs a Java 21 runtime. */
+    public static final int ENGINE_VIRTUAL_THREADS = 2;
 
 
     /** a flag to indicate if the performance should be logged */
@@ -74,6 +83,12 @@ public class SimulationMaster extends Thread {
     /** An array holding all worker threads. 考慮使用ArrayList來做thread管理 */
     private WorkerThread[] workers_ = null;
 
+    /** Redistributes the regions between the workers if <code>ENGINE_BARRIER</code> is used. */
+    private RegionRebalancer rebalancer_ = null;
+
+    /** The scheduler if <code>ENGINE_WORK_STEALING</code> or <code>ENGINE_VIRTUAL_THREADS</code> is used. */
+    private StepScheduler scheduler_ = null;
+
 
     /**
      * 同步執行緒（CyclicBarrier）類物件，類似執行緒的中斷點
@@ -81,12 +96,15 @@ public class SimulationMaster extends Thread {
     /** Synchronization barrier for the start of the working threads. */
     private CyclicBarrier barrierStart_ = null;
 
-    /** Synchronization barrier for the worker threads. */
-    private CyclicBarrier barrierDuringWork_ = null;
+    /** The phases the workers run between the start and the finish barrier. */
+    private final PhasePipeline pipeline_ = PhasePipeline.createDefault();
 
     /** Synchronization barrier for the end of one step in the working process. */
     private CyclicBarrier barrierFinish_ = null;
 
+    /** Synchronization barrier between the steps of a block. Only the workers wait on it. */
+    private CyclicBarrier barrierStep_ = null;
+
 
 
     /**
@@ -245,13 +263,33 @@ public class SimulationMaster extends Thread {
 
         barrierStart_ = new CyclicBarrier(threads + 1);
 
-        Debug.detailedInfo("barrierDuringWork_ hold (threads) threads", Debug.ISLOGGED);
+        Debug.detailedInfo("pipeline_ hold (threads) threads", Debug.ISLOGGED);
 
-        barrierDuringWork_ = new CyclicBarrier(threads);
+        pipeline_.setParties(threads);
 
         Debug.detailedInfo("barrierFinish_ hold (threads + 1) threads", Debug.ISLOGGED);
 
-        barrierFinish_ = new CyclicBarrier(threads + 1);
+        // the vehicles which left their regions are moved by the last thread arriving, while all others wait
+        barrierFinish_ = new CyclicBarrier(threads + 1, new Runnable(){
+            public void run(){
+                pipeline_.finishStep();
+            }
+        });
+
+        // between the steps of a block, the last worker arriving does what the master does between two blocks
+        barrierStep_ = new CyclicBarrier(threads, new Runnable(){
+            public void run(){
+                // the try/catch-expression makes sure that the barrier isn't broken (same fail-safety as in the workers)
+                try{
+                    pipeline_.finishStep();
+                    advanceTime(SimulationClock.getTime() + TIME_PER_STEP);
+                    changeTrafficLights();
+                    pipeline_.prepareStep();
+                } catch (Exception e){
+                    pipeline_.reportFailure(e);	// logged at the end of the next step
+                }
+            }
+        });
 
         Debug.detailedInfo("use Iterator<WorkerThread> to manage WorkThread", Debug.ISLOGGED);
 
@@ -259,18 +297,182 @@ public class SimulationMaster extends Thread {
         Iterator<WorkerThread> iterator = tmpWorkers.iterator();
 
         while(iterator.hasNext() ) {
-            iterator.next().setBarriers(barrierStart_, barrierDuringWork_, barrierFinish_);
+            tmpWorker = iterator.next();
+            tmpWorker.setBarriers(barrierStart_, pipeline_, barrierFinish_);
+            tmpWorker.setStepBarrier(barrierStep_);
         }
         return tmpWorkers.toArray(new WorkerThread[0]);
     }
 
 
+    /**
+     * Gets the phases run in each step. New phases may be registered here.
+     *
+     * @return the pipeline
+     */
+    public PhasePipeline getPipeline(){
+        return pipeline_;
+    }
+
+    /**
+     * Calculates how many steps can be done in one block when jumping to a time. A block ends before the step at which
+     * the next event is due (the master needs to process it) and at the target time.
+     *
+     * @param time	the time at the end of the first step of the block
+     *
+     * @return the amount of steps (at least <code>1</code>)
+     */
+    private int getFastForwardSteps(int time){
+        long lastTime = jumpTimeTarget_;
+        int nextEventTime = EventList.getInstance().getNextEventTime();
+        if(nextEventTime - 1L < lastTime) lastTime = nextEventTime - 1L;
+        if(lastTime <= time) return 1;
+        long steps = 1 + (lastTime - time) / TIME_PER_STEP;
+        if(steps > FAST_FORWARD_STEPS) return FAST_FORWARD_STEPS;
+        else return (int)steps;
+    }
+
+    /**
+     * Sets the simulation time after a step.
+     *
+     * @param time	the time at the end of the step
+     */
+    private void advanceTime(int time){
+        KnownVehiclesList.setTimePassed(time);
+        KnownRSUsList.setTimePassed(time);
+        SimulationClock.setTime(time);
+    }
+
+    /**
+     * Checks the states of all traffic lights and changes them if necessary (as the workers do it after the finish barrier).
+     */
+    private void changeTrafficLights(){
+        Region[][] regions = Map.getInstance().getRegions();
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j) regions[i][j].changeTrafficLights(TIME_PER_STEP);
+        }
+    }
+
+    /**
+     * Creates the worker threads or the scheduler of the engine set in the <code>SimulationContext</code>.
+     *
+     * @param threads	the amount of worker threads if <code>ENGINE_BARRIER</code> is used
+     */
+    void createEngine(int threads){
+        int engine = SimulationContext.current().getEngine();
+        if(engine == ENGINE_WORK_STEALING){
+            // stealing balances the load itself so one thread per core is enough
+            scheduler_ = new WorkStealingScheduler(Map.getInstance().getRegions(), pipeline_, TIME_PER_STEP, Math.max(1, Runtime.getRuntime().availableProcessors()));
+        } else if(engine == ENGINE_VIRTUAL_THREADS){
+            scheduler_ = new VirtualThreadScheduler(Map.getInstance().getRegions(), pipeline_, TIME_PER_STEP);
+        } else {
+            workers_ = createWorkers(TIME_PER_STEP, threads);
+            rebalancer_ = new RegionRebalancer(Map.getInstance().getRegions());
+        }
+    }
+
+    /**
+     * Stops the worker threads or the scheduler so that new ones are created for the next step.
+     */
+    void shutdownEngine(){
+        if(workers_ != null){
+            //wait till all workers get to the start barrier
+            while(barrierStart_.getParties() - barrierStart_.getNumberWaiting() != 1){
+                try{
+                    sleep(1);
+                } catch (Exception e){}
+            }
+            //now interrupt the first one. The first will exit with an InterruptedException, all other workers will exit through a BrokenBarrierException
+            workers_[0].interrupt();
+
+            workers_ = null;
+            rebalancer_ = null;
+        }
+        if(scheduler_ != null){
+            // the scheduler only works between steps so it can be shut down directly
+            scheduler_.shutdown();
+            scheduler_ = null;
+        }
+    }
+
+    /**
+     * Sets the time to jump to. Until it is reached, nothing is drawn and the steps until the next event are done in
+     * one block.
+     *
+     * @param time	the target time in milliseconds or <code>-1</code> to switch the jump mode off
+     */
+    void setJumpTarget(int time){
+        jumpTimeTarget_ = time;
+        jumpTimeMode_ = (time >= 0);
+    }
+
+    /**
+     * Processes the events which are due and simulates the next step or, in the jump mode, the next block of steps.
+     * The engine must have been created with {@link #createEngine(int)}.
+     *
+     * @param record	the profiling record of the calling thread or <code>null</code> if the profiling is switched off
+     *
+     * @return the amount of steps done
+     *
+     * @throws Exception if waiting for the worker threads was interrupted or a barrier was broken
+     */
+    int doBlock(StepProfiler.ThreadRecord record) throws Exception{
+        int i, steps, time = SimulationClock.getTime() + TIME_PER_STEP;
+        long start = 0;
+        StepProfiler profiler = SimulationContext.current().getProfiler();
+
+        //process events
+        if(record != null) start = record.begin();
+        EventList.getInstance().processEvents(time);
+        if(record != null) record.compute(StepProfiler.SECTION_EVENTS, start, 0);
+
+        // when jumping, nothing is drawn so all steps until the next event can be done in one block
+        if(jumpTimeMode_) steps = getFastForwardSteps(time);
+        else steps = 1;
+
+        // decide which phases have work in this step
+        pipeline_.prepareStep();
+
+        profiler.countSteps(steps);
+        if(record != null) start = record.begin();
+        if(scheduler_ != null){
+            // returns when all phases are finished so there's no inconsistent state to draw
+            for(i = 1; i < steps; ++i){
+                scheduler_.doStep();
+                advanceTime(time);
+                time += TIME_PER_STEP;
+                pipeline_.prepareStep();
+            }
+            scheduler_.doStep();
+        } else {
+            for(i = 0; i < workers_.length; ++i) workers_[i].setBlockSteps(steps);
+
+            // (re)start the working threads
+            barrierStart_.await();
+
+            // wait for all working threads to finish to prevent drawing an inconsistent state!
+            barrierFinish_.await();
+            time += (steps - 1) * TIME_PER_STEP;
+
+            // all workers are behind the finish barrier so the regions may be redistributed now
+            rebalancer_.step(workers_, steps);
+        }
+        if(record != null) record.waited(StepProfiler.SECTION_WORKERS, start);
+
+        // Rendering itself can't be multithreaded and thus must be done here and not in the workers!
+        advanceTime(time);
+        return steps;
+    }
+
     /**
      * Instantiates a new simulation master.
      */
     public SimulationMaster(){
         Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
         Debug.debugInfo(this.getClass().getName(), "SimulationMaster()", Debug.ISLOGGED);
+        // the profiling is switched off until it is switched on through JMX
+        SimulationContext.current().getProfiler().registerMBean("SimulationMaster"); //$NON-NLS-1$
+        SimulationContext.current().getRouteCache().registerMBean("SimulationMaster"); //$NON-NLS-1$
     }
 
     /**
@@ -309,20 +511,12 @@ public class SimulationMaster extends Thread {
         Debug.callFunctionInfo(this.getClass().getName(), "stopThread()", Debug.ISLOGGED);
         Debug.ThreadInfo(this, Debug.ISLOGGED);
 
-        if(running_) ErrorLog.log(Messages.getString("SimulationMaster.simulationStopped"), 2, SimulationMaster.class.getName(), "stopThread", null); //$NON-NLS-1$ //$NON-NLS-2$
-        running_ = false;
-        if ((Map.getInstance().getReadyState() == false || Scenario.getInstance().getReadyState() == false) && workers_ != null){
-            //wait till all workers get to the start barrier
-            while(barrierStart_.getParties() - barrierStart_.getNumberWaiting() != 1){
-                try{
-                    sleep(1);
-                } catch (Exception e){}
-            }
-            //now interrupt the first one. The first will exit with an InterruptedException, all other workers will exit through a BrokenBarrierException
-            workers_[0].interrupt();
-
-            workers_ = null;
+        if(running_){
+            ErrorLog.log(Messages.getString("SimulationMaster.simulationStopped"), 2, SimulationMaster.class.getName(), "stopThread", null); //$NON-NLS-1$ //$NON-NLS-2$
+            pipeline_.logStatistics();
         }
+        running_ = false;
+        if (Map.getInstance().getReadyState() == false || Scenario.getInstance().getReadyState() == false) shutdownEngine();
 
         Debug.detailedInfo("notify renderer to stop the simulation", Debug.ISLOGGED);
 
@@ -341,9 +535,11 @@ public class SimulationMaster extends Thread {
         Debug.ThreadInfo(this, Debug.ISLOGGED);
 
         setName("SimulationMaster"); //$NON-NLS-1$
-        int time, threads;
-        long renderTime;
+        int time, threads, steps;
+        long renderTime, start = 0;
         Renderer renderer = Renderer.getInstance();
+        StepProfiler profiler = SimulationContext.current().getProfiler();
+        StepProfiler.ThreadRecord record;	// null if the profiling is switched off
 
         Debug.detailedInfo("CyclicBarrier ： A synchronization aid that allows a set of threads to all wait for each other to reach a common barrier point. CyclicBarriers are useful in programs involving a fixed sized party of threads that must occasionally wait for each other. The barrier is called cyclic because it can be re-used after the waiting threads are released.", Debug.ISLOGGED);
         Debug.detailedInfo("creating CyclicBarrier 2 parties (threads) ", Debug.ISLOGGED);
@@ -394,7 +590,7 @@ public class SimulationMaster extends Thread {
                     barrierRender.reset();
 
                     /** workers_為WorkerThread[]物件 */
-                    while(workers_ == null){  /** 當執行緒還未被產生時，產生執行緒 */
+                    while(workers_ == null && scheduler_ == null){  /** 當執行緒還未被產生時，產生執行緒 */
                         /** 初次載入地圖前workers 為 null，之後不為 null 後便不會執行 createWorkers() 方法 */
 
                         Debug.detailedInfo("when workers_ is null", Debug.ISLOGGED);
@@ -416,14 +612,14 @@ public class SimulationMaster extends Thread {
                             Debug.detailedInfo("use parameter TIME_PER_STEP and threads for createWorkers", Debug.ISLOGGED);
 
                             /** 依據地圖大小計算並分配每個執行緒所管理的資源 */
-                            workers_ = createWorkers(TIME_PER_STEP, threads);
+                            createEngine(threads);
 
                             /** 此處強制設定只產生一個執行緒 */
                             //workers_ = createWorkers(TIME_PER_STEP, 1);
 
                             if(Renderer.getInstance().isConsoleStart()){
                                 Renderer.getInstance().setMapZoom(0.4999999999);
-                                VanetSimStart.getMainControlPanel().getSimulatePanel().setZoomValue((int)Math.round(Math.log(Renderer.getInstance().getMapZoom()*1000)*50));
+                                if(VanetSimStart.getMainControlPanel() != null) VanetSimStart.getMainControlPanel().getSimulatePanel().setZoomValue((int)Math.round(Math.log(Renderer.getInstance().getMapZoom()*1000)*50));
                                 ReRenderManager.getInstance().doReRender();
                             }
 
@@ -432,34 +628,27 @@ public class SimulationMaster extends Thread {
                             sleep(50);
                         }
                     }
-                    time = renderer.getTimePassed() + TIME_PER_STEP;
-
-                    //process events
-                    eventList_.processEvents(time);
-
-                    // (re)start the working threads
-                    barrierStart_.await();
-
-                    // wait for all working threads to finish to prevent drawing an inconsistent state!
-                    barrierFinish_.await();
-
-
-                    // Rendering itself can't be multithreaded and thus must be done here and not in the workers!
-                    KnownVehiclesList.setTimePassed(time);
-                    KnownRSUsList.setTimePassed(time);
-                    renderer.setTimePassed(time);
+                    record = profiler.getRecord();
+                    steps = doBlock(record);
+                    time = SimulationClock.getTime();
 
 
 
                     if(!jumpTimeMode_){
 
+                        if(record != null) start = record.begin();
                         renderer.ReRender(false, true);
+                        if(record != null) record.compute(StepProfiler.SECTION_RENDER, start, 0);
 
-                        statsPanel.checkUpdates(TIME_PER_STEP);
+                        if(record != null) start = record.begin();
+                        if(statsPanel != null) statsPanel.checkUpdates(TIME_PER_STEP);
+                        if(record != null) record.compute(StepProfiler.SECTION_STATISTICS, start, 0);
 
                         // wait until rendering has completed
+                        if(record != null) start = System.nanoTime();
                         Thread.yield();
                         barrierRender.await(3, TimeUnit.SECONDS);
+                        if(record != null) record.addWait(StepProfiler.SECTION_RENDER, start);
 
                         // wait so that we get near the desired frames per second (no waiting if processing power wasn't enough!)
                         renderTime = ((System.nanoTime() - renderTime)/1000000);
@@ -470,7 +659,7 @@ public class SimulationMaster extends Thread {
                         }
                     } else {
 
-                        if(consoleStart && time%10000 == 0){
+                        if(consoleStart && time/10000 != (time - steps*TIME_PER_STEP)/10000){
                             timeNew = System.currentTimeMillis();
                             timeDistance = timeNew-timeOld;
                             System.out.println("Time:" + timeDistance);
@@ -493,7 +682,7 @@ public class SimulationMaster extends Thread {
                             if(!consoleStart){
                                 VanetSimStart.setProgressBar(false);
                                 renderer.ReRender(false, true);
-                                statsPanel.checkUpdates(TIME_PER_STEP);
+                                if(statsPanel != null) statsPanel.checkUpdates(TIME_PER_STEP);
                             }
                         }
                     }
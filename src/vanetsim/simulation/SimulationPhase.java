@@ -0,0 +1,187 @@
+package vanetsim.simulation;
+
+import vanetsim.map.Region;
+import vanetsim.scenario.RSU;
+import vanetsim.scenario.Vehicle;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named stage of a simulation step. A phase is run on all regions in parallel. If it needs a barrier, all regions
+ * have finished the phase before the next phase starts. Phases are registered in a <code>PhasePipeline</code>.
+ */
+public abstract class SimulationPhase {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The name of this phase (used for statistics). */
+    private final String name_;
+
+    /** If all threads need to finish this phase before the next one may start. */
+    private final boolean needsBarrier_;
+
+    /** If this phase doesn't use anything the other phases write, so that it doesn't have to wait for the phase before. */
+    private final boolean independent_;
+
+    /** The section of this phase in the <code>StepProfiler</code>. */
+    private final int profilerSection_;
+
+    /** The time spent in this phase summed up over all threads (in nanoseconds). */
+    private final LongAdder time_ = new LongAdder();
+
+    /** How often this phase was run. */
+    private final AtomicLong runs_ = new AtomicLong(0);
+
+    /** How often this phase was skipped because it had no work. */
+    private final AtomicLong skips_ = new AtomicLong(0);
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new phase.
+     *
+     * @param name			the name of the phase
+     * @param needsBarrier	<code>true</code> if all threads need to finish this phase before the next phase may start (because the
+     * 						next phase reads data written in this phase), else <code>false</code>
+     */
+    protected SimulationPhase(String name, boolean needsBarrier){
+        this(name, needsBarrier, false);
+    }
+
+    /**
+     * Creates a new phase.
+     *
+     * @param name			the name of the phase
+     * @param needsBarrier	<code>true</code> if all threads need to finish this phase before the next phase may start (because the
+     * 						next phase reads data written in this phase), else <code>false</code>
+     * @param independent	<code>true</code> if this phase neither reads nor writes anything the other phases use (for example
+     * 						only the messages of the RSUs), so that it may run while other threads still work on the phase before
+     */
+    protected SimulationPhase(String name, boolean needsBarrier, boolean independent){
+        name_ = name;
+        needsBarrier_ = needsBarrier;
+        independent_ = independent;
+        profilerSection_ = StepProfiler.getSection(name);
+    }
+
+    /**
+     * Checks if this phase has any work to do in the coming step. This is called once per step by the master before the
+     * workers are started, so all workers get the same answer.
+     *
+     * @return <code>true</code> if the phase shall be run, <code>false</code> if it can be skipped
+     */
+    public abstract boolean hasWork();
+
+    /**
+     * Runs this phase on one region.
+     *
+     * @param region		the region
+     * @param vehicles		the cached vehicle array of the region
+     * @param rsus			the RSUs of the region
+     * @param timePerStep	the time in milliseconds for one step
+     *
+     * @return the amount of objects processed (vehicles, RSUs, lane changes...) which is reported to the <code>StepProfiler</code>
+     */
+    public abstract int processRegion(Region region, Vehicle[] vehicles, RSU[] rsus, int timePerStep);
+
+    /**
+     * Adds time spent in this phase.
+     *
+     * @param nanos	the time in nanoseconds
+     */
+    public void addTime(long nanos){
+        time_.add(nanos);
+    }
+
+    /**
+     * Counts a step in which this phase was run or skipped.
+     *
+     * @param skipped	<code>true</code> if it was skipped
+     */
+    void countStep(boolean skipped){
+        if(skipped) skips_.incrementAndGet();
+        else runs_.incrementAndGet();
+    }
+
+    /**
+     * Resets all statistics.
+     */
+    public void resetStatistics(){
+        time_.reset();
+        runs_.set(0);
+        skips_.set(0);
+    }
+
+    /**
+     * Gets the name of this phase.
+     *
+     * @return the name
+     */
+    public String getName(){
+        return name_;
+    }
+
+    /**
+     * Gets the section of this phase in the <code>StepProfiler</code>.
+     *
+     * @return the index of the section
+     */
+    public int getProfilerSection(){
+        return profilerSection_;
+    }
+
+    /**
+     * If all threads need to finish this phase before the next phase may start.
+     *
+     * @return <code>true</code> if a barrier is needed after this phase
+     */
+    public boolean needsBarrier(){
+        return needsBarrier_;
+    }
+
+    /**
+     * If this phase doesn't use anything the other phases write, so that the phase before doesn't need a barrier because of it.
+     *
+     * @return <code>true</code> if the phase is independent of the other phases
+     */
+    public boolean isIndependent(){
+        return independent_;
+    }
+
+    /**
+     * Gets the time spent in this phase summed up over all threads.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalTime(){
+        return time_.sum();
+    }
+
+    /**
+     * Gets how often this phase was run.
+     *
+     * @return the amount of steps
+     */
+    public long getRuns(){
+        return runs_.get();
+    }
+
+    /**
+     * Gets how often this phase was skipped.
+     *
+     * @return the amount of steps
+     */
+    public long getSkips(){
+        return skips_.get();
+    }
+}
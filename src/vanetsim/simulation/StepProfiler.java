@@ -0,0 +1,539 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.localization.Messages;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records where the time of the simulation steps goes: for every thread (the workers, the threads of the
+ * <code>WorkStealingScheduler</code> and the master) and every section of a step (the phases of the <code>PhasePipeline</code>,
+ * the barriers, processing the events, rendering...) the time spent computing, the time spent waiting on barriers, the amount
+ * of vehicles processed and the memory allocated while computing (measured with the <code>ThreadMXBean</code> of the JVM). The values are summed up since the last reset and can be written
+ * to a CSV file periodically or read through JMX (see <code>StepProfilerMBean</code>).
+ * <p>
+ * Each <code>SimulationContext</code> has its own profiler which is switched off by default. The threads get their
+ * <code>ThreadRecord</code> once per step and only if the profiling is switched on, so switching it off costs nothing
+ * but one volatile read per thread and step. The records are bound to the threads and not to their names, as the threads
+ * of a pool may share their name and virtual threads have none.
+ */
+public final class StepProfiler implements StepProfilerMBean {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The maximum amount of sections. Further sections are recorded as the last one. */
+    public static final int MAX_SECTIONS = 64;
+
+    /** The header of the CSV file. */
+    public static final String CSV_HEADER = "time,simulationTime,steps,thread,section,count,computeNanos,waitNanos,vehicles,allocatedBytes"; //$NON-NLS-1$
+
+    /** The names of all sections. The index is used in the <code>ThreadRecord</code>s. */
+    private static final String[] SECTION_NAMES = new String[MAX_SECTIONS];
+
+    /** The amount of sections registered. */
+    private static int sectionCount_ = 0;
+
+    /** The master processing the events of a step. */
+    public static final int SECTION_EVENTS = getSection("processEvents"); //$NON-NLS-1$
+
+    /** The master waiting for the workers (or the scheduler) to finish the step. */
+    public static final int SECTION_WORKERS = getSection("workers"); //$NON-NLS-1$
+
+    /** The master drawing the step (compute) and waiting for the renderer (wait). */
+    public static final int SECTION_RENDER = getSection("render"); //$NON-NLS-1$
+
+    /** The master updating the statistics. */
+    public static final int SECTION_STATISTICS = getSection("statistics"); //$NON-NLS-1$
+
+    /** A worker waiting on the start barrier. */
+    public static final int SECTION_START_BARRIER = getSection("startBarrier"); //$NON-NLS-1$
+
+    /** A worker waiting on the barrier between the steps of a block. */
+    public static final int SECTION_STEP_BARRIER = getSection("stepBarrier"); //$NON-NLS-1$
+
+    /** A worker waiting on the finish barrier. */
+    public static final int SECTION_FINISH_BARRIER = getSection("finishBarrier"); //$NON-NLS-1$
+
+    /** Changing the traffic lights. */
+    public static final int SECTION_TRAFFIC_LIGHTS = getSection("trafficLights"); //$NON-NLS-1$
+
+    /** The bean to measure the allocations or <code>null</code> if the JVM doesn't support it. */
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = createAllocationBean();
+
+    /** The context whose steps are recorded. */
+    private final SimulationContext context_;
+
+    /** If the profiling is switched on. */
+    private volatile boolean enabled_ = false;
+
+    /** The record of each thread. */
+    private final ThreadLocal<ThreadRecord> threadRecords_ = new ThreadLocal<ThreadRecord>();
+
+    /** All records in the order they were created. */
+    private final CopyOnWriteArrayList<ThreadRecord> records_ = new CopyOnWriteArrayList<ThreadRecord>();
+
+    /** The amount of steps recorded. */
+    private final AtomicLong steps_ = new AtomicLong(0);
+
+    /** The executor writing the CSV file or <code>null</code> if it isn't written. */
+    private ScheduledExecutorService exporter_ = null;
+
+    /** The name under which this profiler is registered as MBean or <code>null</code> if it isn't registered. */
+    private ObjectName objectName_ = null;
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a profiler which is switched off.
+     *
+     * @param context	the context whose steps are recorded
+     */
+    StepProfiler(SimulationContext context){
+        context_ = context;
+    }
+
+    /**
+     * Gets the index of a section. Sections are global so that the same name always gets the same index.
+     *
+     * @param name	the name of the section (for example the name of a <code>SimulationPhase</code>)
+     *
+     * @return the index of the section
+     */
+    public static synchronized int getSection(String name){
+        for(int i = 0; i < sectionCount_; ++i){
+            if(SECTION_NAMES[i].equals(name)) return i;
+        }
+        if(sectionCount_ == MAX_SECTIONS) return MAX_SECTIONS - 1;
+        SECTION_NAMES[sectionCount_] = name;
+        return sectionCount_++;
+    }
+
+    /**
+     * Gets the name of a section.
+     *
+     * @param section	the index of the section
+     *
+     * @return the name
+     */
+    public static synchronized String getSectionName(int section){
+        return SECTION_NAMES[section];
+    }
+
+    /**
+     * Gets the bean measuring the memory allocated by a thread.
+     *
+     * @return the bean or <code>null</code> if the JVM doesn't support it
+     */
+    private static com.sun.management.ThreadMXBean createAllocationBean(){
+        try{
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()){
+                if(!((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemoryEnabled()) ((com.sun.management.ThreadMXBean)bean).setThreadAllocatedMemoryEnabled(true);
+                return (com.sun.management.ThreadMXBean)bean;
+            }
+        } catch (Throwable e){}		// not available on all JVMs
+        return null;
+    }
+
+    /**
+     * Gets the memory allocated by the calling thread so far.
+     *
+     * @return the amount of bytes or <code>-1</code> if it can't be measured
+     */
+    private static long getCurrentAllocatedBytes(){
+        if(ALLOCATION_BEAN == null) return -1;
+        return ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Checks if the profiling is switched on.
+     *
+     * @return <code>true</code> if the time and allocations are recorded
+     */
+    public boolean isEnabled(){
+        return enabled_;
+    }
+
+    /**
+     * Switches the profiling on or off. The values recorded so far are kept.
+     *
+     * @param enabled	<code>true</code> to record the time and allocations
+     */
+    public void setEnabled(boolean enabled){
+        enabled_ = enabled;
+    }
+
+    /**
+     * Gets the record of the calling thread. Has to be called once per step by each thread which records something.
+     * The record is named after the thread and its id.
+     *
+     * @return the record or <code>null</code> if the profiling is switched off
+     */
+    public ThreadRecord getRecord(){
+        if(!enabled_) return null;
+        ThreadRecord record = threadRecords_.get();
+        if(record == null){
+            Thread thread = Thread.currentThread();
+            record = newRecord(thread.getName() + "#" + thread.getId()); //$NON-NLS-1$
+            threadRecords_.set(record);
+        }
+        return record;
+    }
+
+    /**
+     * Creates a record which isn't bound to a thread, for example for tasks which get a new thread each time they run. A
+     * record may only be written by one thread at the same time and the threads writing it one after the other have to be
+     * synchronized by the caller (for example by a barrier or an executor).
+     *
+     * @param name	the name of the record
+     *
+     * @return the record
+     */
+    public ThreadRecord newRecord(String name){
+        ThreadRecord record = new ThreadRecord(name);
+        records_.add(record);
+        return record;
+    }
+
+    /**
+     * Counts a step. Called by the thread which starts the steps (the master or the <code>HeadlessEngine</code>).
+     *
+     * @param steps	the amount of steps done
+     */
+    public void countSteps(int steps){
+        if(enabled_) steps_.addAndGet(steps);
+    }
+
+    /**
+     * Gets the amount of steps recorded.
+     *
+     * @return the amount of steps
+     */
+    public long getSteps(){
+        return steps_.get();
+    }
+
+    /**
+     * Gets the computing time summed up over all threads and sections.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getComputeTime(){
+        long sum = 0;
+        for(ThreadRecord record : records_){
+            for(int i = 0; i < MAX_SECTIONS; ++i) sum += record.computeTime_.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the time spent waiting on barriers summed up over all threads and sections.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getWaitTime(){
+        long sum = 0;
+        for(ThreadRecord record : records_){
+            for(int i = 0; i < MAX_SECTIONS; ++i) sum += record.waitTime_.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the amount of vehicles processed summed up over all threads and sections.
+     *
+     * @return the amount of vehicles
+     */
+    public long getVehiclesProcessed(){
+        long sum = 0;
+        for(ThreadRecord record : records_){
+            for(int i = 0; i < MAX_SECTIONS; ++i) sum += record.vehicles_.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the memory allocated while computing summed up over all threads and sections.
+     *
+     * @return the amount of bytes or <code>0</code> if the JVM can't measure it
+     */
+    public long getAllocatedBytes(){
+        long sum = 0;
+        for(ThreadRecord record : records_){
+            for(int i = 0; i < MAX_SECTIONS; ++i) sum += record.allocatedBytes_.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the recorded values for each thread and section.
+     *
+     * @return one line per thread and section in the format of the CSV file (without the header)
+     */
+    public String[] getRecords(){
+        ArrayList<String> lines = new ArrayList<String>();
+        String prefix = System.currentTimeMillis() + "," + context_.getTime() + "," + steps_.get() + ","; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        for(ThreadRecord record : records_){
+            for(int i = 0; i < MAX_SECTIONS; ++i){
+                long count = record.counts_.get(i);
+                if(count == 0) continue;
+                lines.add(prefix + record.name_.replace(',', ' ') + "," + getSectionName(i) + "," + count + "," + record.computeTime_.get(i) + "," + record.waitTime_.get(i) + "," + record.vehicles_.get(i) + "," + record.allocatedBytes_.get(i)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Resets all recorded values. Values recorded by the threads at the same time may get lost.
+     */
+    public void reset(){
+        steps_.set(0);
+        for(ThreadRecord record : records_) record.reset();
+    }
+
+    /**
+     * Appends the recorded values to a CSV file. The header is written if the file is empty.
+     *
+     * @param file	the file
+     *
+     * @throws IOException if writing fails
+     */
+    public void writeCSV(File file) throws IOException{
+        boolean header = !file.exists() || file.length() == 0;
+        PrintWriter out = new PrintWriter(new FileWriter(file, true));
+        try{
+            if(header) out.println(CSV_HEADER);
+            String[] lines = getRecords();
+            for(int i = 0; i < lines.length; ++i) out.println(lines[i]);
+        } finally {
+            out.close();
+        }
+        if(out.checkError()) throw new IOException(file.getPath());
+    }
+
+    /**
+     * Starts to write the recorded values to a CSV file periodically. A running export is stopped before.
+     *
+     * @param file		the path of the file (the lines are appended)
+     * @param interval	the time between two exports in milliseconds
+     */
+    public void startExport(String file, long interval){
+        startExport(new File(file), interval);
+    }
+
+    /**
+     * Starts to write the recorded values to a CSV file periodically. A running export is stopped before.
+     *
+     * @param file		the file (the lines are appended)
+     * @param interval	the time between two exports in milliseconds
+     */
+    public synchronized void startExport(final File file, long interval){
+        stopExport();
+        exporter_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+            public Thread newThread(Runnable runnable){
+                Thread thread = new Thread(runnable, "StepProfiler export"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        exporter_.scheduleWithFixedDelay(new Runnable(){
+            public void run(){
+                try{
+                    writeCSV(file);
+                } catch (IOException e){
+                    ErrorLog.log(Messages.getString("StepProfiler.exportFailed") + file, 6, StepProfiler.class.getName(), "startExport", e); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing the CSV file.
+     */
+    public synchronized void stopExport(){
+        if(exporter_ != null){
+            exporter_.shutdown();
+            exporter_ = null;
+        }
+    }
+
+    /**
+     * Registers this profiler in the platform MBean server so that it can be used through JMX.
+     *
+     * @param name	the name which distinguishes this profiler from those of other contexts
+     *
+     * @return <code>true</code> if it was registered, else <code>false</code>
+     */
+    public synchronized boolean registerMBean(String name){
+        unregisterMBean();
+        try{
+            ObjectName objectName = new ObjectName("vanetsim:type=StepProfiler,name=" + ObjectName.quote(name)); //$NON-NLS-1$
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if(server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            objectName_ = objectName;
+            return true;
+        } catch (Exception e){
+            ErrorLog.log(Messages.getString("StepProfiler.registerFailed") + name, 6, StepProfiler.class.getName(), "registerMBean", e); //$NON-NLS-1$ //$NON-NLS-2$
+            return false;
+        }
+    }
+
+    /**
+     * Removes this profiler from the platform MBean server.
+     */
+    public synchronized void unregisterMBean(){
+        if(objectName_ != null){
+            try{
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName_);
+            } catch (Exception e){}
+            objectName_ = null;
+        }
+    }
+
+
+    /**
+     * The values recorded by one thread. Only written by the thread owning it, so the values are added without locking and
+     * published with ordered writes. Readers (the export, JMX) may see values which are a few sections old but never torn ones.
+     */
+    public static final class ThreadRecord {
+
+        /** The name of the thread or task. */
+        private final String name_;
+
+        /** How often each section was recorded. */
+        private final AtomicLongArray counts_ = new AtomicLongArray(MAX_SECTIONS);
+
+        /** The time spent computing in each section (in nanoseconds). */
+        private final AtomicLongArray computeTime_ = new AtomicLongArray(MAX_SECTIONS);
+
+        /** The time spent waiting in each section (in nanoseconds). */
+        private final AtomicLongArray waitTime_ = new AtomicLongArray(MAX_SECTIONS);
+
+        /** The amount of vehicles processed in each section (other objects like RSUs for the sections which don't work on vehicles). */
+        private final AtomicLongArray vehicles_ = new AtomicLongArray(MAX_SECTIONS);
+
+        /** The memory allocated while computing in each section (in bytes). */
+        private final AtomicLongArray allocatedBytes_ = new AtomicLongArray(MAX_SECTIONS);
+
+        /** The memory allocated by the thread when the current section began or <code>-1</code> if it can't be measured. */
+        private long allocationStart_ = -1;
+
+        /**
+         * Creates a new record.
+         *
+         * @param name	the name of the thread or task
+         */
+        private ThreadRecord(String name){
+            name_ = name;
+        }
+
+        /**
+         * Begins a section.
+         *
+         * @return the start time to pass to {@link #compute(int, long, int)} or {@link #waited(int, long)}
+         */
+        public long begin(){
+            allocationStart_ = getCurrentAllocatedBytes();
+            return System.nanoTime();
+        }
+
+        /**
+         * Ends a section in which the thread was computing.
+         *
+         * @param section	the index of the section
+         * @param start		the value returned by {@link #begin()}
+         * @param vehicles	the amount of vehicles (or other objects, see <code>SimulationPhase.processRegion()</code>) processed
+         */
+        public void compute(int section, long start, int vehicles){
+            long now = System.nanoTime();
+            add(counts_, section, 1);
+            add(computeTime_, section, now - start);
+            add(vehicles_, section, vehicles);
+            if(allocationStart_ != -1){
+                long allocated = getCurrentAllocatedBytes();
+                if(allocated >= allocationStart_) add(allocatedBytes_, section, allocated - allocationStart_);
+            }
+        }
+
+        /**
+         * Ends a section in which the thread was waiting on a barrier.
+         *
+         * @param section	the index of the section
+         * @param start		the value returned by {@link #begin()}
+         */
+        public void waited(int section, long start){
+            add(counts_, section, 1);
+            add(waitTime_, section, System.nanoTime() - start);
+        }
+
+        /**
+         * Adds the time the thread waited at the end of a section which was recorded with {@link #compute(int, long, int)}
+         * (for example on the barrier after a phase). Doesn't count the section again.
+         *
+         * @param section	the index of the section
+         * @param start		the value returned by {@link #begin()}
+         */
+        public void addWait(int section, long start){
+            add(waitTime_, section, System.nanoTime() - start);
+        }
+
+        /**
+         * Adds a value. Only the owner writes, so an ordered write is enough to publish the sum.
+         *
+         * @param values	the values of all sections
+         * @param section	the index of the section
+         * @param value		the value to add
+         */
+        private static void add(AtomicLongArray values, int section, long value){
+            values.lazySet(section, values.get(section) + value);
+        }
+
+        /**
+         * Resets all values.
+         */
+        private void reset(){
+            for(int i = 0; i < MAX_SECTIONS; ++i){
+                counts_.set(i, 0);
+                computeTime_.set(i, 0);
+                waitTime_.set(i, 0);
+                vehicles_.set(i, 0);
+                allocatedBytes_.set(i, 0);
+            }
+        }
+
+        /**
+         * Gets the name of the thread or task.
+         *
+         * @return the name
+         */
+        public String getName(){
+            return name_;
+        }
+    }
+}
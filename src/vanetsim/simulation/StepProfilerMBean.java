@@ -0,0 +1,82 @@
+package vanetsim.simulation;
+
+/**
+ * The management interface of the <code>StepProfiler</code>, so that the profiling can be switched on and read with any JMX
+ * client (for example JConsole) while the simulation is running.
+ */
+public interface StepProfilerMBean {
+
+    /**
+     * Checks if the profiling is switched on.
+     *
+     * @return <code>true</code> if the time and allocations are recorded
+     */
+    public boolean isEnabled();
+
+    /**
+     * Switches the profiling on or off.
+     *
+     * @param enabled	<code>true</code> to record the time and allocations
+     */
+    public void setEnabled(boolean enabled);
+
+    /**
+     * Gets the amount of steps recorded.
+     *
+     * @return the amount of steps
+     */
+    public long getSteps();
+
+    /**
+     * Gets the computing time summed up over all threads and sections.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getComputeTime();
+
+    /**
+     * Gets the time spent waiting on barriers summed up over all threads and sections.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getWaitTime();
+
+    /**
+     * Gets the amount of vehicles processed summed up over all threads and sections.
+     *
+     * @return the amount of vehicles
+     */
+    public long getVehiclesProcessed();
+
+    /**
+     * Gets the memory allocated while computing summed up over all threads and sections.
+     *
+     * @return the amount of bytes or <code>0</code> if the JVM can't measure it
+     */
+    public long getAllocatedBytes();
+
+    /**
+     * Gets the recorded values for each thread and section.
+     *
+     * @return one line per thread and section in the format of the CSV file (without the header)
+     */
+    public String[] getRecords();
+
+    /**
+     * Resets all recorded values.
+     */
+    public void reset();
+
+    /**
+     * Starts to write the recorded values to a CSV file periodically.
+     *
+     * @param file		the path of the file (the lines are appended)
+     * @param interval	the time between two exports in milliseconds
+     */
+    public void startExport(String file, long interval);
+
+    /**
+     * Stops writing the CSV file.
+     */
+    public void stopExport();
+}
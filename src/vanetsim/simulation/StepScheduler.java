@@ -0,0 +1,19 @@
+package vanetsim.simulation;
+
+/**
+ * An interface for engines which do the simulation steps from the calling thread (the <code>SimulationMaster</code>) instead
+ * of a fixed set of <code>WorkerThread</code>s.
+ */
+public interface StepScheduler{
+
+    /**
+     * Performs one complete simulation step. Returns after all phases have been finished on all regions.
+     * <code>PhasePipeline.prepareStep()</code> has to be called before.
+     */
+    public void doStep();
+
+    /**
+     * Stops all threads of this scheduler. The scheduler can't be used anymore afterwards.
+     */
+    public void shutdown();
+}
@@ -0,0 +1,307 @@
+package vanetsim.simulation;
+
+/**
+ * A hierarchical timing wheel for timers which fire at a specific simulation time. Each timer carries an <code>int</code>
+ * (for example the index of a vehicle). Scheduling a timer is done in constant time and advancing the wheel by one step
+ * only looks at the timers due in this step, regardless of how many timers are waiting.
+ * <br>
+ * The wheel has four levels with 64 slots each. A slot of the first level covers one tick, a slot of the next level
+ * 64 ticks and so on. Timers further away than 64^4 ticks are kept in an overflow list. Whenever the first slot of a level
+ * is reached, the timers of the matching slot of the next level are distributed to the lower levels.
+ * Timers always fire exactly at the first call of {@link #advance(int)} with a time which is at least the time of the timer,
+ * the tick length only influences how the timers are distributed.
+ * A wheel is not thread-safe.
+ */
+public final class TimingWheel {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** The amount of levels. */
+    private static final int LEVELS = 4;
+
+    /** The amount of bits used for the slot number on each level. */
+    private static final int SLOT_BITS = 6;
+
+    /** The amount of slots on each level. */
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    /** The length of one tick in milliseconds. */
+    private final int tickLength_;
+
+    /** The times of the timers per level and slot. */
+    private final int[][][] times_ = new int[LEVELS][SLOTS][];
+
+    /** The values of the timers per level and slot. */
+    private final int[][][] values_ = new int[LEVELS][SLOTS][];
+
+    /** The amount of timers per level and slot. */
+    private final int[][] sizes_ = new int[LEVELS][SLOTS];
+
+    /** The times of timers which are further away than the highest level can hold. */
+    private int[] overflowTimes_ = new int[0];
+
+    /** The values of timers which are further away than the highest level can hold. */
+    private int[] overflowValues_ = new int[0];
+
+    /** The amount of timers in the overflow list. */
+    private int overflowSize_ = 0;
+
+    /** The times of timers whose tick has been reached but whose time hasn't. */
+    private int[] dueTimes_ = new int[0];
+
+    /** The values of timers whose tick has been reached but whose time hasn't. */
+    private int[] dueValues_ = new int[0];
+
+    /** The amount of timers in the due list. */
+    private int dueSize_ = 0;
+
+    /** The last tick which has been processed. */
+    private long currentTick_;
+
+    /** The amount of timers in the wheel. */
+    private int size_ = 0;
+
+    /** The buffer for the fired values. */
+    private int[] fired_ = new int[16];
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new, empty timing wheel.
+     *
+     * @param tickLength	the length of one tick in milliseconds (typically the time of one simulation step)
+     * @param time			the current simulation time in milliseconds
+     */
+    public TimingWheel(int tickLength, int time){
+        if(tickLength < 1) tickLength = 1;
+        tickLength_ = tickLength;
+        currentTick_ = Math.floorDiv(time, tickLength_);
+    }
+
+    /**
+     * Removes all timers.
+     *
+     * @param time	the current simulation time in milliseconds
+     */
+    public void clear(int time){
+        for(int i = 0; i < LEVELS; ++i){
+            for(int j = 0; j < SLOTS; ++j) sizes_[i][j] = 0;
+        }
+        overflowSize_ = 0;
+        dueSize_ = 0;
+        size_ = 0;
+        currentTick_ = Math.floorDiv(time, tickLength_);
+    }
+
+    /**
+     * Adds a timer.
+     *
+     * @param time	the simulation time in milliseconds at which the timer fires
+     * @param value	the value returned when the timer fires
+     */
+    public void schedule(int time, int value){
+        ++size_;
+        insert(time, value);
+    }
+
+    /**
+     * Advances the wheel to a new time and collects all timers which are due.
+     *
+     * @param time	the current simulation time in milliseconds
+     *
+     * @return the amount of timers fired. Their values are in the array returned by {@link #getFired()}.
+     */
+    public int advance(int time){
+        int count = 0, i, j, slot, size, level;
+        int[] times, values;
+        long target = Math.floorDiv(time, tickLength_);
+        while(currentTick_ < target && size_ - dueSize_ > 0){
+            ++currentTick_;
+            // distribute the timers of the higher levels, beginning with the highest one
+            if((currentTick_ & ((1L << (LEVELS * SLOT_BITS)) - 1)) == 0) cascadeOverflow();
+            for(level = LEVELS - 1; level > 0; --level){
+                if((currentTick_ & ((1L << (level * SLOT_BITS)) - 1)) == 0) cascade(level, (int)((currentTick_ >>> (level * SLOT_BITS)) & (SLOTS - 1)));
+            }
+            slot = (int)(currentTick_ & (SLOTS - 1));
+            size = sizes_[0][slot];
+            if(size > 0){
+                times = times_[0][slot];
+                values = values_[0][slot];
+                sizes_[0][slot] = 0;
+                for(i = 0; i < size; ++i) addDue(times[i], values[i]);
+            }
+        }
+        if(currentTick_ < target) currentTick_ = target;	// all timers are in the due list, no need to look at the empty slots
+        // fire all timers whose tick has been reached and whose time has come
+        j = 0;
+        for(i = 0; i < dueSize_; ++i){
+            if(dueTimes_[i] <= time) count = addFired(count, dueValues_[i]);
+            else {
+                dueTimes_[j] = dueTimes_[i];
+                dueValues_[j] = dueValues_[i];
+                ++j;
+            }
+        }
+        dueSize_ = j;
+        size_ -= count;
+        return count;
+    }
+
+    /**
+     * Gets the values of the timers fired in the last call of {@link #advance(int)}.
+     *
+     * @return the values. Only the first entries (as many as returned by <code>advance()</code>) are valid.
+     */
+    public int[] getFired(){
+        return fired_;
+    }
+
+    /**
+     * Gets the amount of timers in the wheel.
+     *
+     * @return the amount
+     */
+    public int size(){
+        return size_;
+    }
+
+    /**
+     * Puts a timer into the level which fits its distance to the current tick.
+     *
+     * @param time	the time of the timer
+     * @param value	the value of the timer
+     */
+    private void insert(int time, int value){
+        long tick = Math.floorDiv(time, tickLength_);
+        if(tick <= currentTick_){
+            addDue(time, value);
+            return;
+        }
+        for(int level = 0; level < LEVELS; ++level){
+            int shift = level * SLOT_BITS;
+            if((tick >>> shift) - (currentTick_ >>> shift) < SLOTS){
+                addToSlot(level, (int)((tick >>> shift) & (SLOTS - 1)), time, value);
+                return;
+            }
+        }
+        if(overflowSize_ == overflowTimes_.length){
+            int newLength = Math.max(16, overflowSize_ * 2);
+            overflowTimes_ = grow(overflowTimes_, newLength);
+            overflowValues_ = grow(overflowValues_, newLength);
+        }
+        overflowTimes_[overflowSize_] = time;
+        overflowValues_[overflowSize_] = value;
+        ++overflowSize_;
+    }
+
+    /**
+     * Distributes the timers of a slot to the lower levels.
+     *
+     * @param level	the level
+     * @param slot	the slot
+     */
+    private void cascade(int level, int slot){
+        int size = sizes_[level][slot];
+        if(size == 0) return;
+        int[] times = times_[level][slot];
+        int[] values = values_[level][slot];
+        // the arrays are replaced so that inserting into the same slot again doesn't overwrite them
+        times_[level][slot] = null;
+        values_[level][slot] = null;
+        sizes_[level][slot] = 0;
+        for(int i = 0; i < size; ++i) insert(times[i], values[i]);
+    }
+
+    /**
+     * Distributes the timers of the overflow list to the levels.
+     */
+    private void cascadeOverflow(){
+        int size = overflowSize_;
+        if(size == 0) return;
+        int[] times = overflowTimes_;
+        int[] values = overflowValues_;
+        overflowTimes_ = new int[0];
+        overflowValues_ = new int[0];
+        overflowSize_ = 0;
+        for(int i = 0; i < size; ++i) insert(times[i], values[i]);
+    }
+
+    /**
+     * Adds a timer to a slot.
+     *
+     * @param level	the level
+     * @param slot	the slot
+     * @param time	the time of the timer
+     * @param value	the value of the timer
+     */
+    private void addToSlot(int level, int slot, int time, int value){
+        int size = sizes_[level][slot];
+        int[] times = times_[level][slot];
+        if(times == null){
+            times = new int[4];
+            times_[level][slot] = times;
+            values_[level][slot] = new int[4];
+        } else if(size == times.length){
+            times = grow(times, size * 2);
+            times_[level][slot] = times;
+            values_[level][slot] = grow(values_[level][slot], size * 2);
+        }
+        times[size] = time;
+        values_[level][slot][size] = value;
+        sizes_[level][slot] = size + 1;
+    }
+
+    /**
+     * Adds a timer to the due list.
+     *
+     * @param time	the time of the timer
+     * @param value	the value of the timer
+     */
+    private void addDue(int time, int value){
+        if(dueSize_ == dueTimes_.length){
+            int newLength = Math.max(16, dueSize_ * 2);
+            dueTimes_ = grow(dueTimes_, newLength);
+            dueValues_ = grow(dueValues_, newLength);
+        }
+        dueTimes_[dueSize_] = time;
+        dueValues_[dueSize_] = value;
+        ++dueSize_;
+    }
+
+    /**
+     * Adds a value to the fired values.
+     *
+     * @param count	the amount of values fired so far
+     * @param value	the value
+     *
+     * @return the new amount of values
+     */
+    private int addFired(int count, int value){
+        if(count == fired_.length) fired_ = grow(fired_, count * 2);
+        fired_[count] = value;
+        return count + 1;
+    }
+
+    /**
+     * Copies an array into a bigger one.
+     *
+     * @param array		the array
+     * @param length	the new length
+     *
+     * @return the new array
+     */
+    private static int[] grow(int[] array, int length){
+        int[] newArray = new int[length];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
@@ -0,0 +1,310 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.debug.Debug;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Region;
+import vanetsim.scenario.RSU;
+import vanetsim.scenario.Vehicle;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simulation engine which runs every phase of a simulation step as one task per region, each on a virtual thread of its own,
+ * so that maps with lots of small regions don't need lots of platform threads.
+ * <br>
+ * Virtual threads need a Java 21 runtime while the simulator is built for Java 8, so they are looked up by reflection. On older
+ * runtimes {@link #isAvailable()} returns <code>false</code> and the engine can't be selected; there is no fallback to platform
+ * threads (use the <code>WorkStealingScheduler</code> instead).
+ * <br>
+ * Each phase is a scope which is only left after all tasks of the phase have finished, so the end of the scope replaces the
+ * barriers of the <code>WorkerThread</code>s. The phases are taken from the same <code>PhasePipeline</code> as in the other
+ * engines, followed by the traffic lights. The regions and their vehicle arrays are used as they are.
+ */
+public final class VirtualThreadScheduler implements StepScheduler {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** Phase: run a phase of the pipeline. */
+    private static final int PHASE_PIPELINE = 0;
+
+    /** Phase: run a phase of the pipeline after fetching the current vehicle arrays (first phase of a step). */
+    private static final int PHASE_PIPELINE_REFRESH = 1;
+
+    /** Phase: check the states of all traffic lights (step 7 of a <code>WorkerThread</code>). */
+    private static final int PHASE_TRAFFIC_LIGHTS = 2;
+
+    /** Phase: recalculate junctions and fetch the arrays before the first step. */
+    private static final int PHASE_PREPARE = 3;
+
+    /** The method creating an executor with one virtual thread per task or <code>null</code> if the runtime is older than Java 21. */
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    /** The executor starting the tasks. */
+    private final ExecutorService executor_;
+
+    /** All regions of the map in row-major order. */
+    private final Region[] regions_;
+
+    /** Cached vehicle arrays of all regions. Refreshed at the beginning of each step. */
+    private final Vehicle[][] vehicles_;
+
+    /** Cached RSU arrays of all regions. */
+    private final RSU[][] rsus_;
+
+    /** The phases to run in each step. */
+    private final PhasePipeline pipeline_;
+
+    /** The time in milliseconds for one step. */
+    private final int timePerStep_;
+
+    /** If the map is shared with other runs. The junctions are part of the shared map then and must not be recalculated. */
+    private final boolean sharedMap_;
+
+    /** The context of the thread which created this scheduler. Bound to the threads while they work on a task. */
+    private final SimulationContext context_ = SimulationContext.current();
+
+    /** The records of the regions in the <code>StepProfiler</code>. Created when the profiling is switched on. */
+    private final StepProfiler.ThreadRecord[] records_;
+
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new scheduler for all regions of the map.
+     *
+     * @param regions		all regions of the map
+     * @param pipeline		the phases to run in each step
+     * @param timePerStep	the time in milliseconds for one step
+     *
+     * @throws UnsupportedOperationException if the runtime doesn't support virtual threads (see {@link #isAvailable()})
+     */
+    public VirtualThreadScheduler(Region[][] regions, PhasePipeline pipeline, int timePerStep){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "VirtualThreadScheduler(Region[][] regions, PhasePipeline pipeline, int timePerStep)", Debug.ISLOGGED);
+
+        executor_ = createVirtualThreadExecutor();
+
+        int count = 0;
+        for(int i = 0; i < regions.length; ++i) count += regions[i].length;
+        regions_ = new Region[count];
+        count = 0;
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j){
+                regions_[count++] = regions[i][j];
+            }
+        }
+        vehicles_ = new Vehicle[regions_.length][];
+        rsus_ = new RSU[regions_.length][];
+        records_ = new StepProfiler.ThreadRecord[regions_.length];
+        pipeline_ = pipeline;
+        timePerStep_ = timePerStep;
+        sharedMap_ = Map.getInstance().getRunSlots() > 1;
+
+        runPhase(PHASE_PREPARE, null);
+        pipeline_.logFailures();
+        ErrorLog.log(Messages.getString("VirtualThreadScheduler.schedulerCreated") + regions_.length + Messages.getString("VirtualThreadScheduler.virtualThreads"), 1, VirtualThreadScheduler.class.getName(), "VirtualThreadScheduler constructor", null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Checks if the runtime supports virtual threads, which is the case from Java 21 on.
+     *
+     * @return <code>true</code> if this engine can be used, else <code>false</code>
+     */
+    public static boolean isAvailable(){
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Looks up <code>Executors.newVirtualThreadPerTaskExecutor()</code>.
+     *
+     * @return the method or <code>null</code> if the runtime is older than Java 21
+     */
+    private static Method findVirtualThreadExecutor(){
+        try{
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); //$NON-NLS-1$
+        } catch (Exception e){
+            return null;
+        }
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each task.
+     *
+     * @return the executor
+     *
+     * @throws UnsupportedOperationException if the runtime doesn't support virtual threads
+     */
+    private static ExecutorService createVirtualThreadExecutor(){
+        if(VIRTUAL_THREAD_EXECUTOR == null) throw new UnsupportedOperationException(Messages.getString("VirtualThreadScheduler.notAvailable") + System.getProperty("java.version")); //$NON-NLS-1$ //$NON-NLS-2$
+        try{
+            return (ExecutorService)VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (Exception e){
+            throw new UnsupportedOperationException(Messages.getString("VirtualThreadScheduler.notAvailable") + System.getProperty("java.version"), e); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Performs one complete simulation step. Returns after all phases have been finished on all regions.
+     * <code>PhasePipeline.prepareStep()</code> has to be called before.
+     */
+    public void doStep(){
+        SimulationPhase[] phases = pipeline_.getStepPhases();
+        for(int i = 0; i < phases.length; ++i){
+            // regions only change during the move phase so the arrays are refreshed at the beginning of a step
+            runPhase((i == 0) ? PHASE_PIPELINE_REFRESH : PHASE_PIPELINE, phases[i]);
+            pipeline_.finishPhase();
+        }
+        pipeline_.finishStep();
+        runPhase(PHASE_TRAFFIC_LIGHTS, null);
+        pipeline_.logFailures();
+    }
+
+    /**
+     * Stops all threads of this scheduler. The scheduler can't be used anymore afterwards.
+     */
+    public void shutdown(){
+        executor_.shutdown();
+        try{
+            executor_.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e){}
+    }
+
+    /**
+     * Runs one phase with one task per region and waits until all tasks are finished.
+     *
+     * @param phase			the phase to run
+     * @param pipelinePhase	the phase of the pipeline if <code>phase</code> is <code>PHASE_PIPELINE</code> or <code>PHASE_PIPELINE_REFRESH</code>
+     */
+    private void runPhase(int phase, SimulationPhase pipelinePhase){
+        CountDownLatch scope = new CountDownLatch(regions_.length);
+        StepProfiler profiler = context_.getProfiler();
+        boolean profiling = profiler.isEnabled() && (pipelinePhase != null || phase == PHASE_TRAFFIC_LIGHTS);
+        for(int i = 0; i < regions_.length; ++i){
+            // each task runs on a new thread, so the records belong to the regions. Starting the task publishes a new record.
+            if(profiling && records_[i] == null) records_[i] = profiler.newRecord("RegionTask " + i); //$NON-NLS-1$
+            executor_.execute(new RegionTask(phase, pipelinePhase, i, profiling ? records_[i] : null, scope));
+        }
+        // the scope is only left when all tasks have finished, even if the master is interrupted in between
+        boolean interrupted = false;
+        while(true){
+            try{
+                scope.await();
+                break;
+            } catch (InterruptedException e){
+                interrupted = true;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Processes one phase on a single region.
+     *
+     * @param phase			the phase
+     * @param pipelinePhase	the phase of the pipeline (may be <code>null</code> for the other phases)
+     * @param i				the index of the region
+     *
+     * @return the amount of objects processed by the phase of the pipeline, <code>0</code> for the other phases
+     */
+    private int processRegion(int phase, SimulationPhase pipelinePhase, int i){
+        // the try/catch is done per region so that one failing region doesn't stop the others (same fail-safety as in the WorkerThread).
+        try{
+            switch(phase){
+                case PHASE_PIPELINE_REFRESH:
+                    vehicles_[i] = regions_[i].getVehicleArray();
+                    return pipelinePhase.processRegion(regions_[i], vehicles_[i], rsus_[i], timePerStep_);
+
+                case PHASE_PIPELINE:
+                    return pipelinePhase.processRegion(regions_[i], vehicles_[i], rsus_[i], timePerStep_);
+
+                case PHASE_TRAFFIC_LIGHTS:
+                    regions_[i].changeTrafficLights(timePerStep_);
+                    break;
+
+                case PHASE_PREPARE:
+                    regions_[i].createBacklink(null, -1);	// no worker thread needs to be informed about changes
+                    if(!sharedMap_) regions_[i].calculateJunctions();	//recalculate because user might have edited map after loading
+                    vehicles_[i] = regions_[i].getVehicleArray();
+                    rsus_[i] = regions_[i].getRSUs();
+                    break;
+            }
+        } catch (Exception e){
+            pipeline_.reportFailure(e);
+        }
+        return 0;
+    }
+
+
+    /**
+     * The task for one region in one phase.
+     */
+    private final class RegionTask implements Runnable {
+
+        /** The phase to run. */
+        private final int phase_;
+
+        /** The phase of the pipeline. */
+        private final SimulationPhase pipelinePhase_;
+
+        /** The index of the region. */
+        private final int region_;
+
+        /** The record of the region in the <code>StepProfiler</code> or <code>null</code> if the profiling is switched off. */
+        private final StepProfiler.ThreadRecord record_;
+
+        /** The scope of the phase which is counted down when the task has finished. */
+        private final CountDownLatch scope_;
+
+        /**
+         * Creates a new task.
+         *
+         * @param phase			the phase to run
+         * @param pipelinePhase	the phase of the pipeline
+         * @param region		the index of the region
+         * @param record		the record of the region or <code>null</code> if the profiling is switched off
+         * @param scope			the scope of the phase
+         */
+        RegionTask(int phase, SimulationPhase pipelinePhase, int region, StepProfiler.ThreadRecord record, CountDownLatch scope){
+            phase_ = phase;
+            pipelinePhase_ = pipelinePhase;
+            region_ = region;
+            record_ = record;
+            scope_ = scope;
+        }
+
+        /**
+         * Processes the region in the context of the scheduler.
+         */
+        public void run(){
+            SimulationContext previous = context_.bind();
+            long start = (record_ != null) ? record_.begin() : 0;
+            long time = System.nanoTime();
+            try{
+                int processed = processRegion(phase_, pipelinePhase_, region_);
+                if(pipelinePhase_ != null) pipelinePhase_.addTime(System.nanoTime() - time);
+                if(record_ != null){
+                    if(pipelinePhase_ != null) record_.compute(pipelinePhase_.getProfilerSection(), start, processed);
+                    else record_.compute(StepProfiler.SECTION_TRAFFIC_LIGHTS, start, 0);
+                }
+            } finally {
+                SimulationContext.restore(previous);
+                scope_.countDown();
+            }
+        }
+    }
+}
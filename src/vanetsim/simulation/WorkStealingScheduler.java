@@ -0,0 +1,287 @@
+package vanetsim.simulation;
+
+import vanetsim.ErrorLog;
+import vanetsim.debug.Debug;
+import vanetsim.localization.Messages;
+import vanetsim.map.Map;
+import vanetsim.map.Region;
+import vanetsim.scenario.RSU;
+import vanetsim.scenario.Vehicle;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simulation engine which uses a fork/join pool instead of a fixed set of <code>WorkerThread</code>s. Every phase
+ * of a simulation step is split into per-region tasks. Idle threads steal the remaining tasks from busy ones so that
+ * regions with a lot of traffic don't hold up all other threads like a static partition does.
+ * The phases are taken from the same <code>PhasePipeline</code> the <code>WorkerThread</code>s use, followed by the traffic
+ * lights. Each phase is joined completely before the next one starts, so the join replaces the barriers of the other engine.
+ */
+public final class WorkStealingScheduler implements StepScheduler {
+
+    /**
+     * /////////////////////////////////////
+     * //      instance variable
+     * /////////////////////////////////////
+     */
+
+    /** Phase: run a phase of the pipeline. */
+    private static final int PHASE_PIPELINE = 0;
+
+    /** Phase: run a phase of the pipeline after fetching the current vehicle arrays (first phase of a step). */
+    private static final int PHASE_PIPELINE_REFRESH = 1;
+
+    /** Phase: check the states of all traffic lights (step 7 of a <code>WorkerThread</code>). */
+    private static final int PHASE_TRAFFIC_LIGHTS = 2;
+
+    /** Phase: recalculate junctions and fetch the arrays before the first step. */
+    private static final int PHASE_PREPARE = 3;
+
+    /** How many leaf tasks should be created per thread. More leaves mean better balancing but more task overhead. */
+    private static final int LEAVES_PER_THREAD = 8;
+
+    /** The pool executing all tasks. */
+    private final ForkJoinPool pool_;
+
+    /** All regions of the map in row-major order. */
+    private final Region[] regions_;
+
+    /** Cached vehicle arrays of all regions. Refreshed at the beginning of each step. */
+    private final Vehicle[][] vehicles_;
+
+    /** Cached RSU arrays of all regions. */
+    private final RSU[][] rsus_;
+
+    /** The phases to run in each step. */
+    private final PhasePipeline pipeline_;
+
+    /** The time in milliseconds for one step. */
+    private final int timePerStep_;
+
+    /** Maximum amount of regions a task processes without splitting further. */
+    private final int granularity_;
+
+    /** If the map is shared with other runs. The junctions are part of the shared map then and must not be recalculated. */
+    private final boolean sharedMap_;
+
+
+
+    /**
+     * /////////////////////////////////////
+     * //      method
+     * /////////////////////////////////////
+     */
+
+    /**
+     * Creates a new scheduler for all regions of the map.
+     *
+     * @param regions		all regions of the map
+     * @param pipeline		the phases to run in each step
+     * @param timePerStep	the time in milliseconds for one step
+     * @param parallelism	the amount of threads in the pool
+     */
+    public WorkStealingScheduler(Region[][] regions, PhasePipeline pipeline, int timePerStep, int parallelism){
+        Debug.whereru(this.getClass().getName(), Debug.ISLOGGED);
+        Debug.callFunctionInfo(this.getClass().getName(), "WorkStealingScheduler(Region[][] regions, PhasePipeline pipeline, int timePerStep, int parallelism)", Debug.ISLOGGED);
+
+        int count = 0;
+        for(int i = 0; i < regions.length; ++i) count += regions[i].length;
+        regions_ = new Region[count];
+        count = 0;
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j){
+                regions_[count++] = regions[i][j];
+            }
+        }
+        vehicles_ = new Vehicle[regions_.length][];
+        rsus_ = new RSU[regions_.length][];
+        pipeline_ = pipeline;
+        timePerStep_ = timePerStep;
+        if(parallelism < 1) parallelism = 1;
+        granularity_ = Math.max(1, regions_.length / (parallelism * LEAVES_PER_THREAD));
+        sharedMap_ = Map.getInstance().getRunSlots() > 1;
+        final SimulationContext context = SimulationContext.current();
+        pool_ = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory(){
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool){
+                // all threads of the pool work on the context of the thread which created this scheduler
+                return new RegionWorkerThread(pool, context);
+            }
+        }, null, false);
+
+        runPhase(PHASE_PREPARE, null);
+        pipeline_.logFailures();
+        ErrorLog.log(Messages.getString("WorkStealingScheduler.schedulerCreated") + regions_.length + Messages.getString("WorkStealingScheduler.regions") + parallelism + Messages.getString("WorkStealingScheduler.threads"), 1, WorkStealingScheduler.class.getName(), "WorkStealingScheduler constructor", null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+
+    /**
+     * Performs one complete simulation step. Returns after all phases have been finished on all regions.
+     * <code>PhasePipeline.prepareStep()</code> has to be called before.
+     */
+    public void doStep(){
+        SimulationPhase[] phases = pipeline_.getStepPhases();
+        for(int i = 0; i < phases.length; ++i){
+            // regions only change during the move phase so the arrays are refreshed at the beginning of a step
+            runPhase((i == 0) ? PHASE_PIPELINE_REFRESH : PHASE_PIPELINE, phases[i]);
+            pipeline_.finishPhase();
+        }
+        pipeline_.finishStep();
+        runPhase(PHASE_TRAFFIC_LIGHTS, null);
+        pipeline_.logFailures();
+    }
+
+    /**
+     * Stops all threads of this scheduler. The scheduler can't be used anymore afterwards.
+     */
+    public void shutdown(){
+        pool_.shutdown();
+        try{
+            pool_.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e){}
+    }
+
+    /**
+     * Runs one phase on all regions and waits until it's finished.
+     *
+     * @param phase			the phase to run
+     * @param pipelinePhase	the phase of the pipeline if <code>phase</code> is <code>PHASE_PIPELINE</code> or <code>PHASE_PIPELINE_REFRESH</code>
+     */
+    private void runPhase(int phase, SimulationPhase pipelinePhase){
+        pool_.invoke(new RegionTask(phase, pipelinePhase, 0, regions_.length));
+    }
+
+    /**
+     * Processes one phase on a single region.
+     *
+     * @param phase			the phase
+     * @param pipelinePhase	the phase of the pipeline (may be <code>null</code> for the other phases)
+     * @param i				the index of the region
+     *
+     * @return the amount of objects processed by the phase of the pipeline, <code>0</code> for the other phases
+     */
+    private int processRegion(int phase, SimulationPhase pipelinePhase, int i){
+        // the try/catch is done per region so that one failing region doesn't stop the others (same fail-safety as in the WorkerThread).
+        try{
+            switch(phase){
+                case PHASE_PIPELINE_REFRESH:
+                    vehicles_[i] = regions_[i].getVehicleArray();
+                    return pipelinePhase.processRegion(regions_[i], vehicles_[i], rsus_[i], timePerStep_);
+
+                case PHASE_PIPELINE:
+                    return pipelinePhase.processRegion(regions_[i], vehicles_[i], rsus_[i], timePerStep_);
+
+                case PHASE_TRAFFIC_LIGHTS:
+                    regions_[i].changeTrafficLights(timePerStep_);
+                    break;
+
+                case PHASE_PREPARE:
+                    regions_[i].createBacklink(null, -1);	// no worker thread needs to be informed about changes
+                    if(!sharedMap_) regions_[i].calculateJunctions();	//recalculate because user might have edited map after loading
+                    vehicles_[i] = regions_[i].getVehicleArray();
+                    rsus_[i] = regions_[i].getRSUs();
+                    break;
+            }
+        } catch (Exception e){
+            pipeline_.reportFailure(e);
+        }
+        return 0;
+    }
+
+    /**
+     * A task working on a range of regions. Ranges bigger than the granularity are split in halves so that
+     * idle threads can steal one half.
+     */
+    private final class RegionTask extends RecursiveAction {
+
+        /** The <code>serialVersionUID</code>. */
+        private static final long serialVersionUID = -2476209931257484725L;
+
+        /** The phase to run. */
+        private final int phase_;
+
+        /** The phase of the pipeline. */
+        private final SimulationPhase pipelinePhase_;
+
+        /** The first region (inclusive). */
+        private final int from_;
+
+        /** The last region (exclusive). */
+        private final int to_;
+
+        /**
+         * Creates a new task.
+         *
+         * @param phase			the phase to run
+         * @param pipelinePhase	the phase of the pipeline
+         * @param from			the first region (inclusive)
+         * @param to			the last region (exclusive)
+         */
+        RegionTask(int phase, SimulationPhase pipelinePhase, int from, int to){
+            phase_ = phase;
+            pipelinePhase_ = pipelinePhase;
+            from_ = from;
+            to_ = to;
+        }
+
+        /**
+         * Processes the regions or splits the task.
+         */
+        protected void compute(){
+            if(to_ - from_ <= granularity_){
+                StepProfiler.ThreadRecord record = SimulationContext.current().getProfiler().getRecord();
+                long start = (record != null) ? record.begin() : 0;
+                long time = System.nanoTime();
+                int processed = 0;
+                for(int i = from_; i < to_; ++i) processed += processRegion(phase_, pipelinePhase_, i);
+                if(pipelinePhase_ != null) pipelinePhase_.addTime(System.nanoTime() - time);
+                if(record != null){
+                    if(pipelinePhase_ != null) record.compute(pipelinePhase_.getProfilerSection(), start, processed);
+                    else if(phase_ == PHASE_TRAFFIC_LIGHTS) record.compute(StepProfiler.SECTION_TRAFFIC_LIGHTS, start, 0);
+                }
+            } else {
+                int middle = (from_ + to_) >>> 1;
+                invokeAll(new RegionTask(phase_, pipelinePhase_, from_, middle), new RegionTask(phase_, pipelinePhase_, middle, to_));
+            }
+        }
+    }
+
+    /**
+     * A thread of the pool. Keeps the context of the scheduler in a field so that looking it up is cheap.
+     */
+    private static final class RegionWorkerThread extends ForkJoinWorkerThread implements ContextThread {
+
+        /** The context bound to this thread. */
+        private SimulationContext boundContext_;
+
+        /**
+         * Creates a new thread.
+         *
+         * @param pool		the pool
+         * @param context	the context bound to the thread
+         */
+        RegionWorkerThread(ForkJoinPool pool, SimulationContext context){
+            super(pool);
+            boundContext_ = context;
+        }
+
+        /**
+         * Gets the context bound to this thread.
+         *
+         * @return the context or <code>null</code> if none was bound
+         */
+        public SimulationContext getBoundContext(){
+            return boundContext_;
+        }
+
+        /**
+         * Binds a context to this thread.
+         *
+         * @param context	the context or <code>null</code> to use the default context
+         */
+        public void setBoundContext(SimulationContext context){
+            boundContext_ = context;
+        }
+    }
+}
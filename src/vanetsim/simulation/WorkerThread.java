@@ -3,16 +3,11 @@ package vanetsim.simulation;
 
 import vanetsim.ErrorLog;
 import vanetsim.debug.Debug;
-import vanetsim.gui.Renderer;
 import vanetsim.localization.Messages;
-import vanetsim.map.Node;
 import vanetsim.map.Region;
-import vanetsim.map.Street;
 import vanetsim.scenario.RSU;
 import vanetsim.scenario.Vehicle;
 
-import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 
@@ -20,7 +15,7 @@ import java.util.concurrent.CyclicBarrier;
  * This thread is meant to run parallel with multiple others to gain advantage of multiple CPUs.
  * All simulation tasks are initiated from this class!
  */
-public class WorkerThread extends Thread {
+public class WorkerThread extends Thread implements ContextThread {
 
 
     /**
@@ -29,23 +24,35 @@ public class WorkerThread extends Thread {
      * ////////////////////////////
      */
     /** An array holding all regions this thread is working on. 該執行緒所管理的Region區域*/
-    private final Region[] ourRegions_;
+    private Region[] ourRegions_;
+
+    /** Regions assigned by the <code>RegionRebalancer</code> which are taken over after the next start barrier. */
+    private volatile Region[] pendingRegions_ = null;
 
     /** The available time in milliseconds to render in one step. This also determines how far a car moves in one time tick. */
     private final int timePerStep_;
 
-    /** The changed regions that need to be updated before doing the next step. */
-    private final LinkedHashSet<Integer> changedRegions_ = new LinkedHashSet<Integer>(16);
-
     /** The <code>CyclicBarrier</code> called to schedule start of new work. */
     private CyclicBarrier barrierStart_;
 
-    /** The <code>CyclicBarrier</code> called during the work steps. */
-    private CyclicBarrier barrierDuringWork_;
+    /** The phases run during the work steps. */
+    private PhasePipeline pipeline_;
 
     /** The <code>CyclicBarrier</code> called after performing all tasks. */
     private CyclicBarrier barrierFinish_;
 
+    /** The <code>CyclicBarrier</code> between the steps of a block (only the workers wait on it, not the master). */
+    private CyclicBarrier barrierStep_ = null;
+
+    /** The amount of steps done between the start and the finish barrier. Only changed by the master before the start barrier. */
+    private volatile int blockSteps_ = 1;
+
+    /** The context of the thread which created this worker. Bound to this thread when it starts. */
+    private final SimulationContext context_ = SimulationContext.current();
+
+    /** The context bound to this thread (see <code>ContextThread</code>). */
+    private SimulationContext boundContext_ = null;
+
 
     /**
      * ////////////////////////////
@@ -77,25 +84,72 @@ public class WorkerThread extends Thread {
      * Set <code>CyclicBarriers</code> for thread synchronization.
      * 設定主程式模擬個階段（執行前/執行期間/執行後）所需的同步執行緒數量，由SimulationMaster:createWorkers()呼叫
      * @param barrierStart 				the barrier for starting
-     * @param barrierDuringWork	the barrier after adjusting the speed
+     * @param pipeline					the phases to run between the barriers
      * @param barrierFinish				the barrier after completing all tasks
      */
-    public void setBarriers(CyclicBarrier barrierStart, CyclicBarrier barrierDuringWork, CyclicBarrier barrierFinish){
-        Debug.callFunctionInfo(this.getClass().getName(), "setBarriers(CyclicBarrier barrierStart, CyclicBarrier barrierDuringWork, CyclicBarrier barrierFinish)", Debug.ISLOGGED);
+    public void setBarriers(CyclicBarrier barrierStart, PhasePipeline pipeline, CyclicBarrier barrierFinish){
+        Debug.callFunctionInfo(this.getClass().getName(), "setBarriers(CyclicBarrier barrierStart, PhasePipeline pipeline, CyclicBarrier barrierFinish)", Debug.ISLOGGED);
         barrierStart_ = barrierStart;
-        barrierDuringWork_ = barrierDuringWork;
+        pipeline_ = pipeline;
         barrierFinish_ = barrierFinish;
     }
 
+
     /**
-     * Adds a region to the list of changed region (so that it gets updated).
+     * Sets the <code>CyclicBarrier</code> the workers wait on between the steps of a block. Its action has to finish the
+     * step and prepare the next one as the master does between two blocks.
      *
-     * @param i	the number of the region in this thread
+     * @param barrierStep	the barrier between the steps of a block
      */
-    public void addChangedRegion(int i){
-        synchronized(changedRegions_){
-            changedRegions_.add(Integer.valueOf(i));
-        }
+    public void setStepBarrier(CyclicBarrier barrierStep){
+        barrierStep_ = barrierStep;
+    }
+
+    /**
+     * Sets how many steps are done in the next block. More than one step may only be done if a step barrier has been set.
+     * May only be called while this thread is between the finish barrier and the start barrier.
+     *
+     * @param steps	the amount of steps
+     */
+    public void setBlockSteps(int steps){
+        blockSteps_ = steps;
+    }
+
+    /**
+     * Hands a new set of regions to this thread. The regions are taken over after the next start barrier so this
+     * may only be called while this thread is between the finish barrier and the start barrier.
+     *
+     * @param regions	the new regions
+     */
+    public void assignRegions(Region[] regions){
+        pendingRegions_ = regions;
+    }
+
+    /**
+     * Gets the regions this thread is working on.
+     *
+     * @return the regions
+     */
+    public Region[] getRegions(){
+        return ourRegions_;
+    }
+
+    /**
+     * Gets the context bound to this thread.
+     *
+     * @return the context or <code>null</code> if none was bound
+     */
+    public SimulationContext getBoundContext(){
+        return boundContext_;
+    }
+
+    /**
+     * Binds a context to this thread. Only called by this thread through <code>SimulationContext.bind()</code>.
+     *
+     * @param context	the context or <code>null</code> to use the default context
+     */
+    public void setBoundContext(SimulationContext context){
+        boundContext_ = context;
     }
 
 
@@ -104,7 +158,8 @@ public class WorkerThread extends Thread {
      */
     public void run() {
 
-        int i, j, length;
+        context_.bind();
+        int i, j, k, steps, length;
         int ourRegionsLength = ourRegions_.length;
         // An array copy of the vehicles instead of an ArrayList or something else is used because of three reasons:
         // 1. While iterating through all regions, a ConcurrentModificationExceptions is thrown when a vehicle gets into a new region.
@@ -126,9 +181,6 @@ public class WorkerThread extends Thread {
         RSU[] rsuSubarray;	// it is better to cache lookups in the double-array.
         RSU rsu;
 
-        Iterator<Integer> changedRegionIterator;
-        int tmp;
-
         for(i = 0; i < ourRegionsLength; ++i){
             ourRegions_[i].createBacklink(this, i);
             ourRegions_[i].calculateJunctions();	//recalculate because user might have edited map after loading
@@ -139,10 +191,13 @@ public class WorkerThread extends Thread {
 
         boolean communicationEnabled = Vehicle.getCommunicationEnabled();
         boolean beaconsEnabled = Vehicle.getBeaconsEnabled();
-        boolean recyclingEnabled = Vehicle.getRecyclingEnabled();
+
+        StepProfiler profiler = context_.getProfiler();
+        StepProfiler.ThreadRecord record;	// null if the profiling is switched off
+        long start = 0;
 
         //sleep if no barriers have been set yet
-        while (barrierStart_ == null || barrierDuringWork_ == null || barrierFinish_ == null){
+        while (barrierStart_ == null || pipeline_ == null || barrierFinish_ == null){
             try{
                 sleep(50);
             } catch (Exception e){}
@@ -153,20 +208,17 @@ public class WorkerThread extends Thread {
         // To debug problems or new functions, it is recommended to move the "try"s down so that they are just around the "wait()"-calls!
         while(true){
             // =================================
-            // Step 1: Update changed regions with new vehicle arrays
+            // Step 1: Update changed regions with new vehicle arrays (regions only copy their vehicles if they have changed)
             // =================================
             /** 當車輛跨越不同區域時更新 */
-            if(changedRegions_.size() > 0){
-                changedRegionIterator = changedRegions_.iterator();
-                while(changedRegionIterator.hasNext()){
-                    tmp = changedRegionIterator.next().intValue();
-                    vehicles[tmp] = ourRegions_[tmp].getVehicleArray();
-                }
-                changedRegions_.clear();
+            for(i = 0; i < ourRegionsLength; ++i){
+                vehicles[i] = ourRegions_[i].getVehicleArray();
             }
             // =================================
             // Step 2: Wait for SimulationMaster to start
             // =================================
+            record = profiler.getRecord();
+            if(record != null) start = record.begin();
             try{
                 barrierStart_.await();
             } catch (InterruptedException e){	// master wants us to stop!
@@ -174,46 +226,47 @@ public class WorkerThread extends Thread {
             } catch (BrokenBarrierException e){	// master wants us to stop!
                 break;
             } catch (Exception e){}
+            if(record != null) record.waited(StepProfiler.SECTION_START_BARRIER, start);
 
             // =================================
-            // Step 3: Adjust speed, do message cleanup and create jam messages
+            // Step 2b: Take over regions from the rebalancer. No vehicle changes its region before the move phase
+            //          so all backlinks are set before anyone needs them.
             // =================================
-            try{
-                //vehicles: adjustSpeed() & getCurStreet() && addVehicleQueue
-				/*
-				  update getCurStreet() & addVehicleQueue() on 2017/10/17
-				 */
+            if(pendingRegions_ != null){
+                ourRegions_ = pendingRegions_;
+                pendingRegions_ = null;
+                ourRegionsLength = ourRegions_.length;
+                vehicles = new Vehicle[ourRegionsLength][];
+                rsus = new RSU[ourRegionsLength][];
                 for(i = 0; i < ourRegionsLength; ++i){
-                    vehicleSubarray = vehicles[i];
-                    length = vehicleSubarray.length;
-                    for(j = 0; j < length; ++j){
-
-                        Vehicle veh = vehicleSubarray[j];
-
-                        veh.adjustSpeed(timePerStep_);
-                        String vehicleID = veh.getHexID();
-                        Street street = veh.getCurStreet();
-                        String streetName = street.getName();
-
-                    }
+                    ourRegions_[i].createBacklink(this, i);
+                    vehicles[i] = ourRegions_[i].getVehicleArray();
+                    rsus[i] = ourRegions_[i].getRSUs();
                 }
+            }
 
-                //rsus: cleanup old messages
+            // =================================
+            // Step 3: Run all phases of the pipeline (adjust speed, RSU cleanup, move...). Phases without work are skipped,
+            //         the workers only wait for each other between phases which need it. In a block of several steps,
+            //         the workers only wait for each other between the steps, the step barrier finishes the step.
+            // =================================
+            steps = blockSteps_;
+            for(k = 1; ; ++k){
+                pipeline_.runPhases(ourRegions_, vehicles, rsus, timePerStep_, record);
+                if(k >= steps || barrierStep_ == null) break;
+                if(record != null) start = record.begin();
+                try{
+                    barrierStep_.await();
+                } catch (BrokenBarrierException e){	//don't try to "repair" if barrier is broken
+                } catch (Exception e){
+                    try{
+                        barrierStep_.await();	//need to wait again...
+                    }catch (Exception e2){}
+                }
+                if(record != null) record.waited(StepProfiler.SECTION_STEP_BARRIER, start);
                 for(i = 0; i < ourRegionsLength; ++i){
-                    rsuSubarray = rsus[i];
-                    length = rsuSubarray.length;
-                    for(j = 0; j < length; ++j){
-                        rsuSubarray[j].cleanup(timePerStep_);
-                    }
+                    vehicles[i] = ourRegions_[i].getVehicleArray();
                 }
-
-                // Wait for all concurrent threads to synchronize
-                barrierDuringWork_.await();
-            } catch (BrokenBarrierException e){	//don't try to "repair" if barrier is broken
-            } catch (Exception e){
-                try{
-                    barrierDuringWork_.await();
-                }catch (Exception e2){}
             }
 
             /**
@@ -273,7 +326,7 @@ public class WorkerThread extends Thread {
                     //handle silent periods
 
                     if(Vehicle.isSilentPeriodsOn()){
-                        tmpTimePassed = Renderer.getInstance().getTimePassed();
+                        tmpTimePassed = SimulationClock.getTime();
                         if(tmpTimePassed > silentPeriodFrequency && tmpTimePassed%(silentPeriodDuration + silentPeriodFrequency) < 240){
                             tmpTimePassedSaved = tmpTimePassed;
                             Vehicle.setSilent_period(true);
@@ -330,19 +383,10 @@ public class WorkerThread extends Thread {
 
 
             // =================================
-            // Step 6: Move all vehicles one step further
+            // Step 6: Wait for all concurrent threads to synchronize
             // =================================
+            if(record != null) start = record.begin();
             try{
-                for(i = 0; i < ourRegionsLength; ++i){
-                    vehicleSubarray = vehicles[i];
-                    length = vehicleSubarray.length;
-                    for(j = 0; j < length; ++j){
-                        if(vehicleSubarray[j].isActive()) vehicleSubarray[j].move(timePerStep_);
-                        else if(recyclingEnabled && vehicleSubarray[j].getMayBeRecycled()) vehicleSubarray[j].reset();
-                    }
-                }
-
-                // Wait for all concurrent threads to synchronize
                 barrierFinish_.await();
             } catch (BrokenBarrierException e){	//don't try to "repair" if barrier is broken
             } catch (Exception e){
@@ -350,6 +394,7 @@ public class WorkerThread extends Thread {
                     barrierFinish_.await();	//need to wait again...
                 }catch (Exception e2){}
             }
+            if(record != null) record.waited(StepProfiler.SECTION_FINISH_BARRIER, start);
 
 
 
@@ -357,15 +402,11 @@ public class WorkerThread extends Thread {
             // Step 7: Check the states of all traffic lights and change if necessary
             // =================================
 
-            Node[] tmpNodes = null;
+            if(record != null) start = record.begin();
             for(i = 0; i < ourRegions_.length; i++){
-                tmpNodes = ourRegions_[i].getNodes();
-                for(j = 0; j < tmpNodes.length; j++){
-                    if(tmpNodes[j].isHasTrafficSignal_() && tmpNodes[j].getJunction() != null && tmpNodes[j].getJunction().getNode().getTrafficLight_() != null){
-                        tmpNodes[j].getJunction().getNode().getTrafficLight_().changePhases(timePerStep_);
-                    }
-                }
+                ourRegions_[i].changeTrafficLights(timePerStep_);
             }
+            if(record != null) record.compute(StepProfiler.SECTION_TRAFFIC_LIGHTS, start, 0);
 
 
 
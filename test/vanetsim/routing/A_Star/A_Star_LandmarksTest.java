@@ -0,0 +1,121 @@
+package vanetsim.routing.A_Star;
+
+import static org.junit.Assert.assertTrue;
+
+import vanetsim.map.Street;
+import vanetsim.routing.RoutingTestMap;
+import vanetsim.simulation.HeadlessEngine;
+import vanetsim.simulation.SimulationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the landmarks make the <code>A_Star_Algorithm</code> find routes which are at least as good as without them
+ * and as good as the best route found by Dijkstra's algorithm.
+ */
+public class A_Star_LandmarksTest {
+
+	/** The amount of routes calculated in each test. */
+	private static final int ROUTES = 300;
+
+	/** The amount of landmarks. */
+	private static final int LANDMARKS = 8;
+
+	/** The map file. */
+	private File mapFile_;
+
+	/** The engine which loaded the map. */
+	private HeadlessEngine engine_;
+
+	/** The context bound before the test. */
+	private SimulationContext previous_;
+
+	/**
+	 * Loads a new grid map.
+	 *
+	 * @throws IOException if the map can't be written
+	 */
+	@Before
+	public void setUp() throws IOException{
+		mapFile_ = File.createTempFile("landmarks", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+		RoutingTestMap.writeGrid(mapFile_, 25, 11L);
+		engine_ = new HeadlessEngine(1);
+		assertTrue(engine_.loadMap(mapFile_));
+		previous_ = engine_.getContext().bind();
+	}
+
+	/**
+	 * Removes the map and the landmark file written next to it.
+	 */
+	@After
+	public void tearDown(){
+		SimulationContext.restore(previous_);
+		engine_.shutdown();
+		new File(mapFile_.getPath() + ".alt").delete(); //$NON-NLS-1$
+		mapFile_.delete();
+	}
+
+	/**
+	 * Routes by length.
+	 */
+	@Test
+	public void testShortestRoutes(){
+		checkRoutes(0, 3333);
+	}
+
+	/**
+	 * Routes by time for a vehicle which may drive as fast as every street allows.
+	 */
+	@Test
+	public void testFastestRoutes(){
+		checkRoutes(1, 3333);
+	}
+
+	/**
+	 * Routes by time for a vehicle which is slower than the fast streets, so that the times stored for the landmarks are too low.
+	 */
+	@Test
+	public void testFastestRoutesOfSlowVehicle(){
+		checkRoutes(1, 1500);
+	}
+
+	/**
+	 * Calculates random routes with and without landmarks and compares them with the best routes.
+	 *
+	 * @param mode		<code>0</code> for the length, <code>1</code> for the time
+	 * @param maxSpeed	the maximum speed of the vehicle in cm/s
+	 */
+	private void checkRoutes(int mode, int maxSpeed){
+		SimulationContext context = engine_.getContext();
+		A_Star_Algorithm algorithm = new A_Star_Algorithm();
+		Street[] streets = RoutingTestMap.getStreets();
+		Random random = new Random(3);
+		Street start, target;
+		int direction, targetX, targetY;
+		double startPos, targetPos, plainCost, landmarkCost, bestCost;
+		for(int i = 0; i < ROUTES; ++i){
+			start = streets[random.nextInt(streets.length)];
+			target = streets[random.nextInt(streets.length)];
+			direction = random.nextInt(3) - 1;
+			startPos = start.getLength() / 3;
+			targetPos = target.getLength() / 4;
+			targetX = target.getStartNode().getX() + (target.getEndNode().getX() - target.getStartNode().getX()) / 4;
+			targetY = target.getStartNode().getY() + (target.getEndNode().getY() - target.getStartNode().getY()) / 4;
+
+			context.setLandmarkCount(0);
+			plainCost = RoutingTestMap.getCost(algorithm.getRouting(mode, direction, 0, 0, start, startPos, targetX, targetY, target, targetPos, new Street[0], new int[0], new int[0], 0, maxSpeed), mode, maxSpeed, start, startPos, target, targetPos);
+			context.setLandmarkCount(LANDMARKS);
+			landmarkCost = RoutingTestMap.getCost(algorithm.getRouting(mode, direction, 0, 0, start, startPos, targetX, targetY, target, targetPos, new Street[0], new int[0], new int[0], 0, maxSpeed), mode, maxSpeed, start, startPos, target, targetPos);
+			bestCost = RoutingTestMap.getBestCost(mode, maxSpeed, direction, start, startPos, target, targetPos);
+
+			assertTrue("route " + i + " with landmarks is worse than without: " + landmarkCost + " > " + plainCost, RoutingTestMap.isSameCost(plainCost, landmarkCost) || landmarkCost < plainCost); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			assertTrue("route " + i + " with landmarks isn't the best: " + landmarkCost + " instead of " + bestCost, RoutingTestMap.isSameCost(bestCost, landmarkCost)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package vanetsim.routing.A_Star;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import vanetsim.map.Node;
+import vanetsim.map.Street;
+import vanetsim.routing.RoutingTestMap;
+import vanetsim.simulation.HeadlessEngine;
+import vanetsim.simulation.SimulationContext;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares both implementations of the <code>A_Star_OpenList</code> with a <code>PriorityQueue</code> ordered by the f-value
+ * and checks that routing by time with the pairing heap gives routes as good as with the binary heap.
+ */
+public class A_Star_OpenListTest {
+
+	/** The amount of nodes which may be in a list. */
+	private static final int NODES = 500;
+
+	/** The amount of random operations on a list. */
+	private static final int OPERATIONS = 50000;
+
+	/** The amount of routes calculated in the routing test. */
+	private static final int ROUTES = 200;
+
+	/**
+	 * Random operations on the binary heap.
+	 */
+	@Test
+	public void testQueue(){
+		checkOpenList(new A_Star_Queue(), 5L);
+	}
+
+	/**
+	 * Random operations on the pairing heap.
+	 */
+	@Test
+	public void testPairingHeap(){
+		checkOpenList(new A_Star_PairingHeap(), 5L);
+	}
+
+	/**
+	 * Routes by time with the pairing heap cost as much as with the binary heap, with and without the bidirectional search.
+	 *
+	 * @throws Exception if the map can't be written
+	 */
+	@Test
+	public void testPairingHeapRouting() throws Exception{
+		File mapFile = File.createTempFile("openlist", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+		HeadlessEngine engine = new HeadlessEngine(1);
+		SimulationContext previous = null;
+		try{
+			RoutingTestMap.writeGrid(mapFile, 25, 13L);
+			assertTrue(engine.loadMap(mapFile));
+			previous = engine.getContext().bind();
+			checkRoutes(engine.getContext(), false);
+			checkRoutes(engine.getContext(), true);
+		} finally {
+			if(previous != null) SimulationContext.restore(previous);
+			engine.shutdown();
+			mapFile.delete();
+		}
+	}
+
+	/**
+	 * Does random operations on a list and on a reference queue. The f-values are taken from a small range so that many
+	 * nodes have the same f-value. Removed and polled nodes are added again later, so that free positions are reused.
+	 *
+	 * @param list	the empty list
+	 * @param seed	the seed for the operations
+	 */
+	private static void checkOpenList(A_Star_OpenList list, long seed){
+		Random random = new Random(seed);
+		PriorityQueue<A_Star_Node> reference = new PriorityQueue<A_Star_Node>(NODES, new Comparator<A_Star_Node>(){
+			public int compare(A_Star_Node a, A_Star_Node b){
+				return Double.compare(a.getF(), b.getF());
+			}
+		});
+		A_Star_Node[] nodes = new A_Star_Node[NODES];
+		boolean[] inList = new boolean[NODES];
+		for(int i = 0; i < NODES; ++i) nodes[i] = new A_Star_Node(new Node(i, i), 0, 0);
+		A_Star_Node node;
+		int index, operation;
+		for(int i = 0; i < OPERATIONS; ++i){
+			index = random.nextInt(NODES);
+			node = nodes[index];
+			operation = random.nextInt(10);
+			if(operation < 4){
+				if(!inList[index]){
+					node.setF(random.nextInt(1000));
+					list.add(node);
+					reference.add(node);
+					inList[index] = true;
+				}
+			} else if(operation < 6){
+				if(inList[index] && node.getF() > 0){
+					// the reference needs to remove the node before its f-value changes
+					reference.remove(node);
+					node.setF(random.nextInt((int)node.getF()));
+					list.signalDecreasedF(node);
+					reference.add(node);
+				}
+			} else if(operation < 7){
+				// removing a node which isn't in the list does nothing
+				list.remove(node);
+				reference.remove(node);
+				inList[index] = false;
+			} else {
+				poll(list, reference, inList, nodes);
+			}
+			assertEquals(reference.isEmpty(), list.isEmpty());
+			if(!reference.isEmpty()) assertEquals(reference.peek().getF(), list.peek().getF(), 0);
+		}
+		while(!reference.isEmpty()) poll(list, reference, inList, nodes);
+		assertTrue(list.isEmpty());
+		assertNull(list.peek());
+		assertNull(list.poll());
+	}
+
+	/**
+	 * Polls a node from a list and checks that it has the smallest f-value of the reference queue.
+	 *
+	 * @param list		the list
+	 * @param reference	the reference queue with the same nodes
+	 * @param inList	which nodes are in the list
+	 * @param nodes		all nodes
+	 */
+	private static void poll(A_Star_OpenList list, PriorityQueue<A_Star_Node> reference, boolean[] inList, A_Star_Node[] nodes){
+		A_Star_Node node = list.peek();
+		if(reference.isEmpty()){
+			assertNull(node);
+			return;
+		}
+		assertSame(node, list.poll());
+		assertEquals(reference.peek().getF(), node.getF(), 0);
+		// nodes with the same f-value may come in any order
+		assertTrue("polled node wasn't in the list", reference.remove(node)); //$NON-NLS-1$
+		assertFalse(reference.contains(node));
+		for(int i = 0; i < nodes.length; ++i){
+			if(nodes[i] == node) inList[i] = false;
+		}
+	}
+
+	/**
+	 * Calculates random routes by time with the binary heap and the pairing heap and compares their costs.
+	 *
+	 * @param context		the bound context
+	 * @param bidirectional	if the bidirectional search is used
+	 */
+	private static void checkRoutes(SimulationContext context, boolean bidirectional){
+		A_Star_Algorithm algorithm = new A_Star_Algorithm();
+		Street[] streets = RoutingTestMap.getStreets();
+		Random random = new Random(7);
+		Street start, target;
+		int direction, maxSpeed, targetX, targetY;
+		double startPos, targetPos, cost, heapCost;
+		context.setBidirectionalRouting(bidirectional);
+		for(int i = 0; i < ROUTES; ++i){
+			start = streets[random.nextInt(streets.length)];
+			target = streets[random.nextInt(streets.length)];
+			direction = random.nextInt(3) - 1;
+			maxSpeed = (random.nextBoolean())? 3333 : 1500;
+			startPos = start.getLength() / 3;
+			targetPos = target.getLength() / 4;
+			targetX = target.getStartNode().getX() + (target.getEndNode().getX() - target.getStartNode().getX()) / 4;
+			targetY = target.getStartNode().getY() + (target.getEndNode().getY() - target.getStartNode().getY()) / 4;
+
+			context.setPairingHeapRouting(false);
+			cost = RoutingTestMap.getCost(algorithm.getRouting(1, direction, 0, 0, start, startPos, targetX, targetY, target, targetPos, new Street[0], new int[0], new int[0], 0, maxSpeed), 1, maxSpeed, start, startPos, target, targetPos);
+			context.setPairingHeapRouting(true);
+			heapCost = RoutingTestMap.getCost(algorithm.getRouting(1, direction, 0, 0, start, startPos, targetX, targetY, target, targetPos, new Street[0], new int[0], new int[0], 0, maxSpeed), 1, maxSpeed, start, startPos, target, targetPos);
+			assertTrue("route " + i + " costs " + heapCost + " with the pairing heap instead of " + cost, RoutingTestMap.isSameCost(cost, heapCost)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		context.setPairingHeapRouting(false);
+	}
+}
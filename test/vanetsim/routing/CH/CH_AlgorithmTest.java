@@ -0,0 +1,155 @@
+package vanetsim.routing.CH;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import vanetsim.map.Map;
+import vanetsim.map.Node;
+import vanetsim.map.Street;
+import vanetsim.routing.RoutingTestMap;
+import vanetsim.routing.A_Star.A_Star_Algorithm;
+import vanetsim.simulation.HeadlessEngine;
+import vanetsim.simulation.SimulationContext;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the <code>CH_Algorithm</code> finds routes which are as good as the best route found by Dijkstra's algorithm, also
+ * with hierarchies read from a file and after the map has been changed.
+ */
+public class CH_AlgorithmTest {
+
+	/** The amount of routes calculated in each test. */
+	private static final int ROUTES = 300;
+
+	/** The map file. */
+	private File mapFile_;
+
+	/** The engine which loaded the map. */
+	private HeadlessEngine engine_;
+
+	/** The context bound before the test. */
+	private SimulationContext previous_;
+
+	/**
+	 * Loads a new grid map and builds the hierarchies.
+	 *
+	 * @throws IOException if the map can't be written
+	 */
+	@Before
+	public void setUp() throws IOException{
+		mapFile_ = File.createTempFile("hierarchies", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+		RoutingTestMap.writeGrid(mapFile_, 25, 11L);
+		engine_ = new HeadlessEngine(1);
+		assertTrue(engine_.loadMap(mapFile_));
+		previous_ = engine_.getContext().bind();
+		engine_.getContext().setHierarchyRouting(true);
+	}
+
+	/**
+	 * Removes the map and the hierarchy file written next to it.
+	 */
+	@After
+	public void tearDown(){
+		SimulationContext.restore(previous_);
+		engine_.shutdown();
+		new File(mapFile_.getPath() + ".ch").delete(); //$NON-NLS-1$
+		mapFile_.delete();
+	}
+
+	/**
+	 * Routes by length.
+	 */
+	@Test
+	public void testShortestRoutes(){
+		checkRoutes(CH_Graph.MODE_DISTANCE, Map.getInstance().prepareRoutingHierarchies().getGraph(CH_Graph.MODE_TIME).getMaxSpeed());
+	}
+
+	/**
+	 * Routes by time for a vehicle which may drive as fast as every street allows.
+	 */
+	@Test
+	public void testFastestRoutes(){
+		checkRoutes(CH_Graph.MODE_TIME, Map.getInstance().prepareRoutingHierarchies().getGraph(CH_Graph.MODE_TIME).getMaxSpeed());
+	}
+
+	/**
+	 * A vehicle which is slower than the fast streets doesn't fit the weights of the hierarchies, so its routes are the ones of
+	 * the <code>A_Star_Algorithm</code>.
+	 */
+	@Test
+	public void testSlowVehicle(){
+		CH_Algorithm algorithm = new CH_Algorithm();
+		A_Star_Algorithm astar = new A_Star_Algorithm();
+		Street[] streets = RoutingTestMap.getStreets();
+		Random random = new Random(5);
+		Street start, target;
+		for(int i = 0; i < 50; ++i){
+			start = streets[random.nextInt(streets.length)];
+			target = streets[random.nextInt(streets.length)];
+			assertArrayEquals("route " + i, astar.getRouting(1, 0, 0, 0, start, 0, 0, 0, target, 0, new Street[0], new int[0], new int[0], 0, 1500).toArray(), algorithm.getRouting(1, 0, 0, 0, start, 0, 0, 0, target, 0, new Street[0], new int[0], new int[0], 0, 1500).toArray()); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * The hierarchies read from the file next to the map give the best routes, too.
+	 */
+	@Test
+	public void testReadHierarchies(){
+		CH_Hierarchies built = Map.getInstance().prepareRoutingHierarchies();
+		assertTrue(new File(mapFile_.getPath() + ".ch").isFile()); //$NON-NLS-1$
+		assertTrue(engine_.loadMap(mapFile_));
+		assertNotSame(built, Map.getInstance().prepareRoutingHierarchies());
+		checkRoutes(CH_Graph.MODE_DISTANCE, Map.getInstance().prepareRoutingHierarchies().getGraph(CH_Graph.MODE_TIME).getMaxSpeed());
+	}
+
+	/**
+	 * A street added after the hierarchies were built is used by the next routes.
+	 */
+	@Test
+	public void testAddedStreet(){
+		Map.getInstance().prepareRoutingHierarchies();
+		Street[] streets = RoutingTestMap.getStreets();
+		Node first = streets[0].getStartNode(), last = streets[streets.length - 1].getEndNode();
+		Map.getInstance().addStreet(new Street("shortcut", first, last, "residential", 0, 1, Color.black, first.getRegion(), 3333)); //$NON-NLS-1$ //$NON-NLS-2$
+		checkRoutes(CH_Graph.MODE_DISTANCE, 3333);
+		checkRoutes(CH_Graph.MODE_TIME, 3333);
+	}
+
+	/**
+	 * Calculates random routes on the hierarchies and compares them with the best routes and the routes of the
+	 * <code>A_Star_Algorithm</code>.
+	 *
+	 * @param mode		<code>0</code> for the length, <code>1</code> for the time
+	 * @param maxSpeed	the maximum speed of the vehicle in cm/s
+	 */
+	private void checkRoutes(int mode, int maxSpeed){
+		CH_Algorithm algorithm = new CH_Algorithm();
+		A_Star_Algorithm astar = new A_Star_Algorithm();
+		Street[] streets = RoutingTestMap.getStreets();
+		Random random = new Random(5);
+		Street start, target;
+		int direction;
+		double startPos, targetPos, cost, astarCost, bestCost;
+		for(int i = 0; i < ROUTES; ++i){
+			start = streets[random.nextInt(streets.length)];
+			target = streets[random.nextInt(streets.length)];
+			direction = random.nextInt(3) - 1;
+			startPos = start.getLength() / 3;
+			targetPos = target.getLength() / 4;
+			cost = RoutingTestMap.getCost(algorithm.getRouting(mode, direction, 0, 0, start, startPos, 0, 0, target, targetPos, new Street[0], new int[0], new int[0], 0, maxSpeed), mode, maxSpeed, start, startPos, target, targetPos);
+			astarCost = RoutingTestMap.getCost(astar.getRouting(mode, direction, 0, 0, start, startPos, 0, 0, target, targetPos, new Street[0], new int[0], new int[0], 0, maxSpeed), mode, maxSpeed, start, startPos, target, targetPos);
+			bestCost = RoutingTestMap.getBestCost(mode, maxSpeed, direction, start, startPos, target, targetPos);
+			assertTrue("route " + i + " isn't the best: " + cost + " instead of " + bestCost, RoutingTestMap.isSameCost(bestCost, cost)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			assertTrue("route " + i + " is worse than the one of the A* algorithm: " + cost + " > " + astarCost, RoutingTestMap.isSameCost(astarCost, cost) || cost < astarCost); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package vanetsim.routing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import vanetsim.map.Map;
+import vanetsim.map.Node;
+import vanetsim.map.Street;
+import vanetsim.routing.A_Star.A_Star_Algorithm;
+import vanetsim.scenario.events.StartBlocking;
+import vanetsim.simulation.HeadlessEngine;
+import vanetsim.simulation.SimulationContext;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the <code>RouteCache</code> returns the stored routes and recalculates them after a street on them changed.
+ */
+public class RouteCacheTest {
+
+    /** The maximum speed of the vehicles in cm/s. */
+    private static final int MAX_SPEED = 3333;
+
+    /** The map file. */
+    private File mapFile_;
+
+    /** The engine which loaded the map. */
+    private HeadlessEngine engine_;
+
+    /** The context bound before the test. */
+    private SimulationContext previous_;
+
+    /** The cache of the engine. */
+    private RouteCache cache_;
+
+    /** The algorithm which counts how often a route is calculated. */
+    private CountingAlgorithm algorithm_;
+
+    /** The streets of the map. */
+    private Street[] streets_;
+
+    /**
+     * Loads a new grid map.
+     *
+     * @throws IOException if the map can't be written
+     */
+    @Before
+    public void setUp() throws IOException{
+        mapFile_ = File.createTempFile("routecache", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+        RoutingTestMap.writeGrid(mapFile_, 12, 5L);
+        engine_ = new HeadlessEngine(1);
+        assertTrue(engine_.loadMap(mapFile_));
+        previous_ = engine_.getContext().bind();
+        cache_ = engine_.getContext().getRouteCache();
+        cache_.resetStatistics();
+        algorithm_ = new CountingAlgorithm();
+        streets_ = RoutingTestMap.getStreets();
+    }
+
+    /**
+     * Removes the map.
+     */
+    @After
+    public void tearDown(){
+        SimulationContext.restore(previous_);
+        engine_.shutdown();
+        mapFile_.delete();
+    }
+
+    /**
+     * The same route is only calculated once.
+     */
+    @Test
+    public void testHit(){
+        ArrayDeque<Node> first = getRoute(streets_[0], streets_[streets_.length - 1]);
+        ArrayDeque<Node> second = getRoute(streets_[0], streets_[streets_.length - 1]);
+        assertEquals(1, algorithm_.calls_);
+        assertArrayEquals("route from the cache", first.toArray(), second.toArray()); //$NON-NLS-1$
+        assertEquals(1, cache_.getHits());
+        assertEquals(1, cache_.getMisses());
+    }
+
+    /**
+     * Routes with another speed, mode or position are stored separately.
+     */
+    @Test
+    public void testKey(){
+        Street start = streets_[0], target = streets_[streets_.length - 1];
+        getRoute(start, target);
+        cache_.getRouting(algorithm_, 1, 0, 0, 0, start, 10, 0, 0, target, 10, new Street[0], new int[0], new int[0], 0, MAX_SPEED / 2);
+        cache_.getRouting(algorithm_, 0, 0, 0, 0, start, 10, 0, 0, target, 10, new Street[0], new int[0], new int[0], 0, MAX_SPEED);
+        cache_.getRouting(algorithm_, 1, 0, 0, 0, start, 20, 0, 0, target, 10, new Street[0], new int[0], new int[0], 0, MAX_SPEED);
+        assertEquals(4, algorithm_.calls_);
+        assertEquals(4, cache_.getSize());
+    }
+
+    /**
+     * Only the routes over a street are removed when it's invalidated.
+     */
+    @Test
+    public void testInvalidateStreetOnRoute(){
+        Street start = streets_[0], target = streets_[streets_.length - 1], other = streets_[1];
+        Street onRoute = getStreetOnRoute(getRoute(start, target));
+        getRoute(other, other);
+        cache_.invalidate(onRoute);
+        assertEquals(1, cache_.getInvalidated());
+        getRoute(start, target);
+        assertEquals(3, algorithm_.calls_);
+        getRoute(other, other);
+        assertEquals(3, algorithm_.calls_);
+    }
+
+    /**
+     * Routes starting or ending on an invalidated street are removed.
+     */
+    @Test
+    public void testInvalidateStartAndTarget(){
+        Street start = streets_[0], target = streets_[streets_.length - 1];
+        getRoute(start, target);
+        cache_.invalidate(start);
+        getRoute(start, target);
+        cache_.invalidate(target);
+        getRoute(start, target);
+        assertEquals(3, algorithm_.calls_);
+        assertEquals(2, cache_.getInvalidated());
+    }
+
+    /**
+     * A route calculated while a street is invalidated isn't stored, as it might use the old state of the street.
+     */
+    @Test
+    public void testInvalidateWhileCalculating(){
+        algorithm_.invalidate_ = streets_[1];
+        getRoute(streets_[0], streets_[streets_.length - 1]);
+        algorithm_.invalidate_ = null;
+        assertEquals(0, cache_.getSize());
+        getRoute(streets_[0], streets_[streets_.length - 1]);
+        assertEquals(2, algorithm_.calls_);
+        assertEquals(1, cache_.getSize());
+    }
+
+    /**
+     * A blocking on a street of a route removes the route.
+     *
+     * @throws Exception if the blocking can't be created
+     */
+    @Test
+    public void testBlocking() throws Exception{
+        Street start = streets_[0], target = streets_[streets_.length - 1];
+        Street onRoute = getStreetOnRoute(getRoute(start, target));
+        int x = (onRoute.getStartNode().getX() + onRoute.getEndNode().getX()) / 2, y = (onRoute.getStartNode().getY() + onRoute.getEndNode().getY()) / 2;
+        new StartBlocking(0, x, y, 0, 1).execute();
+        getRoute(start, target);
+        assertEquals(2, algorithm_.calls_);
+    }
+
+    /**
+     * A street added to the map removes all routes.
+     */
+    @Test
+    public void testStreetAdded(){
+        getRoute(streets_[0], streets_[streets_.length - 1]);
+        Node first = streets_[0].getStartNode(), last = streets_[streets_.length - 1].getEndNode();
+        Map.getInstance().addStreet(new Street("shortcut", first, last, "residential", 0, 1, Color.black, first.getRegion(), MAX_SPEED)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(0, cache_.getSize());
+    }
+
+    /**
+     * Routes with penalties are neither taken from nor put into the cache.
+     */
+    @Test
+    public void testPenaltiesBypass(){
+        Street start = streets_[0], target = streets_[streets_.length - 1];
+        getRoute(start, target);
+        cache_.getRouting(algorithm_, 1, 0, 0, 0, start, 10, 0, 0, target, 10, new Street[]{streets_[1]}, new int[]{0}, new int[]{100}, 1, MAX_SPEED);
+        assertEquals(2, algorithm_.calls_);
+        assertEquals(1, cache_.getBypassed());
+        assertEquals(1, cache_.getSize());
+    }
+
+    /**
+     * A full cache removes the routes used the longest time ago.
+     */
+    @Test
+    public void testEviction(){
+        cache_.setCapacity(16);
+        Street target = streets_[streets_.length - 1];
+        for(int i = 0; i < 40; ++i) getRoute(streets_[i], target);
+        assertTrue(cache_.getSize() <= 16);
+        assertTrue(cache_.getEvicted() >= 24);
+    }
+
+    /**
+     * Gets a route through the cache with the same settings each time.
+     *
+     * @param start		the start street
+     * @param target	the target street
+     *
+     * @return the route
+     */
+    private ArrayDeque<Node> getRoute(Street start, Street target){
+        return cache_.getRouting(algorithm_, 1, 0, 0, 0, start, 10, 0, 0, target, 10, new Street[0], new int[0], new int[0], 0, MAX_SPEED);
+    }
+
+    /**
+     * Finds a street in the middle of a route.
+     *
+     * @param route	the route
+     *
+     * @return the street between the two nodes in the middle
+     */
+    private static Street getStreetOnRoute(ArrayDeque<Node> route){
+        Node[] nodes = route.toArray(new Node[0]);
+        assertTrue("route too short", nodes.length > 3); //$NON-NLS-1$
+        Node from = nodes[nodes.length / 2], to = nodes[nodes.length / 2 + 1];
+        Street[] streets = from.getCrossingStreets();
+        Street result = null;
+        for(int i = 0; i < streets.length; ++i){
+            if(streets[i].getStartNode() == to || streets[i].getEndNode() == to) result = streets[i];
+        }
+        assertNotNull(result);
+        return result;
+    }
+
+    /**
+     * Calculates routes with the <code>A_Star_Algorithm</code> and counts how often this is done.
+     */
+    private final class CountingAlgorithm implements RoutingAlgorithm {
+
+        /** The algorithm calculating the routes. */
+        private final A_Star_Algorithm algorithm_ = new A_Star_Algorithm();
+
+        /** How often a route was calculated. */
+        private int calls_ = 0;
+
+        /** A street invalidated while a route is calculated or <code>null</code>. */
+        private Street invalidate_ = null;
+
+        /**
+         * Calculates a route.
+         *
+         * @see vanetsim.routing.RoutingAlgorithm#getRouting(int, int, int, int, Street, double, int, int, Street, double, Street[], int[], int[], int, int)
+         */
+        public ArrayDeque<Node> getRouting(int mode, int direction, int startX, int startY, Street startStreet, double startStreetPos, int targetX, int targetY, Street targetStreet, double targetStreetPos, Street[] penaltyStreets, int[] penaltyDirections, int[] penalties, int penaltySize, int additionalVar){
+            ++calls_;
+            if(invalidate_ != null) cache_.invalidate(invalidate_);
+            return algorithm_.getRouting(mode, direction, startX, startY, startStreet, startStreetPos, targetX, targetY, targetStreet, targetStreetPos, penaltyStreets, penaltyDirections, penalties, penaltySize, additionalVar);
+        }
+    }
+}
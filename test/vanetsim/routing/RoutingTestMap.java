@@ -0,0 +1,217 @@
+package vanetsim.routing;
+
+import vanetsim.map.Map;
+import vanetsim.map.Node;
+import vanetsim.map.Region;
+import vanetsim.map.Street;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Creates the maps used by the routing tests and calculates the costs of routes. The maps are grids with slightly moved
+ * nodes, mixed speeds, some oneway streets and some missing streets, so that the straight line is often a bad estimate and
+ * the shortest and the fastest route differ.
+ */
+public final class RoutingTestMap {
+
+    /** The distance between two rows or columns of the grid (in cm). */
+    private static final int SPACING = 20000;
+
+    /** The speeds of the streets (in cm/s). */
+    private static final int[] SPEEDS = {833, 1388, 1944, 3333};
+
+    /**
+     * Not used, only static methods.
+     */
+    private RoutingTestMap(){
+    }
+
+    /**
+     * Writes a grid map in the format read by <code>Map.load()</code>.
+     *
+     * @param file	the file to write to
+     * @param size	the amount of nodes in each row and column
+     * @param seed	the seed for the random number generator
+     *
+     * @throws IOException if the file can't be written
+     */
+    public static void writeGrid(File file, int size, long seed) throws IOException{
+        Random random = new Random(seed);
+        int[][] x = new int[size][size], y = new int[size][size];
+        int i, j;
+        for(i = 0; i < size; ++i){
+            for(j = 0; j < size; ++j){
+                x[i][j] = SPACING/4 + i * SPACING + random.nextInt(SPACING/2);
+                y[i][j] = SPACING/4 + j * SPACING + random.nextInt(SPACING/2);
+            }
+        }
+        int mapSize = (size + 1) * SPACING;
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try{
+            out.println("<?xml version=\"1.0\"?>"); //$NON-NLS-1$
+            out.println("<Map><Settings><Map_height>" + mapSize + "</Map_height><Map_width>" + mapSize + "</Map_width><Region_height>" + (mapSize / 3 + 1) + "</Region_height><Region_width>" + (mapSize / 3 + 1) + "</Region_width></Settings><Streets>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+            for(i = 0; i < size; ++i){
+                for(j = 0; j < size; ++j){
+                    // every street is kept with the same probability, but the outer ring keeps the map connected
+                    if(i + 1 < size && (j == 0 || j == size - 1 || random.nextInt(8) != 0)) writeStreet(out, x[i][j], y[i][j], x[i+1][j], y[i+1][j], random);
+                    if(j + 1 < size && (i == 0 || i == size - 1 || random.nextInt(8) != 0)) writeStreet(out, x[i][j], y[i][j], x[i][j+1], y[i][j+1], random);
+                }
+            }
+            out.println("</Streets></Map>"); //$NON-NLS-1$
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes one street.
+     *
+     * @param out		the writer
+     * @param startX	the x coordinate of the start node
+     * @param startY	the y coordinate of the start node
+     * @param endX		the x coordinate of the end node
+     * @param endY		the y coordinate of the end node
+     * @param random	the random number generator for the speed and the direction
+     */
+    private static void writeStreet(PrintWriter out, int startX, int startY, int endX, int endY, Random random){
+        boolean oneway = random.nextInt(10) == 0;
+        int speed = SPEEDS[random.nextInt(SPEEDS.length)];
+        out.println("<Street><Name>s</Name><StartNode><X>" + startX + "</X><Y>" + startY + "</Y></StartNode><EndNode><X>" + endX + "</X><Y>" + endY + "</Y></EndNode><Oneway>" + oneway + "</Oneway><StreetType>residential</StreetType><Lanes>1</Lanes><Speed>" + speed + "</Speed><Color>-1</Color></Street>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+    }
+
+    /**
+     * Gets all streets of the loaded map, ordered by their position so that the same map always gives the same order.
+     *
+     * @return the streets
+     */
+    public static Street[] getStreets(){
+        // streets crossing a region border are in several regions
+        LinkedHashSet<Street> result = new LinkedHashSet<Street>();
+        Region[][] regions = Map.getInstance().getRegions();
+        for(int i = 0; i < regions.length; ++i){
+            for(int j = 0; j < regions[i].length; ++j) result.addAll(Arrays.asList(regions[i][j].getStreets()));
+        }
+        return result.toArray(new Street[0]);
+    }
+
+    /**
+     * Gets the costs of driving over a street.
+     *
+     * @param street	the street
+     * @param mode		<code>0</code> for the length in cm, <code>1</code> for the time in s
+     * @param maxSpeed	the maximum speed of the vehicle in cm/s
+     * @param length	the part of the street driven (in cm)
+     *
+     * @return the costs
+     */
+    private static double getWeight(Street street, int mode, int maxSpeed, double length){
+        if(mode == 0) return length;
+        else return length / Math.min(street.getSpeed(), maxSpeed);
+    }
+
+    /**
+     * Calculates the costs of a route returned by a routing algorithm.
+     *
+     * @param route			the nodes of the route
+     * @param mode			<code>0</code> for the length in cm, <code>1</code> for the time in s
+     * @param maxSpeed		the maximum speed of the vehicle in cm/s
+     * @param start			the street on which the route starts
+     * @param startPos		the position on the start street (in cm from its start node)
+     * @param target		the street on which the route ends
+     * @param targetPos		the position on the target street (in cm from its start node)
+     *
+     * @return the costs or {@link Double#NaN} if there's no route
+     */
+    public static double getCost(ArrayDeque<Node> route, int mode, int maxSpeed, Street start, double startPos, Street target, double targetPos){
+        if(route == null || route.isEmpty()) return Double.NaN;
+        Node first = route.peekFirst(), last = route.peekLast(), previous = null;
+        double result = getWeight(start, mode, maxSpeed, (first == start.getStartNode())? startPos : start.getLength() - startPos);
+        result += getWeight(target, mode, maxSpeed, (last == target.getStartNode())? targetPos : target.getLength() - targetPos);
+        double best, weight;
+        Street[] streets;
+        for(Node node : route){
+            if(previous != null){
+                best = Double.POSITIVE_INFINITY;
+                streets = previous.getOutgoingStreets();
+                for(int i = 0; i < streets.length; ++i){
+                    if(streets[i].getStartNode() == node || streets[i].getEndNode() == node){
+                        weight = getWeight(streets[i], mode, maxSpeed, streets[i].getLength());
+                        if(weight < best) best = weight;
+                    }
+                }
+                if(best == Double.POSITIVE_INFINITY) throw new IllegalStateException("route uses a street which doesn't exist"); //$NON-NLS-1$
+                result += best;
+            }
+            previous = node;
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the costs of the best route with Dijkstra's algorithm. The route starts at one of the nodes of the start
+     * street and ends at one of the nodes of the target street, like the routes of the algorithms.
+     *
+     * @param mode			<code>0</code> for the length in cm, <code>1</code> for the time in s
+     * @param maxSpeed		the maximum speed of the vehicle in cm/s
+     * @param direction		<code>0</code>=don't care about direction, <code>-1</code>=from startNode to endNode, <code>1</code>=from endNode to startNode
+     * @param start			the street on which the route starts
+     * @param startPos		the position on the start street (in cm from its start node)
+     * @param target		the street on which the route ends
+     * @param targetPos		the position on the target street (in cm from its start node)
+     *
+     * @return the costs or {@link Double#NaN} if there's no route
+     */
+    public static double getBestCost(int mode, int maxSpeed, int direction, Street start, double startPos, Street target, double targetPos){
+        HashMap<Node,Double> distances = new HashMap<Node,Double>();
+        PriorityQueue<Object[]> queue = new PriorityQueue<Object[]>(16, new Comparator<Object[]>(){
+            public int compare(Object[] a, Object[] b){
+                return Double.compare((Double)a[1], (Double)b[1]);
+            }
+        });
+        if(direction > -1) queue.add(new Object[]{start.getStartNode(), getWeight(start, mode, maxSpeed, startPos)});
+        if(direction < 1) queue.add(new Object[]{start.getEndNode(), getWeight(start, mode, maxSpeed, start.getLength() - startPos)});
+        double best = Double.POSITIVE_INFINITY, distance;
+        Object[] entry;
+        Node node;
+        Street[] streets;
+        while(!queue.isEmpty()){
+            entry = queue.poll();
+            node = (Node)entry[0];
+            distance = (Double)entry[1];
+            if(distances.containsKey(node)) continue;
+            distances.put(node, distance);
+            if(distance >= best) break;
+            if(node == target.getStartNode()) best = Math.min(best, distance + getWeight(target, mode, maxSpeed, targetPos));
+            if(node == target.getEndNode() && !target.isOneway()) best = Math.min(best, distance + getWeight(target, mode, maxSpeed, target.getLength() - targetPos));
+            streets = node.getOutgoingStreets();
+            for(int i = 0; i < streets.length; ++i){
+                queue.add(new Object[]{(streets[i].getStartNode() == node)? streets[i].getEndNode() : streets[i].getStartNode(), distance + getWeight(streets[i], mode, maxSpeed, streets[i].getLength())});
+            }
+        }
+        if(best == Double.POSITIVE_INFINITY) return Double.NaN;
+        return best;
+    }
+
+    /**
+     * Checks if two costs are the same apart from rounding.
+     *
+     * @param expected	the expected costs
+     * @param actual	the actual costs
+     *
+     * @return <code>true</code> if they are the same or both are {@link Double#NaN}
+     */
+    public static boolean isSameCost(double expected, double actual){
+        if(Double.isNaN(expected) || Double.isNaN(actual)) return Double.isNaN(expected) && Double.isNaN(actual);
+        return Math.abs(expected - actual) <= 1e-6 * Math.max(1, expected);
+    }
+}
@@ -0,0 +1,164 @@
+package vanetsim.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import vanetsim.routing.RoutingTestMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a simulation restored from a <code>Checkpoint</code> is in exactly the same state as the saved one and
+ * continues in the same way.
+ */
+public class CheckpointTest {
+
+    /** The amount of random vehicles. */
+    private static final int VEHICLES = 400;
+
+    /** The time at which the checkpoint is saved (in milliseconds). */
+    private static final int SAVE_TIME = 30000;
+
+    /** The time until which both simulations continue (in milliseconds). */
+    private static final int END_TIME = 60000;
+
+    /** The map file. */
+    private File mapFile_;
+
+    /** The checkpoint file. */
+    private File checkpointFile_;
+
+    /**
+     * Writes a new grid map.
+     *
+     * @throws IOException if the map can't be written
+     */
+    @Before
+    public void setUp() throws IOException{
+        mapFile_ = File.createTempFile("checkpoint", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+        checkpointFile_ = File.createTempFile("checkpoint", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        RoutingTestMap.writeGrid(mapFile_, 12, 7L);
+    }
+
+    /**
+     * Removes the map and the checkpoint.
+     */
+    @After
+    public void tearDown(){
+        mapFile_.delete();
+        checkpointFile_.delete();
+    }
+
+    /**
+     * Restores a simulation in the default mode.
+     */
+    @Test
+    public void testRestore(){
+        checkRestore(false, false, false);
+    }
+
+    /**
+     * Restores a simulation in which vehicles are recycled, so that the steady IDs and the random generators of the vehicles
+     * have to be restored.
+     */
+    @Test
+    public void testRestoreWithRecycling(){
+        checkRestore(false, false, true);
+    }
+
+    /**
+     * Restores a simulation in the deterministic mode.
+     */
+    @Test
+    public void testRestoreDeterministic(){
+        checkRestore(true, false, true);
+    }
+
+    /**
+     * Restores a simulation with the double-buffered vehicle state.
+     */
+    @Test
+    public void testRestoreDoubleBuffered(){
+        checkRestore(false, true, false);
+    }
+
+    /**
+     * A checkpoint isn't restored if other vehicles were created.
+     */
+    @Test
+    public void testOtherScenario(){
+        HeadlessEngine saved = createEngine(false, false, false, VEHICLES);
+        try{
+            saved.runUntil(SAVE_TIME);
+            assertTrue(saved.saveCheckpoint(checkpointFile_));
+        } finally {
+            saved.shutdown();
+        }
+        HeadlessEngine restored = createEngine(false, false, false, VEHICLES / 2);
+        try{
+            assertFalse(restored.restoreCheckpoint(checkpointFile_));
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    /**
+     * Saves a simulation, restores it in a new engine and compares the state of both right after restoring and after
+     * continuing.
+     *
+     * @param deterministic		if the deterministic mode is enabled
+     * @param doubleBuffered	if the double-buffered vehicle state is enabled
+     * @param recycling			if vehicles which reached their destination are recycled
+     */
+    private void checkRestore(boolean deterministic, boolean doubleBuffered, boolean recycling){
+        List<String> savedState, savedEnd;
+        HeadlessEngine saved = createEngine(deterministic, doubleBuffered, recycling, VEHICLES);
+        try{
+            saved.runUntil(SAVE_TIME);
+            assertTrue(saved.saveCheckpoint(checkpointFile_));
+            savedState = ThreadCountTest.getState(saved);
+            saved.runUntil(END_TIME);
+            savedEnd = ThreadCountTest.getState(saved);
+        } finally {
+            saved.shutdown();
+        }
+        HeadlessEngine restored = createEngine(deterministic, doubleBuffered, recycling, VEHICLES);
+        try{
+            assertTrue(restored.restoreCheckpoint(checkpointFile_));
+            assertEquals(SAVE_TIME, restored.getContext().getTime());
+            assertEquals(savedState, ThreadCountTest.getState(restored));
+            restored.runUntil(END_TIME);
+            assertEquals(savedEnd, ThreadCountTest.getState(restored));
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    /**
+     * Creates an engine with the map and random vehicles.
+     *
+     * @param deterministic		if the deterministic mode is enabled
+     * @param doubleBuffered	if the double-buffered vehicle state is enabled
+     * @param recycling			if vehicles which reached their destination are recycled
+     * @param vehicles			the amount of vehicles
+     *
+     * @return the engine
+     */
+    private HeadlessEngine createEngine(boolean deterministic, boolean doubleBuffered, boolean recycling, int vehicles){
+        HeadlessEngine engine = new HeadlessEngine(1);
+        engine.getContext().setDeterministic(deterministic);
+        engine.getContext().setDoubleBuffered(doubleBuffered);
+        engine.getContext().setRecyclingEnabled(recycling);
+        engine.getContext().setMinTravelTimeForRecycling(1000);
+        assertTrue(engine.loadMap(mapFile_));
+        assertEquals(vehicles, engine.createRandomVehicles(vehicles, 3L));
+        return engine;
+    }
+}
@@ -0,0 +1,316 @@
+package vanetsim.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import vanetsim.localization.Messages;
+import vanetsim.map.Region;
+import vanetsim.routing.RoutingTestMap;
+import vanetsim.scenario.RSU;
+import vanetsim.scenario.Vehicle;
+import vanetsim.scenario.events.Event;
+import vanetsim.scenario.events.EventList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the blocks of steps which the <code>WorkerThread</code>s of the <code>SimulationMaster</code> do without the master
+ * when jumping to a time.
+ */
+public class FastForwardTest {
+
+    /** The amount of random vehicles. */
+    private static final int VEHICLES = 400;
+
+    /** The time simulated in each run (in milliseconds). */
+    private static final int TIME = 60000;
+
+    /** The amount of worker threads. */
+    private static final int THREADS = 2;
+
+    /** The map file. */
+    private File mapFile_;
+
+    /**
+     * Writes a new grid map.
+     *
+     * @throws IOException if the map can't be written
+     */
+    @Before
+    public void setUp() throws IOException{
+        mapFile_ = File.createTempFile("fastforward", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+        RoutingTestMap.writeGrid(mapFile_, 12, 7L);
+    }
+
+    /**
+     * Removes the map.
+     */
+    @After
+    public void tearDown(){
+        mapFile_.delete();
+    }
+
+    /**
+     * Blocks of steps give the same vehicles at the same positions as single steps started by the master.
+     *
+     * @throws Exception if waiting for the workers fails
+     */
+    @Test
+    public void testBlocks() throws Exception{
+        List<String> expected, actual;
+        HeadlessEngine engine = createEngine();
+        try{
+            ThreadCountTest.runBarrier(engine, THREADS, false, TIME);
+            expected = ThreadCountTest.getState(engine);
+        } finally {
+            engine.shutdown();
+        }
+        assertTrue("no vehicle has moved", ThreadCountTest.hasMoved(expected)); //$NON-NLS-1$
+        engine = createEngine();
+        try{
+            ThreadCountTest.runBarrier(engine, THREADS, true, TIME);
+            actual = ThreadCountTest.getState(engine);
+        } finally {
+            engine.shutdown();
+        }
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * A block ends with the last step before the next event, so that the event is processed by the master at the same time
+     * as without blocks.
+     *
+     * @throws Exception if waiting for the workers fails
+     */
+    @Test
+    public void testStopBeforeEvent() throws Exception{
+        HeadlessEngine engine = createEngine();
+        SimulationContext previous = engine.getContext().bind();
+        try{
+            RecordingEvent event = new RecordingEvent(5020);
+            EventList.getInstance().addEvent(event);
+            SimulationMaster master = createMaster(engine);
+            try{
+                master.setJumpTarget(TIME);
+                // 125 steps end at 5000, the step ending at 5040 is the first one reaching the event
+                assertEquals(125, master.doBlock(null));
+                assertEquals(5000, engine.getContext().getTime());
+                assertEquals(-1, event.getExecutionTime());
+                assertEquals(SimulationMaster.FAST_FORWARD_STEPS, master.doBlock(null));
+                assertEquals(5000, event.getExecutionTime());
+                assertEquals(5000 + SimulationMaster.FAST_FORWARD_STEPS * SimulationMaster.TIME_PER_STEP, engine.getContext().getTime());
+            } finally {
+                master.shutdownEngine();
+            }
+        } finally {
+            SimulationContext.restore(previous);
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * An exception thrown by the last worker between two steps of a block doesn't stop the block and is logged at the end of
+     * the next step.
+     *
+     * @throws Exception if waiting for the workers fails
+     */
+    @Test
+    public void testFailureInBlock() throws Exception{
+        RecordingHandler handler = new RecordingHandler();
+        Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+        HeadlessEngine engine = createEngine();
+        SimulationContext previous = engine.getContext().bind();
+        logger.addHandler(handler);
+        try{
+            SimulationMaster master = createMaster(engine);
+            // the first step is prepared by the master, the second one by the last worker arriving at the step barrier
+            master.getPipeline().register(new FailingPhase(2));
+            try{
+                master.setJumpTarget(TIME);
+                assertEquals(SimulationMaster.FAST_FORWARD_STEPS, master.doBlock(null));
+                assertEquals(SimulationMaster.FAST_FORWARD_STEPS * SimulationMaster.TIME_PER_STEP, engine.getContext().getTime());
+                assertNotNull("failure not logged", handler.getRecord()); //$NON-NLS-1$
+                assertEquals(Level.SEVERE, handler.getRecord().getLevel());
+                assertTrue(handler.getRecord().getMessage().startsWith(Messages.getString("PhasePipeline.regionsFailed") + 1)); //$NON-NLS-1$
+                assertTrue(handler.getRecord().getThrown() instanceof IllegalStateException);
+                // the barriers aren't broken
+                assertEquals(SimulationMaster.FAST_FORWARD_STEPS, master.doBlock(null));
+            } finally {
+                master.shutdownEngine();
+            }
+        } finally {
+            logger.removeHandler(handler);
+            SimulationContext.restore(previous);
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Creates an engine with the map and random vehicles in the deterministic mode.
+     *
+     * @return the engine
+     */
+    private HeadlessEngine createEngine(){
+        HeadlessEngine engine = new HeadlessEngine(1);
+        engine.getContext().setDeterministic(true);
+        assertTrue(engine.loadMap(mapFile_));
+        assertEquals(VEHICLES, engine.createRandomVehicles(VEHICLES, 3L));
+        return engine;
+    }
+
+    /**
+     * Creates a master with worker threads for the map of an engine. The context of the engine must be bound.
+     *
+     * @param engine	the engine
+     *
+     * @return the master
+     */
+    private static SimulationMaster createMaster(HeadlessEngine engine){
+        engine.getContext().setEngine(SimulationMaster.ENGINE_BARRIER);
+        SimulationMaster master = new SimulationMaster();
+        master.createEngine(THREADS);
+        return master;
+    }
+
+    /**
+     * An event which notes the simulation time at which it was executed.
+     */
+    private static final class RecordingEvent extends Event {
+
+        /** The simulation time at which this event was executed or <code>-1</code>. */
+        private int executionTime_ = -1;
+
+        /**
+         * Creates a new event.
+         *
+         * @param time	the time at which the event is due
+         */
+        RecordingEvent(int time){
+            time_ = time;
+        }
+
+        /**
+         * Gets the simulation time at which this event was executed.
+         *
+         * @return the time or <code>-1</code> if it hasn't been executed
+         */
+        int getExecutionTime(){
+            return executionTime_;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String getText(){
+            return "recording"; //$NON-NLS-1$
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void destroy(){
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void execute(){
+            executionTime_ = SimulationClock.getTime();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int compareTo(Event other){
+            if(other.getTime() > time_) return -1;
+            else if(other.getTime() < time_) return 1;
+            else return 0;
+        }
+    }
+
+    /**
+     * A phase without work which throws an exception when it is asked for work for the n-th time.
+     */
+    private static final class FailingPhase extends SimulationPhase {
+
+        /** How often the phase was asked for work. */
+        private final AtomicInteger calls_ = new AtomicInteger(0);
+
+        /** The call which fails. */
+        private final int failingCall_;
+
+        /**
+         * Creates a new phase.
+         *
+         * @param failingCall	the call of <code>hasWork()</code> which fails (starting with <code>1</code>)
+         */
+        FailingPhase(int failingCall){
+            super("failing", false); //$NON-NLS-1$
+            failingCall_ = failingCall;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean hasWork(){
+            if(calls_.incrementAndGet() == failingCall_) throw new IllegalStateException();
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int processRegion(Region region, Vehicle[] vehicles, RSU[] rsus, int timePerStep){
+            return 0;
+        }
+    }
+
+    /**
+     * Keeps the first record logged with at least the level <code>WARNING</code>.
+     */
+    private static final class RecordingHandler extends Handler {
+
+        /** The first record or <code>null</code>. */
+        private volatile LogRecord record_ = null;
+
+        /**
+         * Gets the first record.
+         *
+         * @return the record or <code>null</code> if nothing was logged
+         */
+        LogRecord getRecord(){
+            return record_;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public synchronized void publish(LogRecord record){
+            if(record_ == null && record.getLevel().intValue() >= Level.WARNING.intValue()) record_ = record;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void flush(){
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void close(){
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package vanetsim.simulation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that a <code>HeadlessEngine</code> only affects its own <code>SimulationContext</code>.
+ */
+public class HeadlessEngineTest {
+
+    /**
+     * The context of the engine is headless, the default context used by the graphical user interface and other contexts aren't.
+     */
+    @Test
+    public void testHeadlessContext(){
+        SimulationContext other = new SimulationContext();
+        HeadlessEngine engine = new HeadlessEngine(1);
+        try{
+            assertTrue(engine.getContext().getHeadless());
+            assertFalse(SimulationContext.getDefault().getHeadless());
+            assertFalse(other.getHeadless());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * An existing context passed to the engine is marked as headless.
+     */
+    @Test
+    public void testExistingContext(){
+        SimulationContext context = new SimulationContext();
+        HeadlessEngine engine = new HeadlessEngine(context, 1);
+        try{
+            assertTrue(context.getHeadless());
+            assertFalse(SimulationContext.getDefault().getHeadless());
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
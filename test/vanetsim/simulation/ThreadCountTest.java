@@ -0,0 +1,247 @@
+package vanetsim.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import vanetsim.map.Map;
+import vanetsim.map.Region;
+import vanetsim.routing.RoutingTestMap;
+import vanetsim.scenario.Vehicle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the results of the simulation don't depend on the amount of threads if the deterministic mode or the double-buffered vehicle
+ * state is enabled. Both the work stealing of the <code>HeadlessEngine</code> and the <code>WorkerThread</code>s of the
+ * <code>SimulationMaster</code> are checked.
+ */
+public class ThreadCountTest {
+
+    /** The amount of random vehicles. */
+    private static final int VEHICLES = 400;
+
+    /** The time simulated in each run (in milliseconds). */
+    private static final int TIME = 60000;
+
+    /** The map file. */
+    private File mapFile_;
+
+    /**
+     * Writes a new grid map.
+     *
+     * @throws IOException if the map can't be written
+     */
+    @Before
+    public void setUp() throws IOException{
+        mapFile_ = File.createTempFile("threadcount", ".xml"); //$NON-NLS-1$ //$NON-NLS-2$
+        RoutingTestMap.writeGrid(mapFile_, 12, 7L);
+    }
+
+    /**
+     * Removes the map.
+     */
+    @After
+    public void tearDown(){
+        mapFile_.delete();
+    }
+
+    /**
+     * The deterministic mode gives the same vehicles at the same positions with one, two and four threads.
+     */
+    @Test
+    public void testDeterministic(){
+        List<String> expected = run(1, false, false);
+        assertTrue("no vehicle has moved", hasMoved(expected)); //$NON-NLS-1$
+        assertEquals(expected, run(2, false, false));
+        assertEquals(expected, run(4, false, false));
+    }
+
+    /**
+     * Recycled vehicles get the same steady IDs with one and four threads.
+     */
+    @Test
+    public void testDeterministicWithRecycling(){
+        List<String> expected = run(1, false, true);
+        assertTrue("no vehicle was recycled", hasRecycled(expected)); //$NON-NLS-1$
+        assertEquals(expected, run(4, false, true));
+    }
+
+    /**
+     * With the double-buffered state, all regions read the state of the last step, so the order in which they are
+     * simulated doesn't matter.
+     */
+    @Test
+    public void testDoubleBuffered(){
+        List<String> expected = run(1, true, false);
+        assertTrue("no vehicle has moved", hasMoved(expected)); //$NON-NLS-1$
+        assertEquals(expected, run(2, true, false));
+        assertEquals(expected, run(4, true, false));
+    }
+
+    /**
+     * The deterministic mode gives the same result with one, two and four <code>WorkerThread</code>s as with the work stealing.
+     *
+     * @throws Exception if waiting for the workers fails
+     */
+    @Test
+    public void testBarrierDeterministic() throws Exception{
+        List<String> expected = runBarrier(1, false);
+        assertTrue("no vehicle has moved", hasMoved(expected)); //$NON-NLS-1$
+        assertEquals(expected, runBarrier(2, false));
+        assertEquals(expected, runBarrier(4, false));
+        assertEquals(expected, run(1, false, false));
+    }
+
+    /**
+     * The double-buffered state gives the same result with one, two and four <code>WorkerThread</code>s as with the work stealing.
+     *
+     * @throws Exception if waiting for the workers fails
+     */
+    @Test
+    public void testBarrierDoubleBuffered() throws Exception{
+        List<String> expected = runBarrier(1, true);
+        assertTrue("no vehicle has moved", hasMoved(expected)); //$NON-NLS-1$
+        assertEquals(expected, runBarrier(2, true));
+        assertEquals(expected, runBarrier(4, true));
+        assertEquals(expected, run(1, true, false));
+    }
+
+    /**
+     * Simulates the random vehicles on the map.
+     *
+     * @param threads			the amount of threads
+     * @param doubleBuffered	<code>true</code> for the double-buffered state, <code>false</code> for the deterministic mode
+     * @param recycling			if vehicles which reached their destination are recycled
+     *
+     * @return the state of all vehicles at the end, in the order in which the regions store them
+     */
+    private List<String> run(int threads, boolean doubleBuffered, boolean recycling){
+        HeadlessEngine engine = new HeadlessEngine(threads);
+        try{
+            engine.getContext().setDeterministic(!doubleBuffered);
+            engine.getContext().setDoubleBuffered(doubleBuffered);
+            engine.getContext().setRecyclingEnabled(recycling);
+            engine.getContext().setMinTravelTimeForRecycling(1000);
+            assertTrue(engine.loadMap(mapFile_));
+            assertEquals(VEHICLES, engine.createRandomVehicles(VEHICLES, 3L));
+            engine.runUntil(TIME);
+            return getState(engine);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Simulates the random vehicles on the map with the barrier engine.
+     *
+     * @param threads			the amount of worker threads
+     * @param doubleBuffered	<code>true</code> for the double-buffered state, <code>false</code> for the deterministic mode
+     *
+     * @return the state of all vehicles at the end, in the order in which the regions store them
+     *
+     * @throws Exception if waiting for the workers fails
+     */
+    private List<String> runBarrier(int threads, boolean doubleBuffered) throws Exception{
+        HeadlessEngine engine = new HeadlessEngine(1);
+        try{
+            engine.getContext().setDeterministic(!doubleBuffered);
+            engine.getContext().setDoubleBuffered(doubleBuffered);
+            assertTrue(engine.loadMap(mapFile_));
+            assertEquals(VEHICLES, engine.createRandomVehicles(VEHICLES, 3L));
+            runBarrier(engine, threads, false, TIME);
+            return getState(engine);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Simulates the map and vehicles of an engine with the <code>WorkerThread</code>s of a <code>SimulationMaster</code>
+     * instead of the scheduler of the engine.
+     *
+     * @param engine	the engine
+     * @param threads	the amount of worker threads
+     * @param blocks	if the steps are done in blocks as when jumping to the time
+     * @param time		the time until which is simulated (in milliseconds)
+     *
+     * @throws Exception if waiting for the workers fails
+     */
+    static void runBarrier(HeadlessEngine engine, int threads, boolean blocks, int time) throws Exception{
+        SimulationContext previous = engine.getContext().bind();
+        try{
+            engine.getContext().setEngine(SimulationMaster.ENGINE_BARRIER);
+            SimulationMaster master = new SimulationMaster();
+            master.createEngine(threads);
+            try{
+                if(blocks) master.setJumpTarget(time);
+                while(engine.getContext().getTime() < time) master.doBlock(null);
+            } finally {
+                master.shutdownEngine();
+            }
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Gets the state of all vehicles.
+     *
+     * @param engine	the engine
+     *
+     * @return one line for each vehicle
+     */
+    static List<String> getState(HeadlessEngine engine){
+        SimulationContext previous = engine.getContext().bind();
+        try{
+            List<String> result = new ArrayList<String>();
+            Region[][] regions = Map.getInstance().getRegions();
+            Vehicle[] vehicles;
+            for(int i = 0; i < regions.length; ++i){
+                for(int j = 0; j < regions[i].length; ++j){
+                    vehicles = regions[i][j].getVehicleArray();
+                    for(int k = 0; k < vehicles.length; ++k){
+                        result.add(vehicles[k].getCreationNumber() + ": " + vehicles[k].getX() + "," + vehicles[k].getY() + " lane=" + vehicles[k].getCurLane() + " speed=" + vehicles[k].getCurSpeed() + " wait=" + vehicles[k].getCurWaitTime() + " distance=" + vehicles[k].getTotalTravelDistance() + " active=" + vehicles[k].isActive() + " id=" + vehicles[k].getSteadyID() + "/" + vehicles[k].getID()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$
+                    }
+                }
+            }
+            return result;
+        } finally {
+            SimulationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Checks if the simulation did anything.
+     *
+     * @param state	the state returned by {@link #getState(HeadlessEngine)}
+     *
+     * @return <code>true</code> if a vehicle has driven
+     */
+    static boolean hasMoved(List<String> state){
+        for(String line : state){
+            if(!line.contains(" distance=0 ")) return true; //$NON-NLS-1$
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a vehicle got a new steady ID.
+     *
+     * @param state	the state returned by {@link #getState(HeadlessEngine)}
+     *
+     * @return <code>true</code> if a vehicle was recycled
+     */
+    private static boolean hasRecycled(List<String> state){
+        for(String line : state){
+            if(Integer.parseInt(line.substring(line.lastIndexOf('=') + 1, line.lastIndexOf('/'))) >= VEHICLES) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,151 @@
+package vanetsim.simulation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares a <code>TimingWheel</code> with a <code>PriorityQueue</code> ordered by time. Every timer has to fire exactly once, at
+ * the first call of <code>advance()</code> with a time which is at least the time of the timer.
+ */
+public class TimingWheelTest {
+
+    /** The amount of ticks covered by the four levels of the wheel. Timers further away are kept in the overflow list. */
+    private static final int WHEEL_TICKS = 64 * 64 * 64 * 64;
+
+    /** The amount of random timers. */
+    private static final int TIMERS = 5000;
+
+    /**
+     * Random timers on all levels and in the overflow list, advanced by one tick at a time.
+     */
+    @Test
+    public void testRandomTimers(){
+        Random random = new Random(11L);
+        int[] times = new int[TIMERS];
+        for(int i = 0; i < TIMERS; ++i) times[i] = 1 + random.nextInt(64 << (6 * random.nextInt(4)));
+        // some are far away so that they go into the overflow list and need to be cascaded twice
+        for(int i = 0; i < TIMERS / 20; ++i) times[i] = WHEEL_TICKS + random.nextInt(2 * WHEEL_TICKS);
+        check(1, 0, times, random);
+    }
+
+    /**
+     * Random timers with a tick of one simulation step which aren't multiples of the tick, starting at a time which isn't
+     * a multiple of the tick either.
+     */
+    @Test
+    public void testLongTicks(){
+        Random random = new Random(12L);
+        int tick = SimulationMaster.TIME_PER_STEP;
+        int[] times = new int[TIMERS];
+        for(int i = 0; i < TIMERS; ++i) times[i] = 1000 + random.nextInt(64 * 64 * 64 * tick);
+        check(tick, 1000 + tick / 2, times, random);
+    }
+
+    /**
+     * Timers scheduled for the current time or earlier fire at the next advance.
+     */
+    @Test
+    public void testPastTimers(){
+        TimingWheel wheel = new TimingWheel(1, 100);
+        wheel.schedule(100, 1);
+        wheel.schedule(50, 2);
+        wheel.schedule(101, 3);
+        assertEquals(3, wheel.size());
+        assertEquals(2, wheel.advance(100));
+        int[] fired = Arrays.copyOf(wheel.getFired(), 2);
+        Arrays.sort(fired);
+        assertArrayEquals(new int[]{1, 2}, fired);
+        assertEquals(0, wheel.advance(100));
+        assertEquals(1, wheel.advance(101));
+        assertEquals(3, wheel.getFired()[0]);
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Schedules timers and advances the wheel by one tick at a time until all timers have fired. Besides the given timers,
+     * timers right before, at and after the boundaries of the levels are scheduled at the start and, relative to the current
+     * time, while advancing.
+     *
+     * @param tick		the length of a tick
+     * @param start		the time at which the wheel starts
+     * @param times		the times of the timers scheduled at the start
+     * @param random	the random generator deciding when the later timers are scheduled
+     */
+    private static void check(int tick, int start, int[] times, Random random){
+        TimingWheel wheel = new TimingWheel(tick, start);
+        PriorityQueue<int[]> reference = new PriorityQueue<int[]>(16, new Comparator<int[]>(){
+            public int compare(int[] a, int[] b){
+                return Integer.compare(a[0], b[0]);
+            }
+        });
+        List<Integer> boundaries = getBoundaries();
+        int value = 0, count, expectedCount, i, time = start;
+        int[] actual, expected = new int[16];
+        for(i = 0; i < times.length; ++i) schedule(wheel, reference, times[i], value++);
+        for(i = 0; i < boundaries.size(); ++i) schedule(wheel, reference, start + boundaries.get(i) * tick, value++);
+        boolean[] fired = new boolean[value + 400];
+        while(!reference.isEmpty()){
+            time += tick;
+            // schedule some timers while advancing, relative to the current tick
+            if(value < fired.length && random.nextInt(1000) == 0){
+                for(i = 0; i < 4; ++i, ++value) schedule(wheel, reference, time + boundaries.get(random.nextInt(boundaries.size())) * tick, value);
+            }
+            count = wheel.advance(time);
+            expectedCount = 0;
+            while(!reference.isEmpty() && reference.peek()[0] <= time){
+                if(expectedCount == expected.length) expected = Arrays.copyOf(expected, expectedCount * 2);
+                expected[expectedCount++] = reference.poll()[1];
+            }
+            assertEquals("timers fired at " + time, expectedCount, count); //$NON-NLS-1$
+            if(count == 0) continue;
+            actual = Arrays.copyOf(wheel.getFired(), count);
+            Arrays.sort(actual);
+            Arrays.sort(expected, 0, expectedCount);
+            assertArrayEquals("timers fired at " + time, Arrays.copyOf(expected, expectedCount), actual); //$NON-NLS-1$
+            for(i = 0; i < count; ++i){
+                assertFalse("timer fired twice: " + actual[i], fired[actual[i]]); //$NON-NLS-1$
+                fired[actual[i]] = true;
+            }
+            assertEquals(reference.size(), wheel.size());
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Adds a timer to the wheel and the reference.
+     *
+     * @param wheel		the wheel
+     * @param reference	the reference
+     * @param time		the time of the timer
+     * @param value		the value of the timer
+     */
+    private static void schedule(TimingWheel wheel, PriorityQueue<int[]> reference, int time, int value){
+        wheel.schedule(time, value);
+        reference.add(new int[]{time, value});
+    }
+
+    /**
+     * Gets the distances of the level boundaries and the overflow boundary plus one tick before and after them.
+     *
+     * @return the distances in ticks
+     */
+    private static List<Integer> getBoundaries(){
+        List<Integer> list = new ArrayList<Integer>();
+        for(int size = 64; size <= WHEEL_TICKS; size *= 64){
+            list.add(size - 1);
+            list.add(size);
+            list.add(size + 1);
+        }
+        return list;
+    }
+}